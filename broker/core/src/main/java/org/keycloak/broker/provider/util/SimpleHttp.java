@@ -1,5 +1,20 @@
 package org.keycloak.broker.provider.util;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.KeycloakSession;
+
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -8,16 +23,23 @@ import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 /**
+ * Requests are sent with the pooled client of the http client provider if there's a session of the current request,
+ * otherwise with {@link HttpURLConnection}.
+ *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  * @author Vlastimil Elias (velias at redhat dot com)
  */
 public class SimpleHttp {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private String url;
     private String method;
@@ -55,97 +77,132 @@ public class SimpleHttp {
 
 
     public String asString() throws IOException {
-        boolean get = method.equals("GET");
-        boolean post = method.equals("POST");
-
-        StringBuilder sb = new StringBuilder();
-        if (get) {
-            sb.append(url);
-        }
-
-        if (params != null) {
-            boolean f = true;
-            for (Map.Entry<String, String> p : params.entrySet()) {
-                if (f) {
-                    f = false;
-                    if (get) {
-                        sb.append("?");
-                    }
-                } else {
-                    sb.append("&");
+        HttpClient httpClient = getHttpClient();
+        if (httpClient != null) {
+            HttpResponse response = execute(httpClient);
+            try {
+                int status = response.getStatusLine().getStatusCode();
+                if (status >= 400) {
+                    throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
                 }
-                sb.append(URLEncoder.encode(p.getKey(), "UTF-8"));
-                sb.append("=");
-                sb.append(URLEncoder.encode(p.getValue(), "UTF-8"));
+                HttpEntity entity = response.getEntity();
+                return entity != null ? EntityUtils.toString(entity, UTF_8) : "";
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
             }
         }
 
-        if (get) {
-            url = sb.toString();
+        HttpURLConnection connection = openConnection();
+        int status = connection.getResponseCode();
+        if (status >= 400) {
+            consume(connection.getErrorStream());
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
         }
 
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        OutputStream os = null;
         InputStream is = null;
-
         try {
-            connection.setRequestMethod(method);
-
-            if (headers != null) {
-                for (Map.Entry<String, String> h : headers.entrySet()) {
-                    connection.setRequestProperty(h.getKey(), h.getValue());
-                }
-            }
-
-            if (post) {
-                String data = sb.toString();
-
-                connection.setDoOutput(true);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-                connection.setRequestProperty("Content-Length", String.valueOf(data.length()));
-
-                os = connection.getOutputStream();
-                os.write(data.getBytes());
-            } else {
-                connection.setDoOutput(false);
-            }
-
             String ce = connection.getHeaderField("Content-Encoding");
             is = connection.getInputStream();
             if ("gzip".equals(ce)) {
-              is = new GZIPInputStream(is);
-	          }
+                is = new GZIPInputStream(is);
+            }
             return toString(is);
         } finally {
-            if (os != null) {
-                try {
-                    os.close();
-                } catch (IOException e) {
-                }
+            close(is);
+        }
+    }
+
+    public int asStatus() throws IOException {
+        HttpClient httpClient = getHttpClient();
+        if (httpClient != null) {
+            HttpResponse response = execute(httpClient);
+            try {
+                return response.getStatusLine().getStatusCode();
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
             }
+        }
+
+        HttpURLConnection connection = openConnection();
+        int status = connection.getResponseCode();
+        consume(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+        return status;
+    }
 
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
+    /**
+     * Client from the http client provider of the session handling the current request, so that requests to the same
+     * provider reuse pooled keep-alive connections. There is no session outside of a request, like in unit tests.
+     */
+    protected HttpClient getHttpClient() {
+        KeycloakSession session = ResteasyProviderFactory.getContextData(KeycloakSession.class);
+        if (session == null) return null;
+        HttpClientProvider provider = session.getProvider(HttpClientProvider.class);
+        return provider != null ? provider.getHttpClient() : null;
+    }
+
+    private HttpResponse execute(HttpClient httpClient) throws IOException {
+        HttpRequestBase request;
+        if (method.equals("POST")) {
+            HttpPost post = new HttpPost(url);
+            List<NameValuePair> formParams = new LinkedList<NameValuePair>();
+            if (params != null) {
+                for (Map.Entry<String, String> p : params.entrySet()) {
+                    formParams.add(new BasicNameValuePair(p.getKey(), p.getValue()));
                 }
             }
-            if (connection != null) {
-                try {
-                    connection.disconnect();
-                } catch (Exception e) {
-                }
+            post.setEntity(new UrlEncodedFormEntity(formParams, UTF_8));
+            request = post;
+        } else {
+            request = new HttpGet(appendParams(url, params));
+        }
+
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                request.setHeader(h.getKey(), h.getValue());
             }
         }
+        return httpClient.execute(request);
     }
 
-    public int asStatus() throws IOException {
-        boolean get = method.equals("GET");
+    /**
+     * The connection isn't disconnected after the response is read, so that the JDK can keep it alive for next request.
+     * The body must be read till the end for that, also for error responses.
+     */
+    private HttpURLConnection openConnection() throws IOException {
         boolean post = method.equals("POST");
+        String target = post ? url : appendParams(url, params);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+        connection.setRequestMethod(method);
+
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                connection.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+
+        if (post) {
+            byte[] data = appendParams(null, params).getBytes(UTF_8);
+
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setRequestProperty("Content-Length", String.valueOf(data.length));
 
+            OutputStream os = connection.getOutputStream();
+            try {
+                os.write(data);
+            } finally {
+                close(os);
+            }
+        } else {
+            connection.setDoOutput(false);
+        }
+        return connection;
+    }
+
+    private static String appendParams(String url, Map<String, String> params) throws IOException {
         StringBuilder sb = new StringBuilder();
-        if (get) {
+        if (url != null) {
             sb.append(url);
         }
 
@@ -154,7 +211,7 @@ public class SimpleHttp {
             for (Map.Entry<String, String> p : params.entrySet()) {
                 if (f) {
                     f = false;
-                    if (get) {
+                    if (url != null) {
                         sb.append("?");
                     }
                 } else {
@@ -165,65 +222,31 @@ public class SimpleHttp {
                 sb.append(URLEncoder.encode(p.getValue(), "UTF-8"));
             }
         }
+        return sb.toString();
+    }
 
-        if (get) {
-            url = sb.toString();
-        }
-
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        OutputStream os = null;
-        InputStream is = null;
-
+    private static void consume(InputStream is) throws IOException {
+        if (is == null) return;
         try {
-            connection.setRequestMethod(method);
-
-            if (headers != null) {
-                for (Map.Entry<String, String> h : headers.entrySet()) {
-                    connection.setRequestProperty(h.getKey(), h.getValue());
-                }
-            }
-
-            if (post) {
-                String data = sb.toString();
-
-                connection.setDoOutput(true);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-                connection.setRequestProperty("Content-Length", String.valueOf(data.length()));
-
-                os = connection.getOutputStream();
-                os.write(data.getBytes());
-            } else {
-                connection.setDoOutput(false);
+            byte[] buffer = new byte[1024 * 4];
+            while (is.read(buffer) != -1) {
             }
-
-            is = connection.getInputStream();
-            return connection.getResponseCode();
         } finally {
-            if (os != null) {
-                try {
-                    os.close();
-                } catch (IOException e) {
-                }
-            }
+            close(is);
+        }
+    }
 
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                }
-            }
-            if (connection != null) {
-                try {
-                    connection.disconnect();
-                } catch (Exception e) {
-                }
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
             }
         }
     }
 
     private String toString(InputStream is) throws IOException {
-        InputStreamReader reader = new InputStreamReader(is);
+        InputStreamReader reader = new InputStreamReader(is, UTF_8);
 
         StringWriter writer = new StringWriter();
 
@@ -0,0 +1,196 @@
+package org.keycloak.broker.provider.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.httpclient.HttpClientBuilder;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.KeycloakSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class SimpleHttpTest {
+
+    private HttpServer server;
+    private String url;
+    private CloseableHttpClient client;
+
+    // Remote ports of the requests, the same port means the same connection
+    private final List<Integer> ports = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ports.add(exchange.getRemoteAddress().getPort());
+
+                String path = exchange.getRequestURI().getPath();
+                int status = path.startsWith("/status/") ? Integer.parseInt(path.substring("/status/".length())) : 200;
+                String body = exchange.getRequestMethod() + " " + exchange.getRequestURI().getRawQuery() + " " + read(exchange.getRequestBody());
+
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, status == 204 ? -1 : bytes.length);
+                if (status != 204) {
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(bytes);
+                    os.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort();
+
+        client = new HttpClientBuilder().build();
+    }
+
+    @After
+    public void after() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSessionClient() {
+        Assert.assertNull(SimpleHttp.doGet(url).getHttpClient());
+
+        ResteasyProviderFactory.pushContext(KeycloakSession.class, session(client));
+        try {
+            Assert.assertSame(client, SimpleHttp.doGet(url).getHttpClient());
+        } finally {
+            ResteasyProviderFactory.clearContextData();
+        }
+    }
+
+    @Test
+    public void testPooledParams() throws IOException {
+        Assert.assertEquals("GET a=1+2 ", get("/", client).param("a", "1 2").asString());
+        Assert.assertEquals("POST null a=1+2", post("/", client).param("a", "1 2").asString());
+    }
+
+    @Test
+    public void testFallbackParams() throws IOException {
+        Assert.assertEquals("GET a=1+2 ", get("/", null).param("a", "1 2").asString());
+        Assert.assertEquals("POST null a=1+2", post("/", null).param("a", "1 2").asString());
+    }
+
+    @Test
+    public void testPooledStatus() throws IOException {
+        assertStatus(client);
+    }
+
+    @Test
+    public void testFallbackStatus() throws IOException {
+        assertStatus(null);
+    }
+
+    @Test
+    public void testPooledConnectionReused() throws IOException {
+        assertConnectionReused(client);
+    }
+
+    @Test
+    public void testFallbackConnectionReused() throws IOException {
+        assertConnectionReused(null);
+    }
+
+    private void assertStatus(HttpClient client) throws IOException {
+        Assert.assertEquals(200, get("/", client).asStatus());
+        Assert.assertEquals(204, get("/status/204", client).asStatus());
+        Assert.assertEquals(404, get("/status/404", client).asStatus());
+        Assert.assertEquals(500, post("/status/500", client).asStatus());
+
+        Assert.assertEquals("", get("/status/204", client).asString());
+        assertError(get("/status/400", client));
+        assertError(post("/status/503", client));
+    }
+
+    private void assertConnectionReused(HttpClient client) throws IOException {
+        get("/", client).asString();
+        post("/", client).param("a", "b").asString();
+        get("/status/404", client).asStatus();
+        assertError(get("/status/500", client));
+        get("/status/204", client).asStatus();
+        get("/", client).asStatus();
+
+        Assert.assertEquals(6, ports.size());
+        Assert.assertEquals(ports.toString(), 1, new HashSet<Integer>(ports).size());
+    }
+
+    private static void assertError(SimpleHttp request) {
+        try {
+            request.asString();
+            Assert.fail("Expected error status to fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private SimpleHttp get(String path, final HttpClient client) {
+        return new SimpleHttp(url + path, "GET") {
+            @Override
+            protected HttpClient getHttpClient() {
+                return client;
+            }
+        };
+    }
+
+    private SimpleHttp post(String path, final HttpClient client) {
+        return new SimpleHttp(url + path, "POST") {
+            @Override
+            protected HttpClient getHttpClient() {
+                return client;
+            }
+        };
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+        }
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    private static KeycloakSession session(final HttpClient client) {
+        final HttpClientProvider provider = stub(HttpClientProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getHttpClient") ? client : null;
+            }
+        });
+        return stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getProvider") ? provider : null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+    }
+
+}
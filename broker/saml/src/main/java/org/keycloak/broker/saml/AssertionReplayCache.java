@@ -0,0 +1,105 @@
+package org.keycloak.broker.saml;
+
+import org.infinispan.Cache;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.dom.saml.v2.assertion.AssertionType;
+import org.keycloak.dom.saml.v2.assertion.ConditionsType;
+import org.keycloak.models.KeycloakSession;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers IDs of assertions accepted from SAML identity providers in the Infinispan work cache, so that the same
+ * assertion can't be used to log in twice. An ID is kept until the assertion expires (<code>NotOnOrAfter</code> of its
+ * conditions), but at least <code>minLifespan</code> and at most <code>maxLifespan</code> milliseconds, which keeps
+ * the cache bounded by the number of logins in that window.
+ * <p>
+ * Without Infinispan (or without the work cache) the IDs are kept in a node-local cache of at most
+ * <code>maxLocalEntries</code> IDs. When it's full the oldest IDs are dropped, even before they expire.
+ */
+public class AssertionReplayCache {
+
+    private static final String KEY_PREFIX = "saml-assertion::";
+
+    private final long minLifespan;
+    private final long maxLifespan;
+    private final LocalCache localCache;
+
+    public AssertionReplayCache(long minLifespan, long maxLifespan, int maxLocalEntries) {
+        this.minLifespan = minLifespan;
+        this.maxLifespan = maxLifespan;
+        this.localCache = new LocalCache(maxLocalEntries);
+    }
+
+    /**
+     * @return true if the assertion wasn't seen before, false if it is replayed
+     */
+    public boolean register(KeycloakSession session, String realmId, String alias, AssertionType assertion) {
+        if (assertion.getID() == null) {
+            return true;
+        }
+
+        String key = KEY_PREFIX + realmId + "::" + alias + "::" + assertion.getID();
+        long lifespan = getLifespan(assertion);
+
+        Cache<String, String> cache = getCache(session);
+        if (cache == null) {
+            return localCache.putIfAbsent(key, lifespan);
+        }
+        return cache.putIfAbsent(key, alias, lifespan, TimeUnit.MILLISECONDS) == null;
+    }
+
+    private Cache<String, String> getCache(KeycloakSession session) {
+        InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
+        return connections != null ? connections.<String, String>getCache(InfinispanConnectionProvider.WORK_CACHE_NAME) : null;
+    }
+
+    protected long getLifespan(AssertionType assertion) {
+        long lifespan = minLifespan;
+        ConditionsType conditions = assertion.getConditions();
+        if (conditions != null && conditions.getNotOnOrAfter() != null) {
+            lifespan = conditions.getNotOnOrAfter().toGregorianCalendar().getTimeInMillis() - System.currentTimeMillis();
+        }
+        return Math.min(Math.max(lifespan, minLifespan), maxLifespan);
+    }
+
+    private static class LocalCache {
+
+        private final int maxEntries;
+
+        // Expiration times by key, in order of insertion
+        private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>();
+
+        private LocalCache(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized boolean putIfAbsent(String key, long lifespan) {
+            long currentTime = System.currentTimeMillis();
+
+            Long expiration = entries.get(key);
+            if (expiration != null && expiration > currentTime) {
+                return false;
+            }
+            entries.remove(key);
+
+            Iterator<Map.Entry<String, Long>> itr = entries.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<String, Long> entry = itr.next();
+                if (entries.size() >= maxEntries || entry.getValue() <= currentTime) {
+                    itr.remove();
+                } else {
+                    break;
+                }
+            }
+
+            entries.put(key, currentTime + lifespan);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.keycloak.broker.saml;
+
+import org.keycloak.saml.common.exceptions.ProcessingException;
+import org.keycloak.saml.processing.core.util.XMLSignatureUtil;
+
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local cache of parsed signing certificates of SAML identity providers. Entries are keyed by realm and alias of
+ * the identity provider and remember the certificate string they were parsed from, so when the identity provider is
+ * updated with different certificate, the certificate is parsed again.
+ */
+public class IdentityProviderKeyCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public X509Certificate getCertificate(String realmId, SAMLIdentityProviderConfig config) throws ProcessingException {
+        String certificate = config.getSigningCertificate();
+        if (certificate == null) {
+            return null;
+        }
+
+        String key = realmId + "::" + config.getAlias();
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.pem.equals(certificate)) {
+            entry = new Entry(certificate, XMLSignatureUtil.getX509CertificateFromKeyInfoString(certificate.replaceAll("\\s", "")));
+            entries.put(key, entry);
+        }
+        return entry.certificate;
+    }
+
+    public PublicKey getPublicKey(String realmId, SAMLIdentityProviderConfig config) throws ProcessingException {
+        X509Certificate certificate = getCertificate(realmId, config);
+        return certificate != null ? certificate.getPublicKey() : null;
+    }
+
+    private static class Entry {
+        private final String pem;
+        private final X509Certificate certificate;
+
+        private Entry(String pem, X509Certificate certificate) {
+            this.pem = pem;
+            this.certificate = certificate;
+        }
+    }
+
+}
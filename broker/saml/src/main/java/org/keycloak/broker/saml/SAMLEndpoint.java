@@ -35,7 +35,6 @@ import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.processing.core.saml.v2.common.SAMLDocumentHolder;
 import org.keycloak.saml.processing.core.saml.v2.constants.X500SAMLProfileConstants;
 import org.keycloak.saml.processing.core.saml.v2.util.AssertionUtil;
-import org.keycloak.saml.processing.core.util.XMLSignatureUtil;
 import org.keycloak.saml.processing.web.util.PostBindingUtil;
 import org.keycloak.services.ErrorPage;
 import org.keycloak.services.managers.AuthenticationManager;
@@ -54,7 +53,6 @@ import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.security.PublicKey;
-import java.security.cert.X509Certificate;
 import java.util.List;
 
 /**
@@ -148,13 +146,11 @@ public class SAMLEndpoint {
         protected abstract SAMLDocumentHolder extractRequestDocument(String samlRequest);
         protected abstract SAMLDocumentHolder extractResponseDocument(String response);
         protected PublicKey getIDPKey() {
-            X509Certificate certificate = null;
             try {
-                certificate = XMLSignatureUtil.getX509CertificateFromKeyInfoString(config.getSigningCertificate().replaceAll("\\s", ""));
+                return provider.getKeyCache().getPublicKey(realm.getId(), config);
             } catch (ProcessingException e) {
                 throw new RuntimeException(e);
             }
-            return certificate.getPublicKey();
         }
 
         public Response execute(String samlRequest, String samlResponse, String relayState) {
@@ -266,6 +262,13 @@ public class SAMLEndpoint {
 
             try {
                 AssertionType assertion = AssertionUtil.getAssertion(responseType, realm.getPrivateKey());
+                if (provider.getReplayCache() != null && !provider.getReplayCache().register(session, realm.getId(), config.getAlias(), assertion)) {
+                    logger.warnf("Assertion '%s' from identity provider '%s' was already used", assertion.getID(), config.getAlias());
+                    event.event(EventType.IDENTITY_PROVIDER_RESPONSE);
+                    event.detail(Details.REASON, "assertion_replayed");
+                    event.error(Errors.INVALID_SAML_RESPONSE);
+                    return ErrorPage.error(session, Messages.INVALID_FEDERATED_IDENTITY_ACTION);
+                }
                 SubjectType subject = assertion.getSubject();
                 SubjectType.STSubType subType = subject.getSubType();
                 NameIDType subjectNameID = (NameIDType) subType.getBaseID();
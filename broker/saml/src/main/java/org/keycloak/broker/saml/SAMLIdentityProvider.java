@@ -54,8 +54,17 @@ import java.security.PublicKey;
  */
 public class SAMLIdentityProvider extends AbstractIdentityProvider<SAMLIdentityProviderConfig> {
     protected static final Logger logger = Logger.getLogger(SAMLIdentityProvider.class);
+    private final IdentityProviderKeyCache keyCache;
+    private final AssertionReplayCache replayCache;
+
     public SAMLIdentityProvider(SAMLIdentityProviderConfig config) {
+        this(config, new IdentityProviderKeyCache(), null);
+    }
+
+    public SAMLIdentityProvider(SAMLIdentityProviderConfig config, IdentityProviderKeyCache keyCache, AssertionReplayCache replayCache) {
         super(config);
+        this.keyCache = keyCache;
+        this.replayCache = replayCache;
     }
 
     @Override
@@ -63,6 +72,14 @@ public class SAMLIdentityProvider extends AbstractIdentityProvider<SAMLIdentityP
         return new SAMLEndpoint(realm, this, getConfig(), callback);
     }
 
+    public IdentityProviderKeyCache getKeyCache() {
+        return keyCache;
+    }
+
+    public AssertionReplayCache getReplayCache() {
+        return replayCache;
+    }
+
     @Override
     public Response performLogin(AuthenticationRequest request) {
         try {
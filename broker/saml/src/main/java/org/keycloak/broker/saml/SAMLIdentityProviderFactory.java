@@ -17,6 +17,7 @@
  */
 package org.keycloak.broker.saml;
 
+import org.keycloak.Config;
 import org.keycloak.broker.provider.AbstractIdentityProviderFactory;
 import org.keycloak.broker.saml.mappers.UsernameTemplateMapper;
 import org.keycloak.dom.saml.v2.metadata.EndpointType;
@@ -40,6 +41,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Pedro Igor
@@ -48,6 +50,9 @@ public class SAMLIdentityProviderFactory extends AbstractIdentityProviderFactory
 
     public static final String PROVIDER_ID = "saml";
 
+    private final IdentityProviderKeyCache keyCache = new IdentityProviderKeyCache();
+    private AssertionReplayCache replayCache;
+
     @Override
     public String getName() {
         return "SAML v2.0";
@@ -55,7 +60,15 @@ public class SAMLIdentityProviderFactory extends AbstractIdentityProviderFactory
 
     @Override
     public SAMLIdentityProvider create(IdentityProviderModel model) {
-        return new SAMLIdentityProvider(new SAMLIdentityProviderConfig(model));
+        return new SAMLIdentityProvider(new SAMLIdentityProviderConfig(model), keyCache, replayCache);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        long minLifespan = TimeUnit.SECONDS.toMillis(config.getLong("replayCacheMinLifespan", 300L));
+        long maxLifespan = TimeUnit.SECONDS.toMillis(config.getLong("replayCacheMaxLifespan", 3600L));
+        int maxLocalEntries = config.getInt("replayCacheMaxLocalEntries", 10000);
+        replayCache = new AssertionReplayCache(minLifespan, maxLifespan, maxLocalEntries);
     }
 
     @Override
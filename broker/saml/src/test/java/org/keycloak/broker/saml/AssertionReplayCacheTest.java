@@ -0,0 +1,112 @@
+package org.keycloak.broker.saml;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.dom.saml.v2.assertion.AssertionType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.saml.common.exceptions.ConfigurationException;
+import org.keycloak.saml.processing.core.saml.v2.util.XMLTimeUtil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+public class AssertionReplayCacheTest {
+
+    private DefaultCacheManager cacheManager;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testReplayRejected() {
+        AssertionReplayCache replayCache = new AssertionReplayCache(60000, 60000, 100);
+        KeycloakSession session = session(true);
+
+        Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a1")));
+        Assert.assertFalse(replayCache.register(session, "realm", "idp", assertion("a1")));
+
+        // Seen by other nodes sharing the work cache
+        Assert.assertFalse(new AssertionReplayCache(60000, 60000, 100).register(session(true), "realm", "idp", assertion("a1")));
+
+        Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a2")));
+        Assert.assertTrue(replayCache.register(session, "realm", "other-idp", assertion("a1")));
+        Assert.assertTrue(replayCache.register(session, "other-realm", "idp", assertion("a1")));
+    }
+
+    @Test
+    public void testReplayRejectedWithoutInfinispan() {
+        AssertionReplayCache replayCache = new AssertionReplayCache(60000, 60000, 100);
+        KeycloakSession session = session(false);
+
+        Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a1")));
+        Assert.assertFalse(replayCache.register(session, "realm", "idp", assertion("a1")));
+        Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a2")));
+    }
+
+    @Test
+    public void testExpired() throws InterruptedException {
+        AssertionReplayCache replayCache = new AssertionReplayCache(100, 100, 100);
+
+        Assert.assertTrue(replayCache.register(session(true), "realm", "idp", assertion("a1")));
+        Assert.assertTrue(replayCache.register(session(false), "realm", "idp", assertion("a1")));
+
+        Thread.sleep(300);
+
+        Assert.assertTrue(replayCache.register(session(true), "realm", "idp", assertion("a1")));
+        Assert.assertTrue(replayCache.register(session(false), "realm", "idp", assertion("a1")));
+    }
+
+    @Test
+    public void testLocalCacheBounded() {
+        AssertionReplayCache replayCache = new AssertionReplayCache(60000, 60000, 3);
+        KeycloakSession session = session(false);
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a" + i)));
+        }
+
+        // The oldest ID was dropped
+        Assert.assertTrue(replayCache.register(session, "realm", "idp", assertion("a0")));
+        Assert.assertFalse(replayCache.register(session, "realm", "idp", assertion("a3")));
+    }
+
+    private static AssertionType assertion(String id) {
+        try {
+            return new AssertionType(id, XMLTimeUtil.getIssueInstant());
+        } catch (ConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private KeycloakSession session(boolean infinispan) {
+        final InfinispanConnectionProvider connections = infinispan ? stub(InfinispanConnectionProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getCache") ? cacheManager.getCache((String) args[0]) : null;
+            }
+        }) : null;
+        return stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getProvider") ? connections : null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+    }
+
+}
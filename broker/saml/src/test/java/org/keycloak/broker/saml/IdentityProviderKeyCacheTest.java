@@ -0,0 +1,54 @@
+package org.keycloak.broker.saml;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.IdentityProviderModel;
+
+import java.security.cert.X509Certificate;
+
+public class IdentityProviderKeyCacheTest {
+
+    private static final String CERTIFICATE_1 = "MIIB0DCCATkCBgFJH5u0EDANBgkqhkiG9w0BAQsFADAuMSwwKgYDVQQDEyNodHRwOi8vbG9jYWxob3N0OjgwODAvZW1wbG95ZWUtc2lnLzAeFw0xNDEwMTcxOTMzNThaFw0yNDEwMTcxOTM1MzhaMC4xLDAqBgNVBAMTI2h0dHA6Ly9sb2NhbGhvc3Q6ODA4MC9lbXBsb3llZS1zaWcvMIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQC+9kVgPFpshjS2aT2g52lqTv2lqb1jgvXZVk7iFF4LAO6SdCXKXRZI4SuzIRkVNpE1a42V1kQRlaozoFklgvX5sje8tkpa9ylq+bxGXM9RRycqRu2B+oWUV7Aqq7Bs0Xud0WeHQYRcEoCjqsFKGy65qkLRDdT70FTJgpSHts+gDwIDAQABMA0GCSqGSIb3DQEBCwUAA4GBACKyPLGqMX8GsIrCfJU8eVnpaqzTXMglLVo/nTcfAnWe9UAdVe8N3a2PXpDBvuqNA/DEAhVcQgxdlOTWnB6s8/yLTRuH0bZgb3qGdySif+lU+E7zZ/SiDzavAvn+ABqemnzHcHyhYO+hNRGHvUbW5OAii9Vdjhm8BI32YF1NwhKp";
+
+    private static final String CERTIFICATE_2 = "MIIB1DCCAT0CBgFJGP5dZDANBgkqhkiG9w0BAQsFADAwMS4wLAYDVQQDEyVodHRwOi8vbG9jYWxob3N0OjgwODAvc2FsZXMtcG9zdC1zaWcvMB4XDTE0MTAxNjEyNDQyM1oXDTI0MTAxNjEyNDYwM1owMDEuMCwGA1UEAxMlaHR0cDovL2xvY2FsaG9zdDo4MDgwL3NhbGVzLXBvc3Qtc2lnLzCBnzANBgkqhkiG9w0BAQEFAAOBjQAwgYkCgYEA1RvGu8RjemSJA23nnMksoHA37MqY1DDTxOECY4rPAd9egr7GUNIXE0y1MokaR5R2crNpN8RIRwR8phQtQDjXL82c6W+NLQISxztarQJ7rdNJIYwHY0d5ri1XRpDP8zAuxubPYiMAVYcDkIcvlbBpwh/dRM5I2eElRK+eSiaMkCUCAwEAATANBgkqhkiG9w0BAQsFAAOBgQCLms6htnPaY69k1ntm9a5jgwSn/K61cdai8R8B0ccY7zvinn9AfRD7fiROQpFyY29wKn8WCLrJ86NBXfgFUGyR5nLNHVy3FghE36N2oHy53uichieMxffE6vhkKJ4P8ChfJMMOZlmCPsQPDvjoAghHt4mriFiQgRdPgIy/zDjSNw==";
+
+    @Test
+    public void testCached() throws Exception {
+        IdentityProviderKeyCache keyCache = new IdentityProviderKeyCache();
+
+        X509Certificate certificate = keyCache.getCertificate("realm", config("idp", CERTIFICATE_1));
+        Assert.assertNotNull(certificate);
+        Assert.assertSame(certificate, keyCache.getCertificate("realm", config("idp", CERTIFICATE_1)));
+        Assert.assertEquals(certificate.getPublicKey(), keyCache.getPublicKey("realm", config("idp", CERTIFICATE_1)));
+
+        // Whitespace from the admin console is ignored
+        String wrapped = CERTIFICATE_1.substring(0, 64) + "\n" + CERTIFICATE_1.substring(64);
+        Assert.assertEquals(certificate, keyCache.getCertificate("realm", config("idp", wrapped)));
+    }
+
+    @Test
+    public void testInvalidatedWhenConfigChanges() throws Exception {
+        IdentityProviderKeyCache keyCache = new IdentityProviderKeyCache();
+
+        X509Certificate certificate1 = keyCache.getCertificate("realm", config("idp", CERTIFICATE_1));
+        X509Certificate certificate2 = keyCache.getCertificate("realm", config("idp", CERTIFICATE_2));
+        Assert.assertNotEquals(certificate1, certificate2);
+        Assert.assertSame(certificate2, keyCache.getCertificate("realm", config("idp", CERTIFICATE_2)));
+
+        // Identity providers with the same alias in other realms have their own entries
+        Assert.assertEquals(certificate1, keyCache.getCertificate("other-realm", config("idp", CERTIFICATE_1)));
+        Assert.assertSame(certificate2, keyCache.getCertificate("realm", config("idp", CERTIFICATE_2)));
+
+        Assert.assertNull(keyCache.getCertificate("realm", config("idp", null)));
+        Assert.assertNull(keyCache.getPublicKey("realm", config("idp", null)));
+    }
+
+    private static SAMLIdentityProviderConfig config(String alias, String certificate) {
+        IdentityProviderModel model = new IdentityProviderModel();
+        model.setAlias(alias);
+        SAMLIdentityProviderConfig config = new SAMLIdentityProviderConfig(model);
+        config.setSigningCertificate(certificate);
+        return config;
+    }
+
+}
@@ -40,5 +40,52 @@ public class Base64Url {
         }
     }
 
+    /**
+     * Decodes the characters from {@code start} (inclusive) to {@code end} (exclusive) of a string without creating a
+     * substring first. As {@link #decode(String)}, characters of the standard base64 alphabet are accepted too.
+     */
+    public static byte[] decode(String s, int start, int end) {
+        int length = end - start;
+        int padding;
+        switch (length % 4) {
+            case 0:
+                padding = 0;
+                break;
+            case 2:
+                padding = 2;
+                break;
+            case 3:
+                padding = 1;
+                break;
+            default:
+                throw new RuntimeException(
+                        "Illegal base64url string!");
+        }
+
+        byte[] bytes = new byte[length + padding];
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(start + i);
+            if (c > 127) {
+                throw new RuntimeException(
+                        "Illegal base64url string!");
+            }
+            if (c == '-') {
+                c = '+'; // 62nd char of encoding
+            } else if (c == '_') {
+                c = '/'; // 63rd char of encoding
+            }
+            bytes[i] = (byte) c;
+        }
+        for (int i = length; i < bytes.length; i++) {
+            bytes[i] = '=';
+        }
+
+        try {
+            return Base64.decode(bytes, 0, bytes.length, Base64.NO_OPTIONS);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 
 }
@@ -29,15 +29,18 @@ public class DefaultFileConnectionProvider implements FileConnectionProvider {
     private final DefaultFileConnectionProviderFactory factory;
     private final KeycloakSession session;
     private final InMemoryModel inMemoryModel;
+    private final ModelState baseState;
 
     private boolean isRollbackOnly = false;
 
     public DefaultFileConnectionProvider(DefaultFileConnectionProviderFactory factory,
                                          KeycloakSession session,
-                                         InMemoryModel inMemoryModel) {
+                                         InMemoryModel inMemoryModel,
+                                         ModelState baseState) {
         this.factory = factory;
         this.session = session;
         this.inMemoryModel = inMemoryModel;
+        this.baseState = baseState;
     }
 
     @Override
@@ -45,6 +48,13 @@ public class DefaultFileConnectionProvider implements FileConnectionProvider {
         return inMemoryModel;
     }
 
+    /**
+     * @return stored model the InMemoryModel was read from
+     */
+    ModelState getBaseState() {
+        return baseState;
+    }
+
     @Override
     public void sessionClosed(KeycloakSession session) {
         factory.sessionClosed(session);
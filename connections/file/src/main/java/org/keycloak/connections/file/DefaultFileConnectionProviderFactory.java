@@ -17,15 +17,16 @@
 package org.keycloak.connections.file;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.exportimport.Strategy;
@@ -34,13 +35,15 @@ import org.keycloak.exportimport.util.ImportUtils;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
 import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.util.JsonSerialization;
 
 /**
  * This class dispenses a FileConnectionProvider to Keycloak sessions.  It
- * makes sure that only one InMemoryModel is provided for each session and it
- * handles thread contention for the file where the model is read or saved.
+ * makes sure that only one InMemoryModel is provided for each session.  The
+ * model is stored by {@link ModelJournal}, each commit only appends the realms
+ * and users the InMemoryModel of the session marked dirty.
  *
  * @author Stan Silvert ssilvert@redhat.com (C) 2015 Red Hat Inc.
  */
@@ -49,7 +52,8 @@ public class DefaultFileConnectionProviderFactory implements FileConnectionProvi
     protected static final Logger logger = Logger.getLogger(DefaultFileConnectionProviderFactory.class);
 
     private File kcdata;
-    private final Map<KeycloakSession, FileConnectionProvider> allProviders = new HashMap<KeycloakSession, FileConnectionProvider>();
+    private ModelJournal journal;
+    private final Map<KeycloakSession, DefaultFileConnectionProvider> allProviders = new HashMap<KeycloakSession, DefaultFileConnectionProvider>();
 
     @Override
     public void init(Config.Scope config) {
@@ -67,6 +71,14 @@ public class DefaultFileConnectionProviderFactory implements FileConnectionProvi
         }
 
         kcdata = new File(directory, fileName);
+
+        journal = new ModelJournal(kcdata, config.getInt("journalCompactThreshold", 1000));
+        try {
+            journal.load();
+        } catch (IOException ioe) {
+            // Don't start with part of the model, the next commits would make it permanent
+            throw new RuntimeException("Unable to read model file " + kcdata.getAbsolutePath(), ioe);
+        }
     }
 
     public void sessionClosed(KeycloakSession session) {
@@ -77,84 +89,144 @@ public class DefaultFileConnectionProviderFactory implements FileConnectionProvi
         }
     }
 
-    void readModelFile(KeycloakSession session) {
-        synchronized(allProviders) {
-            if (!kcdata.exists()) {
-                return;
-            }
+    void readModelFile(KeycloakSession session, InMemoryModel inMemoryModel, ModelState model) {
+        if (model.isEmpty()) {
+            return;
+        }
 
-            FileInputStream fis = null;
-            try {
-                fis = new FileInputStream(kcdata);
-                Model model = JsonSerialization.readValue(fis, Model.class);
-                ImportUtils.importFromStream(session, JsonSerialization.mapper, fis, Strategy.IGNORE_EXISTING);
-                session.realms().getMigrationModel().setStoredVersion(model.getModelVersion());
-
-                ImportUtils.importRealms(session, model.getRealms(), Strategy.IGNORE_EXISTING);
-            } catch (IOException ioe) {
-                logger.error("Unable to read model file " + kcdata.getAbsolutePath(), ioe);
-            } finally {
-                //logger.info("Read model file for session=" + session.hashCode());
-                try {
-                    if (fis != null) {
-                        fis.close();
+        try {
+            session.realms().getMigrationModel().setStoredVersion(model.getModelVersion());
+
+            List<RealmRepresentation> realms = new ArrayList<RealmRepresentation>();
+            for (Map.Entry<String, ObjectNode> realm : model.getRealms().entrySet()) {
+                ObjectNode realmNode = JsonSerialization.mapper.createObjectNode();
+                realmNode.putAll(realm.getValue());
+
+                Map<String, ObjectNode> users = model.getUsers(realm.getKey());
+                if (!users.isEmpty()) {
+                    ArrayNode usersNode = realmNode.putArray("users");
+                    for (ObjectNode user : users.values()) {
+                        usersNode.add(user);
                     }
-                } catch (IOException e) {
-                    logger.error("Failed to close output stream.", e);
                 }
+
+                realms.add(JsonSerialization.mapper.treeToValue(realmNode, RealmRepresentation.class));
             }
+
+            ImportUtils.importRealms(session, realms, Strategy.IGNORE_EXISTING);
+        } catch (IOException ioe) {
+            // Realms missing from a partly read model would be removed from the file by the next commit
+            throw new RuntimeException("Unable to read model file " + kcdata.getAbsolutePath(), ioe);
         }
+
+        inMemoryModel.clearDirty();
+        markStoredWithoutId(inMemoryModel, model);
     }
 
-    void writeModelFile(KeycloakSession session) {
-        synchronized(allProviders) {
-            FileOutputStream outStream = null;
-
-            try {
-                outStream = new FileOutputStream(kcdata);
-                exportModel(session, outStream);
-            } catch (IOException e) {
-                logger.error("Unable to write model file " + kcdata.getAbsolutePath(), e);
-            } finally {
-                //logger.info("Wrote model file for session=" + session.hashCode());
-                try {
-                    if (outStream != null) {
-                        outStream.close();
-                    }
-                } catch (IOException e) {
-                    logger.error("Failed to close output stream.", e);
+    /**
+     * Realms and users stored without id get a new one on import. They're marked dirty, so that the first commit
+     * replaces them with the imported ones.
+     */
+    private void markStoredWithoutId(InMemoryModel inMemoryModel, ModelState model) {
+        for (String realmId : model.getRealms().keySet()) {
+            if (!inMemoryModel.getRealmIds().contains(realmId)) {
+                inMemoryModel.markRealmDirty(realmId);
+            }
+        }
+
+        for (String realmId : inMemoryModel.getRealmIds()) {
+            boolean newRealm = !model.getRealms().containsKey(realmId);
+            if (newRealm) {
+                inMemoryModel.markRealmDirty(realmId);
+            }
+
+            Map<String, ObjectNode> storedUsers = model.getUsers(realmId);
+            Set<String> userIds = inMemoryModel.getUserIds(realmId);
+            for (String userId : storedUsers.keySet()) {
+                if (!userIds.contains(userId)) {
+                    inMemoryModel.markUserDirty(realmId, userId);
+                }
+            }
+            for (String userId : userIds) {
+                if (newRealm || !storedUsers.containsKey(userId)) {
+                    inMemoryModel.markUserDirty(realmId, userId);
                 }
             }
         }
     }
 
-    private void exportModel(KeycloakSession session, FileOutputStream outStream) throws IOException {
-        List<RealmModel> realms = session.realms().getRealms();
-        List<RealmRepresentation> reps = new ArrayList<RealmRepresentation>();
-        for (RealmModel realm : realms) {
-            reps.add(ExportUtils.exportRealm(session, realm, true));
+    void writeModelFile(KeycloakSession session, InMemoryModel inMemoryModel, ModelState base) {
+        try {
+            journal.commit(base, exportModel(session, inMemoryModel));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write model file " + kcdata.getAbsolutePath(), e);
         }
-        Model model = new Model();
-        model.setRealms(reps);
+    }
+
+    /**
+     * @return state with the dirty realms and users of the session, <code>null</code> for the removed ones
+     */
+    private ModelState exportModel(KeycloakSession session, InMemoryModel inMemoryModel) {
+        ModelState model = new ModelState();
         model.setModelVersion(session.realms().getMigrationModel().getStoredVersion());
-        JsonSerialization.prettyMapper.writeValue(outStream, model);
+
+        // Copied, as exporting looks up the realms again
+        for (String realmId : new ArrayList<String>(inMemoryModel.getDirtyRealms())) {
+            RealmModel realm = inMemoryModel.getRealmIfPresent(realmId);
+            model.putRealm(realmId, realm != null ? toTree(ExportUtils.exportRealm(session, realm, false)) : null);
+        }
+
+        for (Map.Entry<String, Set<String>> dirtyUsers : new HashMap<String, Set<String>>(inMemoryModel.getDirtyUsers()).entrySet()) {
+            String realmId = dirtyUsers.getKey();
+            RealmModel realm = inMemoryModel.getRealmIfPresent(realmId);
+            if (realm == null) {
+                // removed with the realm
+                continue;
+            }
+
+            for (String userId : new ArrayList<String>(dirtyUsers.getValue())) {
+                UserModel user = inMemoryModel.getUserIfPresent(realmId, userId);
+                model.putUser(realmId, userId, user != null ? toTree(ExportUtils.exportUser(session, realm, user)) : null);
+            }
+        }
+
+        return model;
+    }
+
+    private ObjectNode toTree(Object rep) {
+        JsonNode node = JsonSerialization.mapper.valueToTree(rep);
+        return (ObjectNode) node;
     }
 
     @Override
     public FileConnectionProvider create(KeycloakSession session) {
+        DefaultFileConnectionProvider fcProvider;
         synchronized (allProviders) {
-            FileConnectionProvider fcProvider = allProviders.get(session);
-            if (fcProvider == null) {
-                InMemoryModel model = new InMemoryModel();
-                fcProvider = new DefaultFileConnectionProvider(this, session, model);
-                allProviders.put(session, fcProvider);
-                session.getTransaction().enlist(fcProvider);
-                readModelFile(session);
-                //logger.info("Added session " + session.hashCode() + " total sessions=" + allModels.size());
+            fcProvider = allProviders.get(session);
+            if (fcProvider != null) {
+                return fcProvider;
             }
 
-            return fcProvider;
+            InMemoryModel model = new InMemoryModel();
+            fcProvider = new DefaultFileConnectionProvider(this, session, model, journal.getState());
+            allProviders.put(session, fcProvider);
+            //logger.info("Added session " + session.hashCode() + " total sessions=" + allModels.size());
+        }
+
+        // Model is read outside of the lock, so that sessions don't wait for each other. The session itself gets
+        // the provider registered above when it's looked up during the import
+        session.getTransaction().enlist(fcProvider);
+        try {
+            readModelFile(session, fcProvider.getModel(), fcProvider.getBaseState());
+        } catch (RuntimeException e) {
+            // Nothing is written for the session, even if its transaction is committed anyway
+            fcProvider.setRollbackOnly();
+            synchronized (allProviders) {
+                allProviders.remove(session);
+            }
+            throw e;
         }
+        return fcProvider;
     }
 
     // commitCount is used for debugging.  This allows you to easily run a test
@@ -162,21 +234,26 @@ public class DefaultFileConnectionProviderFactory implements FileConnectionProvi
     //private static int commitCount = 0;
     void commit(KeycloakSession session) {
         //commitCount++;
+        DefaultFileConnectionProvider fcProvider;
         synchronized (allProviders) {
             // in case commit was somehow called twice on the same session
-            if (!allProviders.containsKey(session)) return;
+            fcProvider = allProviders.get(session);
+            if (fcProvider == null) return;
+        }
 
-            try {
-                writeModelFile(session);
-            } finally {
+        // The model of the session is written without holding the lock, other sessions only wait for the journal
+        try {
+            writeModelFile(session, fcProvider.getModel(), fcProvider.getBaseState());
+        } finally {
+            synchronized (allProviders) {
                 allProviders.remove(session);
                 //logger.info("Removed session " + session.hashCode());
                 //logger.info("*** commitCount=" + commitCount);
                 //logger.info("commit(): Session count=" + allModels.size());
             }
+        }
 
     //     if (commitCount == 16) {Thread.dumpStack();System.exit(0);}
-        }
     }
 
     void rollback(KeycloakSession session) {
@@ -194,7 +271,9 @@ public class DefaultFileConnectionProviderFactory implements FileConnectionProvi
 
     @Override
     public void close() {
-
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     @Override
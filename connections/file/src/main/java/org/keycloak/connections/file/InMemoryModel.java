@@ -19,7 +19,9 @@ package org.keycloak.connections.file;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 
@@ -29,6 +31,9 @@ import org.keycloak.models.UserModel;
  * from JSON.  When the session's transaction ends, the model is written back
  * out.
  *
+ * Only the realms and users marked dirty are written. Realms are marked when they're looked up, as clients and roles
+ * change the realm in place, users only when they're changed.
+ *
  * @author Stan Silvert ssilvert@redhat.com (C) 2015 Red Hat Inc.
  */
 public class InMemoryModel {
@@ -39,12 +44,18 @@ public class InMemoryModel {
 
     private String modelVersion;
 
+    private final Set<String> dirtyRealms = new HashSet<String>();
+
+    //                realmId,    userIds
+    private final Map<String, Set<String>> dirtyUsers = new HashMap<String, Set<String>>();
+
     public InMemoryModel() {
     }
 
     public void putRealm(String id, RealmModel realm) {
         allRealms.put(id, realm);
         allUsers.put(id, new HashMap<String, UserModel>());
+        markRealmDirty(id);
     }
 
     public String getModelVersion() {
@@ -56,16 +67,22 @@ public class InMemoryModel {
     }
 
     public RealmModel getRealm(String id) {
-        return allRealms.get(id);
+        RealmModel realm = allRealms.get(id);
+        if (realm != null) markRealmDirty(id);
+        return realm;
     }
 
     public Collection<RealmModel> getRealms() {
+       dirtyRealms.addAll(allRealms.keySet());
        return allRealms.values();
     }
 
     public RealmModel getRealmByName(String name) {
-        for (RealmModel realm : getRealms()) {
-            if (realm.getName().equals(name)) return realm;
+        for (RealmModel realm : allRealms.values()) {
+            if (realm.getName().equals(name)) {
+                markRealmDirty(realm.getId());
+                return realm;
+            }
         }
 
         return null;
@@ -73,6 +90,7 @@ public class InMemoryModel {
 
     public boolean removeRealm(String id) {
         allUsers.remove(id);
+        markRealmDirty(id);
         return (allRealms.remove(id) != null);
     }
 
@@ -84,6 +102,7 @@ public class InMemoryModel {
 
     public void putUser(String realmId, String userId, UserModel user) {
         realmUsers(realmId).put(userId, user);
+        markUserDirty(realmId, userId);
     }
 
     public UserModel getUser(String realmId, String userId) {
@@ -103,7 +122,51 @@ public class InMemoryModel {
     }
 
     public boolean removeUser(String realmId, String userId) {
+        markUserDirty(realmId, userId);
         return (realmUsers(realmId).remove(userId) != null);
     }
 
+    public void markRealmDirty(String realmId) {
+        dirtyRealms.add(realmId);
+    }
+
+    public void markUserDirty(String realmId, String userId) {
+        Set<String> realmDirtyUsers = dirtyUsers.get(realmId);
+        if (realmDirtyUsers == null) {
+            realmDirtyUsers = new HashSet<String>();
+            dirtyUsers.put(realmId, realmDirtyUsers);
+        }
+        realmDirtyUsers.add(userId);
+    }
+
+    Set<String> getDirtyRealms() {
+        return dirtyRealms;
+    }
+
+    Map<String, Set<String>> getDirtyUsers() {
+        return dirtyUsers;
+    }
+
+    RealmModel getRealmIfPresent(String realmId) {
+        return allRealms.get(realmId);
+    }
+
+    UserModel getUserIfPresent(String realmId, String userId) {
+        Map<String, UserModel> realmUsers = allUsers.get(realmId);
+        return realmUsers != null ? realmUsers.get(userId) : null;
+    }
+
+    Set<String> getRealmIds() {
+        return allRealms.keySet();
+    }
+
+    Set<String> getUserIds(String realmId) {
+        return realmUsers(realmId).keySet();
+    }
+
+    void clearDirty() {
+        dirtyRealms.clear();
+        dirtyUsers.clear();
+    }
+
 }
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2015 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.keycloak.connections.file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.jboss.logging.Logger;
+import org.keycloak.exportimport.util.ExportUtils;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * <p>Stores the model in a snapshot file and a journal of the changes made since the snapshot was written.</p>
+ *
+ * <p>The snapshot has the same format as the single file export. Each commit appends a single line to the journal with
+ * the realms and users it added, changed or removed. Once the journal has <code>compactThreshold</code> entries, a new
+ * snapshot is written in background and the entries it contains are removed from the journal. On startup the snapshot
+ * is read and the journal is replayed on top of it.</p>
+ *
+ * <p>An entry is only valid once its line is terminated. An invalid last line, left by a crash in the middle of a
+ * commit, is dropped. An invalid line followed by other entries means the journal is corrupt and it is not loaded.</p>
+ */
+class ModelJournal {
+
+    private static final Logger logger = Logger.getLogger(ModelJournal.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String PUT_REALM = "putRealm";
+    private static final String REMOVE_REALM = "removeRealm";
+    private static final String PUT_USER = "putUser";
+    private static final String REMOVE_USER = "removeUser";
+    private static final String MODEL_VERSION = "modelVersion";
+
+    private final ObjectMapper mapper = JsonSerialization.mapper;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final int compactThreshold;
+    private final ExecutorService compactor;
+
+    private final ModelState state = new ModelState();
+
+    private FileOutputStream journal;
+
+    // end of the last valid entry, anything after it is left by a failed write and is truncated before appending
+    private long journalSize;
+    private int journalEntries;
+    private boolean compacting;
+
+    ModelJournal(File snapshotFile, int compactThreshold) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + ".journal");
+        this.compactThreshold = compactThreshold;
+        this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-model-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    synchronized void load() throws IOException {
+        if (snapshotFile.exists()) {
+            readSnapshot();
+        }
+
+        if (journalFile.exists()) {
+            replayJournal();
+        }
+
+        logger.debugf("Loaded model from %s with %d journal entries", snapshotFile.getAbsolutePath(), journalEntries);
+    }
+
+    /**
+     * @return copy of the stored state, which isn't affected by later commits
+     */
+    synchronized ModelState getState() {
+        return state.copy();
+    }
+
+    /**
+     * Appends the realms and users changed by a session to the journal. Changes committed by other sessions in the
+     * meantime are kept, unless the same realm or user was changed.
+     *
+     * @param base state the session started with
+     * @param changed realms and users the session may have changed, <code>null</code> for removed ones. The ones equal
+     *                to <code>base</code> aren't written.
+     */
+    void commit(ModelState base, ModelState changed) throws IOException {
+        ArrayNode changes = diff(base, changed);
+        if (changes.size() == 0) {
+            return;
+        }
+
+        byte[] entry = (mapper.writeValueAsString(changes) + "\n").getBytes(UTF_8);
+
+        synchronized (this) {
+            if (journal == null) {
+                openJournal();
+            }
+            try {
+                journal.write(entry);
+                journal.flush();
+            } catch (IOException e) {
+                // Part of the entry may have been written, it's truncated when the journal is opened again
+                closeJournal();
+                throw e;
+            }
+            journalSize += entry.length;
+            journalEntries++;
+
+            apply(changes);
+
+            if (journalEntries >= compactThreshold && !compacting) {
+                compacting = true;
+                compactor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        compact();
+                    }
+                });
+            }
+        }
+    }
+
+    void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            closeJournal();
+        }
+    }
+
+    private ArrayNode diff(ModelState base, ModelState changed) {
+        ArrayNode changes = mapper.createArrayNode();
+
+        if (changed.getModelVersion() != null && !changed.getModelVersion().equals(base.getModelVersion())) {
+            change(changes, MODEL_VERSION, null, null).put("data", changed.getModelVersion());
+        }
+
+        for (Map.Entry<String, ObjectNode> realm : changed.getRealms().entrySet()) {
+            String realmId = realm.getKey();
+            ObjectNode baseRealm = base.getRealms().get(realmId);
+            if (realm.getValue() == null) {
+                if (baseRealm != null) {
+                    change(changes, REMOVE_REALM, realmId, null);
+                }
+            } else if (!realm.getValue().equals(baseRealm)) {
+                change(changes, PUT_REALM, realmId, null).put("data", realm.getValue());
+            }
+        }
+
+        for (String realmId : changed.getUserRealms()) {
+            // users of removed realms are removed with it
+            if (changed.getRealms().containsKey(realmId) && changed.getRealms().get(realmId) == null) {
+                continue;
+            }
+
+            Map<String, ObjectNode> baseUsers = base.getUsers(realmId);
+            for (Map.Entry<String, ObjectNode> user : changed.getUsers(realmId).entrySet()) {
+                String userId = user.getKey();
+                if (user.getValue() == null) {
+                    if (baseUsers.containsKey(userId)) {
+                        change(changes, REMOVE_USER, realmId, userId);
+                    }
+                } else if (!user.getValue().equals(baseUsers.get(userId))) {
+                    change(changes, PUT_USER, realmId, userId).put("data", user.getValue());
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    private ObjectNode change(ArrayNode changes, String op, String realmId, String userId) {
+        ObjectNode change = changes.addObject();
+        change.put("op", op);
+        if (realmId != null) {
+            change.put("realm", realmId);
+        }
+        if (userId != null) {
+            change.put("user", userId);
+        }
+        return change;
+    }
+
+    private void apply(JsonNode changes) {
+        for (JsonNode change : changes) {
+            String op = change.path("op").getTextValue();
+            String realmId = change.path("realm").getTextValue();
+            String userId = change.path("user").getTextValue();
+            JsonNode data = change.get("data");
+
+            if (PUT_REALM.equals(op)) {
+                state.putRealm(realmId, (ObjectNode) data);
+            } else if (REMOVE_REALM.equals(op)) {
+                state.removeRealm(realmId);
+            } else if (PUT_USER.equals(op)) {
+                state.putUser(realmId, userId, (ObjectNode) data);
+            } else if (REMOVE_USER.equals(op)) {
+                state.removeUser(realmId, userId);
+            } else if (MODEL_VERSION.equals(op)) {
+                state.setModelVersion(data.getTextValue());
+            } else {
+                logger.warnf("Unknown operation %s in model journal %s", op, journalFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        JsonNode model = mapper.readTree(snapshotFile);
+
+        state.setModelVersion(model.path("modelVersion").getTextValue());
+
+        for (JsonNode realm : model.path("realms")) {
+            ObjectNode realmNode = (ObjectNode) realm;
+            JsonNode users = realmNode.remove("users");
+
+            String realmId = key(realmNode, "realm");
+            state.putRealm(realmId, realmNode);
+
+            if (users != null) {
+                for (JsonNode user : users) {
+                    state.putUser(realmId, key(user, "username"), (ObjectNode) user);
+                }
+            }
+        }
+    }
+
+    // Entities without id get a new one once they're imported and the journal replaces them on the first commit
+    private String key(JsonNode node, String fallbackField) {
+        String id = node.path("id").getTextValue();
+        return id != null ? id : node.path(fallbackField).getTextValue();
+    }
+
+    private void replayJournal() throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(journalFile));
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = 0;
+            int lineNumber = 0;
+            int invalidLine = 0;
+            IOException invalidCause = null;
+
+            int b;
+            while ((b = is.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                lineNumber++;
+                String entry = new String(line.toByteArray(), UTF_8);
+                line.reset();
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+
+                if (invalidLine != 0) {
+                    throw new IOException("Invalid entry on line " + invalidLine + " of model journal " + journalFile.getAbsolutePath(), invalidCause);
+                }
+
+                JsonNode changes;
+                try {
+                    changes = mapper.readTree(entry);
+                } catch (IOException e) {
+                    // Only allowed for the last entry
+                    invalidLine = lineNumber;
+                    invalidCause = e;
+                    continue;
+                }
+
+                apply(changes);
+                journalEntries++;
+                journalSize = position;
+            }
+
+            if (invalidLine != 0) {
+                logger.warnf(invalidCause, "Dropping invalid last entry on line %d of model journal %s", invalidLine, journalFile.getAbsolutePath());
+            } else if (line.size() > 0) {
+                logger.warnf("Dropping unterminated last entry on line %d of model journal %s", lineNumber + 1, journalFile.getAbsolutePath());
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Opens the journal for appending, after truncating whatever follows the last valid entry
+     */
+    private void openJournal() throws IOException {
+        if (journalFile.length() > journalSize) {
+            RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+            try {
+                file.setLength(journalSize);
+                file.getFD().sync();
+            } finally {
+                file.close();
+            }
+        }
+        journal = new FileOutputStream(journalFile, true);
+    }
+
+    private void compact() {
+        ModelState snapshot;
+        long snapshotPosition;
+        int snapshotEntries;
+        synchronized (this) {
+            snapshot = state.copy();
+            snapshotPosition = journalSize;
+            snapshotEntries = journalEntries;
+        }
+
+        try {
+            File tmp = new File(snapshotFile.getPath() + ".tmp");
+            writeSnapshot(snapshot, tmp);
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // If this fails, entries already in the snapshot stay in the journal, which is fine as replaying them again
+            // gives the same state
+            synchronized (this) {
+                truncateJournal(snapshotPosition);
+                journalEntries -= snapshotEntries;
+            }
+
+            logger.debugf("Compacted model journal into snapshot %s", snapshotFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.error("Failed to compact model journal " + journalFile.getAbsolutePath(), e);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void writeSnapshot(ModelState snapshot, File file) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            JsonGenerator generator = ExportUtils.createJsonGenerator(JsonSerialization.prettyMapper, os);
+
+            generator.writeStartObject();
+            if (snapshot.getModelVersion() != null) {
+                generator.writeStringField("modelVersion", snapshot.getModelVersion());
+            }
+
+            generator.writeArrayFieldStart("realms");
+            for (Map.Entry<String, ObjectNode> realm : snapshot.getRealms().entrySet()) {
+                generator.writeStartObject();
+
+                Iterator<Map.Entry<String, JsonNode>> fields = realm.getValue().getFields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    generator.writeFieldName(field.getKey());
+                    generator.writeTree(field.getValue());
+                }
+
+                Map<String, ObjectNode> users = snapshot.getUsers(realm.getKey());
+                if (!users.isEmpty()) {
+                    generator.writeArrayFieldStart("users");
+                    for (ObjectNode user : users.values()) {
+                        generator.writeTree(user);
+                    }
+                    generator.writeEndArray();
+                }
+
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+            generator.flush();
+            os.getFD().sync();
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Removes entries up to <code>position</code>, which are in the snapshot already
+     */
+    private void truncateJournal(long position) throws IOException {
+        closeJournal();
+
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        FileChannel in = new FileInputStream(journalFile).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(tmp).getChannel();
+            try {
+                long remaining = journalSize - position;
+                long transferred = 0;
+                while (transferred < remaining) {
+                    transferred += in.transferTo(position + transferred, remaining - transferred, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalSize -= position;
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Failed to close model journal " + journalFile.getAbsolutePath(), e);
+            }
+            journal = null;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.keycloak.connections.file;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Stored state of the model. Realms (without users) and users are kept as JSON trees of their exported
+ * representations, so that changed ones can be found by comparing the trees. The trees are shared between copies of
+ * the state and must not be modified.
+ *
+ * The changes of a session are passed to {@link ModelJournal} as a state with just the changed realms and users, with
+ * <code>null</code> trees for the removed ones.
+ */
+class ModelState {
+
+    private String modelVersion;
+    private final Map<String, ObjectNode> realms = new LinkedHashMap<String, ObjectNode>();
+
+    //                realmId,    userId, user
+    private final Map<String, Map<String, ObjectNode>> users = new HashMap<String, Map<String, ObjectNode>>();
+
+    ModelState copy() {
+        ModelState copy = new ModelState();
+        copy.modelVersion = modelVersion;
+        copy.realms.putAll(realms);
+        for (Map.Entry<String, Map<String, ObjectNode>> entry : users.entrySet()) {
+            copy.users.put(entry.getKey(), new LinkedHashMap<String, ObjectNode>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    boolean isEmpty() {
+        return modelVersion == null && realms.isEmpty();
+    }
+
+    String getModelVersion() {
+        return modelVersion;
+    }
+
+    void setModelVersion(String modelVersion) {
+        this.modelVersion = modelVersion;
+    }
+
+    Map<String, ObjectNode> getRealms() {
+        return Collections.unmodifiableMap(realms);
+    }
+
+    void putRealm(String realmId, ObjectNode realm) {
+        realms.put(realmId, realm);
+        if (!users.containsKey(realmId)) {
+            users.put(realmId, new LinkedHashMap<String, ObjectNode>());
+        }
+    }
+
+    void removeRealm(String realmId) {
+        realms.remove(realmId);
+        users.remove(realmId);
+    }
+
+    Map<String, ObjectNode> getUsers(String realmId) {
+        Map<String, ObjectNode> realmUsers = users.get(realmId);
+        return realmUsers != null ? Collections.unmodifiableMap(realmUsers) : Collections.<String, ObjectNode>emptyMap();
+    }
+
+    /**
+     * @return ids of the realms users were put for
+     */
+    Set<String> getUserRealms() {
+        return Collections.unmodifiableSet(users.keySet());
+    }
+
+    void putUser(String realmId, String userId, ObjectNode user) {
+        Map<String, ObjectNode> realmUsers = users.get(realmId);
+        if (realmUsers == null) {
+            realmUsers = new LinkedHashMap<String, ObjectNode>();
+            users.put(realmId, realmUsers);
+        }
+        realmUsers.put(userId, user);
+    }
+
+    void removeUser(String realmId, String userId) {
+        Map<String, ObjectNode> realmUsers = users.get(realmId);
+        if (realmUsers != null) {
+            realmUsers.remove(userId);
+        }
+    }
+
+}
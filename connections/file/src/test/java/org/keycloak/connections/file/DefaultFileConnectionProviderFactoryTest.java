@@ -0,0 +1,112 @@
+package org.keycloak.connections.file;
+
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class DefaultFileConnectionProviderFactoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void before() throws IOException {
+        File snapshotFile = new File(folder.getRoot(), "keycloak-model.json");
+        journalFile = new File(folder.getRoot(), "keycloak-model.json.journal");
+
+        ObjectNode valid = realm("r1", "valid");
+        // Stored fine, but can't be read as realm representation
+        ObjectNode invalid = realm("r2", "invalid");
+        invalid.putObject("enabled").put("invalid", true);
+
+        ModelJournal journal = new ModelJournal(snapshotFile, 100);
+        journal.load();
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", valid);
+        changed.putRealm("r2", invalid);
+        journal.commit(journal.getState(), changed);
+        journal.close();
+    }
+
+    @Test
+    public void testFailedReadNotCommitted() throws Exception {
+        byte[] stored = Files.readAllBytes(journalFile.toPath());
+
+        DefaultFileConnectionProviderFactory factory = new DefaultFileConnectionProviderFactory();
+        factory.init(config());
+        try {
+            KeycloakSession session = stub(KeycloakSession.class);
+            try {
+                factory.create(session);
+                Assert.fail("Expected reading the model to fail");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Unable to read model file"));
+            }
+
+            // Transaction committed by the caller anyway
+            Assert.assertFalse(factory.isActive(session));
+            factory.commit(session);
+        } finally {
+            factory.close();
+        }
+
+        Assert.assertTrue(Arrays.equals(stored, Files.readAllBytes(journalFile.toPath())));
+    }
+
+    private Config.Scope config() {
+        return (Config.Scope) Proxy.newProxyInstance(Config.Scope.class.getClassLoader(), new Class[] { Config.Scope.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String key = (String) args[0];
+                if (key.equals("directory")) {
+                    return folder.getRoot().getAbsolutePath();
+                }
+                return args.length > 1 ? args[1] : null;
+            }
+        });
+    }
+
+    /**
+     * Stub returning stubs for interfaces and defaults otherwise
+     */
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("equals")) return proxy == args[0];
+                if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType.isInterface()) return stub(returnType);
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                return null;
+            }
+        }));
+    }
+
+    private static ObjectNode realm(String id, String name) {
+        ObjectNode realm = JsonSerialization.mapper.createObjectNode();
+        realm.put("id", id);
+        realm.put("realm", name);
+        return realm;
+    }
+
+}
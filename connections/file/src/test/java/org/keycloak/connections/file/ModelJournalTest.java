@@ -0,0 +1,282 @@
+package org.keycloak.connections.file;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class ModelJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File snapshotFile;
+    private File journalFile;
+
+    @Before
+    public void before() {
+        snapshotFile = new File(folder.getRoot(), "keycloak-model.json");
+        journalFile = new File(folder.getRoot(), "keycloak-model.json.journal");
+    }
+
+    @Test
+    public void testAppendAndReplay() throws Exception {
+        ModelJournal journal = load(100);
+
+        ModelState changed = new ModelState();
+        changed.setModelVersion("1.6.0");
+        changed.putRealm("r1", realm("r1", "test"));
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        changed.putUser("r1", "u2", user("u2", "user2"));
+        journal.commit(journal.getState(), changed);
+
+        changed = new ModelState();
+        changed.putUser("r1", "u1", user("u1", "renamed"));
+        changed.putUser("r1", "u2", null);
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(2, lines().size());
+
+        ModelState state = load(100).getState();
+        Assert.assertEquals("1.6.0", state.getModelVersion());
+        Assert.assertEquals("test", state.getRealms().get("r1").get("realm").getTextValue());
+        Assert.assertEquals(1, state.getUsers("r1").size());
+        Assert.assertEquals("renamed", state.getUsers("r1").get("u1").get("username").getTextValue());
+    }
+
+    @Test
+    public void testUnchangedNotWritten() throws Exception {
+        ModelJournal journal = load(100);
+
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        journal.commit(journal.getState(), changed);
+
+        // Dirty, but exported the same as stored
+        changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        changed.putUser("r1", "u2", null);
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(1, lines().size());
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        ModelJournal journal = load(100);
+
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        journal.commit(journal.getState(), changed);
+
+        ModelState base1 = journal.getState();
+        ModelState base2 = journal.getState();
+
+        changed = new ModelState();
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        journal.commit(base1, changed);
+
+        changed = new ModelState();
+        changed.putUser("r1", "u2", user("u2", "user2"));
+        journal.commit(base2, changed);
+        journal.close();
+
+        Assert.assertEquals(2, load(100).getState().getUsers("r1").size());
+    }
+
+    @Test
+    public void testRemoveRealm() throws Exception {
+        ModelJournal journal = load(100);
+
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        journal.commit(journal.getState(), changed);
+
+        changed = new ModelState();
+        changed.putRealm("r1", null);
+        changed.putUser("r1", "u1", null);
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertTrue(lines().get(1).contains("removeRealm"));
+        Assert.assertFalse(lines().get(1).contains("removeUser"));
+
+        ModelState state = load(100).getState();
+        Assert.assertTrue(state.getRealms().isEmpty());
+        Assert.assertTrue(state.getUsers("r1").isEmpty());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        ModelJournal journal = load(2);
+
+        for (int i = 0; i < 2; i++) {
+            ModelState changed = new ModelState();
+            changed.putRealm("r1", realm("r1", "test"));
+            changed.putUser("r1", "u" + i, user("u" + i, "user" + i));
+            journal.commit(journal.getState(), changed);
+        }
+
+        // Waits for the compaction
+        journal.close();
+
+        Assert.assertTrue(snapshotFile.isFile());
+        Assert.assertEquals(0, journalFile.length());
+
+        JsonNode snapshot = JsonSerialization.mapper.readTree(snapshotFile);
+        Assert.assertEquals(1, snapshot.path("realms").size());
+        Assert.assertEquals(2, snapshot.path("realms").get(0).path("users").size());
+
+        journal = load(2);
+        ModelState changed = new ModelState();
+        changed.putUser("r1", "u2", user("u2", "user2"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(1, lines().size());
+
+        ModelState state = load(2).getState();
+        Assert.assertEquals("test", state.getRealms().get("r1").get("realm").getTextValue());
+        Assert.assertEquals(3, state.getUsers("r1").size());
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        ModelJournal journal = load(100);
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        long validSize = journalFile.length();
+        append("[{\"op\":\"putUser\",\"realm\":\"r1\",\"user\":\"u1\",\"da");
+
+        journal = load(100);
+        Assert.assertTrue(journal.getState().getUsers("r1").isEmpty());
+
+        changed = new ModelState();
+        changed.putUser("r1", "u2", user("u2", "user2"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(2, lines().size());
+        Assert.assertTrue(journalFile.length() > validSize);
+
+        ModelState state = load(100).getState();
+        Assert.assertEquals(1, state.getUsers("r1").size());
+        Assert.assertTrue(state.getUsers("r1").containsKey("u2"));
+    }
+
+    @Test
+    public void testInvalidLastLine() throws Exception {
+        ModelJournal journal = load(100);
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        // Terminated, but not valid
+        append("[{\"op\":\n");
+
+        journal = load(100);
+        changed = new ModelState();
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(2, lines().size());
+        Assert.assertEquals(1, load(100).getState().getUsers("r1").size());
+    }
+
+    @Test
+    public void testFailedWriteTruncated() throws Exception {
+        ModelJournal journal = load(100);
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        journal = load(100);
+
+        // Left by a write failing after the journal was loaded
+        append("[{\"op\":\"putUser\"");
+
+        changed = new ModelState();
+        changed.putUser("r1", "u1", user("u1", "user1"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        Assert.assertEquals(2, lines().size());
+        Assert.assertEquals(1, load(100).getState().getUsers("r1").size());
+    }
+
+    @Test
+    public void testCorruptEntry() throws Exception {
+        ModelJournal journal = load(100);
+        ModelState changed = new ModelState();
+        changed.putRealm("r1", realm("r1", "test"));
+        journal.commit(journal.getState(), changed);
+        journal.close();
+
+        append("[{\"op\":\n");
+        append("[{\"op\":\"putUser\",\"realm\":\"r1\",\"user\":\"u1\",\"data\":{\"id\":\"u1\",\"username\":\"user1\"}}]\n");
+
+        try {
+            load(100);
+            Assert.fail("Expected corrupt journal to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+
+    private ModelJournal load(int compactThreshold) throws IOException {
+        ModelJournal journal = new ModelJournal(snapshotFile, compactThreshold);
+        journal.load();
+        return journal;
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private void append(String s) throws IOException {
+        OutputStream os = new FileOutputStream(journalFile, true);
+        try {
+            os.write(s.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static ObjectNode realm(String id, String name) {
+        ObjectNode realm = JsonSerialization.mapper.createObjectNode();
+        realm.put("id", id);
+        realm.put("realm", name);
+        return realm;
+    }
+
+    private static ObjectNode user(String id, String username) {
+        ObjectNode user = JsonSerialization.mapper.createObjectNode();
+        user.put("id", id);
+        user.put("username", username);
+        return user;
+    }
+
+}
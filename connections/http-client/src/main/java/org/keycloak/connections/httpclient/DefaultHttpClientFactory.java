@@ -89,7 +89,9 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     public void init(Config.Scope config) {
         long socketTimeout = config.getLong("socket-timeout-millis", -1L);
         long establishConnectionTimeout = config.getLong("establish-connection-timeout-millis", -1L);
-        int maxPooledPerRoute = config.getInt("max-pooled-per-route", 0);
+        // Brokered logins to single upstream provider all use the same route, so allow more than the default 2 connections
+        int maxPooledPerRoute = config.getInt("max-pooled-per-route", 64);
+        long connectionTTL = config.getLong("connection-ttl-millis", -1L);
         int connectionPoolSize = config.getInt("connection-pool-size", 200);
         boolean disableTrustManager = config.getBoolean("disable-trust-manager", false);
         boolean disableCookies = config.getBoolean("disable-cookies", true);
@@ -106,6 +108,7 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
                .establishConnectionTimeout(establishConnectionTimeout, TimeUnit.MILLISECONDS)
                 .maxPooledPerRoute(maxPooledPerRoute)
                 .connectionPoolSize(connectionPoolSize)
+                .connectionTTL(connectionTTL, TimeUnit.MILLISECONDS)
                 .hostnameVerification(hostnamePolicy)
                 .disableCookies(disableCookies);
         if (disableTrustManager) builder.disableTrustManager();
@@ -1,6 +1,10 @@
 package org.keycloak.connections.httpclient;
 
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
 import org.apache.http.conn.ssl.BrowserCompatHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -9,6 +13,7 @@ import org.apache.http.conn.ssl.StrictHostnameVerifier;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
@@ -256,6 +261,16 @@ public class HttpClientBuilder {
                     .setSSLSocketFactory(sslsf)
                     .setMaxConnTotal(connectionPoolSize)
                     .setMaxConnPerRoute(maxPooledPerRoute);
+            if (connectionTTL > 0) {
+                Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", sslsf)
+                        .build();
+                PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry, null, null, null, connectionTTL, connectionTTLUnit);
+                connectionManager.setMaxTotal(connectionPoolSize);
+                if (maxPooledPerRoute > 0) connectionManager.setDefaultMaxPerRoute(maxPooledPerRoute);
+                builder.setConnectionManager(connectionManager);
+            }
             if (disableCookies) builder.disableCookieManagement();
             return builder.build();
         } catch (Exception e) {
@@ -127,6 +127,12 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         Configuration sessionCacheConfiguration = sessionConfigBuilder.build();
         cacheManager.defineConfiguration(InfinispanConnectionProvider.SESSION_CACHE_NAME, sessionCacheConfiguration);
         cacheManager.defineConfiguration(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME, sessionCacheConfiguration);
+
+        ConfigurationBuilder workConfigBuilder = new ConfigurationBuilder();
+        if (clustered) {
+            workConfigBuilder.clustering().cacheMode(CacheMode.REPL_SYNC);
+        }
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.WORK_CACHE_NAME, workConfigBuilder.build());
     }
 
 }
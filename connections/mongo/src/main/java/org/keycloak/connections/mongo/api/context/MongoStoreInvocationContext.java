@@ -1,5 +1,6 @@
 package org.keycloak.connections.mongo.api.context;
 
+import com.mongodb.BasicDBObject;
 import org.keycloak.connections.mongo.api.MongoIdentifiableEntity;
 import org.keycloak.connections.mongo.api.MongoStore;
 
@@ -16,6 +17,14 @@ public interface MongoStoreInvocationContext {
 
     <T extends MongoIdentifiableEntity> T getLoadedEntity(Class<T> type, String id);
 
+    /**
+     * @return state of the entity as it was last read from or written to DB within this context. It's used to update
+     * just the changed properties of the entity. Null if not known, in which case whole entity is written
+     */
+    BasicDBObject getEntitySnapshot(MongoIdentifiableEntity entity);
+
+    void setEntitySnapshot(MongoIdentifiableEntity entity, BasicDBObject snapshot);
+
     void addUpdateTask(MongoIdentifiableEntity entityToUpdate, MongoTask task);
 
     void addRemovedEntity(MongoIdentifiableEntity entity);
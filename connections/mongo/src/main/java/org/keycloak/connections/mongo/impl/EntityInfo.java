@@ -3,6 +3,7 @@ package org.keycloak.connections.mongo.impl;
 import org.keycloak.models.utils.reflection.Property;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -14,12 +15,16 @@ public class EntityInfo {
 
     private final String dbCollectionName;
 
-    private final Map<String, Property<Object>> properties;
+    private final Map<String, PropertyAccessor> properties;
 
     public EntityInfo(Class<?> entityClass, String dbCollectionName, Map<String, Property<Object>> properties) {
         this.entityClass = entityClass;
         this.dbCollectionName = dbCollectionName;
-        this.properties = properties;
+
+        this.properties = new LinkedHashMap<String, PropertyAccessor>();
+        for (Map.Entry<String, Property<Object>> entry : properties.entrySet()) {
+            this.properties.put(entry.getKey(), new PropertyAccessor(entityClass, entry.getValue()));
+        }
     }
 
     public Class<?> getEntityClass() {
@@ -30,11 +35,11 @@ public class EntityInfo {
         return dbCollectionName;
     }
 
-    public Collection<Property<Object>> getProperties() {
+    public Collection<PropertyAccessor> getProperties() {
         return properties.values();
     }
 
-    public Property<Object> getPropertyByName(String propertyName) {
+    public PropertyAccessor getPropertyByName(String propertyName) {
         return properties.get(propertyName);
     }
 }
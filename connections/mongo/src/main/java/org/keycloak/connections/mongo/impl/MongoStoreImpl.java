@@ -130,6 +130,7 @@ public class MongoStoreImpl implements MongoStore {
 
         // Treat object as created in this transaction (It is already submitted to transaction)
         context.addCreatedEntity(entity);
+        context.setEntitySnapshot(entity, dbObject);
     }
 
     public static ModelException convertException(MongoException e) {
@@ -141,7 +142,7 @@ public class MongoStoreImpl implements MongoStore {
     }
 
     @Override
-    public void updateEntity(final MongoIdentifiableEntity entity, MongoStoreInvocationContext context) {
+    public void updateEntity(final MongoIdentifiableEntity entity, final MongoStoreInvocationContext context) {
         MongoTask fullUpdateTask = new MongoTask() {
 
             @Override
@@ -149,7 +150,6 @@ public class MongoStoreImpl implements MongoStore {
                 Class<? extends MongoEntity> clazz = entity.getClass();
                 EntityInfo entityInfo = getEntityInfo(clazz);
                 BasicDBObject dbObject = mapperRegistry.convertApplicationObjectToDBObject(entity, BasicDBObject.class);
-                DBCollection dbCollection = database.getCollection(entityInfo.getDbCollectionName());
 
                 String currentId = entity.getId();
 
@@ -157,7 +157,20 @@ public class MongoStoreImpl implements MongoStore {
                     throw new IllegalStateException("Can't update entity without id: " + entity);
                 } else {
                     BasicDBObject query = new BasicDBObject("_id", currentId);
-                    dbCollection.update(query, dbObject);
+                    BasicDBObject snapshot = context.getEntitySnapshot(entity);
+
+                    if (snapshot == null) {
+                        updateDocument(entityInfo, query, dbObject);
+                    } else {
+                        // Update just the properties changed since entity was read or last written
+                        BasicDBObject update = createUpdateOfChangedProperties(snapshot, dbObject);
+                        if (update != null) {
+                            updateDocument(entityInfo, query, update);
+                        }
+                    }
+
+                    dbObject.put("_id", currentId);
+                    context.setEntitySnapshot(entity, dbObject);
                 }
             }
 
@@ -171,6 +184,44 @@ public class MongoStoreImpl implements MongoStore {
         context.addUpdateTask(entity, fullUpdateTask);
     }
 
+    protected void updateDocument(EntityInfo entityInfo, DBObject query, DBObject update) {
+        DBCollection dbCollection = database.getCollection(entityInfo.getDbCollectionName());
+        dbCollection.update(query, update);
+    }
+
+    /**
+     * @return update command with $set of changed properties and $unset of removed properties or null if nothing changed
+     */
+    protected BasicDBObject createUpdateOfChangedProperties(BasicDBObject snapshot, BasicDBObject dbObject) {
+        BasicDBObject set = new BasicDBObject();
+        for (Map.Entry<String, Object> property : dbObject.entrySet()) {
+            Object previous = snapshot.get(property.getKey());
+            if (previous == null || !previous.equals(property.getValue())) {
+                set.put(property.getKey(), property.getValue());
+            }
+        }
+
+        BasicDBObject unset = new BasicDBObject();
+        for (String key : snapshot.keySet()) {
+            if (!"_id".equals(key) && !dbObject.containsField(key)) {
+                unset.put(key, "");
+            }
+        }
+
+        if (set.isEmpty() && unset.isEmpty()) {
+            return null;
+        }
+
+        BasicDBObject update = new BasicDBObject();
+        if (!set.isEmpty()) {
+            update.put("$set", set);
+        }
+        if (!unset.isEmpty()) {
+            update.put("$unset", unset);
+        }
+        return update;
+    }
+
     @Override
     public <T extends MongoIdentifiableEntity> int updateEntities(Class<T> type, DBObject query, DBObject update, MongoStoreInvocationContext context) {
         context.beforeDBBulkUpdateOrRemove(type);
@@ -200,6 +251,7 @@ public class MongoStoreImpl implements MongoStore {
 
         // Now add it to loaded objects
         context.addLoadedEntity(converted);
+        context.setEntitySnapshot(converted, (BasicDBObject) dbObject);
 
         return converted;
     }
@@ -321,7 +373,7 @@ public class MongoStoreImpl implements MongoStore {
         EntityInfo entityInfo = getEntityInfo(type);
 
         // Add item to list directly in this object
-        Property<Object> listProperty = entityInfo.getPropertyByName(listPropertyName);
+        PropertyAccessor listProperty = entityInfo.getPropertyByName(listPropertyName);
         if (listProperty == null) {
             throw new IllegalArgumentException("Property " + listPropertyName + " doesn't exist on object " + entity);
         }
@@ -371,7 +423,7 @@ public class MongoStoreImpl implements MongoStore {
         EntityInfo entityInfo = getEntityInfo(type);
 
         // Remove item from list directly in this object
-        Property<Object> listProperty = entityInfo.getPropertyByName(listPropertyName);
+        PropertyAccessor listProperty = entityInfo.getPropertyByName(listPropertyName);
         if (listProperty == null) {
             throw new IllegalArgumentException("Property " + listPropertyName + " doesn't exist on object " + entity);
         }
@@ -461,6 +513,7 @@ public class MongoStoreImpl implements MongoStore {
             MapperContext<Object, T> mapperContext = new MapperContext<Object, T>(dbObject, type, null);
             object = mapperRegistry.convertDBObjectToApplicationObject(mapperContext);
             context.addLoadedEntity(object);
+            context.setEntitySnapshot(object, (BasicDBObject) dbObject);
         }
         return object;
     }
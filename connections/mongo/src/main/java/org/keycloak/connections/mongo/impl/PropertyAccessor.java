@@ -0,0 +1,115 @@
+package org.keycloak.connections.mongo.impl;
+
+import org.keycloak.models.utils.reflection.Property;
+import org.keycloak.util.reflections.Reflections;
+import org.keycloak.util.reflections.Types;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Property of mongo entity with the getter, setter and type information resolved just once per entity class. Reading and
+ * writing values invokes the accessor methods directly instead of looking them up and checking them on every call.
+ */
+public class PropertyAccessor {
+
+    private final Property<Object> property;
+    private final String name;
+    private final Method getter;
+    private final Method setter;
+
+    private final Class<?> javaClass;
+    private final Class<?> rawType;
+    private final List<Type> genericTypes;
+
+    public PropertyAccessor(Class<?> entityClass, Property<Object> property) {
+        this.property = property;
+        this.name = property.getName();
+
+        Member member = property.getMember();
+        this.getter = member instanceof Method ? Reflections.setAccessible((Method) member) : null;
+        this.setter = findSetter(entityClass, name, property.getJavaClass());
+
+        this.javaClass = Types.boxedClass(property.getJavaClass());
+
+        // This can be the case when we have parameterized type (like "List<String>")
+        Type type = property.getBaseType();
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            this.rawType = (Class<?>) parameterized.getRawType();
+            this.genericTypes = Arrays.asList(parameterized.getActualTypeArguments());
+        } else {
+            this.rawType = Types.boxedClass((Class<?>) type);
+            this.genericTypes = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return type of the property, primitives are boxed
+     */
+    public Class<?> getJavaClass() {
+        return javaClass;
+    }
+
+    /**
+     * @return type of the property without type arguments, primitives are boxed
+     */
+    public Class<?> getRawType() {
+        return rawType;
+    }
+
+    /**
+     * @return type arguments of parameterized property (like "List&lt;String&gt;") or null
+     */
+    public List<Type> getGenericTypes() {
+        return genericTypes;
+    }
+
+    public Object getValue(Object instance) {
+        if (getter == null) {
+            return property.getValue(instance);
+        }
+
+        try {
+            return getter.invoke(instance);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Failed to read property " + name + " of " + instance, e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Failed to read property " + name + " of " + instance, e.getCause());
+        }
+    }
+
+    public void setValue(Object instance, Object value) {
+        if (setter == null) {
+            property.setValue(instance, value);
+            return;
+        }
+
+        try {
+            setter.invoke(instance, value);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Failed to set property " + name + " of " + instance, e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Failed to set property " + name + " of " + instance, e.getCause());
+        }
+    }
+
+    private static Method findSetter(Class<?> entityClass, String name, Class<?> type) {
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            return Reflections.setAccessible(entityClass.getMethod(setterName, type));
+        } catch (NoSuchMethodException e) {
+            // Fallback to the property, which is able to find overridden setters
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.keycloak.connections.mongo.impl.context;
 
+import com.mongodb.BasicDBObject;
 import org.keycloak.connections.mongo.api.MongoIdentifiableEntity;
 import org.keycloak.connections.mongo.api.MongoStore;
 import org.keycloak.connections.mongo.api.context.MongoStoreInvocationContext;
@@ -31,6 +32,15 @@ public class SimpleMongoStoreInvocationContext implements MongoStoreInvocationCo
         return null;
     }
 
+    @Override
+    public BasicDBObject getEntitySnapshot(MongoIdentifiableEntity entity) {
+        return null;
+    }
+
+    @Override
+    public void setEntitySnapshot(MongoIdentifiableEntity entity, BasicDBObject snapshot) {
+    }
+
     @Override
     public void addUpdateTask(MongoIdentifiableEntity entityToUpdate, MongoTask task) {
         task.execute();
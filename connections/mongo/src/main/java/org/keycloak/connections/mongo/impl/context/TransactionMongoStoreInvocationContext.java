@@ -1,5 +1,6 @@
 package org.keycloak.connections.mongo.impl.context;
 
+import com.mongodb.BasicDBObject;
 import org.keycloak.connections.mongo.api.MongoIdentifiableEntity;
 import org.keycloak.connections.mongo.api.MongoStore;
 import org.keycloak.connections.mongo.api.context.MongoStoreInvocationContext;
@@ -13,7 +14,8 @@ import java.util.Set;
 
 /**
  * Invocation context, which has some very basic support for transactions, and is able to cache loaded objects.
- * It always execute all pending update tasks before start searching for other objects
+ * It always execute all pending update tasks before start searching for other objects. Multiple updates of same object
+ * are merged into single update of the changed properties
  *
  * It's per-request object (not thread safe)
  *
@@ -24,6 +26,9 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
     // Assumption is that all objects has unique ID (unique across all the types)
     private Map<String, MongoIdentifiableEntity> loadedObjects = new HashMap<String, MongoIdentifiableEntity>();
 
+    // State of loaded objects in DB, so that just changed properties are updated
+    private Map<String, BasicDBObject> snapshots = new HashMap<String, BasicDBObject>();
+
     private Map<MongoIdentifiableEntity, Set<MongoTask>> pendingUpdateTasks = new HashMap<MongoIdentifiableEntity, Set<MongoTask>>();
 
     private final MongoStore mongoStore;
@@ -48,6 +53,16 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
         return (T)loadedObjects.get(id);
     }
 
+    @Override
+    public BasicDBObject getEntitySnapshot(MongoIdentifiableEntity entity) {
+        return snapshots.get(entity.getId());
+    }
+
+    @Override
+    public void setEntitySnapshot(MongoIdentifiableEntity entity, BasicDBObject snapshot) {
+        snapshots.put(entity.getId(), snapshot);
+    }
+
     @Override
     public void addUpdateTask(MongoIdentifiableEntity entityToUpdate, MongoTask task) {
         Set<MongoTask> currentObjectTasks = pendingUpdateTasks.get(entityToUpdate);
@@ -65,6 +80,12 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
                          return;
                      }
                 }
+
+                // Replace more partial updates with single update of all changed properties if we know the state in DB
+                if (!currentObjectTasks.isEmpty() && snapshots.containsKey(entityToUpdate.getId())) {
+                    mongoStore.updateEntity(entityToUpdate, this);
+                    return;
+                }
             }
         }
 
@@ -76,6 +97,7 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
         // Remove all pending tasks and object from cache
         pendingUpdateTasks.remove(entity);
         loadedObjects.remove(entity.getId());
+        snapshots.remove(entity.getId());
 
         entity.afterRemove(this);
     }
@@ -117,12 +139,14 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
         // Now remove all loadedObjects
         for (String objectId : toRemove) {
             loadedObjects.remove(objectId);
+            snapshots.remove(objectId);
         }
     }
 
     @Override
     public void begin() {
         loadedObjects.clear();
+        snapshots.clear();
         pendingUpdateTasks.clear();
     }
 
@@ -137,6 +161,7 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
 
         // And clear it
         loadedObjects.clear();
+        snapshots.clear();
         pendingUpdateTasks.clear();
     }
 
@@ -144,6 +169,7 @@ public class TransactionMongoStoreInvocationContext implements MongoStoreInvocat
     public void rollback() {
         // Just clear the map without executions of tasks TODO: Attempt to do complete rollback (removal of created objects, restoring of removed objects, rollback of updates)
         loadedObjects.clear();
+        snapshots.clear();
         pendingUpdateTasks.clear();
     }
 
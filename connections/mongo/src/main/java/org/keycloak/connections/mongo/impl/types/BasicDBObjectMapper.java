@@ -8,14 +8,7 @@ import org.keycloak.connections.mongo.api.types.MapperContext;
 import org.keycloak.connections.mongo.api.types.MapperRegistry;
 import org.keycloak.connections.mongo.impl.EntityInfo;
 import org.keycloak.connections.mongo.impl.MongoStoreImpl;
-import org.keycloak.models.utils.reflection.Property;
-import org.keycloak.util.reflections.Types;
-
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import org.keycloak.connections.mongo.impl.PropertyAccessor;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -52,7 +45,7 @@ public class BasicDBObjectMapper<S> implements Mapper<BasicDBObject, S> {
 
         for (String key : dbObject.keySet()) {
             Object value = dbObject.get(key);
-            Property<Object> property;
+            PropertyAccessor property;
 
             if ("_id".equals(key)) {
                 // Current property is "id"
@@ -73,35 +66,17 @@ public class BasicDBObjectMapper<S> implements Mapper<BasicDBObject, S> {
         return entity;
     }
 
-    private void setPropertyValue(Object entity, Object valueFromDB, Property property) {
+    private void setPropertyValue(Object entity, Object valueFromDB, PropertyAccessor property) {
         if (valueFromDB == null) {
             property.setValue(entity, null);
             return;
         }
 
-        MapperContext<Object, Object> context;
-
-        Type type = property.getBaseType();
-
-        // This can be the case when we have parameterized type (like "List<String>")
-        if (type instanceof ParameterizedType) {
-            ParameterizedType parameterized = (ParameterizedType) type;
-            Type[] genericTypeArguments = parameterized.getActualTypeArguments();
-
-            List<Type> genericTypes = Arrays.asList(genericTypeArguments);
-
-            Class<?> expectedReturnType = (Class<?>)parameterized.getRawType();
-            context = new MapperContext<Object, Object>(valueFromDB, expectedReturnType, genericTypes);
-        } else {
-            Class<?> expectedReturnType = (Class<?>)type;
-            // handle primitives
-            expectedReturnType = Types.boxedClass(expectedReturnType);
-            context = new MapperContext<Object, Object>(valueFromDB, expectedReturnType, null);
-        }
+        MapperContext<Object, Object> context = new MapperContext<Object, Object>(valueFromDB, property.getRawType(), property.getGenericTypes());
 
         Object appObject = mapperRegistry.convertDBObjectToApplicationObject(context);
 
-        if (Types.boxedClass(property.getJavaClass()).isAssignableFrom(appObject.getClass())) {
+        if (property.getJavaClass().isAssignableFrom(appObject.getClass())) {
             property.setValue(entity, appObject);
         } else {
             throw new IllegalStateException("Converted object " + appObject + " is not of type " +  context.getExpectedReturnType() +
@@ -7,7 +7,7 @@ import org.keycloak.connections.mongo.api.types.MapperContext;
 import org.keycloak.connections.mongo.api.types.MapperRegistry;
 import org.keycloak.connections.mongo.impl.EntityInfo;
 import org.keycloak.connections.mongo.impl.MongoStoreImpl;
-import org.keycloak.models.utils.reflection.Property;
+import org.keycloak.connections.mongo.impl.PropertyAccessor;
 
 import java.util.Collection;
 
@@ -34,8 +34,8 @@ public class MongoEntityMapper<T> implements Mapper<T, BasicDBObject> {
 
         // Create instance of BasicDBObject and add all declared properties to it
         BasicDBObject dbObject = new BasicDBObject();
-        Collection<Property<Object>> props = entityInfo.getProperties();
-        for (Property<Object> property : props) {
+        Collection<PropertyAccessor> props = entityInfo.getProperties();
+        for (PropertyAccessor property : props) {
             String propName = property.getName();
 
             // Ignore "id" property
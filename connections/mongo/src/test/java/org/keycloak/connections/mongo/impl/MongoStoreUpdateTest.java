@@ -0,0 +1,183 @@
+package org.keycloak.connections.mongo.impl;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.mongo.api.MongoCollection;
+import org.keycloak.connections.mongo.api.MongoIdentifiableEntity;
+import org.keycloak.connections.mongo.api.context.MongoStoreInvocationContext;
+import org.keycloak.connections.mongo.impl.context.SimpleMongoStoreInvocationContext;
+import org.keycloak.connections.mongo.impl.context.TransactionMongoStoreInvocationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MongoStoreUpdateTest {
+
+    private RecordingMongoStore store;
+
+    @Before
+    public void before() {
+        store = new RecordingMongoStore();
+    }
+
+    @Test
+    public void testUnsetRemovedProperty() {
+        TransactionMongoStoreInvocationContext context = new TransactionMongoStoreInvocationContext(store);
+        context.begin();
+        TestEntity entity = load(context);
+
+        entity.setEmail(null);
+        store.updateEntity(entity, context);
+        context.commit();
+
+        Assert.assertEquals(1, store.updates.size());
+        Assert.assertEquals(new BasicDBObject("$unset", new BasicDBObject("email", "")), store.updates.get(0));
+    }
+
+    @Test
+    public void testSetChangedProperties() {
+        TransactionMongoStoreInvocationContext context = new TransactionMongoStoreInvocationContext(store);
+        context.begin();
+        TestEntity entity = load(context);
+
+        entity.setName("jane");
+        entity.setRoles(Arrays.asList("admin", "user"));
+        store.updateEntity(entity, context);
+        context.commit();
+
+        BasicDBObject set = new BasicDBObject("name", "jane");
+        set.put("roles", Arrays.asList("admin", "user"));
+        Assert.assertEquals(1, store.updates.size());
+        Assert.assertEquals(new BasicDBObject("$set", set), store.updates.get(0));
+    }
+
+    @Test
+    public void testNoUpdateOfUnchangedEntity() {
+        TransactionMongoStoreInvocationContext context = new TransactionMongoStoreInvocationContext(store);
+        context.begin();
+        TestEntity entity = load(context);
+
+        entity.setName("john");
+        entity.setRoles(new ArrayList<String>(Arrays.asList("user")));
+        store.updateEntity(entity, context);
+        context.commit();
+
+        Assert.assertTrue(store.updates.isEmpty());
+    }
+
+    @Test
+    public void testUpdatesComparedWithLastWrite() {
+        TransactionMongoStoreInvocationContext context = new TransactionMongoStoreInvocationContext(store);
+        context.begin();
+        TestEntity entity = load(context);
+
+        entity.setName("jane");
+        store.updateEntity(entity, context);
+        context.beforeDBSearch(TestEntity.class);
+
+        entity.setEmail("jane@localhost");
+        store.updateEntity(entity, context);
+        context.commit();
+
+        Assert.assertEquals(2, store.updates.size());
+        Assert.assertEquals(new BasicDBObject("$set", new BasicDBObject("name", "jane")), store.updates.get(0));
+        Assert.assertEquals(new BasicDBObject("$set", new BasicDBObject("email", "jane@localhost")), store.updates.get(1));
+    }
+
+    @Test
+    public void testFullUpdateWithoutSnapshot() {
+        MongoStoreInvocationContext context = new SimpleMongoStoreInvocationContext(store);
+        TestEntity entity = load(context);
+
+        entity.setEmail(null);
+        store.updateEntity(entity, context);
+
+        BasicDBObject document = new BasicDBObject("name", "john");
+        document.put("roles", Arrays.asList("user"));
+        Assert.assertEquals(1, store.updates.size());
+        Assert.assertEquals(document, store.updates.get(0));
+    }
+
+    private TestEntity load(MongoStoreInvocationContext context) {
+        BasicDBObject dbObject = new BasicDBObject("_id", "1");
+        dbObject.put("name", "john");
+        dbObject.put("email", "john@localhost");
+        dbObject.put("roles", dbList("user"));
+        return store.convertDBObjectToEntity(TestEntity.class, dbObject, context);
+    }
+
+    private static BasicDBList dbList(String... items) {
+        BasicDBList list = new BasicDBList();
+        list.addAll(Arrays.asList(items));
+        return list;
+    }
+
+    private static class RecordingMongoStore extends MongoStoreImpl {
+
+        private final List<DBObject> updates = new ArrayList<DBObject>();
+
+        private RecordingMongoStore() {
+            super(null, new Class<?>[] { TestEntity.class });
+        }
+
+        @Override
+        protected void updateDocument(EntityInfo entityInfo, DBObject query, DBObject update) {
+            Assert.assertEquals(new BasicDBObject("_id", "1"), query);
+            // Copy, as the store keeps using the document after the update
+            updates.add(new BasicDBObject(update.toMap()));
+        }
+    }
+
+    @MongoCollection(collectionName = "test")
+    public static class TestEntity implements MongoIdentifiableEntity {
+
+        private String id;
+        private String name;
+        private String email;
+        private List<String> roles;
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(String email) {
+            this.email = email;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+
+        @Override
+        public void afterRemove(MongoStoreInvocationContext invocationContext) {
+        }
+    }
+
+}
@@ -1,8 +1,12 @@
 package org.keycloak;
 
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.representations.AccessToken;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.Time;
 import org.keycloak.util.TokenUtil;
 
 import java.io.IOException;
@@ -24,6 +28,13 @@ public class RSATokenVerifier {
         } catch (Exception e) {
             throw new VerificationException("Couldn't parse token", e);
         }
+        if (realmUrl == null) {
+            throw new VerificationException("Realm URL is null. Make sure to add auth-server-url to the configuration of your adapter!");
+        }
+
+        // Reject foreign or expired tokens before spending time on the signature and the full token binding
+        preVerifyClaims(input, realmUrl, checkActive, checkTokenType);
+
         if (!isPublicKeyValid(input, realmKey)) throw new VerificationException("Invalid token signature.");
 
         AccessToken token;
@@ -36,9 +47,6 @@ public class RSATokenVerifier {
         if (user == null) {
             throw new VerificationException("Token user was null.");
         }
-        if (realmUrl == null) {
-            throw new VerificationException("Realm URL is null. Make sure to add auth-server-url to the configuration of your adapter!");
-        }
         if (!realmUrl.equals(token.getIssuer())) {
             throw new VerificationException("Token audience doesn't match domain. Token issuer is " + token.getIssuer() + ", but URL from configuration is " + realmUrl);
 
@@ -57,6 +65,58 @@ public class RSATokenVerifier {
         return token;
     }
 
+    /**
+     * Reads the iss, typ, exp and nbf claims with a streaming parser and checks them before the signature is verified.
+     * Only used to reject tokens early, the claims are checked again on the bound token once the signature is valid.
+     */
+    private static void preVerifyClaims(JWSInput input, String realmUrl, boolean checkActive, boolean checkTokenType) throws VerificationException {
+        String issuer = null;
+        String type = null;
+        int expiration = 0;
+        int notBefore = 0;
+
+        try {
+            JsonParser parser = JsonSerialization.mapper.getJsonFactory().createJsonParser(input.getContent());
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new VerificationException("Couldn't parse token");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (value == JsonToken.VALUE_STRING && name.equals("iss")) {
+                        issuer = parser.getText();
+                    } else if (value == JsonToken.VALUE_STRING && name.equals("typ")) {
+                        type = parser.getText();
+                    } else if (value == JsonToken.VALUE_NUMBER_INT && name.equals("exp")) {
+                        expiration = parser.getIntValue();
+                    } else if (value == JsonToken.VALUE_NUMBER_INT && name.equals("nbf")) {
+                        notBefore = parser.getIntValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new VerificationException("Couldn't parse token", e);
+        }
+
+        if (!realmUrl.equals(issuer)) {
+            throw new VerificationException("Token audience doesn't match domain. Token issuer is " + issuer + ", but URL from configuration is " + realmUrl);
+        }
+        if (checkTokenType && (type == null || !type.equalsIgnoreCase(TokenUtil.TOKEN_TYPE_BEARER))) {
+            throw new VerificationException("Token type is incorrect. Expected '" + TokenUtil.TOKEN_TYPE_BEARER + "' but was '" + type + "'");
+        }
+        if (checkActive) {
+            int currentTime = Time.currentTime();
+            if ((expiration != 0 && currentTime > expiration) || (notBefore != 0 && currentTime < notBefore)) {
+                throw new VerificationException("Token is not active.");
+            }
+        }
+    }
+
     private static boolean isPublicKeyValid(JWSInput input, PublicKey realmKey) throws VerificationException {
         try {
             return RSAProvider.verify(input, realmKey);
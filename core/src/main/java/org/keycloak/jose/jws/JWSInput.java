@@ -20,23 +20,34 @@ public class JWSInput {
     JWSHeader header;
     byte[] content;
     byte[] signature;
+    int headerEnd;
+    int contentEnd;
+    int signatureEnd;
 
 
     public JWSInput(String wire) {
         this.wireString = wire;
-        String[] parts = wire.split("\\.");
-        if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("Parsing error");
-        encodedHeader = parts[0];
-        encodedContent = parts[1];
-        encodedSignatureInput = encodedHeader + '.' + encodedContent;
-        try {
-            content = Base64Url.decode(encodedContent);
-            if (parts.length > 2) {
-                encodedSignature = parts[2];
-                signature = Base64Url.decode(encodedSignature);
 
+        // Trailing empty parts are ignored, same as String.split would do
+        signatureEnd = wire.length();
+        while (signatureEnd > 0 && wire.charAt(signatureEnd - 1) == '.') signatureEnd--;
+
+        headerEnd = wire.indexOf('.');
+        if (headerEnd < 0 || headerEnd >= signatureEnd) throw new IllegalArgumentException("Parsing error");
+        contentEnd = wire.indexOf('.', headerEnd + 1);
+        if (contentEnd < 0 || contentEnd >= signatureEnd) {
+            contentEnd = signatureEnd;
+        } else {
+            int extra = wire.indexOf('.', contentEnd + 1);
+            if (extra >= 0 && extra < signatureEnd) throw new IllegalArgumentException("Parsing error");
+        }
+
+        try {
+            content = Base64Url.decode(wire, headerEnd + 1, contentEnd);
+            if (contentEnd < signatureEnd) {
+                signature = Base64Url.decode(wire, contentEnd + 1, signatureEnd);
             }
-            byte[] headerBytes = Base64Url.decode(encodedHeader);
+            byte[] headerBytes = Base64Url.decode(wire, 0, headerEnd);
             header = JsonSerialization.readValue(headerBytes, JWSHeader.class);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -48,20 +59,44 @@ public class JWSInput {
     }
 
     public String getEncodedHeader() {
+        if (encodedHeader == null) {
+            encodedHeader = wireString.substring(0, headerEnd);
+        }
         return encodedHeader;
     }
 
     public String getEncodedContent() {
+        if (encodedContent == null) {
+            encodedContent = wireString.substring(headerEnd + 1, contentEnd);
+        }
         return encodedContent;
     }
 
     public String getEncodedSignature() {
+        if (encodedSignature == null && contentEnd < signatureEnd) {
+            encodedSignature = wireString.substring(contentEnd + 1, signatureEnd);
+        }
         return encodedSignature;
     }
+
     public String getEncodedSignatureInput() {
+        if (encodedSignatureInput == null) {
+            encodedSignatureInput = wireString.substring(0, contentEnd);
+        }
         return encodedSignatureInput;
     }
 
+    /**
+     * Returns the ASCII bytes of the signature input, copied straight from the wire string.
+     */
+    public byte[] getEncodedSignatureInputBytes() {
+        byte[] bytes = new byte[contentEnd];
+        for (int i = 0; i < contentEnd; i++) {
+            bytes[i] = (byte) wireString.charAt(i);
+        }
+        return bytes;
+    }
+
     public JWSHeader getHeader() {
         return header;
     }
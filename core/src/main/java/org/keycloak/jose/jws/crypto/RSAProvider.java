@@ -9,12 +9,35 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class RSAProvider implements SignatureProvider {
+
+    private static final int CERTIFICATE_CACHE_SIZE = 100;
+
+    /**
+     * Public keys of recently used PEM encoded certificates, so a certificate is only parsed once
+     */
+    private static final Map<String, PublicKey> certificateKeys = Collections.synchronizedMap(new LinkedHashMap<String, PublicKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return size() > CERTIFICATE_CACHE_SIZE;
+        }
+    });
+
+    /**
+     * Signature instances are not thread-safe, but can be re-used once initialized again. Keyed by the Java algorithm
+     * name so the thread local only holds JDK classes.
+     */
+    private static final ThreadLocal<Map<String, Signature>> signatures = new ThreadLocal<Map<String, Signature>>();
+
     public static String getJavaAlgorithm(Algorithm alg) {
         switch (alg) {
             case RS256:
@@ -36,9 +59,25 @@ public class RSAProvider implements SignatureProvider {
         }
     }
 
+    private static Signature getThreadLocalSignature(Algorithm alg) throws Exception {
+        Map<String, Signature> map = signatures.get();
+        if (map == null) {
+            map = new HashMap<String, Signature>();
+            signatures.set(map);
+        }
+
+        String javaAlgorithm = getJavaAlgorithm(alg);
+        Signature signature = map.get(javaAlgorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(javaAlgorithm);
+            map.put(javaAlgorithm, signature);
+        }
+        return signature;
+    }
+
     public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
         try {
-            Signature signature = getSignature(algorithm);
+            Signature signature = getThreadLocalSignature(algorithm);
             signature.initSign(privateKey);
             signature.update(data);
             return signature.sign();
@@ -48,20 +87,24 @@ public class RSAProvider implements SignatureProvider {
     }
 
     public static boolean verifyViaCertificate(JWSInput input, String cert) {
-        X509Certificate certificate = null;
-        try {
-            certificate = PemUtils.decodeCertificate(cert);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        PublicKey publicKey = certificateKeys.get(cert);
+        if (publicKey == null) {
+            try {
+                X509Certificate certificate = PemUtils.decodeCertificate(cert);
+                publicKey = certificate.getPublicKey();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            certificateKeys.put(cert, publicKey);
         }
-        return verify(input, certificate.getPublicKey());
+        return verify(input, publicKey);
     }
 
     public static boolean verify(JWSInput input, PublicKey publicKey) {
         try {
-            Signature verifier = getSignature(input.getHeader().getAlgorithm());
+            Signature verifier = getThreadLocalSignature(input.getHeader().getAlgorithm());
             verifier.initVerify(publicKey);
-            verifier.update(input.getEncodedSignatureInput().getBytes("UTF-8"));
+            verifier.update(input.getEncodedSignatureInputBytes());
             return verifier.verify(input.getSignature());
         } catch (Exception e) {
             throw new RuntimeException(e);
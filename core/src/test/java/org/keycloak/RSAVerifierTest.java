@@ -8,6 +8,9 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.util.Base64;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.util.Time;
 import org.keycloak.util.TokenUtil;
@@ -212,6 +215,22 @@ public class RSAVerifierTest {
         }
     }
 
+    @Test
+    public void testBadIssuer() throws Exception {
+        token.issuer("http://localhost:8080/auth/other");
+
+        String encoded = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+
+        AccessToken v = null;
+        try {
+            v = verifySkeletonKeyToken(encoded);
+            Assert.fail();
+        } catch (VerificationException ignored) {
+        }
+    }
+
     @Test
     public void testTokenAuth() throws Exception {
         token = new AccessToken();
@@ -230,5 +249,19 @@ public class RSAVerifierTest {
         }
     }
 
+    @Test
+    public void testVerifyViaCertificate() throws Exception {
+        String cert = Base64.encodeBytes(idpCertificates[0].getEncoded());
+
+        JWSInput good = new JWSInput(new JWSBuilder().jsonContent(token).rsa256(idpPair.getPrivate()));
+        JWSInput bad = new JWSInput(new JWSBuilder().jsonContent(token).rsa256(badPair.getPrivate()));
+
+        // Second round uses the cached certificate and re-used signature instances
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(RSAProvider.verifyViaCertificate(good, cert));
+            Assert.assertFalse(RSAProvider.verifyViaCertificate(bad, cert));
+        }
+    }
+
 
 }
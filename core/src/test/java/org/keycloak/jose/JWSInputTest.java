@@ -0,0 +1,32 @@
+package org.keycloak.jose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.util.Base64Url;
+
+public class JWSInputTest {
+
+    // Encoded as "-_8" with the base64url alphabet and as "+/8" with the standard one
+    private static final byte[] CONTENT = new byte[] { (byte) 0xfb, (byte) 0xff };
+
+    @Test
+    public void testUrlSafeAlphabet() throws Exception {
+        String encoded = new JWSBuilder().content(CONTENT).none();
+        Assert.assertTrue(encoded.contains(".-_8."));
+
+        JWSInput input = new JWSInput(encoded);
+        Assert.assertArrayEquals(CONTENT, input.getContent());
+    }
+
+    @Test
+    public void testStandardAlphabet() throws Exception {
+        String encoded = new JWSBuilder().content(CONTENT).none().replace('-', '+').replace('_', '/');
+
+        JWSInput input = new JWSInput(encoded);
+        Assert.assertArrayEquals(CONTENT, input.getContent());
+        Assert.assertArrayEquals(Base64Url.decode("+/8"), input.getContent());
+    }
+
+}
@@ -71,6 +71,7 @@
                 <local-cache name="users"/>
                 <local-cache name="sessions"/>
                 <local-cache name="loginFailures"/>
+                <local-cache name="work"/>
             </cache-container>
             <xsl:apply-templates select="node()|@*"/>
         </xsl:copy>
@@ -44,6 +44,7 @@
                 <invalidation-cache name="users" mode="SYNC"/>
                 <distributed-cache name="sessions" mode="SYNC" owners="1"/>
                 <distributed-cache name="loginFailures" mode="SYNC" owners="1"/>
+                <replicated-cache name="work" mode="SYNC"/>
             </cache-container>
             <xsl:apply-templates select="node()|@*"/>
         </xsl:copy>
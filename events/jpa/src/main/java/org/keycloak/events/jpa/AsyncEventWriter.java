@@ -0,0 +1,340 @@
+package org.keycloak.events.jpa;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.connections.jpa.util.JpaUtils;
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events and admin events from a dedicated thread, so storing an event doesn't add a database insert to the
+ * request that triggered it. Events are queued in a bounded queue and written with JDBC batch inserts, either when a
+ * batch is full or when the oldest queued event has waited for the flush interval.
+ *
+ * Events are only queued once the transaction of the request commits, so events of a request that is rolled back are
+ * not stored, as when they are inserted by the request.
+ *
+ * When the queue is full, the caller either waits for space or the event is dropped, depending on the overflow
+ * policy. A batch that fails to be written is retried a bounded number of times before its events are counted as
+ * failed. On close the queue is drained before the writer thread stops.
+ */
+class AsyncEventWriter implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventWriter.class);
+
+    enum OverflowPolicy {
+        BLOCK, DROP
+    }
+
+    private static final Object CLOSE = new Object();
+
+    private static final long MAX_RETRY_DELAY = 1000;
+
+    private final KeycloakSessionFactory factory;
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final int writeRetries;
+    private final Thread thread;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closed;
+
+    AsyncEventWriter(KeycloakSessionFactory factory, int queueSize, int batchSize, long flushInterval, OverflowPolicy overflowPolicy,
+                     int writeRetries) {
+        this.factory = factory;
+        this.queue = new ArrayBlockingQueue<Object>(queueSize);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.writeRetries = writeRetries;
+
+        thread = new Thread(this, "keycloak-event-writer");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void onEvent(KeycloakSession session, Event event) {
+        addAfterCommit(session, event.clone());
+    }
+
+    void onEvent(KeycloakSession session, AdminEvent event, boolean includeRepresentation) {
+        addAfterCommit(session, JpaEventStoreProvider.convertAdminEvent(event, includeRepresentation));
+    }
+
+    /**
+     * Number of events dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Number of events not written because writing their batch failed after all retries
+     */
+    long getFailed() {
+        return failed.get();
+    }
+
+    private void addAfterCommit(KeycloakSession session, final Object event) {
+        KeycloakTransactionManager tx = session != null ? session.getTransaction() : null;
+        if (tx == null || !tx.isActive()) {
+            add(event);
+            return;
+        }
+
+        tx.enlistAfterCompletion(new KeycloakTransaction() {
+
+            private boolean active;
+
+            @Override
+            public void begin() {
+                active = true;
+            }
+
+            @Override
+            public void commit() {
+                active = false;
+                add(event);
+            }
+
+            @Override
+            public void rollback() {
+                active = false;
+            }
+
+            @Override
+            public void setRollbackOnly() {
+            }
+
+            @Override
+            public boolean getRollbackOnly() {
+                return false;
+            }
+
+            @Override
+            public boolean isActive() {
+                return active;
+            }
+
+        });
+    }
+
+    void add(Object event) {
+        if (closed) {
+            logger.warn("Event writer closed, event dropped");
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while queuing event, event dropped");
+            }
+        } else if (!queue.offer(event)) {
+            if (dropped.incrementAndGet() == 1) {
+                logger.warn("Event queue is full, dropping events");
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Object> batch = new ArrayList<Object>(batchSize);
+        boolean stop = false;
+        while (!stop || !queue.isEmpty()) {
+            try {
+                Object first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    stop = closed;
+                    continue;
+                }
+
+                batch.add(first);
+
+                long flushAt = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    long wait = flushAt - System.currentTimeMillis();
+                    if (batch.size() == batchSize || closed || wait <= 0) {
+                        break;
+                    }
+
+                    Object next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                logger.warnv("Event writer interrupted, {0} events not written", batch.size() + queue.size());
+                return;
+            }
+
+            if (batch.remove(CLOSE)) {
+                stop = true;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting events and waits for the queued events to be written.
+     */
+    void close() {
+        closed = true;
+        try {
+            // Wakes up the writer, so it doesn't wait for the flush interval
+            while (thread.isAlive() && !queue.offer(CLOSE, 100, TimeUnit.MILLISECONDS)) {
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (dropped.get() > 0) {
+            logger.warnv("Dropped {0} events because the event queue was full", dropped.get());
+        }
+        if (failed.get() > 0) {
+            logger.warnv("Failed to write {0} events", failed.get());
+        }
+    }
+
+    /**
+     * Writes the batch, retrying with an increasing delay if it fails
+     */
+    void write(List<Object> batch) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                writeBatch(batch);
+                logger.tracev("Wrote {0} events", batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == writeRetries) {
+                    failed.addAndGet(batch.size());
+                    logger.errorv(e, "Failed to write {0} events, {1} events not written since start", batch.size(), failed.get());
+                    return;
+                }
+                logger.warnv(e, "Failed to write {0} events, retrying", batch.size());
+            }
+
+            try {
+                Thread.sleep(Math.min(flushInterval, MAX_RETRY_DELAY) * (attempt + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.addAndGet(batch.size());
+                logger.warnv("Event writer interrupted, {0} events not written", batch.size());
+                return;
+            }
+        }
+    }
+
+    void writeBatch(final List<Object> batch) {
+        KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+            @Override
+            public void run(KeycloakSession session) {
+                final EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                em.unwrap(Session.class).doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        insert(connection, em, batch);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void insert(Connection connection, EntityManager em, List<Object> batch) throws SQLException {
+        PreparedStatement events = null;
+        PreparedStatement adminEvents = null;
+        try {
+            for (Object o : batch) {
+                if (o instanceof Event) {
+                    if (events == null) {
+                        events = connection.prepareStatement("insert into " + JpaUtils.getTableNameForNativeQuery("EVENT_ENTITY", em)
+                                + " (ID, EVENT_TIME, TYPE, REALM_ID, CLIENT_ID, USER_ID, SESSION_ID, IP_ADDRESS, ERROR, DETAILS_JSON)"
+                                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    }
+
+                    EventEntity e = JpaEventStoreProvider.convertEvent((Event) o);
+                    events.setString(1, e.getId());
+                    events.setLong(2, e.getTime());
+                    events.setString(3, e.getType());
+                    events.setString(4, e.getRealmId());
+                    events.setString(5, e.getClientId());
+                    events.setString(6, e.getUserId());
+                    events.setString(7, e.getSessionId());
+                    events.setString(8, e.getIpAddress());
+                    events.setString(9, e.getError());
+                    events.setString(10, e.getDetailsJson());
+                    events.addBatch();
+                } else {
+                    if (adminEvents == null) {
+                        adminEvents = connection.prepareStatement("insert into " + JpaUtils.getTableNameForNativeQuery("ADMIN_EVENT_ENTITY", em)
+                                + " (ID, ADMIN_EVENT_TIME, REALM_ID, OPERATION_TYPE, AUTH_REALM_ID, AUTH_CLIENT_ID, AUTH_USER_ID, IP_ADDRESS, RESOURCE_PATH, REPRESENTATION, ERROR)"
+                                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    }
+
+                    AdminEventEntity e = (AdminEventEntity) o;
+                    adminEvents.setString(1, e.getId());
+                    adminEvents.setLong(2, e.getTime());
+                    adminEvents.setString(3, e.getRealmId());
+                    adminEvents.setString(4, e.getOperationType());
+                    adminEvents.setString(5, e.getAuthRealmId());
+                    adminEvents.setString(6, e.getAuthClientId());
+                    adminEvents.setString(7, e.getAuthUserId());
+                    adminEvents.setString(8, e.getAuthIpAddress());
+                    adminEvents.setString(9, e.getResourcePath());
+                    adminEvents.setString(10, e.getRepresentation());
+                    adminEvents.setString(11, e.getError());
+                    adminEvents.addBatch();
+                }
+            }
+
+            if (events != null) {
+                events.executeBatch();
+            }
+            if (adminEvents != null) {
+                adminEvents.executeBatch();
+            }
+        } finally {
+            if (events != null) {
+                events.close();
+            }
+            if (adminEvents != null) {
+                adminEvents.close();
+            }
+        }
+    }
+
+}
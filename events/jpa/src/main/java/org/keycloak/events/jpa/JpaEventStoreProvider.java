@@ -11,6 +11,7 @@ import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
 
 import javax.persistence.EntityManager;
 
@@ -29,9 +30,17 @@ public class JpaEventStoreProvider implements EventStoreProvider {
     private static final Logger logger = Logger.getLogger(JpaEventStoreProvider.class);
 
     private EntityManager em;
+    private KeycloakSession session;
+    private AsyncEventWriter writer;
 
     public JpaEventStoreProvider(EntityManager em) {
+        this(em, null, null);
+    }
+
+    JpaEventStoreProvider(EntityManager em, KeycloakSession session, AsyncEventWriter writer) {
         this.em = em;
+        this.session = session;
+        this.writer = writer;
     }
 
     @Override
@@ -56,7 +65,11 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        em.persist(convertEvent(event));
+        if (writer != null) {
+            writer.onEvent(session, event);
+        } else {
+            em.persist(convertEvent(event));
+        }
     }
 
     @Override
@@ -81,7 +94,11 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
-        em.persist(convertAdminEvent(event, includeRepresentation));
+        if (writer != null) {
+            writer.onEvent(session, event, includeRepresentation);
+        } else {
+            em.persist(convertAdminEvent(event, includeRepresentation));
+        }
     }
 
     @Override
@@ -7,6 +7,8 @@ import org.keycloak.events.EventStoreProviderFactory;
 import org.keycloak.events.EventType;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -18,23 +20,50 @@ public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
 
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+    private volatile AsyncEventWriter writer;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         JpaConnectionProvider connection = session.getProvider(JpaConnectionProvider.class);
-        return new JpaEventStoreProvider(connection.getEntityManager());
+        return new JpaEventStoreProvider(connection.getEntityManager(), session, writer);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        if (config.getBoolean("async-writes", false)) {
+            AsyncEventWriter.OverflowPolicy overflowPolicy = AsyncEventWriter.OverflowPolicy.valueOf(config.get("async-overflow", "block").toUpperCase());
+            writer = new AsyncEventWriter(factory, config.getInt("async-queue-size", 10000), config.getInt("async-batch-size", 100),
+                    config.getLong("async-flush-interval", 1000L), overflowPolicy, config.getInt("async-write-retries", 3));
+            writer.start();
 
+            // Drain before the JPA connection provider is closed
+            factory.register(new ProviderEventListener() {
+                @Override
+                public void onEvent(ProviderEvent event) {
+                    if (event instanceof KeycloakSessionFactory.PreCloseEvent) {
+                        closeWriter();
+                    }
+                }
+            });
+        }
     }
 
     @Override
     public void close() {
+        closeWriter();
+    }
+
+    private synchronized void closeWriter() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
     }
 
     @Override
@@ -0,0 +1,195 @@
+package org.keycloak.events.jpa;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncEventWriterTest {
+
+    private static final int RETRIES = 3;
+
+    @Test
+    public void flushFullBatch() throws Exception {
+        TestWriter writer = new TestWriter(100, 3, TimeUnit.MINUTES.toMillis(1), AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        try {
+            for (int i = 0; i < 3; i++) {
+                writer.onEvent(null, event(i));
+            }
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (writer.getBatches().isEmpty() && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+
+            Assert.assertEquals(1, writer.getBatches().size());
+            Assert.assertEquals(3, writer.getBatches().get(0).size());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void flushOnClose() {
+        TestWriter writer = new TestWriter(100, 100, TimeUnit.MINUTES.toMillis(1), AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.onEvent(null, event(i));
+        }
+        writer.close();
+
+        Assert.assertEquals(5, writer.getWritten());
+
+        writer.onEvent(null, event(5));
+        Assert.assertEquals(5, writer.getWritten());
+    }
+
+    @Test
+    public void dropWhenFull() {
+        TestWriter writer = new TestWriter(2, 100, TimeUnit.MINUTES.toMillis(1), AsyncEventWriter.OverflowPolicy.DROP);
+        for (int i = 0; i < 3; i++) {
+            writer.onEvent(null, event(i));
+        }
+        Assert.assertEquals(1, writer.getDropped());
+
+        writer.start();
+        writer.close();
+        Assert.assertEquals(2, writer.getWritten());
+    }
+
+    @Test
+    public void queueAfterCommit() {
+        TestWriter writer = new TestWriter(100, 100, TimeUnit.MINUTES.toMillis(1), AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+
+        List<KeycloakTransaction> committed = new ArrayList<KeycloakTransaction>();
+        writer.onEvent(session(committed), event(0));
+        writer.onEvent(session(committed), event(1));
+        List<KeycloakTransaction> rolledBack = new ArrayList<KeycloakTransaction>();
+        writer.onEvent(session(rolledBack), event(2));
+
+        Assert.assertEquals(2, committed.size());
+        Assert.assertEquals(1, rolledBack.size());
+
+        for (KeycloakTransaction tx : committed) {
+            tx.commit();
+        }
+        for (KeycloakTransaction tx : rolledBack) {
+            tx.rollback();
+        }
+        writer.close();
+
+        Assert.assertEquals(2, writer.getWritten());
+    }
+
+    @Test
+    public void retryFailedBatch() {
+        TestWriter writer = new TestWriter(100, 100, 10, AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.failures = 2;
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.onEvent(null, event(i));
+        }
+        writer.close();
+
+        Assert.assertEquals(5, writer.getWritten());
+        Assert.assertEquals(0, writer.getFailed());
+    }
+
+    @Test
+    public void countFailedBatch() {
+        TestWriter writer = new TestWriter(100, 100, 10, AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.failures = RETRIES + 1;
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.onEvent(null, event(i));
+        }
+        writer.close();
+
+        Assert.assertEquals(0, writer.getWritten());
+        Assert.assertEquals(5, writer.getFailed());
+    }
+
+    /**
+     * Session with an active transaction, the transactions enlisted after completion are added to the list
+     */
+    private static KeycloakSession session(final List<KeycloakTransaction> afterCompletion) {
+        final KeycloakTransactionManager tx = (KeycloakTransactionManager) Proxy.newProxyInstance(AsyncEventWriterTest.class.getClassLoader(),
+                new Class[] { KeycloakTransactionManager.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("isActive")) {
+                            return true;
+                        } else if (method.getName().equals("enlistAfterCompletion")) {
+                            KeycloakTransaction transaction = (KeycloakTransaction) args[0];
+                            transaction.begin();
+                            afterCompletion.add(transaction);
+                        }
+                        return null;
+                    }
+                });
+        return (KeycloakSession) Proxy.newProxyInstance(AsyncEventWriterTest.class.getClassLoader(), new Class[] { KeycloakSession.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return method.getName().equals("getTransaction") ? tx : null;
+            }
+        });
+    }
+
+    private static Event event(int i) {
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm");
+        event.setUserId("user-" + i);
+        event.setTime(System.currentTimeMillis());
+        return event;
+    }
+
+    private static class TestWriter extends AsyncEventWriter {
+
+        private final List<List<Object>> batches = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+        // Number of writes that fail before writes succeed
+        private volatile int failures;
+
+        TestWriter(int queueSize, int batchSize, long flushInterval, OverflowPolicy overflowPolicy) {
+            super(null, queueSize, batchSize, flushInterval, overflowPolicy, RETRIES);
+        }
+
+        @Override
+        void writeBatch(List<Object> batch) {
+            if (failures > 0) {
+                failures--;
+                throw new RuntimeException("Write failed");
+            }
+            batches.add(new ArrayList<Object>(batch));
+        }
+
+        List<List<Object>> getBatches() {
+            return batches;
+        }
+
+        int getWritten() {
+            int written = 0;
+            synchronized (batches) {
+                for (List<Object> batch : batches) {
+                    written += batch.size();
+                }
+            }
+            return written;
+        }
+    }
+
+}
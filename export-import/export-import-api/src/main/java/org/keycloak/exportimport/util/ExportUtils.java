@@ -4,13 +4,16 @@ import org.keycloak.models.OfflineClientSessionModel;
 import org.keycloak.models.OfflineUserSessionModel;
 import org.keycloak.representations.idm.OfflineUserSessionRepresentation;
 import org.keycloak.util.Base64;
+import org.keycloak.util.JsonSerialization;
 import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleContainerModel;
@@ -19,6 +22,7 @@ import org.keycloak.models.FederatedIdentityModel;
 import org.keycloak.models.UserConsentModel;
 import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
@@ -36,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +51,9 @@ import java.util.Set;
  */
 public class ExportUtils {
 
+    // Count of users read within single transaction by streaming export
+    public static final int USERS_PAGE_SIZE = 100;
+
     public static RealmRepresentation exportRealm(KeycloakSession session, RealmModel realm, boolean includeUsers) {
         RealmRepresentation rep = ModelToRepresentation.toRepresentation(realm, true);
 
@@ -346,28 +354,105 @@ public class ExportUtils {
 
     // Streaming API
 
-    public static void exportUsersToStream(KeycloakSession session, RealmModel realm, List<UserModel> usersToExport, ObjectMapper mapper, OutputStream os) throws IOException {
+    public static JsonGenerator createJsonGenerator(ObjectMapper mapper, OutputStream os) throws IOException {
         JsonFactory factory = mapper.getJsonFactory();
         JsonGenerator generator = factory.createJsonGenerator(os, JsonEncoding.UTF8);
-        try {
-            if (mapper.isEnabled(SerializationConfig.Feature.INDENT_OUTPUT)) {
-                generator.useDefaultPrettyPrinter();
+        if (mapper.isEnabled(SerializationConfig.Feature.INDENT_OUTPUT)) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    /**
+     * Writes realm in same format like {@link #exportRealm(KeycloakSession, RealmModel, boolean)}, but users are read
+     * page by page, each page in separate transaction, and written to the stream as soon as they are read. So memory
+     * needed for the export doesn't depend on count of users in the realm.
+     */
+    public static void exportRealmToStream(KeycloakSessionFactory factory, final String realmName, boolean includeUsers, final JsonGenerator generator) throws IOException {
+        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+            @Override
+            protected void runExportImportTask(KeycloakSession session) throws IOException {
+                RealmModel realm = session.realms().getRealmByName(realmName);
+                RealmRepresentation rep = exportRealm(session, realm, false);
+
+                JsonNode realmNode = JsonSerialization.mapper.valueToTree(rep);
+                generator.writeStartObject();
+                Iterator<Map.Entry<String, JsonNode>> fields = realmNode.getFields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    generator.writeFieldName(field.getKey());
+                    generator.writeTree(field.getValue());
+                }
             }
-            generator.writeStartObject();
-            generator.writeStringField("realm", realm.getName());
-            // generator.writeStringField("strategy", strategy.toString());
+
+        });
+
+        if (includeUsers) {
             generator.writeFieldName("users");
             generator.writeStartArray();
+            writeUsers(factory, realmName, null, Integer.MAX_VALUE, generator);
+            generator.writeEndArray();
+        }
 
-            for (UserModel user : usersToExport) {
-                UserRepresentation userRep = ExportUtils.exportUser(session, realm, user);
-                generator.writeObject(userRep);
-            }
+        generator.writeEndObject();
+        generator.flush();
+    }
 
-            generator.writeEndArray();
-            generator.writeEndObject();
-        } finally {
-            generator.close();
+    /**
+     * Writes users file with <code>count</code> users of the realm following the user with <code>lastUsername</code>,
+     * or from the first user if it's null. Users are read page by page ordered by username, each page in separate
+     * transaction.
+     *
+     * @return username of the last user written, to continue the export with
+     */
+    public static String exportUsersToStream(KeycloakSessionFactory factory, String realmName, String lastUsername, int count, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("realm", realmName);
+        generator.writeFieldName("users");
+        generator.writeStartArray();
+        String last = writeUsers(factory, realmName, lastUsername, count, generator);
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.flush();
+        return last;
+    }
+
+    // Pages follow the last username of the previous one, so the database doesn't need to skip the users already read
+    private static String writeUsers(KeycloakSessionFactory factory, final String realmName, String lastUsername, int count, final JsonGenerator generator) throws IOException {
+        class PageHolder {
+            String lastUsername;
+            int size;
+            int exported;
+        }
+        final PageHolder page = new PageHolder();
+        page.lastUsername = lastUsername;
+
+        int remaining = count;
+        while (remaining > 0) {
+            page.size = Math.min(USERS_PAGE_SIZE, remaining);
+
+            KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<UserModel> users = session.users().getUsers(realm, page.lastUsername, page.size, true);
+                    for (UserModel user : users) {
+                        generator.writeObject(exportUser(session, realm, user));
+                        page.lastUsername = user.getUsername();
+                    }
+                    page.exported = users.size();
+                }
+
+            });
+
+            generator.flush();
+            if (page.exported < page.size) {
+                break;
+            }
+            remaining -= page.size;
         }
+        return page.lastUsername;
     }
 }
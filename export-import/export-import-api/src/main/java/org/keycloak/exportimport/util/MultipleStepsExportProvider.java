@@ -1,5 +1,7 @@
 package org.keycloak.exportimport.util;
 
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.jboss.logging.Logger;
 import org.keycloak.representations.VersionRepresentation;
 import org.keycloak.exportimport.ExportImportConfig;
@@ -9,11 +11,10 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.KeycloakSessionTask;
 import org.keycloak.models.RealmModel;
-import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.representations.idm.RealmRepresentation;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -56,24 +57,21 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
         final UsersHolder usersHolder = new UsersHolder();
         final boolean exportUsersIntoRealmFile = usersExportStrategy == UsersExportStrategy.REALM_FILE;
 
-        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+        writeRealm(realmName + "-realm.json", factory, realmName, exportUsersIntoRealmFile);
+        logger.info("Realm '" + realmName + "' - data exported");
 
-            @Override
-            protected void runExportImportTask(KeycloakSession session) throws IOException {
-                RealmModel realm = session.realms().getRealmByName(realmName);
-                RealmRepresentation rep = ExportUtils.exportRealm(session, realm, exportUsersIntoRealmFile);
-                writeRealm(realmName + "-realm.json", rep);
-                logger.info("Realm '" + realmName + "' - data exported");
-
-                // Count total number of users
-                if (!exportUsersIntoRealmFile) {
+        if (usersExportStrategy != UsersExportStrategy.SKIP && !exportUsersIntoRealmFile) {
+            // Count total number of users
+            KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
                     usersHolder.totalCount = session.users().getUsersCount(realm);
                 }
-            }
 
-        });
+            });
 
-        if (usersExportStrategy != UsersExportStrategy.SKIP && !exportUsersIntoRealmFile) {
             // We need to export users now
             usersHolder.currentPageStart = 0;
 
@@ -87,30 +85,49 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
                     usersHolder.currentPageEnd = usersHolder.totalCount;
                 }
 
-                KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-
-                    @Override
-                    protected void runExportImportTask(KeycloakSession session) throws IOException {
-                        RealmModel realm = session.realms().getRealmByName(realmName);
-                        usersHolder.users = session.users().getUsers(realm, usersHolder.currentPageStart, usersHolder.currentPageEnd - usersHolder.currentPageStart, true);
-
-                        writeUsers(realmName + "-users-" + (usersHolder.currentPageStart / countPerPage) + ".json", session, realm, usersHolder.users);
+                usersHolder.lastUsername = writeUsers(realmName + "-users-" + (usersHolder.currentPageStart / countPerPage) + ".json", factory, realmName,
+                        usersHolder.lastUsername, usersHolder.currentPageEnd - usersHolder.currentPageStart);
 
-                        logger.info("Users " + usersHolder.currentPageStart + "-" + (usersHolder.currentPageEnd -1) + " exported");
-                    }
-
-                });
+                logger.info("Users " + usersHolder.currentPageStart + "-" + (usersHolder.currentPageEnd -1) + " exported");
 
                 usersHolder.currentPageStart = usersHolder.currentPageEnd;
             }
         }
     }
 
-    protected abstract void writeRealm(String fileName, RealmRepresentation rep) throws IOException;
+    protected void writeRealm(String fileName, KeycloakSessionFactory factory, String realmName, boolean includeUsers) throws IOException {
+        JsonGenerator generator = ExportUtils.createJsonGenerator(getObjectMapper(), openStream(fileName));
+        try {
+            ExportUtils.exportRealmToStream(factory, realmName, includeUsers, generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * @return username of the last user written, the next file continues after it
+     */
+    protected String writeUsers(String fileName, KeycloakSessionFactory factory, String realmName, String lastUsername, int count) throws IOException {
+        JsonGenerator generator = ExportUtils.createJsonGenerator(getObjectMapper(), openStream(fileName));
+        try {
+            return ExportUtils.exportUsersToStream(factory, realmName, lastUsername, count, generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+    protected void writeVersion(String fileName, VersionRepresentation version) throws IOException {
+        OutputStream stream = openStream(fileName);
+        getObjectMapper().writeValue(stream, version);
+    }
 
-    protected abstract void writeUsers(String fileName, KeycloakSession session, RealmModel realm, List<UserModel> users) throws IOException;
+    /**
+     * @return stream to write the exported file. Data are written to it as they are exported, so it shouldn't buffer
+     * the whole file in memory. It's closed once the file is written
+     */
+    protected abstract OutputStream openStream(String fileName) throws IOException;
 
-    protected abstract void writeVersion(String fileName, VersionRepresentation version) throws IOException;
+    protected abstract ObjectMapper getObjectMapper();
 
     public static class RealmsHolder {
         List<RealmModel> realms;
@@ -118,9 +135,9 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
     }
 
     public static class UsersHolder {
-        List<UserModel> users;
         int totalCount;
         int currentPageStart;
         int currentPageEnd;
+        String lastUsername;
     }
 }
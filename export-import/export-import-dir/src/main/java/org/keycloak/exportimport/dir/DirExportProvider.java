@@ -1,18 +1,13 @@
 package org.keycloak.exportimport.dir;
 
-import org.keycloak.representations.VersionRepresentation;
-import org.keycloak.exportimport.util.ExportUtils;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.keycloak.exportimport.util.MultipleStepsExportProvider;
-import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.RealmModel;
-import org.keycloak.models.UserModel;
-import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.util.JsonSerialization;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStream;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -56,24 +51,14 @@ public class DirExportProvider extends MultipleStepsExportProvider {
     }
 
     @Override
-    public void writeRealm(String fileName, RealmRepresentation rep) throws IOException {
+    protected OutputStream openStream(String fileName) throws IOException {
         File file = new File(this.rootDirectory, fileName);
-        FileOutputStream stream = new FileOutputStream(file);
-        JsonSerialization.prettyMapper.writeValue(stream, rep);
+        return new FileOutputStream(file);
     }
 
     @Override
-    protected void writeUsers(String fileName, KeycloakSession session, RealmModel realm, List<UserModel> users) throws IOException {
-        File file = new File(this.rootDirectory, fileName);
-        FileOutputStream os = new FileOutputStream(file);
-        ExportUtils.exportUsersToStream(session, realm, users, JsonSerialization.prettyMapper, os);
-    }
-
-    @Override
-    protected void writeVersion(String fileName, VersionRepresentation version) throws IOException {
-        File file = new File(this.rootDirectory, fileName);
-        FileOutputStream stream = new FileOutputStream(file);
-        JsonSerialization.prettyMapper.writeValue(stream, version);
+    protected ObjectMapper getObjectMapper() {
+        return JsonSerialization.prettyMapper;
     }
 
     @Override
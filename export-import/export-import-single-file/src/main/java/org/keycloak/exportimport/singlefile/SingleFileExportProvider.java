@@ -1,15 +1,15 @@
 package org.keycloak.exportimport.singlefile;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.jboss.logging.Logger;
 import org.keycloak.exportimport.ExportProvider;
-import org.keycloak.exportimport.util.ExportImportSessionTask;
 import org.keycloak.exportimport.util.ExportUtils;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.util.JsonSerialization;
 
 import java.io.File;
@@ -38,36 +38,39 @@ public class SingleFileExportProvider implements ExportProvider {
     @Override
     public void exportModel(KeycloakSessionFactory factory) throws IOException {
         logger.infof("Exporting model into file %s", this.file.getAbsolutePath());
-        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+        final List<String> realmNames = new ArrayList<String>();
+        KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
 
             @Override
-            protected void runExportImportTask(KeycloakSession session) throws IOException {
-                List<RealmModel> realms = session.realms().getRealms();
-                List<RealmRepresentation> reps = new ArrayList<RealmRepresentation>();
-                for (RealmModel realm : realms) {
-                    reps.add(ExportUtils.exportRealm(session, realm, true));
+            public void run(KeycloakSession session) {
+                for (RealmModel realm : session.realms().getRealms()) {
+                    realmNames.add(realm.getName());
                 }
-
-                writeToFile(reps);
             }
 
         });
 
+        JsonGenerator generator = createJsonGenerator();
+        try {
+            generator.writeStartArray();
+            for (String realmName : realmNames) {
+                ExportUtils.exportRealmToStream(factory, realmName, true, generator);
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
     }
 
     @Override
     public void exportRealm(KeycloakSessionFactory factory, final String realmName) throws IOException {
         logger.infof("Exporting realm '%s' into file %s", realmName, this.file.getAbsolutePath());
-        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-
-            @Override
-            protected void runExportImportTask(KeycloakSession session) throws IOException {
-                RealmModel realm = session.realms().getRealmByName(realmName);
-                RealmRepresentation realmRep = ExportUtils.exportRealm(session, realm, true);
-                writeToFile(realmRep);
-            }
-
-        });
+        JsonGenerator generator = createJsonGenerator();
+        try {
+            ExportUtils.exportRealmToStream(factory, realmName, true, generator);
+        } finally {
+            generator.close();
+        }
     }
 
     @Override
@@ -78,8 +81,8 @@ public class SingleFileExportProvider implements ExportProvider {
         return JsonSerialization.prettyMapper;
     }
 
-    private void writeToFile(Object reps) throws IOException {
+    private JsonGenerator createJsonGenerator() throws IOException {
         FileOutputStream stream = new FileOutputStream(this.file);
-        getObjectMapper().writeValue(stream, reps);
+        return ExportUtils.createJsonGenerator(getObjectMapper(), stream);
     }
 }
@@ -0,0 +1,157 @@
+package org.keycloak.exportimport.zip;
+
+import de.idyl.winzipaes.AesZipFileEncrypter;
+import de.idyl.winzipaes.impl.AESEncrypter;
+import de.idyl.winzipaes.impl.ExtZipEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes AES encrypted zip entries as their content is written. {@link AesZipFileEncrypter} needs the whole content of
+ * an entry up front, as the sizes are written before it. Here the sizes are written once the entry is done, by seeking
+ * back to its header, so the content is never held in memory.
+ */
+class AesZipEntryEncrypter extends AesZipFileEncrypter {
+
+    // Multiple of the AES block size, the encrypter needs all but the last chunk to be whole blocks
+    private static final int CHUNK_SIZE = 8192;
+
+    // Offset of the compressed size in the local file header, followed by the uncompressed size
+    private static final int SIZES_OFFSET = 18;
+
+    private final RandomAccessFile file;
+    private final OutputStream out;
+
+    private AesZipEntryEncrypter(RandomAccessFile file, OutputStream out, AESEncrypter encrypter) throws IOException {
+        super(out, encrypter);
+        this.file = file;
+        this.out = out;
+    }
+
+    static AesZipEntryEncrypter create(File zipFile, AESEncrypter encrypter) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(zipFile, "rw");
+        return new AesZipEntryEncrypter(file, new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), CHUNK_SIZE), encrypter);
+    }
+
+    /**
+     * Starts an entry, which is complete once the returned stream is closed. Only one entry can be written at a time.
+     */
+    OutputStream openEntry(String name, String password) throws IOException {
+        final ExtZipEntry entry = new ExtZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setTime(System.currentTimeMillis());
+        entry.initEncryptedEntry();
+
+        encrypter.init(password, 256);
+        zipOS.putNextEntry(entry);
+        final int dataStart = zipOS.getWritten();
+        zipOS.writeBytes(encrypter.getSalt());
+        zipOS.writeBytes(encrypter.getPwVerification());
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        return new DeflaterOutputStream(new EncryptingOutputStream(), deflater, CHUNK_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+
+                super.close();
+                zipOS.writeBytes(encrypter.getFinalAuthentication());
+
+                entry.setSize(deflater.getBytesRead());
+                entry.setCompressedSize(zipOS.getWritten() - dataStart);
+                deflater.end();
+                writeSizes(entry);
+            }
+
+        };
+    }
+
+    private void writeSizes(ExtZipEntry entry) throws IOException {
+        out.flush();
+        long end = file.getFilePointer();
+        file.seek(entry.getOffset() + SIZES_OFFSET);
+        writeInt(entry.getCompressedSize());
+        writeInt(entry.getSize());
+        file.seek(end);
+    }
+
+    // Little endian as all zip header fields
+    private void writeInt(long value) throws IOException {
+        file.write(new byte[] { (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24) });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Encrypts the compressed content in whole chunks
+     */
+    private class EncryptingOutputStream extends FilterOutputStream {
+
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int length;
+
+        private EncryptingOutputStream() {
+            super(null);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - length);
+                System.arraycopy(b, off, chunk, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                if (length == CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Only whole chunks can be encrypted before the end of the entry
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeChunk();
+        }
+
+        private void writeChunk() throws IOException {
+            if (length > 0) {
+                encrypter.encrypt(chunk, length);
+                zipOS.writeBytes(chunk, 0, length);
+                length = 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.keycloak.exportimport.zip;
+
+import de.idyl.winzipaes.AesZipFileDecrypter;
+import de.idyl.winzipaes.impl.AESDecrypterBC;
+import de.idyl.winzipaes.impl.ExtZipEntry;
+import org.codehaus.jackson.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keycloak.exportimport.util.ExportUtils;
+import org.keycloak.representations.VersionRepresentation;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.zip.ZipException;
+
+public class ZipExportProviderTest {
+
+    private static final int USERS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File zipFile = new File(folder.getRoot(), "export.zip");
+
+        ZipExportProvider exportProvider = new ZipExportProvider(zipFile, "secret");
+        try {
+            JsonSerialization.mapper.writeValue(exportProvider.openStream("version.json"), VersionRepresentation.SINGLETON);
+
+            RealmRepresentation realm = new RealmRepresentation();
+            realm.setRealm("test");
+            realm.setEnabled(true);
+            JsonSerialization.mapper.writeValue(exportProvider.openStream("test-realm.json"), realm);
+
+            JsonGenerator generator = ExportUtils.createJsonGenerator(exportProvider.getObjectMapper(), exportProvider.openStream("test-users-0.json"));
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("realm", "test");
+                generator.writeFieldName("users");
+                generator.writeStartArray();
+                for (int i = 0; i < USERS; i++) {
+                    UserRepresentation user = new UserRepresentation();
+                    user.setUsername("user-" + i);
+                    user.setEmail("user-" + i + "@localhost");
+                    generator.writeObject(user);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } finally {
+                generator.close();
+            }
+        } finally {
+            exportProvider.close();
+        }
+
+        // Nothing besides the zip is written to the export directory
+        Assert.assertArrayEquals(new String[] { "export.zip" }, folder.getRoot().list());
+
+        AesZipFileDecrypter decrypter = new AesZipFileDecrypter(zipFile, new AESDecrypterBC());
+        try {
+            Assert.assertEquals(3, decrypter.getEntryList().size());
+
+            // Sizes are written to the local header once the entry is done, the first entry starts at the beginning
+            ExtZipEntry first = decrypter.getEntry("version.json");
+            DataInputStream header = new DataInputStream(new FileInputStream(zipFile));
+            try {
+                header.skipBytes(18);
+                Assert.assertEquals(first.getCompressedSize(), Integer.reverseBytes(header.readInt()));
+                Assert.assertEquals(first.getSize(), Integer.reverseBytes(header.readInt()));
+            } finally {
+                header.close();
+            }
+
+            VersionRepresentation version = JsonSerialization.readValue(extract(decrypter, "version.json", "secret"), VersionRepresentation.class);
+            Assert.assertEquals(VersionRepresentation.SINGLETON.getVersion(), version.getVersion());
+
+            RealmRepresentation realm = JsonSerialization.readValue(extract(decrypter, "test-realm.json", "secret"), RealmRepresentation.class);
+            Assert.assertEquals("test", realm.getRealm());
+            Assert.assertTrue(realm.isEnabled());
+
+            RealmRepresentation users = JsonSerialization.readValue(extract(decrypter, "test-users-0.json", "secret"), RealmRepresentation.class);
+            Assert.assertEquals("test", users.getRealm());
+            Assert.assertEquals(USERS, users.getUsers().size());
+            Assert.assertEquals("user-0", users.getUsers().get(0).getUsername());
+            Assert.assertEquals("user-" + (USERS - 1) + "@localhost", users.getUsers().get(USERS - 1).getEmail());
+        } finally {
+            decrypter.close();
+        }
+    }
+
+    @Test
+    public void testWrongPassword() throws Exception {
+        File zipFile = new File(folder.getRoot(), "export.zip");
+
+        ZipExportProvider exportProvider = new ZipExportProvider(zipFile, "secret");
+        JsonSerialization.mapper.writeValue(exportProvider.openStream("version.json"), VersionRepresentation.SINGLETON);
+        exportProvider.close();
+
+        AesZipFileDecrypter decrypter = new AesZipFileDecrypter(zipFile, new AESDecrypterBC());
+        try {
+            extract(decrypter, "version.json", "wrong");
+            Assert.fail("Expected wrong password to fail");
+        } catch (ZipException e) {
+            // expected
+        } finally {
+            decrypter.close();
+        }
+    }
+
+    private static byte[] extract(AesZipFileDecrypter decrypter, String name, String password) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        decrypter.extractEntry(decrypter.getEntry(name), bos, password);
+        return bos.toByteArray();
+    }
+
+}
@@ -93,6 +93,30 @@ public class LDAPConfig {
         return config.get(LDAPConstants.CONNECTION_POOLING);
     }
 
+    public boolean isConnectionPooling() {
+        return Boolean.parseBoolean(getConnectionPooling());
+    }
+
+    public int getConnectionPoolMinSize() {
+        String minSize = config.get(LDAPConstants.CONNECTION_POOL_MIN_SIZE);
+        return minSize == null || minSize.isEmpty() ? LDAPConstants.DEFAULT_CONNECTION_POOL_MIN_SIZE : Integer.parseInt(minSize);
+    }
+
+    public int getConnectionPoolMaxSize() {
+        String maxSize = config.get(LDAPConstants.CONNECTION_POOL_MAX_SIZE);
+        return maxSize == null || maxSize.isEmpty() ? LDAPConstants.DEFAULT_CONNECTION_POOL_MAX_SIZE : Integer.parseInt(maxSize);
+    }
+
+    public long getConnectionPoolIdleTimeout() {
+        String idleTimeout = config.get(LDAPConstants.CONNECTION_POOL_IDLE_TIMEOUT);
+        return idleTimeout == null || idleTimeout.isEmpty() ? LDAPConstants.DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT : Long.parseLong(idleTimeout);
+    }
+
+    public long getConnectionPoolTimeout() {
+        String timeout = config.get(LDAPConstants.CONNECTION_POOL_TIMEOUT);
+        return timeout == null || timeout.isEmpty() ? LDAPConstants.DEFAULT_CONNECTION_POOL_TIMEOUT : Long.parseLong(timeout);
+    }
+
     public Properties getAdditionalConnectionProperties() {
         // not supported for now
         return null;
@@ -32,10 +32,17 @@ import org.keycloak.models.UserFederationSyncResult;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -46,6 +53,9 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     private static final Logger logger = Logger.getLogger(LDAPFederationProviderFactory.class);
     public static final String PROVIDER_NAME = LDAPConstants.LDAP_PROVIDER;
 
+    // Count of users imported within single transaction during sync
+    private static final int IMPORT_TRANSACTION_SIZE = 100;
+
     private LDAPIdentityStoreRegistry ldapStoreRegistry;
 
     @Override
@@ -66,6 +76,9 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     @Override
     public void close() {
+        if (this.ldapStoreRegistry != null) {
+            this.ldapStoreRegistry.close();
+        }
         this.ldapStoreRegistry = null;
     }
 
@@ -225,29 +238,43 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     protected UserFederationSyncResult syncImpl(KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
 
+        long start = System.currentTimeMillis();
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
 
-        boolean pagination = Boolean.parseBoolean(fedModel.getConfig().get(LDAPConstants.PAGINATION));
-        if (pagination) {
+        String threadsConfig = fedModel.getConfig().get(LDAPConstants.SYNC_THREADS);
+        int threads = threadsConfig!=null ? Integer.parseInt(threadsConfig) : LDAPConstants.DEFAULT_SYNC_THREADS;
+
+        // Users are imported by worker threads while the next page is read from LDAP
+        final SyncPipeline pipeline = new SyncPipeline(sessionFactory, realmId, fedModel, threads, syncResult);
+        try {
+            boolean pagination = Boolean.parseBoolean(fedModel.getConfig().get(LDAPConstants.PAGINATION));
+            if (pagination) {
 
-            String pageSizeConfig = fedModel.getConfig().get(LDAPConstants.BATCH_SIZE_FOR_SYNC);
-            int pageSize = pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
+                String pageSizeConfig = fedModel.getConfig().get(LDAPConstants.BATCH_SIZE_FOR_SYNC);
+                int pageSize = pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
 
-            boolean nextPage = true;
-            while (nextPage) {
+                // All pages are read with the same LDAP connection
                 userQuery.setLimit(pageSize);
+                userQuery.getResultPages(new LDAPQuery.PageHandler() {
+                    @Override
+                    public boolean handlePage(List<LDAPObject> users) {
+                        pipeline.submit(users);
+                        return true;
+                    }
+                });
+            } else {
+                // LDAP pagination not available. Whole result is read at once
                 final List<LDAPObject> users = userQuery.getResultList();
-                nextPage = userQuery.getPaginationContext() != null;
-                UserFederationSyncResult currentPageSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-                syncResult.add(currentPageSync);
+                pipeline.submit(users);
             }
-        } else {
-            // LDAP pagination not available. Do everything in single transaction
-            final List<LDAPObject> users = userQuery.getResultList();
-            UserFederationSyncResult currentSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-            syncResult.add(currentSync);
+
+            pipeline.await();
+        } finally {
+            pipeline.shutdown();
         }
 
+        syncResult.setDuration(System.currentTimeMillis() - start);
+        logger.debugf("Synced %d users in %d ms, %.1f users/s", syncResult.getProcessed(), syncResult.getDuration(), syncResult.getThroughput());
         return syncResult;
     }
 
@@ -270,90 +297,253 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return queryHolder.query;
     }
 
-    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
+    /**
+     * Imports the users in single transaction. If the transaction fails, the users are imported again each in it's own
+     * transaction, so that one bad user doesn't fail the others.
+     */
+    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
+        if (ldapUsers.size() == 1) {
+            return importLdapUser(sessionFactory, realmId, fedModel, ldapUsers.get(0));
+        }
+
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        final ImportState state = new ImportState();
 
-        class BooleanHolder {
-            private boolean value = true;
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                    RealmModel currentRealm = session.realms().getRealm(realmId);
+
+                    for (LDAPObject ldapUser : ldapUsers) {
+                        importLdapUser(session, currentRealm, ldapFedProvider, fedModel, ldapUser, syncResult, state);
+                    }
+                }
+
+            });
+            return syncResult;
+        } catch (RuntimeException e) {
+            logger.debugf(e, "Failed to import %d users from LDAP in single transaction. Importing them one by one", ldapUsers.size());
+
+            // Not every store rolls back, so remove all users the batch added
+            removeImportedUsers(sessionFactory, realmId, fedModel, state.added);
+
+            UserFederationSyncResult oneByOneResult = new UserFederationSyncResult();
+            for (LDAPObject ldapUser : ldapUsers) {
+                oneByOneResult.add(importLdapUser(sessionFactory, realmId, fedModel, ldapUser));
+            }
+            return oneByOneResult;
         }
-        final BooleanHolder exists = new BooleanHolder();
+    }
 
-        for (final LDAPObject ldapUser : ldapUsers) {
+    protected UserFederationSyncResult importLdapUser(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final LDAPObject ldapUser) {
+        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        final ImportState state = new ImportState();
 
-            try {
+        try {
 
-                // Process each user in it's own transaction to avoid global fail
-                KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+            // Process user in it's own transaction to avoid global fail
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                    RealmModel currentRealm = session.realms().getRealm(realmId);
+                    importLdapUser(session, currentRealm, ldapFedProvider, fedModel, ldapUser, syncResult, state);
+                }
+
+            });
+        } catch (ModelException me) {
+            logger.error("Failed during import user from LDAP", me);
+            syncResult.setAdded(0);
+            syncResult.setUpdated(0);
+            syncResult.setFailed(1);
+
+            // Remove user if we already added him during this transaction
+            removeImportedUsers(sessionFactory, realmId, fedModel, state.added);
+        }
+
+        return syncResult;
+    }
+
+    protected void importLdapUser(KeycloakSession session, RealmModel currentRealm, LDAPFederationProvider ldapFedProvider, UserFederationProviderModel fedModel, LDAPObject ldapUser,
+                                  UserFederationSyncResult syncResult, ImportState state) {
+        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+
+        if (currentUser == null) {
+
+            // Add new user to Keycloak. Tracked before the import, which may fail half way
+            state.added.add(ldapUser);
+            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
+            syncResult.increaseAdded();
+
+        } else {
+            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+
+                // Update keycloak user
+                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                for (UserFederationMapperModel mapperModel : federationMappers) {
+                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
+                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                }
+
+                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
+                syncResult.increaseUpdated();
+            } else {
+                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
+                syncResult.increaseFailed();
+            }
+        }
+    }
+
+    /**
+     * Removes users added by a failed transaction. Stores which rolled the transaction back don't have them anymore, so
+     * nothing is removed there.
+     */
+    private void removeImportedUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
+        if (ldapUsers.isEmpty()) {
+            return;
+        }
+
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                RealmModel currentRealm = session.realms().getRealm(realmId);
+                for (LDAPObject ldapUser : ldapUsers) {
+                    removeImportedUser(session, currentRealm, ldapFedProvider, ldapUser);
+                }
+            }
+
+        });
+    }
+
+    protected void removeImportedUser(KeycloakSession session, RealmModel currentRealm, LDAPFederationProvider ldapFedProvider, LDAPObject ldapUser) {
+        String username = null;
+        try {
+            username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        } catch (ModelException ignore) {
+        }
+
+        if (username != null) {
+            UserModel existing = session.userStorage().getUserByUsername(username, currentRealm);
+            if (existing != null) {
+                session.userStorage().removeUser(currentRealm, existing);
+            }
+        }
+    }
+
+    /**
+     * Users added to Keycloak by a transaction, which need to be removed if it fails
+     */
+    protected static class ImportState {
+        final List<LDAPObject> added = new ArrayList<LDAPObject>();
+    }
+
+    /**
+     * Imports pages of LDAP users with a pool of worker threads. Each page is split into batches imported in single
+     * transaction. Only a limited number of batches is queued, so reading from LDAP waits when the workers are behind.
+     */
+    private class SyncPipeline {
+
+        private final KeycloakSessionFactory sessionFactory;
+        private final String realmId;
+        private final UserFederationProviderModel fedModel;
+        private final UserFederationSyncResult syncResult;
+        private final long start = System.currentTimeMillis();
+
+        private final ExecutorService executor;
+        private final Semaphore queued;
+        private final int maxQueued;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        private SyncPipeline(KeycloakSessionFactory sessionFactory, String realmId, UserFederationProviderModel fedModel, int threads, UserFederationSyncResult syncResult) {
+            this.sessionFactory = sessionFactory;
+            this.realmId = realmId;
+            this.fedModel = fedModel;
+            this.syncResult = syncResult;
+
+            this.maxQueued = threads * 2;
+            this.queued = new Semaphore(maxQueued);
+            this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ldap-sync-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+            });
+        }
+
+        private void submit(List<LDAPObject> users) {
+            for (int i = 0; i < users.size(); i += IMPORT_TRANSACTION_SIZE) {
+                final List<LDAPObject> batch = users.subList(i, Math.min(i + IMPORT_TRANSACTION_SIZE, users.size()));
+
+                acquire(1);
+                checkFailure();
+
+                executor.execute(new Runnable() {
 
                     @Override
-                    public void run(KeycloakSession session) {
-                        LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
-                        RealmModel currentRealm = session.realms().getRealm(realmId);
-
-                        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        exists.value = true;
-                        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
-
-                        if (currentUser == null) {
-
-                            // Add new user to Keycloak
-                            exists.value = false;
-                            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
-                            syncResult.increaseAdded();
-
-                        } else {
-                            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
-
-                                // Update keycloak user
-                                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
-                                for (UserFederationMapperModel mapperModel : federationMappers) {
-                                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
-                                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                    public void run() {
+                        try {
+                            if (failure.get() == null) {
+                                UserFederationSyncResult batchResult = importLdapUsers(sessionFactory, realmId, fedModel, batch);
+                                synchronized (syncResult) {
+                                    syncResult.add(batchResult);
+                                    syncResult.setDuration(System.currentTimeMillis() - start);
+                                    logger.debugf("Sync progress: %d users processed, %.1f users/s", syncResult.getProcessed(), syncResult.getThroughput());
                                 }
-
-                                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
-                                syncResult.increaseUpdated();
-                            } else {
-                                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
-                                syncResult.increaseFailed();
                             }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            queued.release();
                         }
                     }
 
                 });
-            } catch (ModelException me) {
-                logger.error("Failed during import user from LDAP", me);
-                syncResult.increaseFailed();
+            }
+        }
 
-                // Remove user if we already added him during this transaction
-                if (!exists.value) {
-                    KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
-
-                        @Override
-                        public void run(KeycloakSession session) {
-                            LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
-                            RealmModel currentRealm = session.realms().getRealm(realmId);
-                            String username = null;
-                            try {
-                                username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                            } catch (ModelException ignore) {
-                            }
+        private void await() {
+            acquire(maxQueued);
+            queued.release(maxQueued);
+            checkFailure();
+        }
 
-                            if (username != null) {
-                                UserModel existing = session.userStorage().getUserByUsername(username, currentRealm);
-                                if (existing != null) {
-                                    session.userStorage().removeUser(currentRealm, existing);
-                                }
-                            }
-                        }
+        private void shutdown() {
+            executor.shutdownNow();
+        }
 
-                    });
-                }
+        private void acquire(int permits) {
+            try {
+                queued.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelException("Interrupted during sync of users from LDAP", e);
             }
         }
 
-        return syncResult;
+        private void checkFailure() {
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new ModelException(t);
+            }
+        }
     }
 
     protected SPNEGOAuthenticator createSPNEGOAuthenticator(String spnegoToken, CommonKerberosConfig kerberosConfig) {
@@ -32,7 +32,6 @@ public class LDAPQuery {
 
     private int offset;
     private int limit;
-    private byte[] paginationContext;
     private String searchDn;
     private final Set<Condition> conditions = new LinkedHashSet<Condition>();
     private final Set<Sort> ordering = new LinkedHashSet<Sort>();
@@ -130,18 +129,8 @@ public class LDAPQuery {
         return offset;
     }
 
-    public byte[] getPaginationContext() {
-        return paginationContext;
-    }
-
-
     public List<LDAPObject> getResultList() {
-
-        // Apply mappers now
-        for (UserFederationMapperModel mapperModel : mappers) {
-            LDAPFederationMapper fedMapper = ldapFedProvider.getMapper(mapperModel);
-            fedMapper.beforeLDAPQuery(mapperModel, this);
-        }
+        applyMappers();
 
         List<LDAPObject> result = new ArrayList<LDAPObject>();
 
@@ -156,6 +145,29 @@ public class LDAPQuery {
         return result;
     }
 
+    /**
+     * Reads all the results page by page when pagination is enabled and a limit is set, the limit being the page size.
+     * Otherwise all the results are passed as a single page.
+     */
+    public void getResultPages(PageHandler handler) {
+        applyMappers();
+
+        try {
+            ldapFedProvider.getLdapIdentityStore().fetchQueryResultPages(this, handler);
+        } catch (ModelException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ModelException("LDAP Query failed", e);
+        }
+    }
+
+    private void applyMappers() {
+        for (UserFederationMapperModel mapperModel : mappers) {
+            LDAPFederationMapper fedMapper = ldapFedProvider.getMapper(mapperModel);
+            fedMapper.beforeLDAPQuery(mapperModel, this);
+        }
+    }
+
     public LDAPObject getFirstResult() {
         List<LDAPObject> results = getResultList();
 
@@ -182,11 +194,6 @@ public class LDAPQuery {
         return this;
     }
 
-    public LDAPQuery setPaginationContext(byte[] paginationContext) {
-        this.paginationContext = paginationContext;
-        return this;
-    }
-
     public Set<Condition> getConditions() {
         return this.conditions;
     }
@@ -199,4 +206,15 @@ public class LDAPQuery {
         this.ldapFilter = ldapFilter;
     }
 
+    /**
+     * Receives the pages of a query
+     */
+    public interface PageHandler {
+
+        /**
+         * @return true to read the next page, false to stop the query
+         */
+        boolean handlePage(List<LDAPObject> page);
+    }
+
 }
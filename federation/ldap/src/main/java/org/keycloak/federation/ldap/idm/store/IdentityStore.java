@@ -50,6 +50,8 @@ public interface IdentityStore {
 
     List<LDAPObject> fetchQueryResults(LDAPQuery LDAPQuery);
 
+    void fetchQueryResultPages(LDAPQuery LDAPQuery, LDAPQuery.PageHandler handler);
+
     int countQueryResults(LDAPQuery LDAPQuery);
 
 //    // Relationship query
@@ -0,0 +1,245 @@
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.ModelException;
+
+/**
+ * <p>Pool of LDAP contexts managed by Keycloak, used instead of the JNDI connection pool.</p>
+ *
+ * <p>At most <code>maxSize</code> contexts are in use at the same time, requests wait up to <code>timeout</code> for one
+ * of them to be released. Released contexts are reused most recently used first, so surplus contexts stay idle and are
+ * closed once they have been idle for longer than <code>idleTimeout</code>, keeping at least <code>minSize</code> of them
+ * open. Contexts which were idle for a while are checked before they are handed out again.</p>
+ */
+public class LDAPContextPool {
+
+    private static final Logger logger = Logger.getLogger(LDAPContextPool.class);
+
+    // Contexts idle for longer than this are validated before reuse
+    static final long VALIDATION_INTERVAL = 30000;
+
+    interface ContextFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private final String name;
+    private final ContextFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long timeout;
+    private final long validationInterval;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    LDAPContextPool(String name, ContextFactory factory, int minSize, int maxSize, long idleTimeout, long timeout) {
+        this(name, factory, minSize, maxSize, idleTimeout, timeout, VALIDATION_INTERVAL);
+    }
+
+    LDAPContextPool(String name, ContextFactory factory, int minSize, int maxSize, long idleTimeout, long timeout, long validationInterval) {
+        this.name = name;
+        this.factory = factory;
+        this.minSize = Math.min(minSize, maxSize);
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.timeout = timeout;
+        this.validationInterval = validationInterval;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Opens contexts until <code>minSize</code> of them are idle. Failures are just logged, as the LDAP server may not be
+     * available yet, contexts are then opened once they are needed.
+     */
+    void fill() {
+        try {
+            while (!closed && idle.size() < minSize) {
+                LdapContext context = factory.create();
+                created.incrementAndGet();
+                idle.offerLast(new PooledContext(context));
+            }
+        } catch (NamingException e) {
+            logger.warnf("Could not open LDAP connections for pool %s: %s", name, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warnf("Could not open LDAP connections for pool %s: %s", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns an idle context or creates a new one. Waits up to <code>timeout</code> milliseconds if <code>maxSize</code>
+     * contexts are already in use. The context must be given back with {@link #release(LdapContext, boolean)}. Once the
+     * pool is closed, contexts are still handed out, but they are closed when released.
+     *
+     * @throws ModelException if no context was released in time
+     */
+    LdapContext borrow() throws NamingException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new ModelException("Timeout after " + timeout + " ms while waiting for LDAP connection from pool " + name + ": " + getStatistics());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedNamingException("Interrupted while waiting for LDAP connection from pool " + name);
+        }
+
+        try {
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                // Contexts idle for longer than idleTimeout are kept only to fill minSize, so they are validated too
+                long idleTime = System.currentTimeMillis() - pooled.lastUsed;
+                if ((idleTime > validationInterval || idleTime > idleTimeout) && !isValid(pooled.context)) {
+                    validationFailures.incrementAndGet();
+                    destroy(pooled.context);
+                } else {
+                    borrowed.incrementAndGet();
+                    return pooled.context;
+                }
+            }
+
+            LdapContext context = factory.create();
+            created.incrementAndGet();
+            borrowed.incrementAndGet();
+            return context;
+        } catch (NamingException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param broken true if the context failed in a way it can't be reused, in which case it's closed
+     */
+    void release(LdapContext context, boolean broken) {
+        try {
+            if (broken || closed) {
+                destroy(context);
+            } else {
+                idle.offerFirst(new PooledContext(context));
+                evictIdle();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    void close() {
+        closed = true;
+
+        if (logger.isDebugEnabled()) {
+            logger.debugf("Closing LDAP connection pool %s: %s", name, getStatistics());
+        }
+
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled.context);
+        }
+    }
+
+    public int getActive() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getDestroyed() {
+        return destroyed.get();
+    }
+
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    public Map<String, String> getStatistics() {
+        Map<String, String> stats = new LinkedHashMap<String, String>();
+        stats.put("active", String.valueOf(getActive()));
+        stats.put("idle", String.valueOf(getIdle()));
+        stats.put("minSize", String.valueOf(minSize));
+        stats.put("maxSize", String.valueOf(maxSize));
+        stats.put("created", String.valueOf(getCreated()));
+        stats.put("destroyed", String.valueOf(getDestroyed()));
+        stats.put("borrowed", String.valueOf(getBorrowed()));
+        stats.put("validationFailures", String.valueOf(getValidationFailures()));
+        return stats;
+    }
+
+    /**
+     * @return true if the exception means the connection of the context can't be used anymore
+     */
+    static boolean isConnectionError(NamingException e) {
+        return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+
+        PooledContext oldest;
+        while (idle.size() > minSize && (oldest = idle.peekLast()) != null && now - oldest.lastUsed > idleTimeout) {
+            if (idle.removeLastOccurrence(oldest)) {
+                destroy(oldest.context);
+            }
+        }
+    }
+
+    private boolean isValid(LdapContext context) {
+        try {
+            context.getAttributes("", new String[] { "objectClass" });
+            return true;
+        } catch (NamingException e) {
+            // Any response from the server means the connection is still fine
+            return !isConnectionError(e);
+        }
+    }
+
+    private void destroy(LdapContext context) {
+        destroyed.incrementAndGet();
+        try {
+            context.close();
+        } catch (NamingException e) {
+            logger.debugf(e, "Could not close LDAP context of pool %s", name);
+        }
+    }
+
+    private static class PooledContext {
+
+        private final LdapContext context;
+        private final long lastUsed;
+
+        private PooledContext(LdapContext context) {
+            this.context = context;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -69,6 +69,17 @@ public class LDAPIdentityStore implements IdentityStore {
         return this.config;
     }
 
+    public LDAPOperationManager getOperationManager() {
+        return this.operationManager;
+    }
+
+    /**
+     * Closes pooled LDAP connections of this store
+     */
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void add(LDAPObject ldapObject) {
         // id will be assigned by the ldap server
@@ -120,23 +131,20 @@ public class LDAPIdentityStore implements IdentityStore {
         try {
             String baseDN = identityQuery.getSearchDn();
 
-            for (Condition condition : identityQuery.getConditions()) {
-
+            Condition uuidCondition = getUuidCondition(identityQuery);
+            if (uuidCondition != null) {
                 // Check if we are searching by ID
-                String uuidAttrName = getConfig().getUuidLDAPAttributeName();
-                if (condition.getParameter() != null && condition.getParameter().getName().equalsIgnoreCase(uuidAttrName)) {
-                    if (EqualCondition.class.isInstance(condition)) {
-                        EqualCondition equalCondition = (EqualCondition) condition;
-                        SearchResult search = this.operationManager
-                                .lookupById(baseDN, equalCondition.getValue().toString(), identityQuery.getReturningLdapAttributes());
-
-                        if (search != null) {
-                            results.add(populateAttributedType(search, identityQuery));
-                        }
-                    }
+                if (EqualCondition.class.isInstance(uuidCondition)) {
+                    EqualCondition equalCondition = (EqualCondition) uuidCondition;
+                    SearchResult search = this.operationManager
+                            .lookupById(baseDN, equalCondition.getValue().toString(), identityQuery.getReturningLdapAttributes());
 
-                    return results;
+                    if (search != null) {
+                        results.add(populateAttributedType(search, identityQuery));
+                    }
                 }
+
+                return results;
             }
 
 
@@ -161,6 +169,48 @@ public class LDAPIdentityStore implements IdentityStore {
         return results;
     }
 
+    @Override
+    public void fetchQueryResultPages(final LDAPQuery identityQuery, final LDAPQuery.PageHandler handler) {
+        if (!getConfig().isPagination() || identityQuery.getLimit() <= 0 || getUuidCondition(identityQuery) != null) {
+            handler.handlePage(fetchQueryResults(identityQuery));
+            return;
+        }
+
+        if (identityQuery.getSorting() != null && !identityQuery.getSorting().isEmpty()) {
+            throw new ModelException("LDAP Identity Store does not yet support sorted queries.");
+        }
+
+        try {
+            final String baseDN = identityQuery.getSearchDn();
+            StringBuilder filter = createIdentityTypeSearchFilter(identityQuery);
+
+            this.operationManager.searchPaginated(baseDN, filter.toString(), identityQuery, new LDAPOperationManager.PageHandler() {
+                @Override
+                public boolean handlePage(List<SearchResult> page) {
+                    List<LDAPObject> results = new ArrayList<>(page.size());
+                    for (SearchResult result : page) {
+                        if (!result.getNameInNamespace().equalsIgnoreCase(baseDN)) {
+                            results.add(populateAttributedType(result, identityQuery));
+                        }
+                    }
+                    return handler.handlePage(results);
+                }
+            });
+        } catch (NamingException e) {
+            throw new ModelException("Querying of LDAP failed " + identityQuery, e);
+        }
+    }
+
+    private Condition getUuidCondition(LDAPQuery identityQuery) {
+        String uuidAttrName = getConfig().getUuidLDAPAttributeName();
+        for (Condition condition : identityQuery.getConditions()) {
+            if (condition.getParameter() != null && condition.getParameter().getName().equalsIgnoreCase(uuidAttrName)) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
     @Override
     public int countQueryResults(LDAPQuery identityQuery) {
         int limit = identityQuery.getLimit();
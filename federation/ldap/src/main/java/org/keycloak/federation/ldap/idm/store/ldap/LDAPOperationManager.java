@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import javax.naming.AuthenticationException;
 import javax.naming.Binding;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -48,9 +49,45 @@ public class LDAPOperationManager {
     private final LDAPConfig config;
     private final Map<String, Object> connectionProperties;
 
+    // Used for all operations except authentication, null if connection pooling is disabled
+    private final LDAPContextPool contextPool;
+
+    // Used just to validate credentials of users, null if connection pooling is disabled
+    private final LDAPContextPool bindPool;
+
     public LDAPOperationManager(LDAPConfig config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+
+        if (config.isConnectionPooling()) {
+            LDAPContextPool.ContextFactory factory = new LDAPContextPool.ContextFactory() {
+                @Override
+                public LdapContext create() throws NamingException {
+                    return createLdapContext();
+                }
+            };
+
+            int minSize = config.getConnectionPoolMinSize();
+            int maxSize = config.getConnectionPoolMaxSize();
+            long idleTimeout = config.getConnectionPoolIdleTimeout();
+            long timeout = config.getConnectionPoolTimeout();
+
+            this.contextPool = new LDAPContextPool("operations", factory, minSize, maxSize, idleTimeout, timeout);
+            this.bindPool = new LDAPContextPool("bind", factory, minSize, maxSize, idleTimeout, timeout);
+            this.contextPool.fill();
+            this.bindPool.fill();
+        } else {
+            this.contextPool = null;
+            this.bindPool = null;
+        }
+    }
+
+    // Used by tests to provide the connections
+    LDAPOperationManager(LDAPConfig config, LDAPContextPool contextPool, LDAPContextPool bindPool) {
+        this.config = config;
+        this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+        this.contextPool = contextPool;
+        this.bindPool = bindPool;
     }
 
     /**
@@ -165,39 +202,64 @@ public class LDAPOperationManager {
         }
     }
 
+    /**
+     * Returns the first page of a paginated search. The search is not continued, use
+     * {@link #searchPaginated(String, String, LDAPQuery, PageHandler)} to read all the pages.
+     */
     public List<SearchResult> searchPaginated(final String baseDN, final String filter, final LDAPQuery identityQuery) throws NamingException {
         final List<SearchResult> result = new ArrayList<SearchResult>();
+
+        searchPaginated(baseDN, filter, identityQuery, new PageHandler() {
+            @Override
+            public boolean handlePage(List<SearchResult> page) {
+                result.addAll(page);
+                return false;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * <p>
+     * Reads the results of a paginated search page by page. The paged results cookie is only valid on the connection that
+     * returned it, so all the pages are read with the same connection, which is held until the search is done.
+     * </p>
+     *
+     * @param handler called with each page, returns false to stop reading further pages
+     */
+    public void searchPaginated(final String baseDN, final String filter, final LDAPQuery identityQuery, final PageHandler handler) throws NamingException {
         final SearchControls cons = getSearchControls(identityQuery.getReturningLdapAttributes(), identityQuery.getSearchScope());
 
         try {
-            return execute(new LdapOperation<List<SearchResult>>() {
+            execute(new LdapOperation<Void>() {
                 @Override
-                public List<SearchResult> execute(LdapContext context) throws NamingException {
+                public Void execute(LdapContext context) throws NamingException {
                     try {
-                        byte[] cookie = identityQuery.getPaginationContext();
-                        PagedResultsControl pagedControls = new PagedResultsControl(identityQuery.getLimit(), cookie, Control.CRITICAL);
-                        context.setRequestControls(new Control[] { pagedControls });
+                        byte[] cookie = null;
+                        do {
+                            context.setRequestControls(new Control[] { new PagedResultsControl(identityQuery.getLimit(), cookie, Control.CRITICAL) });
 
-                        NamingEnumeration<SearchResult> search = context.search(baseDN, filter, cons);
+                            List<SearchResult> page = new ArrayList<SearchResult>();
+                            NamingEnumeration<SearchResult> search = context.search(baseDN, filter, cons);
 
-                        while (search.hasMoreElements()) {
-                            result.add(search.nextElement());
-                        }
+                            while (search.hasMoreElements()) {
+                                page.add(search.nextElement());
+                            }
+
+                            search.close();
 
-                        search.close();
+                            cookie = getPagedResultsCookie(context);
 
-                        Control[] responseControls = context.getResponseControls();
-                        if (responseControls != null) {
-                            for (Control respControl : responseControls) {
-                                if (respControl instanceof PagedResultsResponseControl) {
-                                    PagedResultsResponseControl prrc = (PagedResultsResponseControl)respControl;
-                                    cookie = prrc.getCookie();
-                                    identityQuery.setPaginationContext(cookie);
-                                }
+                            if (!handler.handlePage(page) && cookie != null) {
+                                // Let the server release the remaining results of the search
+                                context.setRequestControls(new Control[] { new PagedResultsControl(0, cookie, Control.CRITICAL) });
+                                context.search(baseDN, filter, cons).close();
+                                cookie = null;
                             }
-                        }
+                        } while (cookie != null);
 
-                        return result;
+                        return null;
                     } catch (IOException ioe) {
                         logger.errorf(ioe, "Could not query server with paginated query using DN [%s], filter [%s]", baseDN, filter);
                         throw new NamingException(ioe.getMessage());
@@ -210,6 +272,20 @@ public class LDAPOperationManager {
         }
     }
 
+    // Returns null once the last page was read
+    private byte[] getPagedResultsCookie(LdapContext context) throws NamingException {
+        Control[] responseControls = context.getResponseControls();
+        if (responseControls != null) {
+            for (Control respControl : responseControls) {
+                if (respControl instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl) respControl).getCookie();
+                    return cookie != null && cookie.length > 0 ? cookie : null;
+                }
+            }
+        }
+        return null;
+    }
+
     private SearchControls getSearchControls(Collection<String> returningAttributes, int searchScope) {
         final SearchControls cons = new SearchControls();
 
@@ -324,6 +400,10 @@ public class LDAPOperationManager {
      * @return
      */
     public boolean authenticate(String dn, String password) {
+        if (bindPool != null) {
+            return authenticatePooled(dn, password);
+        }
+
         InitialContext authCtx = null;
 
         try {
@@ -360,6 +440,72 @@ public class LDAPOperationManager {
         }
     }
 
+    /**
+     * <p>
+     * Binds a pooled connection as the given DN to validate the password, and then binds it back to the configured
+     * bind DN, so the password of the user isn't kept with the connection.
+     * </p>
+     */
+    private boolean authenticatePooled(String dn, String password) {
+        if (password == null || password.isEmpty()) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf("Authentication failed for DN [%s]: Empty password used", dn);
+            }
+            return false;
+        }
+
+        LdapContext context;
+        try {
+            context = bindPool.borrow();
+        } catch (NamingException e) {
+            logger.errorf(e, "Could not get LDAP connection to authenticate DN [%s]", dn);
+            return false;
+        }
+
+        boolean broken = true;
+        try {
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            context.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+
+            boolean authenticated;
+            try {
+                context.reconnect(null);
+                authenticated = true;
+            } catch (AuthenticationException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debugf(e, "Authentication failed for DN [%s]", dn);
+                }
+                authenticated = false;
+            }
+
+            // Bind back, so the connection can be reused for the next user
+            restoreEnvironment(context, Context.SECURITY_AUTHENTICATION);
+            restoreEnvironment(context, Context.SECURITY_PRINCIPAL);
+            restoreEnvironment(context, Context.SECURITY_CREDENTIALS);
+            context.reconnect(null);
+
+            broken = false;
+            return authenticated;
+        } catch (NamingException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf(e, "Authentication failed for DN [%s]", dn);
+            }
+            return false;
+        } finally {
+            bindPool.release(context, broken);
+        }
+    }
+
+    private void restoreEnvironment(LdapContext context, String name) throws NamingException {
+        Object value = this.connectionProperties.get(name);
+        if (value != null) {
+            context.addToEnvironment(name, value);
+        } else {
+            context.removeFromEnvironment(name);
+        }
+    }
+
     public void modifyAttributes(final String dn, final ModificationItem[] mods) {
         try {
             if (logger.isTraceEnabled()) {
@@ -487,10 +633,8 @@ public class LDAPOperationManager {
             logger.warn("LDAP URL is null. LDAPOperationManager won't work correctly");
         }
 
-        String connectionPooling = this.config.getConnectionPooling();
-        if (connectionPooling != null) {
-            env.put("com.sun.jndi.ldap.connect.pool", connectionPooling);
-        }
+        // Connections are pooled by LDAPContextPool, so the JNDI pool is never used
+        env.put("com.sun.jndi.ldap.connect.pool", "false");
 
         // Just dump the additional properties
         Properties additionalProperties = this.config.getAdditionalConnectionProperties();
@@ -512,6 +656,10 @@ public class LDAPOperationManager {
     }
 
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
+        if (contextPool != null) {
+            return executePooled(operation);
+        }
+
         LdapContext context = null;
 
         try {
@@ -530,10 +678,65 @@ public class LDAPOperationManager {
         }
     }
 
+    private <R> R executePooled(LdapOperation<R> operation) throws NamingException {
+        LdapContext context = contextPool.borrow();
+        boolean broken = true;
+
+        try {
+            R result = operation.execute(context);
+            broken = false;
+            return result;
+        } catch (NamingException ne) {
+            broken = LDAPContextPool.isConnectionError(ne);
+            throw ne;
+        } finally {
+            if (!broken) {
+                try {
+                    // Paginated searches set request controls, which must not be used by the next operation
+                    context.setRequestControls(null);
+                } catch (NamingException ne) {
+                    broken = true;
+                }
+            }
+            contextPool.release(context, broken);
+        }
+    }
+
+    /**
+     * <p>
+     * Closes the pooled connections. Only needed when connection pooling is enabled.
+     * </p>
+     */
+    public void close() {
+        if (contextPool != null) {
+            contextPool.close();
+            bindPool.close();
+        }
+    }
+
+    public LDAPContextPool getContextPool() {
+        return contextPool;
+    }
+
+    public LDAPContextPool getBindPool() {
+        return bindPool;
+    }
+
     private interface LdapOperation<R> {
         R execute(LdapContext context) throws NamingException;
     }
 
+    /**
+     * Receives the pages of a paginated search
+     */
+    public interface PageHandler {
+
+        /**
+         * @return true to read the next page, false to stop the search
+         */
+        boolean handlePage(List<SearchResult> page) throws NamingException;
+    }
+
     private Set<String> getReturningAttributes(final Collection<String> returningAttributes) {
         Set<String> result = new HashSet<String>();
 
@@ -0,0 +1,155 @@
+package org.keycloak.federation.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserFederationProviderModel;
+import org.keycloak.models.UserFederationSyncResult;
+
+/**
+ * Import of a batch of users into a store, which doesn't roll back, fails in the middle of the batch.
+ */
+public class LDAPSyncBatchTest {
+
+    @Test
+    public void testFailureInBatch() {
+        NonTransactionalStoreFactory factory = new NonTransactionalStoreFactory("user3");
+        List<LDAPObject> batch = Arrays.asList(user("user1"), user("user2"), user("user3"), user("user4"), user("user5"));
+
+        UserFederationSyncResult result = factory.importLdapUsers(sessionFactory(), "realm", new UserFederationProviderModel(), batch);
+
+        Assert.assertEquals(4, result.getAdded());
+        Assert.assertEquals(0, result.getUpdated());
+        Assert.assertEquals(1, result.getFailed());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("user1", "user2", "user4", "user5")), factory.store);
+
+        // user1 and user2 were written before the batch failed, user3 failed half way twice
+        Assert.assertEquals(Arrays.asList("user1", "user2", "user3", "user3"), factory.removed);
+    }
+
+    @Test
+    public void testExistingUsersNotRemoved() {
+        NonTransactionalStoreFactory factory = new NonTransactionalStoreFactory("user3");
+        factory.store.add("user1");
+        List<LDAPObject> batch = Arrays.asList(user("user1"), user("user2"), user("user3"));
+
+        UserFederationSyncResult result = factory.importLdapUsers(sessionFactory(), "realm", new UserFederationProviderModel(), batch);
+
+        Assert.assertEquals(1, result.getAdded());
+        Assert.assertEquals(1, result.getUpdated());
+        Assert.assertEquals(1, result.getFailed());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("user1", "user2")), factory.store);
+        Assert.assertFalse(factory.removed.contains("user1"));
+    }
+
+    private static LDAPObject user(String username) {
+        LDAPObject user = new LDAPObject();
+        user.setUuid(username);
+        return user;
+    }
+
+    /**
+     * Every write is visible at once and stays there even if the transaction is rolled back
+     */
+    private static class NonTransactionalStoreFactory extends LDAPFederationProviderFactory {
+
+        private final String failingUser;
+        private final Set<String> store = new LinkedHashSet<String>();
+        private final List<String> removed = new ArrayList<String>();
+
+        private NonTransactionalStoreFactory(String failingUser) {
+            this.failingUser = failingUser;
+        }
+
+        @Override
+        public LDAPFederationProvider getInstance(KeycloakSession session, UserFederationProviderModel model) {
+            return null;
+        }
+
+        @Override
+        protected synchronized void importLdapUser(KeycloakSession session, RealmModel currentRealm, LDAPFederationProvider ldapFedProvider, UserFederationProviderModel fedModel,
+                                                   LDAPObject ldapUser, UserFederationSyncResult syncResult, ImportState state) {
+            String username = ldapUser.getUuid();
+            if (store.contains(username)) {
+                syncResult.increaseUpdated();
+                return;
+            }
+
+            state.added.add(ldapUser);
+            store.add(username);
+            if (username.equals(failingUser)) {
+                throw new ModelException("Failed to import " + username);
+            }
+            syncResult.increaseAdded();
+        }
+
+        @Override
+        protected synchronized void removeImportedUser(KeycloakSession session, RealmModel currentRealm, LDAPFederationProvider ldapFedProvider, LDAPObject ldapUser) {
+            removed.add(ldapUser.getUuid());
+            store.remove(ldapUser.getUuid());
+        }
+    }
+
+    private static KeycloakSessionFactory sessionFactory() {
+        final RealmModel realm = stub(RealmModel.class, null);
+        final RealmProvider realms = stub(RealmProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getRealm") ? realm : null;
+            }
+        });
+        final KeycloakTransactionManager transaction = stub(KeycloakTransactionManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("isActive") ? true : null;
+            }
+        });
+        final KeycloakSession session = stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getTransaction")) return transaction;
+                if (method.getName().equals("realms")) return realms;
+                return null;
+            }
+        });
+        return stub(KeycloakSessionFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("create") ? session : null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (handler != null) {
+                    Object result = handler.invoke(proxy, method, args);
+                    if (result != null) return result;
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                return null;
+            }
+        }));
+    }
+}
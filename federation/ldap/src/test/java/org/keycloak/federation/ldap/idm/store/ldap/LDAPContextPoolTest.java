@@ -0,0 +1,169 @@
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.naming.CommunicationException;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ModelException;
+
+public class LDAPContextPoolTest {
+
+    // Contexts fail once the connection is lost
+    private final AtomicBoolean connectionLost = new AtomicBoolean();
+
+    private final LDAPContextPool.ContextFactory factory = new LDAPContextPool.ContextFactory() {
+        @Override
+        public LdapContext create() throws NamingException {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { LdapContext.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (method.getName().equals("getAttributes") && connectionLost.get()) {
+                        throw new CommunicationException("Connection lost");
+                    }
+                    return null;
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testReuse() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 5, 60000, 1000);
+
+        LdapContext context = pool.borrow();
+        Assert.assertEquals(1, pool.getActive());
+        pool.release(context, false);
+
+        Assert.assertEquals(0, pool.getActive());
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertSame(context, pool.borrow());
+        Assert.assertEquals(1, pool.getCreated());
+        Assert.assertEquals(2, pool.getBorrowed());
+    }
+
+    @Test
+    public void testBrokenNotReused() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 5, 60000, 1000);
+
+        LdapContext context = pool.borrow();
+        pool.release(context, true);
+
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(1, pool.getDestroyed());
+        Assert.assertNotSame(context, pool.borrow());
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 5, 0, 1000);
+
+        LdapContext context1 = pool.borrow();
+        LdapContext context2 = pool.borrow();
+        LdapContext context3 = pool.borrow();
+        pool.release(context1, false);
+        pool.release(context2, false);
+        Thread.sleep(5);
+        pool.release(context3, false);
+
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertEquals(2, pool.getDestroyed());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 5, 60000, 1000);
+
+        LdapContext context1 = pool.borrow();
+        LdapContext context2 = pool.borrow();
+        pool.release(context1, false);
+        pool.close();
+
+        Assert.assertEquals(0, pool.getIdle());
+        pool.release(context2, false);
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(2, pool.getDestroyed());
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 2, 60000, 10);
+
+        LdapContext context = pool.borrow();
+        pool.borrow();
+        try {
+            pool.borrow();
+            Assert.fail("Expected timeout");
+        } catch (ModelException e) {
+            // expected
+        }
+        Assert.assertEquals(2, pool.getActive());
+
+        pool.release(context, false);
+        Assert.assertSame(context, pool.borrow());
+    }
+
+    @Test
+    public void testFill() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 3, 5, 60000, 1000);
+        pool.fill();
+
+        Assert.assertEquals(3, pool.getIdle());
+        Assert.assertEquals(3, pool.getCreated());
+
+        Set<LdapContext> contexts = new HashSet<LdapContext>();
+        for (int i = 0; i < 3; i++) {
+            contexts.add(pool.borrow());
+        }
+        Assert.assertEquals(3, contexts.size());
+        Assert.assertEquals(3, pool.getCreated());
+    }
+
+    @Test
+    public void testFillFailure() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", new LDAPContextPool.ContextFactory() {
+            @Override
+            public LdapContext create() throws NamingException {
+                throw new CommunicationException("Server down");
+            }
+        }, 3, 5, 60000, 1000);
+        pool.fill();
+
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(0, pool.getActive());
+    }
+
+    @Test
+    public void testInvalidContextsDestroyed() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 5, 60000, 1000, 0);
+
+        LdapContext context1 = pool.borrow();
+        LdapContext context2 = pool.borrow();
+        pool.release(context1, false);
+        pool.release(context2, false);
+        Thread.sleep(5);
+
+        connectionLost.set(true);
+        LdapContext context = pool.borrow();
+
+        Assert.assertNotSame(context1, context);
+        Assert.assertNotSame(context2, context);
+        Assert.assertEquals(2, pool.getValidationFailures());
+        Assert.assertEquals(2, pool.getDestroyed());
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(3, pool.getCreated());
+    }
+}
@@ -0,0 +1,156 @@
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.LDAPConfig;
+import org.keycloak.federation.ldap.idm.query.internal.LDAPQuery;
+
+public class LDAPOperationManagerTest {
+
+    private static final int PAGES = 3;
+
+    // Contexts that ran a search
+    private final Set<LdapContext> searched = Collections.synchronizedSet(new HashSet<LdapContext>());
+
+    // Page sizes requested by the searches
+    private final List<Integer> requestedSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private final LDAPContextPool.ContextFactory factory = new LDAPContextPool.ContextFactory() {
+        @Override
+        public LdapContext create() throws NamingException {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { LdapContext.class }, new InvocationHandler() {
+
+                // Pages returned on this connection, also the cookie expected by the next search
+                private int page;
+                private Control[] requestControls;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (method.getName().equals("setRequestControls")) {
+                        requestControls = (Control[]) args[0];
+                    } else if (method.getName().equals("search")) {
+                        searched.add((LdapContext) proxy);
+                        requestedSizes.add(getSize(requestControls));
+                        // Cookies are only known to the connection that returned them
+                        Assert.assertEquals(page, getCookie(requestControls));
+                        page++;
+                        return results(new SearchResult("uid=user" + page, null, new BasicAttributes()));
+                    } else if (method.getName().equals("getResponseControls")) {
+                        byte[] cookie = page < PAGES ? new byte[] { (byte) page } : new byte[0];
+                        return new Control[] { responseControl(cookie) };
+                    }
+                    return null;
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testPagesReadWithOneConnection() throws Exception {
+        final LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 5, 60000, 1000);
+        pool.fill();
+        LDAPOperationManager operationManager = new LDAPOperationManager(new LDAPConfig(new HashMap<String, String>()), pool, pool);
+
+        final List<String> users = new ArrayList<String>();
+        operationManager.searchPaginated("dc=example", "(uid=*)", query(), new LDAPOperationManager.PageHandler() {
+            @Override
+            public boolean handlePage(List<SearchResult> page) {
+                Assert.assertEquals(1, pool.getActive());
+                for (SearchResult result : page) {
+                    users.add(result.getName());
+                }
+                return true;
+            }
+        });
+
+        Assert.assertEquals(PAGES, users.size());
+        Assert.assertEquals(1, searched.size());
+        Assert.assertEquals(1, pool.getBorrowed());
+        Assert.assertEquals(0, pool.getActive());
+        Assert.assertEquals(2, pool.getIdle());
+    }
+
+    @Test
+    public void testStoppedSearchAbandoned() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 5, 60000, 1000);
+        LDAPOperationManager operationManager = new LDAPOperationManager(new LDAPConfig(new HashMap<String, String>()), pool, pool);
+
+        List<SearchResult> firstPage = operationManager.searchPaginated("dc=example", "(uid=*)", query());
+
+        Assert.assertEquals(1, firstPage.size());
+        Assert.assertEquals(2, requestedSizes.size());
+        Assert.assertEquals(0, (int) requestedSizes.get(1));
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertEquals(0, pool.getDestroyed());
+    }
+
+    private LDAPQuery query() {
+        return new LDAPQuery(null).setLimit(1);
+    }
+
+    // Controls are BER encoded sequences of the page size and the cookie, both small enough for one byte here
+
+    private static int getSize(Control[] controls) {
+        Assert.assertTrue(controls[0] instanceof PagedResultsControl);
+        return controls[0].getEncodedValue()[4];
+    }
+
+    private static int getCookie(Control[] controls) {
+        byte[] value = controls[0].getEncodedValue();
+        return value[6] == 0 ? 0 : value[7];
+    }
+
+    private static PagedResultsResponseControl responseControl(byte[] cookie) throws Exception {
+        byte[] value = new byte[7 + cookie.length];
+        value[0] = 0x30;
+        value[1] = (byte) (5 + cookie.length);
+        value[2] = 0x02;
+        value[3] = 0x01;
+        value[4] = 0x00;
+        value[5] = 0x04;
+        value[6] = (byte) cookie.length;
+        System.arraycopy(cookie, 0, value, 7, cookie.length);
+        return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NamingEnumeration<SearchResult> results(SearchResult... results) {
+        final List<SearchResult> remaining = new ArrayList<SearchResult>(Arrays.asList(results));
+        return (NamingEnumeration<SearchResult>) Proxy.newProxyInstance(LDAPOperationManagerTest.class.getClassLoader(), new Class[] { NamingEnumeration.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("hasMore") || name.equals("hasMoreElements")) {
+                    return !remaining.isEmpty();
+                } else if (name.equals("next") || name.equals("nextElement")) {
+                    return remaining.remove(0);
+                }
+                return null;
+            }
+        });
+    }
+}
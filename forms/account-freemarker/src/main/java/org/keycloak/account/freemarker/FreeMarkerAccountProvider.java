@@ -210,7 +210,7 @@ public class FreeMarkerAccountProvider implements AccountProvider {
         }
 
         try {
-            String result = freeMarker.processTemplate(attributes, Templates.getTemplate(page), theme);
+            Object result = freeMarker.processTemplateAsEntity(attributes, Templates.getTemplate(page), theme);
             Response.ResponseBuilder builder = Response.status(status).type(MediaType.TEXT_HTML).entity(result);
             BrowserSecurityHeaderSetup.headers(builder, realm);
 
@@ -19,12 +19,18 @@ public class ExtendingThemeManager implements ThemeProvider {
 
     private final KeycloakSession session;
     private final ConcurrentHashMap<ExtendingThemeManagerFactory.ThemeKey, Theme> themeCache;
+    private final ThemePropertiesCache propertiesCache;
     private List<ThemeProvider> providers;
     private String defaultTheme;
 
     public ExtendingThemeManager(KeycloakSession session, ConcurrentHashMap<ExtendingThemeManagerFactory.ThemeKey, Theme> themeCache) {
+        this(session, themeCache, null);
+    }
+
+    public ExtendingThemeManager(KeycloakSession session, ConcurrentHashMap<ExtendingThemeManagerFactory.ThemeKey, Theme> themeCache, ThemePropertiesCache propertiesCache) {
         this.session = session;
         this.themeCache = themeCache;
+        this.propertiesCache = propertiesCache;
         this.defaultTheme = Config.scope("theme").get("default", "keycloak");
     }
 
@@ -106,7 +112,9 @@ public class ExtendingThemeManager implements ThemeProvider {
                 }
             }
 
-            return new ExtendingTheme(themes);
+            return new ExtendingTheme(themes, propertiesCache);
+        } else if (theme != null && propertiesCache != null) {
+            return new ExtendingTheme(Collections.singletonList(theme), propertiesCache);
         } else {
             return theme;
         }
@@ -152,9 +160,15 @@ public class ExtendingThemeManager implements ThemeProvider {
     public static class ExtendingTheme implements Theme {
 
         private List<Theme> themes;
+        private ThemePropertiesCache propertiesCache;
 
         public ExtendingTheme(List<Theme> themes) {
+            this(themes, null);
+        }
+
+        public ExtendingTheme(List<Theme> themes, ThemePropertiesCache propertiesCache) {
             this.themes = themes;
+            this.propertiesCache = propertiesCache;
         }
 
         @Override
@@ -229,6 +243,33 @@ public class ExtendingThemeManager implements ThemeProvider {
 
         @Override
         public Properties getMessages(String baseBundlename, Locale locale) throws IOException {
+            if (propertiesCache != null) {
+                Properties messages = propertiesCache.getMessages(this, baseBundlename, locale);
+                if (messages == null) {
+                    messages = loadMessages(baseBundlename, locale);
+                    propertiesCache.putMessages(this, baseBundlename, locale, messages);
+                }
+                return messages;
+            } else {
+                return loadMessages(baseBundlename, locale);
+            }
+        }
+
+        @Override
+        public Properties getProperties() throws IOException {
+            if (propertiesCache != null) {
+                Properties properties = propertiesCache.getProperties(this);
+                if (properties == null) {
+                    properties = loadProperties();
+                    propertiesCache.putProperties(this, properties);
+                }
+                return properties;
+            } else {
+                return loadProperties();
+            }
+        }
+
+        private Properties loadMessages(String baseBundlename, Locale locale) throws IOException {
             Properties messages = new Properties();
             ListIterator<Theme> itr = themes.listIterator(themes.size());
             while (itr.hasPrevious()) {
@@ -240,8 +281,7 @@ public class ExtendingThemeManager implements ThemeProvider {
             return messages;
         }
 
-        @Override
-        public Properties getProperties() throws IOException {
+        private Properties loadProperties() throws IOException {
             Properties properties = new Properties();
             ListIterator<Theme> itr = themes.listIterator(themes.size());
             while (itr.hasPrevious()) {
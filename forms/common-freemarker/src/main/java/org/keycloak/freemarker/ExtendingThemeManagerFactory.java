@@ -4,6 +4,7 @@ import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 
+import java.io.File;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -12,17 +13,28 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ExtendingThemeManagerFactory implements ThemeProviderFactory {
 
     private ConcurrentHashMap<ThemeKey, Theme> themeCache;
+    private ThemePropertiesCache propertiesCache;
 
     @Override
     public ThemeProvider create(KeycloakSession session) {
-        return new ExtendingThemeManager(session, themeCache);
+        return new ExtendingThemeManager(session, themeCache, propertiesCache);
     }
 
     @Override
     public void init(Config.Scope config) {
-        if(Config.scope("theme").getBoolean("cacheThemes", true)) {
+        Config.Scope themeConfig = Config.scope("theme");
+        if(themeConfig.getBoolean("cacheThemes", true)) {
             themeCache = new ConcurrentHashMap<>();
         }
+        if(themeConfig.getBoolean("cacheTemplates", true)) {
+            propertiesCache = new ThemePropertiesCache();
+
+            // Messages in the theme folder can be edited while the server is running
+            String dir = Config.scope("theme", "folder").get("dir");
+            if (dir != null && themeConfig.getBoolean("watchFolder", true)) {
+                propertiesCache.watch(new File(dir));
+            }
+        }
     }
 
     @Override
@@ -32,6 +44,13 @@ public class ExtendingThemeManagerFactory implements ThemeProviderFactory {
 
     @Override
     public void close() {
+        if (propertiesCache != null) {
+            propertiesCache.close();
+        }
+    }
+
+    public ThemePropertiesCache getPropertiesCache() {
+        return propertiesCache;
     }
 
     @Override
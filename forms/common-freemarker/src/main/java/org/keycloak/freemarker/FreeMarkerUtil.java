@@ -1,11 +1,20 @@
 package org.keycloak.freemarker;
 
+import freemarker.cache.StrongCacheStorage;
 import freemarker.cache.URLTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import org.jboss.logging.Logger;
 import org.keycloak.Config;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URL;
@@ -16,29 +25,24 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class FreeMarkerUtil {
 
-    private ConcurrentHashMap<String, Template> cache;
+    private static final Logger logger = Logger.getLogger(FreeMarkerUtil.class);
+
+    private ConcurrentHashMap<String, Configuration> configurations;
+    private boolean streamTemplates;
+    private int templateBufferSize;
 
     public FreeMarkerUtil() {
-        if (Config.scope("theme").getBoolean("cacheTemplates", true)) {
-            cache = new ConcurrentHashMap<>();
+        Config.Scope config = Config.scope("theme");
+        if (config.getBoolean("cacheTemplates", true)) {
+            configurations = new ConcurrentHashMap<>();
         }
+        streamTemplates = config.getBoolean("streamTemplates", true);
+        templateBufferSize = config.getInt("templateBufferSize", 64 * 1024);
     }
 
     public String processTemplate(Object data, String templateName, Theme theme) throws FreeMarkerException {
         try {
-            Template template;
-            if (cache != null) {
-                String key = theme.getName() + "/" + templateName;
-                template = cache.get(key);
-                if (template == null) {
-                    template = getTemplate(templateName, theme);
-                    if (cache.putIfAbsent(key, template) != null) {
-                        template = cache.get(key);
-                    }
-                }
-            } else {
-                template = getTemplate(templateName, theme);
-            }
+            Template template = getTemplate(templateName, theme);
 
             Writer out = new StringWriter();
             template.process(data, out);
@@ -48,10 +52,136 @@ public class FreeMarkerUtil {
         }
     }
 
+    /**
+     * Returns the template as response entity. If templates are streamed, the template is processed once, while the
+     * response is written. The first <code>templateBufferSize</code> characters are buffered before they are written to
+     * the response, so if the template fails before that the client gets an error response instead of a partial page.
+     * Otherwise the template is processed to a String.
+     */
+    public Object processTemplateAsEntity(final Object data, final String templateName, Theme theme) throws FreeMarkerException {
+        if (!streamTemplates) {
+            return processTemplate(data, templateName, theme);
+        }
+
+        final Template template;
+        try {
+            template = getTemplate(templateName, theme);
+        } catch (Exception e) {
+            throw new FreeMarkerException("Failed to process template " + templateName, e);
+        }
+
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                BufferedPageWriter out = new BufferedPageWriter(new OutputStreamWriter(output, "UTF-8"), templateBufferSize);
+                try {
+                    template.process(data, out);
+                } catch (TemplateException e) {
+                    if (!out.isCommitted()) {
+                        logger.error("Failed to process template " + templateName, e);
+                        throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+                    }
+                    throw new IOException("Failed to process template " + templateName, e);
+                }
+                out.finish();
+            }
+        };
+    }
+
     private Template getTemplate(String templateName, Theme theme) throws IOException {
+        Configuration cfg;
+        if (configurations != null) {
+            String key = theme.getType() + "/" + theme.getName();
+            cfg = configurations.get(key);
+            if (cfg == null) {
+                cfg = createConfiguration(theme);
+                cfg.setCacheStorage(new StrongCacheStorage());
+                cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+
+                Configuration existing = configurations.putIfAbsent(key, cfg);
+                if (existing != null) {
+                    cfg = existing;
+                }
+            }
+        } else {
+            cfg = createConfiguration(theme);
+        }
+        return cfg.getTemplate(templateName);
+    }
+
+    private Configuration createConfiguration(Theme theme) {
         Configuration cfg = new Configuration();
         cfg.setTemplateLoader(new ThemeTemplateLoader(theme));
-        return cfg.getTemplate(templateName);
+        return cfg;
+    }
+
+    /**
+     * Writer which keeps the first <code>bufferSize</code> characters in memory. Once more is written, the buffered
+     * characters are written to the underlying writer, and everything after that goes straight to it.
+     */
+    private static class BufferedPageWriter extends Writer {
+
+        private final Writer out;
+        private final int bufferSize;
+        private StringBuilder buffer = new StringBuilder();
+
+        private BufferedPageWriter(Writer out, int bufferSize) {
+            this.out = new BufferedWriter(out);
+            this.bufferSize = bufferSize;
+        }
+
+        /**
+         * @return true if something was written to the underlying writer
+         */
+        private boolean isCommitted() {
+            return buffer == null;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (buffer != null && buffer.length() + len <= bufferSize) {
+                buffer.append(cbuf, off, len);
+            } else {
+                commit();
+                out.write(cbuf, off, len);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (buffer != null && buffer.length() + len <= bufferSize) {
+                buffer.append(str, off, off + len);
+            } else {
+                commit();
+                out.write(str, off, len);
+            }
+        }
+
+        // Template directives may flush, the page is written once the buffer is full or the template is done
+        @Override
+        public void flush() {
+        }
+
+        private void commit() throws IOException {
+            if (buffer != null) {
+                out.append(buffer);
+                buffer = null;
+            }
+        }
+
+        /**
+         * Writes the buffered characters to the underlying writer and flushes it
+         */
+        private void finish() throws IOException {
+            commit();
+            out.flush();
+        }
+
+        // The response stream is closed by the container
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
     }
 
     class ThemeTemplateLoader extends URLTemplateLoader {
@@ -0,0 +1,209 @@
+package org.keycloak.freemarker;
+
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of messages and properties of themes, merged from the theme and all the themes it extends or imports. Properties
+ * are copied when they are put in and read from the cache, so callers can modify them without affecting other requests.
+ *
+ * The cache can watch a theme directory, in which case it's cleared whenever anything in the directory changes.
+ */
+public class ThemePropertiesCache {
+
+    private static final Logger log = Logger.getLogger(ThemePropertiesCache.class);
+
+    private final ConcurrentHashMap<Key, Properties> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private WatchService watchService;
+
+    public Properties getMessages(Theme theme, String baseBundlename, Locale locale) {
+        return get(new Key(theme.getName(), theme.getType(), baseBundlename, locale));
+    }
+
+    public void putMessages(Theme theme, String baseBundlename, Locale locale, Properties messages) {
+        cache.putIfAbsent(new Key(theme.getName(), theme.getType(), baseBundlename, locale), copy(messages));
+    }
+
+    public Properties getProperties(Theme theme) {
+        return get(new Key(theme.getName(), theme.getType(), null, null));
+    }
+
+    public void putProperties(Theme theme, Properties properties) {
+        cache.putIfAbsent(new Key(theme.getName(), theme.getType(), null, null), copy(properties));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    /**
+     * Clears the cache when any file in the directory or its sub-directories is created, modified or deleted.
+     */
+    public void watch(File dir) {
+        if (!dir.isDirectory()) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(dir.toPath());
+        } catch (IOException e) {
+            log.warnv(e, "Failed to watch theme directory {0}, changes to messages are applied after restart", dir);
+            return;
+        }
+
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchChanges();
+            }
+        }, "keycloak-theme-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public void close() {
+        log.debugv("Theme messages cache hits: {0}, misses: {1}", hits.get(), misses.get());
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Failed to close theme directory watcher", e);
+            }
+        }
+    }
+
+    private Properties get(Key key) {
+        Properties properties = cache.get(key);
+        if (properties != null) {
+            hits.incrementAndGet();
+            return copy(properties);
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static Properties copy(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    private void register(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchChanges() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    Path created = ((Path) key.watchable()).resolve((Path) event.context());
+                    if (Files.isDirectory(created)) {
+                        try {
+                            register(created);
+                        } catch (IOException e) {
+                            log.warnv(e, "Failed to watch theme directory {0}", created);
+                        }
+                    }
+                }
+            }
+
+            log.debug("Theme directory changed, clearing theme messages cache");
+            clear();
+
+            key.reset();
+        }
+    }
+
+    private static class Key {
+
+        private final String name;
+        private final Theme.Type type;
+        private final String bundle;
+        private final Locale locale;
+
+        private Key(String name, Theme.Type type, String bundle, Locale locale) {
+            this.name = name;
+            this.type = type;
+            this.bundle = bundle;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (name != null ? !name.equals(key.name) : key.name != null) return false;
+            if (type != key.type) return false;
+            if (bundle != null ? !bundle.equals(key.bundle) : key.bundle != null) return false;
+            if (locale != null ? !locale.equals(key.locale) : key.locale != null) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = name != null ? name.hashCode() : 0;
+            result = 31 * result + (type != null ? type.hashCode() : 0);
+            result = 31 * result + (bundle != null ? bundle.hashCode() : 0);
+            result = 31 * result + (locale != null ? locale.hashCode() : 0);
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package org.keycloak.freemarker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+public class ExtendingThemeTest {
+
+    @Test
+    public void mergeMessages() throws Exception {
+        TestTheme child = new TestTheme("child", "title", "Child");
+        TestTheme parent = new TestTheme("parent", "title", "Parent");
+        parent.messages.setProperty("footer", "Parent footer");
+
+        ExtendingThemeManager.ExtendingTheme theme = new ExtendingThemeManager.ExtendingTheme(Arrays.<Theme>asList(child, parent));
+
+        Properties messages = theme.getMessages(Locale.ENGLISH);
+        Assert.assertEquals("Child", messages.getProperty("title"));
+        Assert.assertEquals("Parent footer", messages.getProperty("footer"));
+    }
+
+    @Test
+    public void cacheMessages() throws Exception {
+        TestTheme child = new TestTheme("child", "title", "Child");
+        TestTheme parent = new TestTheme("parent", "title", "Parent");
+        ThemePropertiesCache cache = new ThemePropertiesCache();
+
+        ExtendingThemeManager.ExtendingTheme theme = new ExtendingThemeManager.ExtendingTheme(Arrays.<Theme>asList(child, parent), cache);
+
+        Properties messages = theme.getMessages(Locale.ENGLISH);
+        Assert.assertEquals(messages, theme.getMessages(Locale.ENGLISH));
+        Assert.assertEquals(1, child.loaded);
+        Assert.assertEquals(1, parent.loaded);
+
+        theme.getMessages(Locale.GERMAN);
+        Assert.assertEquals(2, child.loaded);
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+
+        cache.clear();
+        theme.getMessages(Locale.ENGLISH);
+        Assert.assertEquals(3, child.loaded);
+    }
+
+    @Test
+    public void cachedMessagesNotShared() throws Exception {
+        TestTheme child = new TestTheme("child", "title", "Child");
+        ThemePropertiesCache cache = new ThemePropertiesCache();
+
+        ExtendingThemeManager.ExtendingTheme theme = new ExtendingThemeManager.ExtendingTheme(Arrays.<Theme>asList(child), cache);
+
+        theme.getMessages(Locale.ENGLISH).setProperty("title", "Changed");
+        Properties messages = theme.getMessages(Locale.ENGLISH);
+        messages.setProperty("title", "Changed");
+
+        Assert.assertEquals("Child", theme.getMessages(Locale.ENGLISH).getProperty("title"));
+        Assert.assertEquals(1, child.loaded);
+    }
+
+    private static class TestTheme implements Theme {
+
+        private final String name;
+        private final Properties messages = new Properties();
+        private int loaded;
+
+        private TestTheme(String name, String key, String value) {
+            this.name = name;
+            messages.setProperty(key, value);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getParentName() {
+            return null;
+        }
+
+        @Override
+        public String getImportName() {
+            return null;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.LOGIN;
+        }
+
+        @Override
+        public URL getTemplate(String name) {
+            return null;
+        }
+
+        @Override
+        public InputStream getTemplateAsStream(String name) {
+            return null;
+        }
+
+        @Override
+        public URL getResource(String path) {
+            return null;
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String path) {
+            return null;
+        }
+
+        @Override
+        public Properties getMessages(Locale locale) {
+            return getMessages("messages", locale);
+        }
+
+        @Override
+        public Properties getMessages(String baseBundlename, Locale locale) {
+            loaded++;
+            return messages;
+        }
+
+        @Override
+        public Properties getProperties() {
+            return new Properties();
+        }
+
+    }
+
+}
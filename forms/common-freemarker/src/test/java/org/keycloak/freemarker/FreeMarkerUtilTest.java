@@ -0,0 +1,150 @@
+package org.keycloak.freemarker;
+
+import freemarker.template.TemplateMethodModelEx;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FreeMarkerUtilTest {
+
+    // Bigger than the template buffer
+    private static final int LINES = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Theme theme;
+    private FreeMarkerUtil freeMarker;
+    private Map<String, Object> data;
+
+    @Before
+    public void before() throws IOException {
+        template("small.ftl", "Hello ${name}");
+        template("failing.ftl", "Hello ${missing.name}");
+        template("big.ftl", "<#list 1..lines as i>Line ${i?c} of ${name}\n</#list>");
+        template("counted.ftl", "${count()}\n<#list 1..lines as i>Line ${i?c} of ${name}\n</#list>");
+        template("big-failing.ftl", "<#list 1..lines as i>Line ${i?c} of ${name}\n</#list>${missing.name}");
+
+        theme = (Theme) Proxy.newProxyInstance(Theme.class.getClassLoader(), new Class[] { Theme.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getName")) {
+                    return "test";
+                } else if (method.getName().equals("getType")) {
+                    return Theme.Type.LOGIN;
+                } else if (method.getName().equals("getTemplate")) {
+                    File file = new File(folder.getRoot(), (String) args[0]);
+                    return file.isFile() ? file.toURI().toURL() : null;
+                }
+                return null;
+            }
+        });
+
+        freeMarker = new FreeMarkerUtil();
+        data = new HashMap<String, Object>();
+        data.put("name", "test");
+        data.put("lines", LINES);
+    }
+
+    @Test
+    public void testBuffered() throws Exception {
+        Object entity = freeMarker.processTemplateAsEntity(data, "small.ftl", theme);
+        Assert.assertEquals("Hello test", write(entity));
+    }
+
+    @Test
+    public void testFailingTemplate() throws Exception {
+        Object entity = freeMarker.processTemplateAsEntity(data, "failing.ftl", theme);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            ((StreamingOutput) entity).write(os);
+            Assert.fail("Expected failing template to fail with an error response");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(500, e.getResponse().getStatus());
+        }
+        Assert.assertEquals(0, os.size());
+    }
+
+    @Test
+    public void testMissingTemplate() throws Exception {
+        try {
+            freeMarker.processTemplateAsEntity(data, "missing.ftl", theme);
+            Assert.fail("Expected missing template to fail");
+        } catch (FreeMarkerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStreamed() throws Exception {
+        Object entity = freeMarker.processTemplateAsEntity(data, "big.ftl", theme);
+        Assert.assertTrue(entity instanceof StreamingOutput);
+
+        String page = write(entity);
+        Assert.assertEquals(freeMarker.processTemplate(data, "big.ftl", theme), page);
+        Assert.assertTrue(page.startsWith("Line 1 of test\n"));
+        Assert.assertTrue(page.endsWith("Line " + LINES + " of test\n"));
+    }
+
+    @Test
+    public void testProcessedOnce() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        data.put("count", new TemplateMethodModelEx() {
+            @Override
+            public Object exec(List arguments) {
+                return calls.incrementAndGet();
+            }
+        });
+
+        Object entity = freeMarker.processTemplateAsEntity(data, "counted.ftl", theme);
+        Assert.assertTrue(write(entity).startsWith("1\nLine 1 of test\n"));
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testStreamedFailing() throws Exception {
+        Object entity = freeMarker.processTemplateAsEntity(data, "big-failing.ftl", theme);
+        Assert.assertTrue(entity instanceof StreamingOutput);
+
+        try {
+            ((StreamingOutput) entity).write(new ByteArrayOutputStream());
+            Assert.fail("Expected failing template to fail while streaming");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static String write(Object entity) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ((StreamingOutput) entity).write(os);
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    private void template(String name, String content) throws IOException {
+        OutputStream os = new FileOutputStream(new File(folder.getRoot(), name));
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
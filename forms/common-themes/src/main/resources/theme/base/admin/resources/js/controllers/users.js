@@ -733,6 +733,7 @@ module.controller('GenericUserFederationCtrl', function($scope, $location, Notif
 module.controller('LDAPCtrl', function($scope, $location, $route, Notifications, Dialog, realm, instance, UserFederationInstances, UserFederationSync, RealmLDAPConnectionTester) {
     console.log('LDAPCtrl');
     var DEFAULT_BATCH_SIZE = "1000";
+    var DEFAULT_SYNC_THREADS = "1";
 
     $scope.create = !instance.providerName;
 
@@ -745,6 +746,10 @@ module.controller('LDAPCtrl', function($scope, $location, $route, Notifications,
             instance.config.syncRegistrations = false;
             instance.config.userAccountControlsAfterPasswordUpdate = true;
             instance.config.connectionPooling = true;
+            instance.config.connectionPoolMinSize = 1;
+            instance.config.connectionPoolMaxSize = 20;
+            instance.config.connectionPoolIdleTimeout = 300000;
+            instance.config.connectionPoolTimeout = 30000;
             instance.config.pagination = true;
 
             instance.config.allowKerberosAuthentication = false;
@@ -753,6 +758,7 @@ module.controller('LDAPCtrl', function($scope, $location, $route, Notifications,
 
             instance.config.authType = 'simple';
             instance.config.batchSizeForSync = DEFAULT_BATCH_SIZE;
+            instance.config.syncThreads = DEFAULT_SYNC_THREADS;
             instance.config.searchScope = "1";
 
             $scope.fullSyncEnabled = false;
@@ -773,6 +779,9 @@ module.controller('LDAPCtrl', function($scope, $location, $route, Notifications,
             if (!instance.config.batchSizeForSync) {
                 instance.config.batchSizeForSync = DEFAULT_BATCH_SIZE;
             }
+            if (!instance.config.syncThreads) {
+                instance.config.syncThreads = DEFAULT_SYNC_THREADS;
+            }
             if (!instance.config.searchScope) {
                 instance.config.searchScope = '1';
             }
@@ -865,6 +874,12 @@ module.controller('LDAPCtrl', function($scope, $location, $route, Notifications,
             $scope.instance.config.batchSizeForSync = parseInt($scope.instance.config.batchSizeForSync).toString();
         }
 
+        if (!(parseInt($scope.instance.config.syncThreads) > 0)) {
+            $scope.instance.config.syncThreads = DEFAULT_SYNC_THREADS;
+        } else {
+            $scope.instance.config.syncThreads = parseInt($scope.instance.config.syncThreads).toString();
+        }
+
         if ($scope.create) {
             UserFederationInstances.save({realm: realm.realm}, $scope.instance,  function (data, headers) {
                 var l = headers().location;
@@ -313,6 +313,16 @@ public class AdapterDeploymentContext {
             delegate.setTokenStore(tokenStore);
         }
 
+        @Override
+        public CookieTokenCipher getCookieTokenCipher() {
+            return delegate.getCookieTokenCipher();
+        }
+
+        @Override
+        public void setCookieTokenCipher(CookieTokenCipher cookieTokenCipher) {
+            delegate.setCookieTokenCipher(cookieTokenCipher);
+        }
+
         @Override
         public String getStateCookieName() {
             return delegate.getStateCookieName();
@@ -432,6 +442,21 @@ public class AdapterDeploymentContext {
         public void setPrincipalAttribute(String principalAttribute) {
             delegate.setPrincipalAttribute(principalAttribute);
         }
+
+        @Override
+        public int getTokenCacheSize() {
+            return delegate.getTokenCacheSize();
+        }
+
+        @Override
+        public void setTokenCacheSize(int tokenCacheSize) {
+            delegate.setTokenCacheSize(tokenCacheSize);
+        }
+
+        @Override
+        public TokenCache getTokenCache() {
+            return delegate.getTokenCache();
+        }
     }
 
     protected KeycloakUriBuilder getBaseBuilder(HttpFacade facade, String base) {
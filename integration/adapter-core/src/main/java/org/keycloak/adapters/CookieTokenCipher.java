@@ -0,0 +1,89 @@
+package org.keycloak.adapters;
+
+import org.keycloak.util.Base64;
+import org.keycloak.util.Base64Url;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Encrypts the value of the adapter state cookie with AES-GCM, so the tokens can't be read or changed in the browser.
+ * All nodes serving the application must use the same key, so any of them can read the cookie.
+ */
+public class CookieTokenCipher {
+
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    public CookieTokenCipher(byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES key must be 128, 192 or 256 bits long");
+        }
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * @param key base64 encoded AES key
+     */
+    public static CookieTokenCipher fromBase64(String key) {
+        try {
+            return new CookieTokenCipher(Base64.decode(key));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("AES key is not base64 encoded", e);
+        }
+    }
+
+    /**
+     * @return random IV followed by the encrypted value, base64url encoded so it can be used as cookie value
+     */
+    public String encrypt(String value) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            byte[] encrypted = cipher.doFinal(value.getBytes(UTF_8));
+
+            byte[] bytes = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, bytes, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, bytes, IV_LENGTH, encrypted.length);
+            return Base64Url.encode(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to encrypt cookie", e);
+        }
+    }
+
+    /**
+     * @return decrypted value or null if the value wasn't encrypted with the same key or has been changed
+     */
+    public String decrypt(String value) {
+        byte[] bytes;
+        try {
+            bytes = Base64Url.decode(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (bytes.length <= IV_LENGTH) {
+            return null;
+        }
+
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, bytes, 0, IV_LENGTH));
+            return new String(cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH), UTF_8);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+}
@@ -28,6 +28,9 @@ public class CookieTokenStore {
         String cookie = new StringBuilder(accessToken).append(DELIM)
                 .append(idToken).append(DELIM)
                 .append(refreshToken).toString();
+        if (deployment.getCookieTokenCipher() != null) {
+            cookie = deployment.getCookieTokenCipher().encrypt(cookie);
+        }
 
         String cookiePath = getContextPath(facade);
         facade.getResponse().setCookie(AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, cookie, cookiePath, null, -1, deployment.getSslRequired().isRequired(facade.getRequest().getRemoteAddr()), true);
@@ -41,6 +44,13 @@ public class CookieTokenStore {
         }
 
         String cookieVal = cookie.getValue();
+        if (deployment.getCookieTokenCipher() != null) {
+            cookieVal = deployment.getCookieTokenCipher().decrypt(cookieVal);
+            if (cookieVal == null) {
+                log.warnf("Failed to decrypt %s cookie", AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE);
+                return null;
+            }
+        }
 
         String[] tokens = cookieVal.split(DELIM);
         if (tokens.length != 3) {
@@ -47,6 +47,7 @@ public class KeycloakDeployment {
     protected String scope;
     protected SslRequired sslRequired = SslRequired.ALL;
     protected TokenStore tokenStore = TokenStore.SESSION;
+    protected CookieTokenCipher cookieTokenCipher;
     protected String stateCookieName = "OAuth_Token_Request_State";
     protected boolean useResourceRoleMappings;
     protected boolean cors;
@@ -58,6 +59,8 @@ public class KeycloakDeployment {
     protected boolean registerNodeAtStartup;
     protected int registerNodePeriod;
     protected volatile int notBefore;
+    protected int tokenCacheSize;
+    protected TokenCache tokenCache;
 
     public KeycloakDeployment() {
     }
@@ -84,6 +87,7 @@ public class KeycloakDeployment {
 
     public void setRealmKey(PublicKey realmKey) {
         this.realmKey = realmKey;
+        if (tokenCache != null) tokenCache.clear();
     }
 
     public String getAuthServerBaseUrl() {
@@ -266,6 +270,17 @@ public class KeycloakDeployment {
         this.tokenStore = tokenStore;
     }
 
+    /**
+     * @return cipher of the tokens kept in the cookie if {@link TokenStore#COOKIE} is used, null if they aren't encrypted
+     */
+    public CookieTokenCipher getCookieTokenCipher() {
+        return cookieTokenCipher;
+    }
+
+    public void setCookieTokenCipher(CookieTokenCipher cookieTokenCipher) {
+        this.cookieTokenCipher = cookieTokenCipher;
+    }
+
     public String getStateCookieName() {
         return stateCookieName;
     }
@@ -327,7 +342,9 @@ public class KeycloakDeployment {
     }
 
     public void setNotBefore(int notBefore) {
+        boolean changed = this.notBefore != notBefore;
         this.notBefore = notBefore;
+        if (changed && tokenCache != null) tokenCache.clear();
     }
 
     public boolean isAlwaysRefreshToken() {
@@ -361,4 +378,20 @@ public class KeycloakDeployment {
     public void setPrincipalAttribute(String principalAttribute) {
         this.principalAttribute = principalAttribute;
     }
+
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    /**
+     * @param tokenCacheSize maximum number of verified bearer tokens to cache, 0 disables the cache
+     */
+    public void setTokenCacheSize(int tokenCacheSize) {
+        this.tokenCacheSize = tokenCacheSize;
+        this.tokenCache = tokenCacheSize > 0 ? new TokenCache(tokenCacheSize) : null;
+    }
+
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
 }
@@ -0,0 +1,123 @@
+package org.keycloak.adapters;
+
+import org.jboss.logging.Logger;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.Base64Url;
+import org.keycloak.util.Time;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of bearer tokens that have already been verified. Entries are keyed by a SHA-256 hash of the encoded
+ * token, so the token itself is not kept around as a key. A token is only found while it's active and not issued
+ * before the not-before of the deployment.
+ *
+ * Only the expiration and issue time of a token are cached. A token found in the cache is read from the encoded token
+ * again without verifying its signature, so every request gets its own {@link AccessToken}. When the cache is full,
+ * expired tokens are removed first and then arbitrary tokens until it's a quarter empty.
+ */
+public class TokenCache {
+
+    private static final Logger log = Logger.getLogger(TokenCache.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ConcurrentHashMap<String, Entry> tokens = new ConcurrentHashMap<String, Entry>();
+    private final int maxSize;
+
+    public TokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the verified token, or null if the token isn't cached or is no longer valid
+     */
+    public AccessToken get(String tokenString, int notBefore) {
+        String key = hash(tokenString);
+        Entry entry = tokens.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.isActive(Time.currentTime()) || entry.issuedAt < notBefore) {
+            tokens.remove(key, entry);
+            return null;
+        }
+
+        try {
+            return new JWSInput(tokenString).readJsonContent(AccessToken.class);
+        } catch (IOException e) {
+            log.debug("Failed to read cached token", e);
+            tokens.remove(key, entry);
+            return null;
+        }
+    }
+
+    public void put(String tokenString, AccessToken token) {
+        if (tokens.size() >= maxSize) {
+            evict();
+        }
+        tokens.put(hash(tokenString), new Entry(token.getExpiration(), token.getNotBefore(), token.getIssuedAt()));
+    }
+
+    public void clear() {
+        tokens.clear();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private void evict() {
+        int currentTime = Time.currentTime();
+        for (Iterator<Entry> itr = tokens.values().iterator(); itr.hasNext(); ) {
+            if (itr.next().isExpired(currentTime)) {
+                itr.remove();
+            }
+        }
+
+        int target = maxSize - Math.max(1, maxSize / 4);
+        for (Iterator<Entry> itr = tokens.values().iterator(); itr.hasNext() && tokens.size() > target; ) {
+            itr.next();
+            itr.remove();
+        }
+    }
+
+    private static String hash(String tokenString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64Url.encode(digest.digest(tokenString.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Entry {
+
+        private final int expiration;
+        private final int notBefore;
+        private final int issuedAt;
+
+        private Entry(int expiration, int notBefore, int issuedAt) {
+            this.expiration = expiration;
+            this.notBefore = notBefore;
+            this.issuedAt = issuedAt;
+        }
+
+        // Same as AccessToken.isActive
+        private boolean isActive(int currentTime) {
+            return !isExpired(currentTime) && (notBefore == 0 || currentTime >= notBefore);
+        }
+
+        private boolean isExpired(int currentTime) {
+            return expiration != 0 && currentTime > expiration;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.util.Base64;
+import org.keycloak.util.Base64Url;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CookieTokenCipherTest {
+
+    private static final String KEY = Base64.encodeBytes(new byte[] {
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32
+    });
+
+    private static final String TOKENS = "access___id___refresh";
+
+    @Test
+    public void sharedKey() {
+        CookieTokenCipher node1 = CookieTokenCipher.fromBase64(KEY);
+        CookieTokenCipher node2 = CookieTokenCipher.fromBase64(KEY);
+
+        String encrypted = node1.encrypt(TOKENS);
+        assertTrue(encrypted.matches("[A-Za-z0-9_-]+"));
+        assertEquals(TOKENS, node1.decrypt(encrypted));
+        assertEquals(TOKENS, node2.decrypt(encrypted));
+
+        // Random IV for each cookie
+        assertNotEquals(encrypted, node1.encrypt(TOKENS));
+    }
+
+    @Test
+    public void otherKey() {
+        byte[] key = new byte[16];
+        String encrypted = new CookieTokenCipher(key).encrypt(TOKENS);
+
+        assertNull(CookieTokenCipher.fromBase64(KEY).decrypt(encrypted));
+    }
+
+    @Test
+    public void changed() {
+        CookieTokenCipher cipher = CookieTokenCipher.fromBase64(KEY);
+        byte[] bytes = Base64Url.decode(cipher.encrypt(TOKENS));
+        bytes[bytes.length - 1] ^= 1;
+
+        assertNull(cipher.decrypt(Base64Url.encode(bytes)));
+        assertNull(cipher.decrypt(TOKENS));
+        assertNull(cipher.decrypt("AAAA"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidKey() {
+        new CookieTokenCipher(new byte[10]);
+    }
+
+}
@@ -10,6 +10,7 @@ import org.keycloak.enums.TokenStore;
 import org.keycloak.util.PemUtils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -44,6 +45,8 @@ public class KeycloakDeploymentBuilderTest {
         assertEquals(1000, deployment.getRegisterNodePeriod());
         assertEquals(TokenStore.COOKIE, deployment.getTokenStore());
         assertEquals("email", deployment.getPrincipalAttribute());
+        assertEquals(500, deployment.getTokenCacheSize());
+        assertNotNull(deployment.getTokenCache());
     }
 
     @Test
@@ -0,0 +1,103 @@
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.Time;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class TokenCacheTest {
+
+    @Test
+    public void getValid() {
+        TokenCache cache = new TokenCache(10);
+        AccessToken token = createToken(Time.currentTime() + 60);
+        cache.put(encode(token), token);
+
+        AccessToken cached = cache.get(encode(token), 0);
+        assertEquals(token.getId(), cached.getId());
+        assertNull(cache.get(encode(createToken(Time.currentTime() + 60)), 0));
+    }
+
+    @Test
+    public void notShared() {
+        TokenCache cache = new TokenCache(10);
+        AccessToken token = createToken(Time.currentTime() + 60);
+        cache.put(encode(token), token);
+
+        AccessToken cached = cache.get(encode(token), 0);
+        cached.setSubject("changed");
+
+        assertNotSame(cached, cache.get(encode(token), 0));
+        assertNull(cache.get(encode(token), 0).getSubject());
+    }
+
+    @Test
+    public void expired() {
+        TokenCache cache = new TokenCache(10);
+        AccessToken token = createToken(Time.currentTime() - 60);
+        cache.put(encode(token), token);
+
+        assertNull(cache.get(encode(token), 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void notBefore() {
+        TokenCache cache = new TokenCache(10);
+        AccessToken token = createToken(Time.currentTime() + 60);
+        cache.put(encode(token), token);
+
+        assertNull(cache.get(encode(token), token.getIssuedAt() + 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictWhenFull() {
+        TokenCache cache = new TokenCache(8);
+        AccessToken expired = createToken(Time.currentTime() - 60);
+        cache.put(encode(expired), expired);
+        for (int i = 0; i < 7; i++) {
+            AccessToken token = createToken(Time.currentTime() + 60);
+            cache.put(encode(token), token);
+        }
+        assertEquals(8, cache.size());
+
+        // the expired token and then arbitrary tokens are removed, until the cache is a quarter empty
+        AccessToken token = createToken(Time.currentTime() + 60);
+        cache.put(encode(token), token);
+        assertEquals(7, cache.size());
+        assertNull(cache.get(encode(expired), 0));
+        assertNotNull(cache.get(encode(token), 0));
+    }
+
+    @Test
+    public void clearedOnNotBeforePush() {
+        KeycloakDeployment deployment = new KeycloakDeployment();
+        deployment.setTokenCacheSize(10);
+        AccessToken token = createToken(Time.currentTime() + 60);
+        deployment.getTokenCache().put(encode(token), token);
+
+        deployment.setNotBefore(Time.currentTime());
+        assertEquals(0, deployment.getTokenCache().size());
+    }
+
+    private AccessToken createToken(int expiration) {
+        AccessToken token = new AccessToken();
+        token.id(UUID.randomUUID().toString());
+        token.issuedNow();
+        token.expiration(expiration);
+        return token;
+    }
+
+    private String encode(AccessToken token) {
+        return new JWSBuilder().jsonContent(token).none();
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.keycloak.adapters;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Session id mapper stored in a cache shared by all nodes of the cluster, like the distributed Infinispan cache of the
+ * application server, so that logout by SSO id or principal can be handled by any node. Everything is kept in a
+ * single map with String keys and values:
+ * <ul>
+ *     <li><code>s:&lt;session&gt;</code> - SSO id and principal of the session</li>
+ *     <li><code>o:&lt;sso&gt;</code> - session id</li>
+ *     <li><code>p:&lt;principal&gt;</code> - session ids of the principal</li>
+ * </ul>
+ * Values are joined with NUL character, which can't appear in SAML values nor in http session ids. Entries should be
+ * aged out by the cache itself, so its expiration (max-idle) should be set at least to the http session timeout.
+ * All three entries of a session are read by {@link #hasSession(String)}, which the adapters call on every request of
+ * the session.
+ */
+public class CacheSessionIdMapper implements SessionIdMapper {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final String SESSION_PREFIX = "s:";
+    private static final String SSO_PREFIX = "o:";
+    private static final String PRINCIPAL_PREFIX = "p:";
+
+    private final ConcurrentMap<String, String> cache;
+
+    public CacheSessionIdMapper(ConcurrentMap<String, String> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param jndiName JNDI name of the cache, for example <code>java:jboss/infinispan/cache/web/keycloak-sessions</code>
+     */
+    @SuppressWarnings("unchecked")
+    public static CacheSessionIdMapper lookup(String jndiName) {
+        try {
+            return new CacheSessionIdMapper((ConcurrentMap<String, String>) new InitialContext().lookup(jndiName));
+        } catch (NamingException e) {
+            throw new RuntimeException("Failed to lookup session id mapper cache " + jndiName, e);
+        }
+    }
+
+    /**
+     * Also reads the SSO and principal entries of the session, so that the cache doesn't expire them sooner than the
+     * session entry, while the session is used.
+     */
+    @Override
+    public boolean hasSession(String id) {
+        String value = cache.get(SESSION_PREFIX + id);
+        if (value == null) return false;
+
+        int index = value.indexOf(SEPARATOR);
+        String sso = value.substring(0, index);
+        String principal = value.substring(index + 1);
+        if (!sso.isEmpty()) {
+            cache.get(SSO_PREFIX + sso);
+        }
+        if (!principal.isEmpty()) {
+            cache.get(PRINCIPAL_PREFIX + principal);
+        }
+        return true;
+    }
+
+    @Override
+    public Set<String> getUserSessions(String principal) {
+        String sessions = cache.get(PRINCIPAL_PREFIX + principal);
+        if (sessions == null) return null;
+        return new HashSet<>(split(sessions));
+    }
+
+    @Override
+    public String getSessionFromSSO(String sso) {
+        return cache.get(SSO_PREFIX + sso);
+    }
+
+    @Override
+    public void map(String sso, String principal, String session) {
+        String previous = cache.put(SESSION_PREFIX + session, (sso != null ? sso : "") + SEPARATOR + (principal != null ? principal : ""));
+        if (previous != null) {
+            removeIndexes(session, previous);
+        }
+        if (sso != null) {
+            cache.put(SSO_PREFIX + sso, session);
+        }
+        if (principal != null) {
+            updatePrincipal(principal, session, true);
+        }
+    }
+
+    @Override
+    public void removeSession(String session) {
+        String value = cache.remove(SESSION_PREFIX + session);
+        if (value != null) {
+            removeIndexes(session, value);
+        }
+    }
+
+    private void removeIndexes(String session, String value) {
+        int index = value.indexOf(SEPARATOR);
+        String sso = value.substring(0, index);
+        String principal = value.substring(index + 1);
+        if (!sso.isEmpty()) {
+            cache.remove(SSO_PREFIX + sso, session);
+        }
+        if (!principal.isEmpty()) {
+            updatePrincipal(principal, session, false);
+        }
+    }
+
+    private void updatePrincipal(String principal, String session, boolean add) {
+        String key = PRINCIPAL_PREFIX + principal;
+        while (true) {
+            String current = cache.get(key);
+            if (current == null) {
+                if (!add || cache.putIfAbsent(key, session) == null) return;
+                continue;
+            }
+
+            Set<String> sessions = split(current);
+            if (!(add ? sessions.add(session) : sessions.remove(session))) return;
+
+            if (sessions.isEmpty()) {
+                if (cache.remove(key, current)) return;
+            } else {
+                if (cache.replace(key, current, join(sessions))) return;
+            }
+        }
+    }
+
+    private static Set<String> split(String value) {
+        return new LinkedHashSet<>(Arrays.asList(value.split(String.valueOf(SEPARATOR))));
+    }
+
+    private static String join(Set<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+}
@@ -1,74 +1,186 @@
 package org.keycloak.adapters;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Maps external principal and SSO id to internal local http session id
  *
+ * Each http session is stored once as an entry keyed by its id. The SSO and principal indexes point to the same
+ * entry and session id instances, so no id is held more than once. Sessions of a principal are kept in a small array,
+ * as there are usually only few of them.
+ *
+ * If <code>maxInactiveInterval</code> is set, entries which weren't mapped or checked with {@link #hasSession(String)}
+ * for that long are removed. It should be set to the http session timeout, so that sessions which expire without
+ * logout don't stay in the mapper forever. Adapters check {@link #hasSession(String)} on every request of the session
+ * and map the session again if its entry expired anyway, for example because the session has longer timeout.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class InMemorySessionIdMapper implements SessionIdMapper {
-    ConcurrentHashMap<String, String> ssoToSession = new ConcurrentHashMap<>();
-    ConcurrentHashMap<String, String> sessionToSso = new ConcurrentHashMap<>();
-    ConcurrentHashMap<String, Set<String>> principalToSession = new ConcurrentHashMap<>();
-    ConcurrentHashMap<String, String> sessionToPrincipal = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> ssoToSession = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String[]> principalToSession = new ConcurrentHashMap<>();
+
+    private final long maxInactiveMillis;
+    private final AtomicLong nextExpiration = new AtomicLong();
+
+    public InMemorySessionIdMapper() {
+        this(0);
+    }
+
+    /**
+     * @param maxInactiveInterval seconds after which unused entries are removed, 0 or less to keep them until
+     *                            {@link #removeSession(String)}
+     */
+    public InMemorySessionIdMapper(int maxInactiveInterval) {
+        this.maxInactiveMillis = maxInactiveInterval > 0 ? TimeUnit.SECONDS.toMillis(maxInactiveInterval) : 0;
+    }
 
     @Override
     public boolean hasSession(String id) {
-        return sessionToSso.containsKey(id) || sessionToPrincipal.containsKey(id);
+        Entry entry = sessions.get(id);
+        if (entry == null) return false;
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            removeEntry(entry);
+            return false;
+        }
+        entry.lastAccess = now;
+        return true;
     }
 
     @Override
     public Set<String> getUserSessions(String principal) {
-        Set<String> lookup = principalToSession.get(principal);
+        String[] lookup = principalToSession.get(principal);
         if (lookup == null) return null;
-        Set<String> copy = new HashSet<>();
-        copy.addAll(lookup);
-        return copy;
+        return new HashSet<>(Arrays.asList(lookup));
     }
 
     @Override
     public String getSessionFromSSO(String sso) {
-        return ssoToSession.get(sso);
+        Entry entry = ssoToSession.get(sso);
+        return entry != null ? entry.session : null;
     }
 
     @Override
     public void map(String sso, String principal, String session) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        Entry entry = new Entry(session, sso, principal, now);
+        Entry previous = sessions.put(session, entry);
+        if (previous != null) {
+            removeIndexes(previous);
+        }
         if (sso != null) {
-            ssoToSession.put(sso, session);
-            sessionToSso.put(session, sso);
+            ssoToSession.put(sso, entry);
         }
-        Set<String> userSessions = principalToSession.get(principal);
-        if (userSessions == null) {
-            final Set<String> tmp = Collections.synchronizedSet(new HashSet<String>());
-            userSessions = principalToSession.putIfAbsent(principal, tmp);
-            if (userSessions == null) {
-                userSessions = tmp;
-            }
+        if (principal != null) {
+            addToPrincipal(principal, entry.session);
         }
-        userSessions.add(session);
-        sessionToPrincipal.put(session, principal);
     }
 
     @Override
     public void removeSession(String session) {
-        String sso = sessionToSso.remove(session);
-        if (sso != null) {
-            ssoToSession.remove(sso);
+        Entry entry = sessions.remove(session);
+        if (entry != null) {
+            removeIndexes(entry);
         }
-        String principal =  sessionToPrincipal.remove(session);
-        if (principal != null) {
-            Set<String> sessions = principalToSession.get(principal);
-            sessions.remove(session);
-            if (sessions.isEmpty()) {
-                principalToSession.remove(principal, sessions);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void removeEntry(Entry entry) {
+        if (sessions.remove(entry.session, entry)) {
+            removeIndexes(entry);
+        }
+    }
+
+    private void removeIndexes(Entry entry) {
+        if (entry.sso != null) {
+            ssoToSession.remove(entry.sso, entry);
+        }
+        if (entry.principal != null) {
+            removeFromPrincipal(entry.principal, entry.session);
+        }
+    }
+
+    private void addToPrincipal(String principal, String session) {
+        while (true) {
+            String[] current = principalToSession.get(principal);
+            if (current == null) {
+                if (principalToSession.putIfAbsent(principal, new String[] { session }) == null) return;
+                continue;
+            }
+            if (Arrays.asList(current).contains(session)) return;
+
+            String[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = session;
+            if (principalToSession.replace(principal, current, updated)) return;
+        }
+    }
+
+    private void removeFromPrincipal(String principal, String session) {
+        while (true) {
+            String[] current = principalToSession.get(principal);
+            if (current == null) return;
+            int index = Arrays.asList(current).indexOf(session);
+            if (index < 0) return;
+
+            if (current.length == 1) {
+                if (principalToSession.remove(principal, current)) return;
+            } else {
+                String[] updated = new String[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                if (principalToSession.replace(principal, current, updated)) return;
             }
         }
     }
 
+    private boolean isExpired(Entry entry, long now) {
+        return maxInactiveMillis > 0 && entry.lastAccess + maxInactiveMillis < now;
+    }
+
+    /**
+     * Removes expired entries. Runs at most once per tenth of <code>maxInactiveInterval</code> and only in one thread
+     * at a time, so the cost is spread over many calls to {@link #map(String, String, String)}.
+     */
+    private void expire(long now) {
+        if (maxInactiveMillis <= 0) return;
+        long next = nextExpiration.get();
+        if (now < next || !nextExpiration.compareAndSet(next, now + Math.max(maxInactiveMillis / 10, 1000))) return;
+
+        Iterator<Entry> itr = sessions.values().iterator();
+        while (itr.hasNext()) {
+            Entry entry = itr.next();
+            if (isExpired(entry, now)) {
+                removeEntry(entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String session;
+        private final String sso;
+        private final String principal;
+        private volatile long lastAccess;
+
+        private Entry(String session, String sso, String principal, long lastAccess) {
+            this.session = session;
+            this.sso = sso;
+            this.principal = principal;
+            this.lastAccess = lastAccess;
+        }
+    }
 
 }
@@ -0,0 +1,23 @@
+package org.keycloak.adapters;
+
+/**
+ * Creates the session id mapper of a deployment. If the deployment has the context parameter
+ * <code>keycloak.session-id-mapper.cache</code> with JNDI name of a cache shared by the cluster, the mapping is stored
+ * there by {@link CacheSessionIdMapper}. Otherwise it's kept in memory of the node by {@link InMemorySessionIdMapper}.
+ */
+public class SessionIdMapperFactory {
+
+    public static final String CACHE_JNDI_NAME_PARAM = "keycloak.session-id-mapper.cache";
+
+    /**
+     * @param cacheJndiName value of <code>keycloak.session-id-mapper.cache</code> context parameter, may be null
+     * @param maxInactiveInterval http session timeout in seconds, 0 or less if it's not known
+     */
+    public static SessionIdMapper create(String cacheJndiName, int maxInactiveInterval) {
+        if (cacheJndiName != null && !cacheJndiName.trim().isEmpty()) {
+            return CacheSessionIdMapper.lookup(cacheJndiName.trim());
+        }
+        return new InMemorySessionIdMapper(maxInactiveInterval);
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.keycloak.adapters;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CacheSessionIdMapperTest {
+
+    private ReadTrackingCache cache;
+    private CacheSessionIdMapper mapper;
+
+    @Before
+    public void before() {
+        cache = new ReadTrackingCache();
+        mapper = new CacheSessionIdMapper(cache);
+    }
+
+    @Test
+    public void testLogoutBySso() {
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "user", "session2");
+
+        Assert.assertTrue(mapper.hasSession("session1"));
+        Assert.assertEquals("session1", mapper.getSessionFromSSO("sso1"));
+
+        mapper.removeSession(mapper.getSessionFromSSO("sso1"));
+
+        Assert.assertFalse(mapper.hasSession("session1"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session2")), mapper.getUserSessions("user"));
+
+        // Shared with other nodes
+        Assert.assertEquals("session2", new CacheSessionIdMapper(cache).getSessionFromSSO("sso2"));
+    }
+
+    @Test
+    public void testLogoutByPrincipal() {
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "user", "session2");
+        mapper.map("sso3", "other", "session3");
+        mapper.map(null, "user", "session4");
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session1", "session2", "session4")), mapper.getUserSessions("user"));
+
+        for (String session : mapper.getUserSessions("user")) {
+            mapper.removeSession(session);
+        }
+
+        Assert.assertNull(mapper.getUserSessions("user"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertEquals("session3", mapper.getSessionFromSSO("sso3"));
+        Assert.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testTouch() {
+        mapper.map("sso1", "user", "session1");
+        mapper.map(null, "other", "session2");
+
+        cache.reads.clear();
+        Assert.assertTrue(mapper.hasSession("session1"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("s:session1", "o:sso1", "p:user")), cache.reads);
+
+        cache.reads.clear();
+        Assert.assertTrue(mapper.hasSession("session2"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("s:session2", "p:other")), cache.reads);
+
+        cache.reads.clear();
+        Assert.assertFalse(mapper.hasSession("session3"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("s:session3")), cache.reads);
+    }
+
+    @Test
+    public void testExpiredByCache() {
+        mapper.map("sso1", "user", "session1");
+
+        // The cache expired the session entry
+        cache.remove("s:session1");
+
+        Assert.assertFalse(mapper.hasSession("session1"));
+
+        // Mapped again by the adapter
+        mapper.map("sso1", "user", "session1");
+        Assert.assertTrue(mapper.hasSession("session1"));
+        Assert.assertEquals("session1", mapper.getSessionFromSSO("sso1"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session1")), mapper.getUserSessions("user"));
+    }
+
+    private static class ReadTrackingCache extends ConcurrentHashMap<String, String> {
+
+        private final Set<String> reads = new HashSet<String>();
+
+        @Override
+        public String get(Object key) {
+            reads.add((String) key);
+            return super.get(key);
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.keycloak.adapters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class InMemorySessionIdMapperTest {
+
+    @Test
+    public void testLogoutBySso() {
+        InMemorySessionIdMapper mapper = new InMemorySessionIdMapper();
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "user", "session2");
+
+        Assert.assertTrue(mapper.hasSession("session1"));
+        Assert.assertEquals("session1", mapper.getSessionFromSSO("sso1"));
+
+        mapper.removeSession(mapper.getSessionFromSSO("sso1"));
+
+        Assert.assertFalse(mapper.hasSession("session1"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session2")), mapper.getUserSessions("user"));
+        Assert.assertEquals(1, mapper.size());
+    }
+
+    @Test
+    public void testLogoutByPrincipal() {
+        InMemorySessionIdMapper mapper = new InMemorySessionIdMapper();
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "user", "session2");
+        mapper.map("sso3", "other", "session3");
+        mapper.map(null, "user", "session4");
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session1", "session2", "session4")), mapper.getUserSessions("user"));
+
+        for (String session : mapper.getUserSessions("user")) {
+            mapper.removeSession(session);
+        }
+
+        Assert.assertNull(mapper.getUserSessions("user"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso2"));
+        Assert.assertEquals("session3", mapper.getSessionFromSSO("sso3"));
+        Assert.assertEquals(1, mapper.size());
+    }
+
+    @Test
+    public void testRemapped() {
+        InMemorySessionIdMapper mapper = new InMemorySessionIdMapper();
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "other", "session1");
+
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertNull(mapper.getUserSessions("user"));
+        Assert.assertEquals("session1", mapper.getSessionFromSSO("sso2"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session1")), mapper.getUserSessions("other"));
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        InMemorySessionIdMapper mapper = new InMemorySessionIdMapper(1);
+        mapper.map("sso1", "user", "session1");
+        mapper.map("sso2", "user", "session2");
+
+        // Touched, so it doesn't expire with the other session
+        Thread.sleep(600);
+        Assert.assertTrue(mapper.hasSession("session2"));
+        Thread.sleep(600);
+
+        Assert.assertFalse(mapper.hasSession("session1"));
+        Assert.assertNull(mapper.getSessionFromSSO("sso1"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("session2")), mapper.getUserSessions("user"));
+        Assert.assertTrue(mapper.hasSession("session2"));
+
+        // Expired sessions which aren't checked are removed when other sessions are mapped
+        Thread.sleep(1200);
+        mapper.map("sso3", "other", "session3");
+
+        Assert.assertEquals(1, mapper.size());
+        Assert.assertNull(mapper.getSessionFromSSO("sso2"));
+        Assert.assertNull(mapper.getUserSessions("user"));
+        Assert.assertTrue(mapper.hasSession("session3"));
+    }
+
+    @Test
+    public void testNoExpiration() throws InterruptedException {
+        InMemorySessionIdMapper mapper = new InMemorySessionIdMapper(0);
+        mapper.map("sso1", "user", "session1");
+
+        Thread.sleep(100);
+
+        Assert.assertTrue(mapper.hasSession("session1"));
+    }
+
+}
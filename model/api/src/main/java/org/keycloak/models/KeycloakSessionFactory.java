@@ -1,6 +1,7 @@
 package org.keycloak.models;
 
 import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventManager;
 import org.keycloak.provider.ProviderFactory;
 
@@ -11,6 +12,13 @@ import java.util.List;
  * @version $Revision: 1 $
  */
 public interface KeycloakSessionFactory extends ProviderEventManager {
+    /**
+     * Published before any provider factory is closed, so factories can finish work that still needs other providers.
+     */
+    interface PreCloseEvent extends ProviderEvent {
+        KeycloakSessionFactory getFactory();
+    }
+
     KeycloakSession create();
 
     <T extends Provider> ProviderFactory<T> getProviderFactory(Class<T> clazz);
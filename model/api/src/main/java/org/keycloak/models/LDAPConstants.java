@@ -32,14 +32,26 @@ public class LDAPConstants {
 
     public static final String SEARCH_SCOPE = "searchScope";
     public static final String CONNECTION_POOLING = "connectionPooling";
+    public static final String CONNECTION_POOL_MIN_SIZE = "connectionPoolMinSize";
+    public static final String CONNECTION_POOL_MAX_SIZE = "connectionPoolMaxSize";
+    public static final String CONNECTION_POOL_IDLE_TIMEOUT = "connectionPoolIdleTimeout";
+    public static final String CONNECTION_POOL_TIMEOUT = "connectionPoolTimeout";
+    public static final int DEFAULT_CONNECTION_POOL_MIN_SIZE = 1;
+    public static final int DEFAULT_CONNECTION_POOL_MAX_SIZE = 20;
+    public static final long DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT = 300000;
+    public static final long DEFAULT_CONNECTION_POOL_TIMEOUT = 30000;
     public static final String PAGINATION = "pagination";
 
     public static final String EDIT_MODE = "editMode";
 
-    // Count of users processed per single transaction during sync process
+    // Count of users read from LDAP per single page during sync process
     public static final String BATCH_SIZE_FOR_SYNC = "batchSizeForSync";
     public static final int DEFAULT_BATCH_SIZE_FOR_SYNC = 1000;
 
+    // Count of threads importing users during sync process
+    public static final String SYNC_THREADS = "syncThreads";
+    public static final int DEFAULT_SYNC_THREADS = 1;
+
     // Config option to specify if registrations will be synced or not
     public static final String SYNC_REGISTRATIONS = "syncRegistrations";
 
@@ -251,6 +251,30 @@ public class UserFederationManager implements UserProvider {
         } while (true);
     }
 
+    interface KeysetQuery {
+        List<UserModel> query(RealmModel realm, String lastUsername, int max);
+    }
+
+    // Users dropped by validation are replaced by reading further after the last username
+    protected List<UserModel> query(KeysetQuery keysetQuery, RealmModel realm, String lastUsername, int maxResults) {
+        List<UserModel> results = new LinkedList<UserModel>();
+        if (maxResults == 0) return results;
+        String last = lastUsername;
+        do {
+            int max = maxResults > 0 ? maxResults - results.size() : -1;
+            List<UserModel> query = keysetQuery.query(realm, last, max);
+            if (query == null || query.size() == 0) return results;
+            for (UserModel user : query) {
+                last = user.getUsername();
+                user = validateAndProxyUser(realm, user);
+                if (user == null) continue;
+                results.add(user);
+            }
+            if (max == -1 || query.size() < max) return results;
+        } while (results.size() < maxResults);
+        return results;
+    }
+
     @Override
     public List<UserModel> getUsers(RealmModel realm, int firstResult, int maxResults, final boolean includeServiceAccounts) {
         return query(new PaginatedQuery() {
@@ -261,6 +285,16 @@ public class UserFederationManager implements UserProvider {
         }, realm, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, final boolean includeServiceAccounts) {
+        return query(new KeysetQuery() {
+            @Override
+            public List<UserModel> query(RealmModel realm, String last, int max) {
+                return session.userStorage().getUsers(realm, last, max, includeServiceAccounts);
+            }
+        }, realm, lastUsername, maxResults);
+    }
+
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm) {
         return searchForUser(search, realm, 0, Integer.MAX_VALUE - 1);
@@ -275,6 +309,31 @@ public class UserFederationManager implements UserProvider {
 
     @Override
     public List<UserModel> searchForUser(final String search, RealmModel realm, int firstResult, int maxResults) {
+        federationLoad(realm, getSearchAttributes(search));
+        return query(new PaginatedQuery() {
+            @Override
+            public List<UserModel> query(RealmModel realm, int first, int max) {
+                return session.userStorage().searchForUser(search, realm, first, max);
+            }
+        }, realm, firstResult, maxResults);
+    }
+
+    @Override
+    public List<UserModel> searchForUser(final String search, RealmModel realm, String lastUsername, int maxResults) {
+        // Following pages were already loaded from federation providers with the first one
+        if (lastUsername == null) {
+            federationLoad(realm, getSearchAttributes(search));
+        }
+
+        return query(new KeysetQuery() {
+            @Override
+            public List<UserModel> query(RealmModel realm, String last, int max) {
+                return session.userStorage().searchForUser(search, realm, last, max);
+            }
+        }, realm, lastUsername, maxResults);
+    }
+
+    private Map<String, String> getSearchAttributes(String search) {
         Map<String, String> attributes = new HashMap<String, String>();
         int spaceIndex = search.lastIndexOf(' ');
         if (spaceIndex > -1) {
@@ -289,13 +348,7 @@ public class UserFederationManager implements UserProvider {
             attributes.put(UserModel.LAST_NAME, search.trim());
             attributes.put(UserModel.USERNAME, search.trim().toLowerCase());
         }
-        federationLoad(realm, attributes);
-        return query(new PaginatedQuery() {
-            @Override
-            public List<UserModel> query(RealmModel realm, int first, int max) {
-                return session.userStorage().searchForUser(search, realm, first, max);
-            }
-        }, realm, firstResult, maxResults);
+        return attributes;
     }
 
     @Override
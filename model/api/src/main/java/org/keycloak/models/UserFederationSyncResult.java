@@ -9,6 +9,7 @@ public class UserFederationSyncResult {
     private int updated;
     private int removed;
     private int failed;
+    private long duration;
 
     public int getAdded() {
         return added;
@@ -42,6 +43,31 @@ public class UserFederationSyncResult {
         this.failed = failed;
     }
 
+    /**
+     * @return time taken by the sync in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return count of users processed so far, including the ones which failed
+     */
+    public int getProcessed() {
+        return added + updated + removed + failed;
+    }
+
+    /**
+     * @return processed users per second
+     */
+    public double getThroughput() {
+        return duration > 0 ? getProcessed() * 1000.0 / duration : 0;
+    }
+
     public void increaseAdded() {
         added++;
     }
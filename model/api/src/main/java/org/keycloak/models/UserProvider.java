@@ -32,8 +32,13 @@ public interface UserProvider extends Provider {
     // Service account is included for counts
     int getUsersCount(RealmModel realm);
     List<UserModel> getUsers(RealmModel realm, int firstResult, int maxResults, boolean includeServiceAccounts);
+    // Keyset pagination. Returns users ordered by username, starting after lastUsername (or from the first user if null)
+    List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, boolean includeServiceAccounts);
+    // Search by prefix of username, email, first name or last name, with '*' as wildcard. See UserSearch for details
     List<UserModel> searchForUser(String search, RealmModel realm);
     List<UserModel> searchForUser(String search, RealmModel realm, int firstResult, int maxResults);
+    // Keyset pagination. Returns users ordered by username, starting after lastUsername (or from the first user if null)
+    List<UserModel> searchForUser(String search, RealmModel realm, String lastUsername, int maxResults);
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm);
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm, int firstResult, int maxResults);
 
@@ -0,0 +1,112 @@
+package org.keycloak.models.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Search string of {@link org.keycloak.models.UserProvider#searchForUser(String, org.keycloak.models.RealmModel)}, so
+ * all stores match users the same way. Matching is case-insensitive and by prefix:
+ * <ul>
+ *     <li>a user matches if the username, email, first name or last name starts with the search string</li>
+ *     <li>if the search string contains a space, the first name must start with the part before the last space and
+ *     the last name with the part after it (username and email are still matched with the whole string)</li>
+ *     <li><code>*</code> matches any characters, so <code>*foo</code> finds users with <code>foo</code> anywhere</li>
+ * </ul>
+ */
+public class UserSearch {
+
+    public static final char WILDCARD = '*';
+
+    private final String term;
+    private final String firstName;
+    private final String lastName;
+
+    private Pattern pattern;
+    private Pattern firstNamePattern;
+    private Pattern lastNamePattern;
+
+    public UserSearch(String search) {
+        term = search.trim().toLowerCase();
+
+        int spaceIndex = term.lastIndexOf(' ');
+        if (spaceIndex != -1) {
+            firstName = term.substring(0, spaceIndex).trim();
+            lastName = term.substring(spaceIndex + 1);
+        } else {
+            firstName = null;
+            lastName = null;
+        }
+    }
+
+    /**
+     * Lower-cased search string
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    public boolean isFirstAndLastName() {
+        return firstName != null;
+    }
+
+    /**
+     * Prefix of the first name if the search string contains a space, otherwise null
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Prefix of the last name if the search string contains a space, otherwise null
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * Pattern for SQL <code>like</code>, matching lower-cased values starting with the prefix
+     */
+    public static String toLikePattern(String prefix) {
+        return prefix.replace(WILDCARD, '%') + "%";
+    }
+
+    /**
+     * Case-insensitive regular expression matching values starting with the prefix
+     */
+    public static Pattern toPattern(String prefix) {
+        StringBuilder regex = new StringBuilder("^");
+        String[] parts = prefix.split(Pattern.quote(String.valueOf(WILDCARD)), -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (!parts[i].isEmpty()) {
+                regex.append(Pattern.quote(parts[i]));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    public boolean matches(String username, String email, String firstName, String lastName) {
+        if (pattern == null) {
+            pattern = toPattern(term);
+            if (isFirstAndLastName()) {
+                firstNamePattern = toPattern(this.firstName);
+                lastNamePattern = toPattern(this.lastName);
+            }
+        }
+
+        if (startsWith(pattern, username) || startsWith(pattern, email)) {
+            return true;
+        }
+        if (isFirstAndLastName()) {
+            return startsWith(firstNamePattern, firstName) && startsWith(lastNamePattern, lastName);
+        } else {
+            return startsWith(pattern, firstName) || startsWith(pattern, lastName);
+        }
+    }
+
+    private static boolean startsWith(Pattern pattern, String value) {
+        return value != null && pattern.matcher(value).lookingAt();
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.keycloak.models.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserSearchTest {
+
+    @Test
+    public void testPrefix() {
+        UserSearch search = new UserSearch(" Jo ");
+        Assert.assertEquals("jo", search.getTerm());
+        Assert.assertFalse(search.isFirstAndLastName());
+
+        Assert.assertTrue(search.matches("john", null, null, null));
+        Assert.assertTrue(search.matches("user", "JOE@localhost", null, null));
+        Assert.assertTrue(search.matches("user", null, "Josh", null));
+        Assert.assertTrue(search.matches("user", null, null, "Jones"));
+
+        // Not an infix search
+        Assert.assertFalse(search.matches("bjorn", "bjo@localhost", "Bjorn", "Majors"));
+    }
+
+    @Test
+    public void testFirstAndLastName() {
+        UserSearch search = new UserSearch("Mary  Ann Smi");
+        Assert.assertTrue(search.isFirstAndLastName());
+        Assert.assertEquals("mary  ann", search.getFirstName());
+        Assert.assertEquals("smi", search.getLastName());
+
+        Assert.assertTrue(search.matches("user", null, "Mary  Anne", "Smith"));
+        Assert.assertFalse(search.matches("user", null, "Mary", "Smith"));
+        Assert.assertFalse(search.matches("user", null, "Mary  Anne", "Jones"));
+        Assert.assertFalse(search.matches("user", null, null, "Smith"));
+
+        // Username and email are matched with the whole search string
+        Assert.assertTrue(search.matches("mary  ann smith", null, null, null));
+    }
+
+    @Test
+    public void testWildcard() {
+        UserSearch search = new UserSearch("*doe");
+        Assert.assertTrue(search.matches("jdoe", null, null, null));
+        Assert.assertTrue(search.matches("user", "john.doe@localhost", null, null));
+        Assert.assertTrue(search.matches("user", null, null, "McDoe"));
+        Assert.assertFalse(search.matches("john", "john@localhost", "John", "Smith"));
+
+        search = new UserSearch("j*n s*h");
+        Assert.assertTrue(search.matches("user", null, "John", "Smith"));
+        Assert.assertTrue(search.matches("user", null, "Jan", "Schmidt"));
+        Assert.assertFalse(search.matches("user", null, "Mary", "Smith"));
+
+        Assert.assertEquals("%doe%", UserSearch.toLikePattern("*doe"));
+        Assert.assertEquals("j%n%", UserSearch.toLikePattern("j*n"));
+    }
+
+    @Test
+    public void testSpecialCharactersNotPattern() {
+        UserSearch search = new UserSearch("a.b+");
+        Assert.assertTrue(search.matches("a.b+c", null, null, null));
+        Assert.assertFalse(search.matches("axbbb", null, null, null));
+    }
+
+}
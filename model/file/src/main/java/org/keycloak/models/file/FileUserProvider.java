@@ -41,6 +41,7 @@ import org.keycloak.models.entities.UserEntity;
 import org.keycloak.models.file.adapter.UserAdapter;
 import org.keycloak.models.utils.CredentialValidation;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.UserSearch;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -144,6 +145,18 @@ public class FileUserProvider implements UserProvider {
         return sortedList;
     }
 
+    @Override
+    public List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, boolean includeServiceAccounts) {
+        List<UserModel> found = new ArrayList<UserModel>();
+        for (UserModel user : getUsers(realm, -1, -1, includeServiceAccounts)) {
+            if (lastUsername == null || user.getUsername().compareTo(lastUsername) > 0) {
+                found.add(user);
+                if (found.size() == maxResults) break;
+            }
+        }
+        return found;
+    }
+
     private List<UserModel> filterServiceAccountUsers(List<UserModel> users) {
         List<UserModel> result = new ArrayList<>();
         for (UserModel user : users) {
@@ -178,38 +191,12 @@ public class FileUserProvider implements UserProvider {
 
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm, int firstResult, int maxResults) {
-        search = search.trim();
-        Pattern caseInsensitivePattern = Pattern.compile("(?i:.*" + search + ".*)", Pattern.CASE_INSENSITIVE);
-
-        int spaceInd = search.lastIndexOf(" ");
-        boolean isFirstAndLastSearch = spaceInd != -1;
-        Pattern firstNamePattern = null;
-        Pattern lastNamePattern = null;
-        if (isFirstAndLastSearch) {
-            String firstNamePatternString = search.substring(0, spaceInd);
-            String lastNamePatternString = search.substring(spaceInd + 1);
-            firstNamePattern = Pattern.compile("(?i:.*" + firstNamePatternString + ".*$)", Pattern.CASE_INSENSITIVE);
-            lastNamePattern = Pattern.compile("(?i:^.*" + lastNamePatternString + ".*)", Pattern.CASE_INSENSITIVE);
-        }
+        UserSearch userSearch = new UserSearch(search);
 
         List<UserModel> found = new ArrayList<UserModel>();
 
         for (UserModel user : inMemoryModel.getUsers(realm.getId())) {
-            String firstName = user.getFirstName();
-            String lastName = user.getLastName();
-            // Case when we have search string like "ohn Bow". Then firstName must end with "ohn" AND lastName must start with "bow" (everything case-insensitive)
-            if (isFirstAndLastSearch) {
-                if (isAMatch(firstNamePattern, firstName) &&
-                    isAMatch(lastNamePattern, lastName)) {
-                    found.add(user);
-                    continue;
-                }
-            }
-
-            if (isAMatch(caseInsensitivePattern, firstName) ||
-                isAMatch(caseInsensitivePattern, lastName) ||
-                isAMatch(caseInsensitivePattern, user.getUsername()) ||
-                isAMatch(caseInsensitivePattern, user.getEmail())) {
+            if (userSearch.matches(user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName())) {
                 found.add(user);
             }
         }
@@ -220,6 +207,18 @@ public class FileUserProvider implements UserProvider {
         return sortedSubList(found, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> searchForUser(String search, RealmModel realm, String lastUsername, int maxResults) {
+        List<UserModel> found = new ArrayList<UserModel>();
+        for (UserModel user : searchForUser(search, realm, -1, -1)) {
+            if (lastUsername == null || user.getUsername().compareTo(lastUsername) > 0) {
+                found.add(user);
+                if (found.size() == maxResults) break;
+            }
+        }
+        return found;
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, -1, -1);
@@ -77,10 +77,18 @@ public class UserAdapter implements UserModel, Comparable {
         this.inMemoryModel = inMemoryModel;
     }
 
+    /**
+     * The user is marked dirty, as callers change the entity directly
+     */
     public UserEntity getUserEntity() {
+        markDirty();
         return this.user;
     }
 
+    private void markDirty() {
+        inMemoryModel.markUserDirty(realm.getId(), user.getId());
+    }
+
     @Override
     public String getId() {
         return user.getId();
@@ -93,6 +101,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setUsername(String username) {
+        markDirty();
         username = KeycloakModelUtils.toLowerCaseSafe(username);
 
         if (getUsername() == null) {
@@ -114,6 +123,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setCreatedTimestamp(Long timestamp) {
+        markDirty();
         user.setCreatedTimestamp(timestamp);
     }
 
@@ -124,6 +134,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setEnabled(boolean enabled) {
+        markDirty();
         user.setEnabled(enabled);
     }
 
@@ -134,6 +145,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setFirstName(String firstName) {
+        markDirty();
         user.setFirstName(firstName);
     }
 
@@ -144,6 +156,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setLastName(String lastName) {
+        markDirty();
         user.setLastName(lastName);
     }
 
@@ -154,6 +167,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setEmail(String email) {
+        markDirty();
         email = KeycloakModelUtils.toLowerCaseSafe(email);
 
         if (email == null) {
@@ -175,11 +189,13 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setEmailVerified(boolean verified) {
+        markDirty();
         user.setEmailVerified(verified);
     }
 
     @Override
     public void setSingleAttribute(String name, String value) {
+        markDirty();
         if (user.getAttributes() == null) {
             user.setAttributes(new HashMap<String, List<String>>());
         }
@@ -191,6 +207,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setAttribute(String name, List<String> values) {
+        markDirty();
         if (user.getAttributes() == null) {
             user.setAttributes(new HashMap<String, List<String>>());
         }
@@ -200,6 +217,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void removeAttribute(String name) {
+        markDirty();
         if (user.getAttributes() == null) return;
 
         user.getAttributes().remove(name);
@@ -240,6 +258,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void addRequiredAction(String actionName) {
+        markDirty();
         List<String> requiredActions = user.getRequiredActions();
         if (requiredActions == null) requiredActions = new ArrayList<>();
         if (!requiredActions.contains(actionName)) {
@@ -256,6 +275,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void removeRequiredAction(String actionName) {
+        markDirty();
         List<String> requiredActions = user.getRequiredActions();
         if (requiredActions == null) return;
         requiredActions.remove(actionName);
@@ -269,11 +289,13 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setOtpEnabled(boolean totp) {
+        markDirty();
         user.setTotp(totp);
     }
 
     @Override
     public void updateCredential(UserCredentialModel cred) {
+        markDirty();
 
         if (cred.getType().equals(UserCredentialModel.PASSWORD)) {
             updatePasswordCredential(cred);
@@ -454,6 +476,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void updateCredentialDirectly(UserCredentialValueModel credModel) {
+        markDirty();
         CredentialEntity credentialEntity = getCredentialEntity(user, credModel.getType());
 
         if (credentialEntity == null) {
@@ -483,6 +506,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void grantRole(RoleModel role) {
+        markDirty();
         allRoles.add(role);
     }
 
@@ -510,6 +534,7 @@ public class UserAdapter implements UserModel, Comparable {
     @Override
     public void deleteRoleMapping(RoleModel role) {
         if (user == null || role == null) return;
+        markDirty();
         allRoles.remove(role);
     }
 
@@ -533,6 +558,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setFederationLink(String link) {
+        markDirty();
         user.setFederationLink(link);
     }
 
@@ -543,6 +569,7 @@ public class UserAdapter implements UserModel, Comparable {
 
     @Override
     public void setServiceAccountClientLink(String clientInternalId) {
+        markDirty();
         user.setServiceAccountClientLink(clientInternalId);
     }
 
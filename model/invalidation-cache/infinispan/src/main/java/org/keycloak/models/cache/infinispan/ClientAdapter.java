@@ -469,6 +469,7 @@ public class ClientAdapter implements ClientModel {
     @Override
     public boolean removeRole(RoleModel role) {
         cacheSession.registerRoleInvalidation(role.getId());
+        cacheSession.registerRoleCompositesInvalidation(cachedRealm.getId());
         getDelegateForUpdate();
         return updated.removeRole(role);
     }
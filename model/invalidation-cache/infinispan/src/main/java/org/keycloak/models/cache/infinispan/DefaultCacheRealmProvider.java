@@ -21,6 +21,7 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
     protected Set<String> realmInvalidations = new HashSet<String>();
     protected Set<String> appInvalidations = new HashSet<String>();
     protected Set<String> roleInvalidations = new HashSet<String>();
+    protected Set<String> roleCompositesInvalidations = new HashSet<String>();
     protected Map<String, RealmModel> managedRealms = new HashMap<String, RealmModel>();
     protected Map<String, ClientModel> managedApplications = new HashMap<String, ClientModel>();
     protected Map<String, RoleModel> managedRoles = new HashMap<String, RoleModel>();
@@ -73,9 +74,24 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         roleInvalidations.add(id);
     }
 
+    @Override
+    public void registerRoleCompositesInvalidation(String realmId) {
+        roleCompositesInvalidations.add(realmId);
+    }
+
+    @Override
+    public String getRoleCompositesVersion(String realmId) {
+        if (!cache.isEnabled() || realmInvalidations.contains(realmId) || !roleInvalidations.isEmpty() || roleCompositesInvalidations.contains(realmId)) {
+            return null;
+        }
+        return cache.getRoleCompositesVersion(realmId);
+    }
+
     protected void runInvalidations() {
         for (String id : realmInvalidations) {
             cache.invalidateCachedRealmById(id);
+            // roles of a changed realm are read from the database, so changes to their composites aren't tracked
+            cache.invalidateRoleCompositesVersion(id);
         }
         for (String id : roleInvalidations) {
             cache.invalidateRoleById(id);
@@ -83,6 +99,9 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         for (String id : appInvalidations) {
             cache.invalidateCachedApplicationById(id);
         }
+        for (String realmId : roleCompositesInvalidations) {
+            cache.invalidateRoleCompositesVersion(realmId);
+        }
     }
 
     private KeycloakTransaction getTransaction() {
@@ -236,7 +255,11 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         if (cached == null) {
             RoleModel model = getDelegate().getRoleById(id, realm);
             if (model == null) return null;
-            if (roleInvalidations.contains(id)) return model;
+            if (roleInvalidations.contains(id)) {
+                // changes to the role's composites aren't tracked by the cache
+                registerRoleCompositesInvalidation(realm.getId());
+                return model;
+            }
             if (model.getContainer() instanceof ClientModel) {
                 cached = new CachedClientRole(((ClientModel) model.getContainer()).getId(), model, realm);
             } else {
@@ -245,6 +268,7 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
             cache.addCachedRole(cached);
 
         } else if (roleInvalidations.contains(id)) {
+            registerRoleCompositesInvalidation(realm.getId());
             return getDelegate().getRoleById(id, realm);
         } else if (managedRoles.containsKey(id)) {
             return managedRoles.get(id);
@@ -215,6 +215,11 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
         return getDelegate().getUsers(realm, firstResult, maxResults, includeServiceAccounts);
     }
 
+    @Override
+    public List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, boolean includeServiceAccounts) {
+        return getDelegate().getUsers(realm, lastUsername, maxResults, includeServiceAccounts);
+    }
+
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm) {
         return getDelegate().searchForUser(search, realm);
@@ -225,6 +230,11 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
         return getDelegate().searchForUser(search, realm, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> searchForUser(String search, RealmModel realm, String lastUsername, int maxResults) {
+        return getDelegate().searchForUser(search, realm, lastUsername, maxResults);
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return getDelegate().searchForUserByAttributes(attributes, realm);
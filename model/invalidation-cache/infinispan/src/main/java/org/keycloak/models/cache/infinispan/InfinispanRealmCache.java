@@ -6,6 +6,7 @@ import org.keycloak.models.cache.RealmCache;
 import org.keycloak.models.cache.entities.CachedClient;
 import org.keycloak.models.cache.entities.CachedRealm;
 import org.keycloak.models.cache.entities.CachedRole;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,6 +17,8 @@ public class InfinispanRealmCache implements RealmCache {
 
     protected static final Logger logger = Logger.getLogger(InfinispanRealmCache.class);
 
+    private static final String ROLE_COMPOSITES_VERSION_PREFIX = "role-composites:";
+
     protected final Cache<String, Object> cache;
     protected final ConcurrentHashMap<String, String> realmLookup;
     protected volatile boolean enabled = true;
@@ -132,6 +135,25 @@ public class InfinispanRealmCache implements RealmCache {
         cache.remove(id);
     }
 
+    @Override
+    public String getRoleCompositesVersion(String realmId) {
+        if (!enabled) return null;
+        String key = ROLE_COMPOSITES_VERSION_PREFIX + realmId;
+        String version = get(key, String.class);
+        if (version == null) {
+            // Not replicated to other nodes, so nodes don't invalidate each other's version
+            cache.putForExternalRead(key, KeycloakModelUtils.generateId());
+            version = get(key, String.class);
+        }
+        return version;
+    }
+
+    @Override
+    public void invalidateRoleCompositesVersion(String realmId) {
+        logger.tracev("Invalidating role composites of realm {0}", realmId);
+        cache.remove(ROLE_COMPOSITES_VERSION_PREFIX + realmId);
+    }
+
     private <T> T get(String id, Class<T> type) {
         Object o = cache.get(id);
         return o != null && type.isInstance(o) ? type.cast(o) : null;
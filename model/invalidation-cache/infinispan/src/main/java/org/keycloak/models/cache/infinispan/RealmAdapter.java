@@ -320,6 +320,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public void setPublicKeyPem(String publicKeyPem) {
         getDelegateForUpdate();
+        this.publicKey = null;
         updated.setPublicKeyPem(publicKeyPem);
     }
 
@@ -332,35 +333,52 @@ public class RealmAdapter implements RealmModel {
     @Override
     public void setPrivateKeyPem(String privateKeyPem) {
         getDelegateForUpdate();
+        this.privateKey = null;
         updated.setPrivateKeyPem(privateKeyPem);
     }
 
     @Override
     public PublicKey getPublicKey() {
         if (publicKey != null) return publicKey;
-        publicKey = KeycloakModelUtils.getPublicKey(getPublicKeyPem());
+        if (updated != null) {
+            publicKey = KeycloakModelUtils.getPublicKey(getPublicKeyPem());
+        } else {
+            publicKey = cached.getPublicKey();
+            if (publicKey == null) {
+                publicKey = KeycloakModelUtils.getPublicKey(cached.getPublicKeyPem());
+                cached.setPublicKey(publicKey);
+            }
+        }
         return publicKey;
     }
 
     @Override
     public void setPublicKey(PublicKey publicKey) {
-        this.publicKey = publicKey;
         String publicKeyPem = KeycloakModelUtils.getPemFromKey(publicKey);
         setPublicKeyPem(publicKeyPem);
+        this.publicKey = publicKey;
     }
 
     @Override
     public X509Certificate getCertificate() {
         if (certificate != null) return certificate;
-        certificate = KeycloakModelUtils.getCertificate(getCertificatePem());
+        if (updated != null) {
+            certificate = KeycloakModelUtils.getCertificate(getCertificatePem());
+        } else {
+            certificate = cached.getCertificate();
+            if (certificate == null) {
+                certificate = KeycloakModelUtils.getCertificate(cached.getCertificatePem());
+                cached.setCertificate(certificate);
+            }
+        }
         return certificate;
     }
 
     @Override
     public void setCertificate(X509Certificate certificate) {
-        this.certificate = certificate;
         String certPem = KeycloakModelUtils.getPemFromCertificate(certificate);
         setCertificatePem(certPem);
+        this.certificate = certificate;
     }
 
     @Override
@@ -372,6 +390,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public void setCertificatePem(String certificate) {
         getDelegateForUpdate();
+        this.certificate = null;
         updated.setCertificatePem(certificate);
 
     }
@@ -379,15 +398,23 @@ public class RealmAdapter implements RealmModel {
     @Override
     public PrivateKey getPrivateKey() {
         if (privateKey != null) return privateKey;
-        privateKey = KeycloakModelUtils.getPrivateKey(getPrivateKeyPem());
+        if (updated != null) {
+            privateKey = KeycloakModelUtils.getPrivateKey(getPrivateKeyPem());
+        } else {
+            privateKey = cached.getPrivateKey();
+            if (privateKey == null) {
+                privateKey = KeycloakModelUtils.getPrivateKey(cached.getPrivateKeyPem());
+                cached.setPrivateKey(privateKey);
+            }
+        }
         return privateKey;
     }
 
     @Override
     public void setPrivateKey(PrivateKey privateKey) {
-        this.privateKey = privateKey;
         String privateKeyPem = KeycloakModelUtils.getPemFromKey(privateKey);
         setPrivateKeyPem(privateKeyPem);
+        this.privateKey = privateKey;
     }
 
     @Override
@@ -397,8 +424,15 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public Key getCodeSecretKey() {
-        if (codeSecretKey == null) {
+        if (codeSecretKey != null) return codeSecretKey;
+        if (updated != null) {
             codeSecretKey = KeycloakModelUtils.getSecretKey(getCodeSecret());
+        } else {
+            codeSecretKey = cached.getCodeSecretKey();
+            if (codeSecretKey == null) {
+                codeSecretKey = KeycloakModelUtils.getSecretKey(cached.getCodeSecret());
+                cached.setCodeSecretKey(codeSecretKey);
+            }
         }
         return codeSecretKey;
     }
@@ -406,6 +440,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public void setCodeSecret(String codeSecret) {
         getDelegateForUpdate();
+        this.codeSecretKey = null;
         updated.setCodeSecret(codeSecret);
     }
 
@@ -701,6 +736,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public boolean removeRoleById(String id) {
         cacheSession.registerRoleInvalidation(id);
+        cacheSession.registerRoleCompositesInvalidation(getId());
         getDelegateForUpdate();
         return updated.removeRoleById(id);
     }
@@ -815,6 +851,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public boolean removeRole(RoleModel role) {
         cacheSession.registerRoleInvalidation(role.getId());
+        cacheSession.registerRoleCompositesInvalidation(getId());
         getDelegateForUpdate();
         return updated.removeRole(role);
     }
@@ -93,12 +93,14 @@ public class RoleAdapter implements RoleModel {
     public void addCompositeRole(RoleModel role) {
         getDelegateForUpdate();
         updated.addCompositeRole(role);
+        cacheSession.registerRoleCompositesInvalidation(realm.getId());
     }
 
     @Override
     public void removeCompositeRole(RoleModel role) {
         getDelegateForUpdate();
         updated.removeCompositeRole(role);
+        cacheSession.registerRoleCompositesInvalidation(realm.getId());
     }
 
     @Override
@@ -1,6 +1,7 @@
 package org.keycloak.models.cache.infinispan;
 
 import org.keycloak.models.*;
+import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheUserProvider;
 import org.keycloak.models.cache.entities.CachedUser;
 import org.keycloak.models.utils.KeycloakModelUtils;
@@ -281,11 +282,39 @@ public class UserAdapter implements UserModel {
         if (updated != null) return updated.hasRole(role);
         if (cached.getRoleMappings().contains(role.getId())) return true;
 
-        Set<RoleModel> mappings = getRoleMappings();
-        for (RoleModel mapping: mappings) {
-           if (mapping.hasRole(role)) return true;
+        // Read before the composites, so the roles aren't stored with a newer version than they were expanded from
+        String compositesVersion = getRoleCompositesVersion();
+        Set<String> effectiveRoles = compositesVersion != null ? cached.getEffectiveRoles(compositesVersion) : null;
+        if (effectiveRoles == null) {
+            Set<RoleModel> mappings = getRoleMappings();
+            // getRoleMappings switches to the database if a mapped role was removed
+            if (updated != null) return updated.hasRole(role);
+
+            effectiveRoles = new HashSet<String>();
+            for (RoleModel mapping : mappings) {
+                expandRole(mapping, effectiveRoles);
+            }
+            if (compositesVersion != null) {
+                cached.setEffectiveRoles(compositesVersion, effectiveRoles);
+            }
+        }
+        return effectiveRoles.contains(role.getId());
+    }
+
+    /**
+     * @return null if roles of the realm were changed in this transaction, as the expanded roles would include
+     * uncommitted changes
+     */
+    private String getRoleCompositesVersion() {
+        CacheRealmProvider realmCache = keycloakSession.getProvider(CacheRealmProvider.class);
+        return realmCache != null ? realmCache.getRoleCompositesVersion(realm.getId()) : null;
+    }
+
+    private static void expandRole(RoleModel role, Set<String> effectiveRoles) {
+        if (!effectiveRoles.add(role.getId()) || !role.isComposite()) return;
+        for (RoleModel composite : role.getComposites()) {
+            expandRole(composite, effectiveRoles);
         }
-        return false;
     }
 
     @Override
@@ -0,0 +1,246 @@
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.cache.CacheUserProvider;
+import org.keycloak.models.cache.entities.CachedUser;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Effective roles of cached users must follow committed changes of role composites, and never include uncommitted ones.
+ */
+public class EffectiveRolesCacheTest {
+
+    private DefaultCacheManager cacheManager;
+    private InfinispanRealmCache realmCache;
+    private RealmModel realm;
+    private CachedUser cachedUser;
+
+    // composites committed to the "database"
+    private Map<String, Set<String>> committed;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        Cache<String, Object> cache = cacheManager.getCache("realms");
+        realmCache = new InfinispanRealmCache(cache, new ConcurrentHashMap<String, String>());
+
+        realm = stub(RealmModel.class, Collections.<String, Object>singletonMap("getId", "realm"));
+
+        committed = new HashMap<String, Set<String>>();
+        committed.put("r1", new HashSet<String>(Arrays.asList("r2")));
+
+        Tx tx = new Tx(committed);
+        Map<String, Object> user = new HashMap<String, Object>();
+        user.put("getId", "user");
+        user.put("getUsername", "user");
+        user.put("getRoleMappings", Collections.singleton(tx.role("r1")));
+        cachedUser = new CachedUser(tx.userProvider, realm, stub(UserModel.class, user));
+        tx.commit();
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void cached() {
+        Tx tx = new Tx(committed);
+        Assert.assertTrue(tx.user().hasRole(tx.role("r2")));
+        tx.commit();
+
+        // changed without going through the cache, so the cached expansion is still used
+        committed.put("r1", new HashSet<String>(Arrays.asList("r3")));
+
+        tx = new Tx(committed);
+        Assert.assertTrue(tx.user().hasRole(tx.role("r2")));
+        Assert.assertFalse(tx.user().hasRole(tx.role("r3")));
+        tx.commit();
+    }
+
+    @Test
+    public void grantAndRevoke() {
+        Tx tx = new Tx(committed);
+        Assert.assertTrue(tx.user().hasRole(tx.role("r2")));
+        tx.commit();
+
+        tx = new Tx(committed);
+        tx.setComposites("r1", "r3");
+        tx.commit();
+        committed = tx.composites;
+
+        tx = new Tx(committed);
+        Assert.assertFalse(tx.user().hasRole(tx.role("r2")));
+        Assert.assertTrue(tx.user().hasRole(tx.role("r3")));
+        tx.commit();
+    }
+
+    @Test
+    public void uncommittedChangeNotShared() {
+        Tx tx = new Tx(committed);
+        Assert.assertTrue(tx.user().hasRole(tx.role("r2")));
+        tx.commit();
+
+        Tx changing = new Tx(committed);
+        changing.setComposites("r1", "r2", "r4");
+        Assert.assertTrue(changing.user().hasRole(changing.role("r4")));
+
+        Tx other = new Tx(committed);
+        Assert.assertFalse(other.user().hasRole(other.role("r4")));
+        other.commit();
+
+        changing.rollback();
+
+        tx = new Tx(committed);
+        Assert.assertFalse(tx.user().hasRole(tx.role("r4")));
+        Assert.assertTrue(tx.user().hasRole(tx.role("r2")));
+        tx.commit();
+    }
+
+    /**
+     * Session with its own view of the composites, like a database transaction
+     */
+    private class Tx {
+
+        private final Map<String, Set<String>> composites;
+        private final KeycloakSession session;
+        private final DefaultCacheRealmProvider realmProvider;
+        private final CacheUserProvider userProvider;
+        private KeycloakTransaction transaction;
+
+        private Tx(Map<String, Set<String>> composites) {
+            this.composites = new HashMap<String, Set<String>>(composites);
+
+            final RealmProvider realms = stub(RealmProvider.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("getRoleById") ? role((String) args[0]) : null;
+                }
+            });
+            final KeycloakTransactionManager transactionManager = stub(KeycloakTransactionManager.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("enlistAfterCompletion")) {
+                        transaction = (KeycloakTransaction) args[0];
+                    }
+                    return null;
+                }
+            });
+            final UserProvider users = stub(UserProvider.class, (InvocationHandler) null);
+            userProvider = stub(CacheUserProvider.class, Collections.<String, Object>singletonMap("getDelegate", users));
+
+            session = stub(KeycloakSession.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getTransaction")) return transactionManager;
+                    if (method.getName().equals("realms")) return realms;
+                    if (method.getName().equals("getProvider") && args[0] == CacheRealmProvider.class) return realmProvider;
+                    if (method.getName().equals("getProvider") && args[0] == RealmProvider.class) return realms;
+                    return null;
+                }
+            });
+            realmProvider = new DefaultCacheRealmProvider(realmCache, session);
+            transaction.begin();
+        }
+
+        UserModel user() {
+            return new UserAdapter(cachedUser, userProvider, session, realm);
+        }
+
+        RoleModel role(final String id) {
+            return stub(RoleModel.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    Set<String> children = composites.get(id);
+                    if (method.getName().equals("getId")) return id;
+                    if (method.getName().equals("isComposite")) return children != null && !children.isEmpty();
+                    if (method.getName().equals("getComposites")) {
+                        Set<RoleModel> roles = new HashSet<RoleModel>();
+                        if (children != null) {
+                            for (String child : children) {
+                                roles.add(role(child));
+                            }
+                        }
+                        return roles;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * What RoleAdapter.addCompositeRole/removeCompositeRole do
+         */
+        void setComposites(String id, String... children) {
+            realmProvider.getDelegate();
+            composites.put(id, new HashSet<String>(Arrays.asList(children)));
+            realmProvider.registerRoleCompositesInvalidation(realm.getId());
+        }
+
+        void commit() {
+            transaction.commit();
+        }
+
+        void rollback() {
+            transaction.rollback();
+        }
+
+    }
+
+    private static <T> T stub(Class<T> type, final Map<String, Object> answers) {
+        return stub(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return answers.get(method.getName());
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) return proxy == args[0];
+                if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                Object result = handler != null ? handler.invoke(proxy, method, args) : null;
+                if (result != null) return result;
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                if (returnType == Set.class) return Collections.emptySet();
+                if (returnType == List.class || returnType == Collection.class) return Collections.emptyList();
+                if (returnType == Map.class) return Collections.emptyMap();
+                return null;
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,226 @@
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Key;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys parsed and kept with a cached realm must match the PEMs of the realm, also after the keys are rotated or the
+ * realm is invalidated.
+ */
+public class RealmKeysCacheTest {
+
+    private DefaultCacheManager cacheManager;
+    private InfinispanRealmCache realmCache;
+
+    // values of the realm in the "database"
+    private Map<String, Object> stored;
+    private RealmModel storedRealm;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        Cache<String, Object> cache = cacheManager.getCache("realms");
+        realmCache = new InfinispanRealmCache(cache, new ConcurrentHashMap<String, String>());
+
+        stored = new ConcurrentHashMap<String, Object>();
+        stored.put("getId", "realm");
+        stored.put("getName", "realm");
+        storedRealm = stub(RealmModel.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("setPublicKey") || name.equals("setPrivateKey")) {
+                    stored.put("get" + name.substring(3) + "Pem", KeycloakModelUtils.getPemFromKey((Key) args[0]));
+                } else if (name.equals("setCertificate")) {
+                    stored.put("getCertificatePem", KeycloakModelUtils.getPemFromCertificate((X509Certificate) args[0]));
+                } else if (name.startsWith("set") && args.length == 1 && args[0] != null) {
+                    stored.put("get" + name.substring(3), args[0]);
+                } else {
+                    return stored.get(name);
+                }
+                return null;
+            }
+        });
+        KeycloakModelUtils.generateRealmKeys(storedRealm);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void keysKeptWithCachedRealm() {
+        Tx tx = new Tx();
+        RealmModel realm = tx.realm();
+        assertKeys(realm);
+        tx.commit();
+
+        tx = new Tx();
+        RealmModel other = tx.realm();
+        assertKeys(other);
+        Assert.assertSame(realm.getPublicKey(), other.getPublicKey());
+        Assert.assertSame(realm.getPrivateKey(), other.getPrivateKey());
+        Assert.assertSame(realm.getCertificate(), other.getCertificate());
+        Assert.assertSame(realm.getCodeSecretKey(), other.getCodeSecretKey());
+        tx.commit();
+    }
+
+    @Test
+    public void keyRotation() {
+        Tx tx = new Tx();
+        RealmModel before = tx.realm();
+        assertKeys(before);
+        tx.commit();
+
+        tx = new Tx();
+        RealmModel realm = tx.realm();
+        String publicKeyPem = realm.getPublicKeyPem();
+        KeycloakModelUtils.generateRealmKeys(realm);
+        Assert.assertNotEquals(publicKeyPem, stored.get("getPublicKeyPem"));
+
+        // the realm being updated uses its new keys, other sessions keep the committed ones
+        assertKeys(realm);
+        Tx other = new Tx();
+        Assert.assertEquals(publicKeyPem, other.realm().getPublicKeyPem());
+        Assert.assertSame(before.getPublicKey(), other.realm().getPublicKey());
+        other.commit();
+        tx.commit();
+
+        tx = new Tx();
+        RealmModel after = tx.realm();
+        assertKeys(after);
+        Assert.assertNotEquals(before.getPublicKey(), after.getPublicKey());
+        Assert.assertNotEquals(before.getPrivateKey(), after.getPrivateKey());
+        Assert.assertNotEquals(before.getCertificate(), after.getCertificate());
+        tx.commit();
+    }
+
+    @Test
+    public void keysDroppedOnInvalidation() {
+        Tx tx = new Tx();
+        RealmModel before = tx.realm();
+        assertKeys(before);
+        tx.commit();
+
+        // changed without going through the cache, the cached keys are used until the realm is invalidated
+        KeycloakModelUtils.generateRealmKeys(storedRealm);
+
+        tx = new Tx();
+        Assert.assertSame(before.getPublicKey(), tx.realm().getPublicKey());
+        tx.commit();
+
+        realmCache.invalidateCachedRealmById("realm");
+
+        tx = new Tx();
+        RealmModel after = tx.realm();
+        assertKeys(after);
+        Assert.assertNotEquals(before.getPublicKey(), after.getPublicKey());
+        tx.commit();
+    }
+
+    /**
+     * The keys of the realm match the keys parsed from the stored PEMs
+     */
+    private void assertKeys(RealmModel realm) {
+        Assert.assertEquals(KeycloakModelUtils.getPublicKey((String) stored.get("getPublicKeyPem")), realm.getPublicKey());
+        Assert.assertEquals(KeycloakModelUtils.getPrivateKey((String) stored.get("getPrivateKeyPem")), realm.getPrivateKey());
+        Assert.assertEquals(KeycloakModelUtils.getCertificate((String) stored.get("getCertificatePem")), realm.getCertificate());
+        Assert.assertEquals(KeycloakModelUtils.getSecretKey((String) stored.get("getCodeSecret")), realm.getCodeSecretKey());
+    }
+
+    /**
+     * Session reading the realm through the cache
+     */
+    private class Tx {
+
+        private final DefaultCacheRealmProvider realmProvider;
+        private KeycloakTransaction transaction;
+
+        private Tx() {
+            final RealmProvider realms = stub(RealmProvider.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("getRealm") && args[0].equals("realm") ? storedRealm : null;
+                }
+            });
+            final KeycloakTransactionManager transactionManager = stub(KeycloakTransactionManager.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("enlistAfterCompletion")) {
+                        transaction = (KeycloakTransaction) args[0];
+                    }
+                    return null;
+                }
+            });
+            final CacheRealmProvider[] provider = new CacheRealmProvider[1];
+            KeycloakSession session = stub(KeycloakSession.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getTransaction")) return transactionManager;
+                    if (method.getName().equals("realms")) return provider[0];
+                    if (method.getName().equals("getProvider") && args[0] == CacheRealmProvider.class) return provider[0];
+                    if (method.getName().equals("getProvider") && args[0] == RealmProvider.class) return realms;
+                    return null;
+                }
+            });
+            realmProvider = new DefaultCacheRealmProvider(realmCache, session);
+            provider[0] = realmProvider;
+            transaction.begin();
+        }
+
+        RealmModel realm() {
+            return realmProvider.getRealm("realm");
+        }
+
+        void commit() {
+            transaction.commit();
+        }
+
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) return proxy == args[0];
+                if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                Object result = handler.invoke(proxy, method, args);
+                if (result != null) return result;
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                if (returnType == Set.class) return Collections.emptySet();
+                if (returnType == List.class || returnType == Collection.class) return Collections.emptyList();
+                if (returnType == Map.class) return Collections.emptyMap();
+                return null;
+            }
+        }));
+    }
+
+}
@@ -17,4 +17,12 @@ public interface CacheRealmProvider extends RealmProvider {
     void registerApplicationInvalidation(String id);
 
     void registerRoleInvalidation(String id);
+
+    void registerRoleCompositesInvalidation(String realmId);
+
+    /**
+     * @return version of role composites of the realm, or null if roles of the realm were changed in this transaction
+     * and values computed from them must not be cached
+     */
+    String getRoleCompositesVersion(String realmId);
 }
@@ -39,6 +39,16 @@ public interface RealmCache {
 
     void invalidateRoleById(String id);
 
+    /**
+     * Version of the role composites of the realm. It changes when composites of any role of the realm change, so
+     * values computed from composites can be stored with the version and checked against it on read.
+     *
+     * @return current version or null if it's not available
+     */
+    String getRoleCompositesVersion(String realmId);
+
+    void invalidateRoleCompositesVersion(String realmId);
+
     boolean isEnabled();
 
     void setEnabled(boolean enabled);
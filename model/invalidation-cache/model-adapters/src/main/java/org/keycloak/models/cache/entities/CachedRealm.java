@@ -20,6 +20,10 @@ import org.keycloak.models.cache.RealmCache;
 import org.keycloak.util.MultivaluedHashMap;
 
 import java.io.Serializable;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,6 +74,12 @@ public class CachedRealm implements Serializable {
     private String certificatePem;
     private String codeSecret;
 
+    // Keys parsed from the PEMs above. They're kept just on this node and dropped together with this entry
+    private transient volatile PublicKey publicKey;
+    private transient volatile PrivateKey privateKey;
+    private transient volatile X509Certificate certificate;
+    private transient volatile Key codeSecretKey;
+
     private String loginTheme;
     private String accountTheme;
     private String adminTheme;
@@ -428,6 +438,38 @@ public class CachedRealm implements Serializable {
         return certificatePem;
     }
 
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(PublicKey publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public void setPrivateKey(PrivateKey privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    public void setCertificate(X509Certificate certificate) {
+        this.certificate = certificate;
+    }
+
+    public Key getCodeSecretKey() {
+        return codeSecretKey;
+    }
+
+    public void setCodeSecretKey(Key codeSecretKey) {
+        this.codeSecretKey = codeSecretKey;
+    }
+
     public List<IdentityProviderModel> getIdentityProviders() {
         return identityProviders;
     }
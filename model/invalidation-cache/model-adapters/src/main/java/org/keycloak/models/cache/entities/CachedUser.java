@@ -38,6 +38,7 @@ public class CachedUser implements Serializable {
     private MultivaluedHashMap<String, String> attributes = new MultivaluedHashMap<>();
     private Set<String> requiredActions = new HashSet<>();
     private Set<String> roleMappings = new HashSet<String>();
+    private volatile EffectiveRoles effectiveRoles;
     private Map<String, OfflineUserSessionModel> offlineUserSessions = new HashMap<>();
     private Map<String, OfflineClientSessionModel> offlineClientSessions = new HashMap<>();
 
@@ -124,6 +125,19 @@ public class CachedUser implements Serializable {
         return roleMappings;
     }
 
+    /**
+     * @param compositesVersion current version of role composites of the realm, see {@link org.keycloak.models.cache.RealmCache#getRoleCompositesVersion(String)}
+     * @return ids of the mapped roles and all roles they contain, or null if not computed yet for this version
+     */
+    public Set<String> getEffectiveRoles(String compositesVersion) {
+        EffectiveRoles current = effectiveRoles;
+        return current != null && current.compositesVersion.equals(compositesVersion) ? current.roles : null;
+    }
+
+    public void setEffectiveRoles(String compositesVersion, Set<String> roles) {
+        this.effectiveRoles = new EffectiveRoles(compositesVersion, roles);
+    }
+
     public String getFederationLink() {
         return federationLink;
     }
@@ -139,4 +153,14 @@ public class CachedUser implements Serializable {
     public Map<String, OfflineClientSessionModel> getOfflineClientSessions() {
         return offlineClientSessions;
     }
+    private static class EffectiveRoles implements Serializable {
+        private final String compositesVersion;
+        private final Set<String> roles;
+
+        private EffectiveRoles(String compositesVersion, Set<String> roles) {
+            this.compositesVersion = compositesVersion;
+            this.roles = roles;
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import org.keycloak.models.jpa.entities.UserAttributeEntity;
 import org.keycloak.models.jpa.entities.UserEntity;
 import org.keycloak.models.utils.CredentialValidation;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.UserSearch;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -340,6 +341,31 @@ public class JpaUserProvider implements UserProvider {
         return users;
     }
 
+    @Override
+    public List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, boolean includeServiceAccounts) {
+        StringBuilder builder = new StringBuilder("select u from UserEntity u where u.realmId = :realmId");
+        if (!includeServiceAccounts) {
+            builder.append(" and (u.serviceAccountClientLink is null)");
+        }
+        if (lastUsername != null) {
+            builder.append(" and u.username > :lastUsername");
+        }
+        builder.append(" order by u.username");
+
+        TypedQuery<UserEntity> query = em.createQuery(builder.toString(), UserEntity.class);
+        query.setParameter("realmId", realm.getId());
+        if (lastUsername != null) {
+            query.setParameter("lastUsername", lastUsername);
+        }
+        if (maxResults != -1) {
+            query.setMaxResults(maxResults);
+        }
+        List<UserEntity> results = query.getResultList();
+        List<UserModel> users = new ArrayList<UserModel>();
+        for (UserEntity entity : results) users.add(new UserAdapter(realm, em, entity));
+        return users;
+    }
+
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm) {
         return searchForUser(search, realm, -1, -1);
@@ -347,9 +373,7 @@ public class JpaUserProvider implements UserProvider {
 
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm, int firstResult, int maxResults) {
-        TypedQuery<UserEntity> query = em.createNamedQuery("searchForUser", UserEntity.class);
-        query.setParameter("realmId", realm.getId());
-        query.setParameter("search", "%" + search.toLowerCase() + "%");
+        TypedQuery<UserEntity> query = createSearchQuery(search, realm, null);
         if (firstResult != -1) {
             query.setFirstResult(firstResult);
         }
@@ -362,6 +386,48 @@ public class JpaUserProvider implements UserProvider {
         return users;
     }
 
+    @Override
+    public List<UserModel> searchForUser(String search, RealmModel realm, String lastUsername, int maxResults) {
+        TypedQuery<UserEntity> query = createSearchQuery(search, realm, lastUsername);
+        if (maxResults != -1) {
+            query.setMaxResults(maxResults);
+        }
+        List<UserEntity> results = query.getResultList();
+        List<UserModel> users = new ArrayList<UserModel>();
+        for (UserEntity entity : results) users.add(new UserAdapter(realm, em, entity));
+        return users;
+    }
+
+    // See UserSearch. It can use the indexes on the lower-cased columns
+    private TypedQuery<UserEntity> createSearchQuery(String search, RealmModel realm, String lastUsername) {
+        UserSearch userSearch = new UserSearch(search);
+
+        StringBuilder builder = new StringBuilder("select u from UserEntity u where u.realmId = :realmId and (u.serviceAccountClientLink is null)");
+        builder.append(" and ( u.username like :search or u.email like :search or ");
+        if (userSearch.isFirstAndLastName()) {
+            builder.append("( u.firstNameLower like :firstName and u.lastNameLower like :lastName )");
+        } else {
+            builder.append("u.firstNameLower like :search or u.lastNameLower like :search");
+        }
+        builder.append(" )");
+        if (lastUsername != null) {
+            builder.append(" and u.username > :lastUsername");
+        }
+        builder.append(" order by u.username");
+
+        TypedQuery<UserEntity> query = em.createQuery(builder.toString(), UserEntity.class);
+        query.setParameter("realmId", realm.getId());
+        query.setParameter("search", UserSearch.toLikePattern(userSearch.getTerm()));
+        if (userSearch.isFirstAndLastName()) {
+            query.setParameter("firstName", UserSearch.toLikePattern(userSearch.getFirstName()));
+            query.setParameter("lastName", UserSearch.toLikePattern(userSearch.getLastName()));
+        }
+        if (lastUsername != null) {
+            query.setParameter("lastUsername", lastUsername);
+        }
+        return query;
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, -1, -1);
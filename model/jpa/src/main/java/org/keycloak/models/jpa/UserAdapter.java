@@ -254,6 +254,7 @@ public class UserAdapter implements UserModel {
     @Override
     public void setFirstName(String firstName) {
         user.setFirstName(firstName);
+        user.setFirstNameLower(KeycloakModelUtils.toLowerCaseSafe(firstName));
     }
 
     @Override
@@ -264,6 +265,7 @@ public class UserAdapter implements UserModel {
     @Override
     public void setLastName(String lastName) {
         user.setLastName(lastName);
+        user.setLastNameLower(KeycloakModelUtils.toLowerCaseSafe(lastName));
     }
 
     @Override
@@ -28,8 +28,6 @@ import java.util.Map;
 @NamedQueries({
         @NamedQuery(name="getAllUsersByRealm", query="select u from UserEntity u where u.realmId = :realmId order by u.username"),
         @NamedQuery(name="getAllUsersByRealmExcludeServiceAccount", query="select u from UserEntity u where u.realmId = :realmId and (u.serviceAccountClientLink is null) order by u.username"),
-        @NamedQuery(name="searchForUser", query="select u from UserEntity u where u.realmId = :realmId and (u.serviceAccountClientLink is null) and " +
-                "( lower(u.username) like :search or lower(concat(u.firstName, ' ', u.lastName)) like :search or u.email like :search ) order by u.username"),
         @NamedQuery(name="getRealmUserById", query="select u from UserEntity u where u.id = :id and u.realmId = :realmId"),
         @NamedQuery(name="getRealmUserByUsername", query="select u from UserEntity u where u.username = :username and u.realmId = :realmId"),
         @NamedQuery(name="getRealmUserByEmail", query="select u from UserEntity u where u.email = :email and u.realmId = :realmId"),
@@ -60,6 +58,11 @@ public class UserEntity {
     protected String lastName;
     @Column(name = "EMAIL")
     protected String email;
+    // Lower-cased names for indexed search. Username and email are already stored lower-cased
+    @Column(name = "FIRST_NAME_LOWER")
+    protected String firstNameLower;
+    @Column(name = "LAST_NAME_LOWER")
+    protected String lastNameLower;
     @Column(name = "ENABLED")
     protected boolean enabled;
     @Column(name = "TOTP")
@@ -135,6 +138,22 @@ public class UserEntity {
         this.lastName = lastName;
     }
 
+    public String getFirstNameLower() {
+        return firstNameLower;
+    }
+
+    public void setFirstNameLower(String firstNameLower) {
+        this.firstNameLower = firstNameLower;
+    }
+
+    public String getLastNameLower() {
+        return lastNameLower;
+    }
+
+    public void setLastNameLower(String lastNameLower) {
+        this.lastNameLower = lastNameLower;
+    }
+
     public String getEmail() {
         return email;
     }
@@ -0,0 +1,146 @@
+package org.keycloak.models.jpa;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class JpaUserSearchTest {
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private JpaUserProvider provider;
+    private RealmModel realm;
+
+    @Before
+    public void before() {
+        emf = Persistence.createEntityManagerFactory("keycloak-model-test");
+        em = emf.createEntityManager();
+        em.getTransaction().begin();
+
+        provider = new JpaUserProvider(stub(KeycloakSession.class, null), em);
+        realm = stub(RealmModel.class, "realm");
+        RealmModel otherRealm = stub(RealmModel.class, "other");
+
+        user(realm, "jdoe", "john.doe@localhost", "John", "Doe");
+        user(realm, "jsmith", "john.smith@localhost", "John", "Smith");
+        user(realm, "mjones", "mary@localhost", "Mary Ann", "Brown");
+        user(realm, "bjorn", "bjorn@localhost", "Bjorn", "Majors");
+        user(realm, "alice", "ALICE@Example.com", "Alice", "Johnson");
+        user(otherRealm, "john", "john@localhost", "John", "Other");
+    }
+
+    @After
+    public void after() {
+        em.getTransaction().rollback();
+        em.close();
+        emf.close();
+    }
+
+    @Test
+    public void testPrefix() {
+        Assert.assertEquals(Arrays.asList("alice", "jdoe", "jsmith"), search("jo"));
+        Assert.assertEquals(Arrays.asList("alice", "jdoe", "jsmith"), search("JO"));
+        Assert.assertEquals(Arrays.asList("alice"), search("alice@ex"));
+        Assert.assertEquals(Arrays.asList("jdoe"), search("jd"));
+
+        // Not an infix search
+        Assert.assertEquals(Collections.<String>emptyList(), search("orn"));
+        Assert.assertEquals(Collections.<String>emptyList(), search("smith@"));
+    }
+
+    @Test
+    public void testFirstAndLastName() {
+        Assert.assertEquals(Arrays.asList("jsmith"), search("john sm"));
+        Assert.assertEquals(Arrays.asList("alice", "jdoe", "jsmith"), search("Jo  "));
+        Assert.assertEquals(Arrays.asList("mjones"), search("Mary Ann Br"));
+        Assert.assertEquals(Collections.<String>emptyList(), search("mary smith"));
+    }
+
+    @Test
+    public void testWildcard() {
+        Assert.assertEquals(Arrays.asList("bjorn"), search("*orn"));
+        Assert.assertEquals(Arrays.asList("jdoe", "jsmith"), search("*.*@localhost"));
+        Assert.assertEquals(Arrays.asList("jsmith"), search("j*n *ith"));
+        Assert.assertEquals(Arrays.asList("alice", "bjorn", "jdoe", "jsmith", "mjones"), search("*"));
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        List<String> found = new ArrayList<String>();
+        String last = null;
+        List<UserModel> page;
+        do {
+            page = provider.searchForUser("*", realm, last, 2);
+            Assert.assertTrue(page.size() <= 2);
+            for (UserModel user : page) {
+                found.add(user.getUsername());
+                last = user.getUsername();
+            }
+        } while (page.size() == 2);
+
+        Assert.assertEquals(Arrays.asList("alice", "bjorn", "jdoe", "jsmith", "mjones"), found);
+
+        Assert.assertEquals(Arrays.asList("jsmith"), usernames(provider.searchForUser("j", realm, "jdoe", 10)));
+        Assert.assertEquals(Collections.<String>emptyList(), usernames(provider.searchForUser("j", realm, "jsmith", 10)));
+        Assert.assertEquals(Arrays.asList("alice", "jdoe", "jsmith"), usernames(provider.searchForUser("j", realm, (String) null, -1)));
+    }
+
+    private List<String> search(String search) {
+        return usernames(provider.searchForUser(search, realm));
+    }
+
+    private static List<String> usernames(List<UserModel> users) {
+        List<String> usernames = new ArrayList<String>();
+        for (UserModel user : users) {
+            usernames.add(user.getUsername());
+        }
+        return usernames;
+    }
+
+    private void user(RealmModel realm, String username, String email, String firstName, String lastName) {
+        UserModel user = provider.addUser(realm, null, username, false, false);
+        user.setEmail(email);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        em.flush();
+    }
+
+    private static <T> T stub(Class<T> type, final String id) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) return proxy == args[0];
+                if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                if (method.getName().equals("getId")) return id;
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                if (returnType == Set.class) return Collections.emptySet();
+                if (returnType == List.class || returnType == Collection.class) return Collections.emptyList();
+                if (returnType == Map.class) return Collections.emptyMap();
+                return null;
+            }
+        }));
+    }
+
+}
@@ -28,6 +28,7 @@ import org.keycloak.models.entities.OfflineUserSessionEntity;
 import org.keycloak.models.mongo.keycloak.entities.MongoUserConsentEntity;
 import org.keycloak.models.mongo.keycloak.entities.MongoUserEntity;
 import org.keycloak.models.utils.CredentialValidation;
+import org.keycloak.models.utils.UserSearch;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -160,6 +161,23 @@ public class MongoUserProvider implements UserProvider {
         return convertUserEntities(realm, users);
     }
 
+    @Override
+    public List<UserModel> getUsers(RealmModel realm, String lastUsername, int maxResults, boolean includeServiceAccounts) {
+        QueryBuilder queryBuilder = new QueryBuilder()
+                .and("realmId").is(realm.getId());
+
+        if (!includeServiceAccounts) {
+            queryBuilder = queryBuilder.and("serviceAccountClientLink").is(null);
+        }
+        if (lastUsername != null) {
+            queryBuilder = queryBuilder.and("username").greaterThan(lastUsername);
+        }
+
+        DBObject sort = new BasicDBObject("username", 1);
+        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, queryBuilder.get(), sort, -1, maxResults, invocationContext);
+        return convertUserEntities(realm, users);
+    }
+
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm) {
         return searchForUser(search, realm, -1, -1);
@@ -167,27 +185,39 @@ public class MongoUserProvider implements UserProvider {
 
     @Override
     public List<UserModel> searchForUser(String search, RealmModel realm, int firstResult, int maxResults) {
-        search = search.trim();
-        Pattern caseInsensitivePattern = Pattern.compile("(?i:" + search + ")");
+        DBObject sort = new BasicDBObject("username", 1);
+
+        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, createSearchQuery(search, realm).get(), sort, firstResult, maxResults, invocationContext);
+        return convertUserEntities(realm, users);
+    }
+
+    @Override
+    public List<UserModel> searchForUser(String search, RealmModel realm, String lastUsername, int maxResults) {
+        QueryBuilder builder = createSearchQuery(search, realm);
+        if (lastUsername != null) {
+            builder = new QueryBuilder().and(builder.get(), new QueryBuilder().put("username").greaterThan(lastUsername).get());
+        }
+        DBObject sort = new BasicDBObject("username", 1);
+
+        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, builder.get(), sort, -1, maxResults, invocationContext);
+        return convertUserEntities(realm, users);
+    }
+
+    // See UserSearch
+    private QueryBuilder createSearchQuery(String search, RealmModel realm) {
+        UserSearch userSearch = new UserSearch(search);
+        Pattern pattern = UserSearch.toPattern(userSearch.getTerm());
 
         QueryBuilder nameBuilder;
-        int spaceInd = search.lastIndexOf(" ");
-
-        // Case when we have search string like "ohn Bow". Then firstName must end with "ohn" AND lastName must start with "bow" (everything case-insensitive)
-        if (spaceInd != -1) {
-            String firstName = search.substring(0, spaceInd);
-            String lastName = search.substring(spaceInd + 1);
-            Pattern firstNamePattern = Pattern.compile("(?i:" + firstName + "$)");
-            Pattern lastNamePattern = Pattern.compile("(?i:^" + lastName + ")");
+        if (userSearch.isFirstAndLastName()) {
             nameBuilder = new QueryBuilder().and(
-                    new QueryBuilder().put("firstName").regex(firstNamePattern).get(),
-                    new QueryBuilder().put("lastName").regex(lastNamePattern).get()
+                    new QueryBuilder().put("firstName").regex(UserSearch.toPattern(userSearch.getFirstName())).get(),
+                    new QueryBuilder().put("lastName").regex(UserSearch.toPattern(userSearch.getLastName())).get()
             );
         } else {
-            // Case when we have search without spaces like "foo". The firstName OR lastName could be "foo" (everything case-insensitive)
             nameBuilder = new QueryBuilder().or(
-                    new QueryBuilder().put("firstName").regex(caseInsensitivePattern).get(),
-                    new QueryBuilder().put("lastName").regex(caseInsensitivePattern).get()
+                    new QueryBuilder().put("firstName").regex(pattern).get(),
+                    new QueryBuilder().put("lastName").regex(pattern).get()
             );
         }
 
@@ -195,17 +225,13 @@ public class MongoUserProvider implements UserProvider {
                 new QueryBuilder().and("realmId").is(realm.getId()).get(),
                 new QueryBuilder().and("serviceAccountClientLink").is(null).get(),
                 new QueryBuilder().or(
-                        new QueryBuilder().put("username").regex(caseInsensitivePattern).get(),
-                        new QueryBuilder().put("email").regex(caseInsensitivePattern).get(),
+                        new QueryBuilder().put("username").regex(pattern).get(),
+                        new QueryBuilder().put("email").regex(pattern).get(),
                         nameBuilder.get()
 
                 ).get()
         );
-
-        DBObject sort = new BasicDBObject("username", 1);
-
-        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, builder.get(), sort, firstResult, maxResults, invocationContext);
-        return convertUserEntities(realm, users);
+        return builder;
     }
 
     @Override
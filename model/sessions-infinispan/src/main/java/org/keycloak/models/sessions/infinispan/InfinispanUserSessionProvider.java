@@ -17,15 +17,12 @@ import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
-import org.keycloak.models.sessions.infinispan.mapreduce.ClientSessionMapper;
 import org.keycloak.models.sessions.infinispan.mapreduce.FirstResultReducer;
-import org.keycloak.models.sessions.infinispan.mapreduce.LargestResultReducer;
 import org.keycloak.models.sessions.infinispan.mapreduce.SessionMapper;
 import org.keycloak.models.sessions.infinispan.mapreduce.UserLoginFailureMapper;
 import org.keycloak.models.sessions.infinispan.mapreduce.UserSessionMapper;
 import org.keycloak.models.sessions.infinispan.mapreduce.UserSessionNoteMapper;
 import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.models.utils.RealmInfoUtil;
 import org.keycloak.util.Time;
 
 import java.util.Collection;
@@ -47,12 +44,16 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     private final KeycloakSession session;
     private final Cache<String, SessionEntity> sessionCache;
     private final Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    private final SessionIndexes indexes;
+    private final SessionExpirationSweeper expirationSweeper;
     private final InfinispanKeycloakTransaction tx;
 
-    public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache) {
+    public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache, SessionIndexes indexes, SessionExpirationSweeper expirationSweeper) {
         this.session = session;
         this.sessionCache = sessionCache;
         this.loginFailureCache = loginFailureCache;
+        this.indexes = indexes;
+        this.expirationSweeper = expirationSweeper;
         this.tx = new InfinispanKeycloakTransaction();
 
         session.getTransaction().enlistAfterCompletion(tx);
@@ -122,12 +123,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<UserSessionModel> getUserSessions(RealmModel realm, UserModel user) {
-        Map<String, UserSessionEntity> sessions = new MapReduceTask(sessionCache)
-                .mappedWith(UserSessionMapper.create(realm.getId()).user(user.getId()))
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        return wrapUserSessions(realm, sessions.values());
+        return wrapUserSessions(realm, indexes.getUserSessions(realm.getId(), user.getId()));
     }
 
     @Override
@@ -142,12 +138,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public UserSessionModel getUserSessionByBrokerSessionId(RealmModel realm, String brokerSessionId) {
-        Map<String, UserSessionEntity> sessions = new MapReduceTask(sessionCache)
-                .mappedWith(UserSessionMapper.create(realm.getId()).brokerSessionId(brokerSessionId))
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        List<UserSessionModel> userSessionModels = wrapUserSessions(realm, sessions.values());
+        List<UserSessionModel> userSessionModels = wrapUserSessions(realm, indexes.getBrokerSessions(realm.getId(), brokerSessionId));
         if (userSessionModels.isEmpty()) return null;
         return userSessionModels.get(0);
     }
@@ -159,10 +150,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<UserSessionModel> getUserSessions(RealmModel realm, ClientModel client, int firstResult, int maxResults) {
-        Map<String, Integer> map = new MapReduceTask(sessionCache)
-                .mappedWith(ClientSessionMapper.create(realm.getId()).client(client.getId()).emitUserSessionAndTimestamp())
-                .reducedWith(new LargestResultReducer())
-                .execute();
+        Map<String, Integer> map = getUserSessionTimestamps(realm, client);
 
         List<Map.Entry<String, Integer>> sessionTimestamps = new LinkedList<Map.Entry<String, Integer>>(map.entrySet());
 
@@ -190,11 +178,15 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             sessionTimestamps = sessionTimestamps.subList(firstResult, toIndex);
         }
 
-        List<UserSessionModel> userSessions = new LinkedList<UserSessionModel>();
+        List<String> ids = new LinkedList<String>();
         for (Map.Entry<String, Integer> e : sessionTimestamps) {
-            UserSessionEntity userSessionEntity = (UserSessionEntity) sessionCache.get(e.getKey());
-            if (userSessionEntity != null) {
-                userSessions.add(wrap(realm, userSessionEntity));
+            ids.add(e.getKey());
+        }
+
+        List<UserSessionModel> userSessions = new LinkedList<UserSessionModel>();
+        for (SessionEntity entity : indexes.getAll(ids).values()) {
+            if (entity instanceof UserSessionEntity) {
+                userSessions.add(wrap(realm, (UserSessionEntity) entity));
             }
         }
 
@@ -220,11 +212,26 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public int getActiveUserSessions(RealmModel realm, ClientModel client) {
-        Map map = new MapReduceTask(sessionCache)
-                .mappedWith(ClientSessionMapper.create(realm.getId()).client(client.getId()).emitUserSessionAndTimestamp())
-                .reducedWith(new LargestResultReducer()).execute();
+        return getUserSessionTimestamps(realm, client).size();
+    }
+
+    /**
+     * Returns the ids of the user sessions that have a client session for the given client, mapped to the most recent
+     * timestamp of those client sessions.
+     */
+    private Map<String, Integer> getUserSessionTimestamps(RealmModel realm, ClientModel client) {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (ClientSessionEntity entity : indexes.getClientSessions(realm.getId(), client.getId())) {
+            if (entity.getUserSession() == null) {
+                continue;
+            }
 
-        return map.size();
+            Integer current = map.get(entity.getUserSession());
+            if (current == null || entity.getTimestamp() > current) {
+                map.put(entity.getUserSession(), entity.getTimestamp());
+            }
+        }
+        return map;
     }
 
     @Override
@@ -234,39 +241,14 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public void removeUserSessions(RealmModel realm, UserModel user) {
-        Map<String, String> sessions = new MapReduceTask(sessionCache)
-                .mappedWith(UserSessionMapper.create(realm.getId()).user(user.getId()).emitKey())
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        for (String id : sessions.keySet()) {
-            removeUserSession(realm, id);
+        for (UserSessionModel userSession : getUserSessions(realm, user)) {
+            removeUserSession(realm, userSession.getId());
         }
     }
 
     @Override
     public void removeExpiredUserSessions(RealmModel realm) {
-        int expired = Time.currentTime() - realm.getSsoSessionMaxLifespan();
-        int expiredRefresh = Time.currentTime() - realm.getSsoSessionIdleTimeout();
-        int expiredDettachedClientSession = Time.currentTime() - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
-
-        Map<String, String> map = new MapReduceTask(sessionCache)
-                .mappedWith(UserSessionMapper.create(realm.getId()).expired(expired, expiredRefresh).emitKey())
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        for (String id : map.keySet()) {
-            removeUserSession(realm, id);
-        }
-
-        map = new MapReduceTask(sessionCache)
-                .mappedWith(ClientSessionMapper.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession(true).emitKey())
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        for (String id : map.keySet()) {
-            tx.remove(sessionCache, id);
-        }
+        expirationSweeper.sweep(sessionCache, indexes, realm);
     }
 
     @Override
@@ -320,18 +302,14 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     @Override
     public void onRealmRemoved(RealmModel realm) {
         removeUserSessions(realm);
+        expirationSweeper.onRealmRemoved(realm.getId());
         removeAllUserLoginFailures(realm);
     }
 
     @Override
     public void onClientRemoved(RealmModel realm, ClientModel client) {
-        Map<String, String> map = new MapReduceTask(sessionCache)
-                .mappedWith(ClientSessionMapper.create(realm.getId()).client(client.getId()).emitKey())
-                .reducedWith(new FirstResultReducer())
-                .execute();
-
-        for (String id : map.keySet()) {
-            tx.remove(sessionCache, id);
+        for (ClientSessionEntity entity : indexes.getClientSessions(realm.getId(), client.getId())) {
+            tx.remove(sessionCache, entity.getId());
         }
     }
 
@@ -387,15 +365,14 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     protected void removeUserSession(RealmModel realm, String userSessionId) {
-        tx.remove(sessionCache, userSessionId);
+        SessionEntity entity = sessionCache.get(userSessionId);
 
-        Map<String, String> map = new MapReduceTask(sessionCache)
-                .mappedWith(ClientSessionMapper.create(realm.getId()).userSession(userSessionId).emitKey())
-                .reducedWith(new FirstResultReducer())
-                .execute();
+        tx.remove(sessionCache, userSessionId);
 
-        for (String id : map.keySet()) {
-            tx.remove(sessionCache, id);
+        if (entity instanceof UserSessionEntity && ((UserSessionEntity) entity).getClientSessions() != null) {
+            for (String id : ((UserSessionEntity) entity).getClientSessions()) {
+                tx.remove(sessionCache, id);
+            }
         }
     }
 
@@ -527,13 +504,36 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
                 switch (operation) {
                     case ADD:
-                        cache.put(key, value);
+                        if (cache == sessionCache) {
+                            indexes.beforeWrite((SessionEntity) value);
+                        }
+                        Object previous = cache.put(key, value);
+                        if (cache == sessionCache) {
+                            indexes.afterWrite((SessionEntity) previous, (SessionEntity) value);
+                            expirationSweeper.schedule((SessionEntity) value);
+                        }
                         break;
                     case REMOVE:
-                        cache.remove(key);
+                        Object removed = cache.remove(key);
+                        if (cache == sessionCache && removed != null) {
+                            indexes.onRemoved((SessionEntity) removed);
+                            expirationSweeper.unschedule((SessionEntity) removed);
+                        }
                         break;
                     case REPLACE:
-                        cache.replace(key, value);
+                        if (cache == sessionCache) {
+                            indexes.beforeWrite((SessionEntity) value);
+                        }
+                        Object replaced = cache.replace(key, value);
+                        if (cache == sessionCache) {
+                            if (replaced != null) {
+                                indexes.afterWrite((SessionEntity) replaced, (SessionEntity) value);
+                                expirationSweeper.schedule((SessionEntity) value);
+                            } else {
+                                // Removed meanwhile, nothing was written
+                                indexes.onRemoved((SessionEntity) value);
+                            }
+                        }
                         break;
                 }
             }
@@ -13,6 +13,10 @@ import org.keycloak.models.sessions.infinispan.compat.MemUserSessionProviderFact
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Uses Infinispan to store user sessions. On EAP 6.4 (Infinispan 5.2) map reduce is not supported for local caches as a work around
@@ -20,12 +24,14 @@ import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
  *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory {
+public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory, ServerInfoAwareProviderFactory<UserSessionProvider> {
 
     private static final Logger log = Logger.getLogger(InfinispanUserSessionProviderFactory.class);
 
     private Boolean compatMode;
     private MemUserSessionProviderFactory compatProviderFactory;
+    private SessionExpirationSweeper expirationSweeper;
+    private int clientIndexBuckets;
 
     @Override
     public UserSessionProvider create(KeycloakSession session) {
@@ -45,7 +51,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
             InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
             Cache<String, SessionEntity> cache = connections.getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME);
             Cache<LoginFailureKey, LoginFailureEntity> loginFailures = connections.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
-            return new InfinispanUserSessionProvider(session, cache, loginFailures);
+            return new InfinispanUserSessionProvider(session, cache, loginFailures, new SessionIndexes(cache, clientIndexBuckets), expirationSweeper);
         } else {
             return compatProviderFactory.create(session);
         }
@@ -53,6 +59,8 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     @Override
     public void init(Config.Scope config) {
+        expirationSweeper = new SessionExpirationSweeper(config.getInt("expirationBatchSize", 100));
+        clientIndexBuckets = config.getInt("clientIndexBuckets", SessionIndexes.DEFAULT_CLIENT_INDEX_BUCKETS);
     }
 
     @Override
@@ -72,6 +80,19 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         return "infinispan";
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<String, String>();
+        info.put("expirationSweeps", String.valueOf(expirationSweeper.getSweeps()));
+        info.put("expirationScans", String.valueOf(expirationSweeper.getScans()));
+        info.put("expirationScheduledSessions", String.valueOf(expirationSweeper.getScheduledSessions()));
+        info.put("expiredUserSessionsRemoved", String.valueOf(expirationSweeper.getRemovedUserSessions()));
+        info.put("expiredClientSessionsRemoved", String.valueOf(expirationSweeper.getRemovedClientSessions()));
+        info.put("expirationSweepTotalTime", expirationSweeper.getTotalSweepTime() + " ms");
+        info.put("expirationSweepLastTime", expirationSweeper.getLastSweepTime() + " ms");
+        return info;
+    }
+
     private static boolean isCompatMode(KeycloakSession session) {
         if (Version.getVersionShort() < Version.getVersionShort("5.3.0.Final")) {
             InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
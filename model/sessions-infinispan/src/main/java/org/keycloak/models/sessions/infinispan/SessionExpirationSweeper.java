@@ -0,0 +1,381 @@
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.statetransfer.StateTransferManager;
+import org.infinispan.topology.CacheTopology;
+import org.jboss.logging.Logger;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.utils.RealmInfoUtil;
+import org.keycloak.util.Time;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes expired user sessions and expired detached client sessions. Sessions are kept in time ordered queues per
+ * realm, by the time they were started, last refreshed and, for detached client sessions, created. A sweep only visits
+ * the sessions at the head of the queues that are older than the realm's timeouts, so timeouts changed in the realm
+ * apply without rescheduling anything. Expired sessions are removed in batches of asynchronous removes.
+ *
+ * Sessions are queued on the node that writes them. Sessions written by other nodes before this node joined, or by
+ * nodes that left, are queued by a single pass over the local data container when the cache topology changes. It only
+ * queues the entries of all realms that belong to a segment this node is the primary owner of.
+ *
+ * One instance is shared by all sessions of a node, so the queues and statistics cover all sweeps run on the node.
+ */
+public class SessionExpirationSweeper {
+
+    private static final Logger log = Logger.getLogger(SessionExpirationSweeper.class);
+
+    private static final int NO_TOPOLOGY = -1;
+
+    private final int batchSize;
+
+    private final ConcurrentMap<String, RealmQueues> queues = new ConcurrentHashMap<String, RealmQueues>();
+    private volatile Integer scannedTopologyId;
+
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong removedUserSessions = new AtomicLong();
+    private final AtomicLong removedClientSessions = new AtomicLong();
+    private final AtomicLong totalSweepTime = new AtomicLong();
+    private volatile long lastSweepTime;
+
+    public SessionExpirationSweeper(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues the session by its current timestamps, called after the session is written
+     */
+    void schedule(SessionEntity entity) {
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            RealmQueues realmQueues = getQueues(entity.getRealm());
+            realmQueues.started.schedule(entity.getId(), userSession.getStarted());
+            realmQueues.refreshed.schedule(entity.getId(), userSession.getLastSessionRefresh());
+        } else if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            RealmQueues realmQueues = getQueues(entity.getRealm());
+            if (clientSession.getUserSession() == null) {
+                realmQueues.detached.schedule(entity.getId(), clientSession.getTimestamp());
+            } else {
+                // Removed with its user session
+                realmQueues.detached.unschedule(entity.getId());
+            }
+        }
+    }
+
+    /**
+     * Removes the session from the queues, called after the session is removed
+     */
+    void unschedule(SessionEntity entity) {
+        RealmQueues realmQueues = queues.get(entity.getRealm());
+        if (realmQueues != null) {
+            realmQueues.unschedule(entity.getId());
+        }
+    }
+
+    void onRealmRemoved(String realm) {
+        queues.remove(realm);
+    }
+
+    void sweep(Cache<String, SessionEntity> cache, SessionIndexes indexes, RealmModel realm) {
+        long start = System.currentTimeMillis();
+
+        scanIfTopologyChanged(cache.getAdvancedCache());
+
+        int currentTime = Time.currentTime();
+        int expired = currentTime - realm.getSsoSessionMaxLifespan();
+        int expiredRefresh = currentTime - realm.getSsoSessionIdleTimeout();
+        int expiredDettachedClientSession = currentTime - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
+
+        RealmQueues realmQueues = getQueues(realm.getId());
+        Set<String> due = new LinkedHashSet<String>();
+        due.addAll(realmQueues.started.pollDue(expired));
+        due.addAll(realmQueues.refreshed.pollDue(expiredRefresh));
+        due.addAll(realmQueues.detached.pollDue(expiredDettachedClientSession));
+
+        Set<String> userSessions = new LinkedHashSet<String>();
+        Set<String> clientSessions = new LinkedHashSet<String>();
+
+        Map<String, SessionEntity> entities = indexes.getAll(due);
+        for (String id : due) {
+            SessionEntity entity = entities.get(id);
+            if (entity == null) {
+                // Removed meanwhile
+                realmQueues.unschedule(id);
+            } else if (entity instanceof UserSessionEntity) {
+                UserSessionEntity userSession = (UserSessionEntity) entity;
+                if (userSession.getStarted() <= expired || userSession.getLastSessionRefresh() <= expiredRefresh) {
+                    userSessions.add(userSession.getId());
+                    if (userSession.getClientSessions() != null) {
+                        clientSessions.addAll(userSession.getClientSessions());
+                    }
+                } else {
+                    // Refreshed on another node
+                    schedule(userSession);
+                }
+            } else if (entity instanceof ClientSessionEntity) {
+                ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+                if (clientSession.getUserSession() == null && clientSession.getTimestamp() <= expiredDettachedClientSession) {
+                    clientSessions.add(clientSession.getId());
+                } else {
+                    schedule(clientSession);
+                }
+            }
+        }
+
+        int removedUsers = remove(cache, indexes, userSessions);
+        int removedClients = remove(cache, indexes, clientSessions);
+
+        long time = System.currentTimeMillis() - start;
+
+        sweeps.incrementAndGet();
+        removedUserSessions.addAndGet(removedUsers);
+        removedClientSessions.addAndGet(removedClients);
+        totalSweepTime.addAndGet(time);
+        lastSweepTime = time;
+
+        log.debugv("Removed {0} expired user sessions and {1} client sessions from realm {2} in {3} ms", removedUsers, removedClients, realm.getName(), time);
+    }
+
+    public long getSweeps() {
+        return sweeps.get();
+    }
+
+    /**
+     * @return number of passes over the local data container, done when the cache topology changes
+     */
+    public long getScans() {
+        return scans.get();
+    }
+
+    /**
+     * @return number of sessions queued on this node
+     */
+    public long getScheduledSessions() {
+        long scheduled = 0;
+        for (RealmQueues realmQueues : queues.values()) {
+            scheduled += realmQueues.size();
+        }
+        return scheduled;
+    }
+
+    public long getRemovedUserSessions() {
+        return removedUserSessions.get();
+    }
+
+    public long getRemovedClientSessions() {
+        return removedClientSessions.get();
+    }
+
+    public long getTotalSweepTime() {
+        return totalSweepTime.get();
+    }
+
+    public long getLastSweepTime() {
+        return lastSweepTime;
+    }
+
+    private RealmQueues getQueues(String realm) {
+        RealmQueues realmQueues = queues.get(realm);
+        if (realmQueues == null) {
+            realmQueues = new RealmQueues();
+            RealmQueues existing = queues.putIfAbsent(realm, realmQueues);
+            if (existing != null) {
+                realmQueues = existing;
+            }
+        }
+        return realmQueues;
+    }
+
+    /**
+     * Queues the locally stored sessions of all realms if this node hasn't done so for the current cache topology
+     */
+    private void scanIfTopologyChanged(AdvancedCache<String, SessionEntity> cache) {
+        CacheTopology topology = getCacheTopology(cache);
+        int topologyId = topology != null ? topology.getTopologyId() : NO_TOPOLOGY;
+        if (scannedTopologyId != null && scannedTopologyId == topologyId) {
+            return;
+        }
+
+        synchronized (this) {
+            if (scannedTopologyId != null && scannedTopologyId == topologyId) {
+                return;
+            }
+
+            ConsistentHash ch = topology != null ? topology.getReadConsistentHash() : null;
+            BitSet primarySegments = ch != null ? getPrimarySegments(ch, cache.getRpcManager().getAddress()) : null;
+
+            int queued = 0;
+            for (InternalCacheEntry e : cache.getDataContainer()) {
+                if (!(e.getValue() instanceof SessionEntity)) {
+                    continue;
+                }
+
+                if (primarySegments != null && !primarySegments.get(ch.getSegment(e.getKey()))) {
+                    continue;
+                }
+
+                schedule((SessionEntity) e.getValue());
+                queued++;
+            }
+
+            scans.incrementAndGet();
+            scannedTopologyId = topologyId;
+
+            log.debugv("Queued {0} locally stored sessions for expiration", queued);
+        }
+    }
+
+    private int remove(Cache<String, SessionEntity> cache, SessionIndexes indexes, Collection<String> ids) {
+        int removed = 0;
+
+        List<Future<SessionEntity>> batch = new ArrayList<Future<SessionEntity>>(batchSize);
+        Iterator<String> itr = ids.iterator();
+        while (itr.hasNext()) {
+            batch.add(cache.removeAsync(itr.next()));
+
+            if (batch.size() == batchSize || !itr.hasNext()) {
+                for (Future<SessionEntity> f : batch) {
+                    SessionEntity entity = get(f);
+                    if (entity != null) {
+                        indexes.onRemoved(entity);
+                        unschedule(entity);
+                        removed++;
+                    }
+                }
+                batch.clear();
+            }
+        }
+
+        return removed;
+    }
+
+    private static SessionEntity get(Future<SessionEntity> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while removing expired sessions", e);
+        } catch (ExecutionException e) {
+            log.warn("Failed to remove expired session", e.getCause());
+            return null;
+        }
+    }
+
+    private static CacheTopology getCacheTopology(AdvancedCache<?, ?> cache) {
+        StateTransferManager stateTransferManager = cache.getComponentRegistry().getComponent(StateTransferManager.class);
+        return stateTransferManager != null ? stateTransferManager.getCacheTopology() : null;
+    }
+
+    private static BitSet getPrimarySegments(ConsistentHash ch, Address address) {
+        BitSet segments = new BitSet(ch.getNumSegments());
+        for (int i = 0; i < ch.getNumSegments(); i++) {
+            if (address.equals(ch.locatePrimaryOwnerForSegment(i))) {
+                segments.set(i);
+            }
+        }
+        return segments;
+    }
+
+    private static class RealmQueues {
+        final TimeQueue started = new TimeQueue();
+        final TimeQueue refreshed = new TimeQueue();
+        final TimeQueue detached = new TimeQueue();
+
+        void unschedule(String id) {
+            started.unschedule(id);
+            refreshed.unschedule(id);
+            detached.unschedule(id);
+        }
+
+        int size() {
+            return started.size() + detached.size();
+        }
+    }
+
+    /**
+     * Session ids ordered by a timestamp, each id is queued at most once
+     */
+    private static class TimeQueue {
+        private final TreeMap<Integer, Set<String>> times = new TreeMap<Integer, Set<String>>();
+        private final Map<String, Integer> scheduled = new HashMap<String, Integer>();
+
+        synchronized void schedule(String id, int time) {
+            Integer current = scheduled.put(id, time);
+            if (current != null) {
+                if (current == time) {
+                    return;
+                }
+                removeFromTime(current, id);
+            }
+
+            Set<String> ids = times.get(time);
+            if (ids == null) {
+                times.put(time, ids = new HashSet<String>());
+            }
+            ids.add(id);
+        }
+
+        synchronized void unschedule(String id) {
+            Integer current = scheduled.remove(id);
+            if (current != null) {
+                removeFromTime(current, id);
+            }
+        }
+
+        /**
+         * Removes and returns the ids queued with a timestamp not after the given time
+         */
+        synchronized List<String> pollDue(int time) {
+            List<String> due = new ArrayList<String>();
+            Iterator<Set<String>> itr = times.headMap(time, true).values().iterator();
+            while (itr.hasNext()) {
+                for (String id : itr.next()) {
+                    scheduled.remove(id);
+                    due.add(id);
+                }
+                itr.remove();
+            }
+            return due;
+        }
+
+        synchronized int size() {
+            return scheduled.size();
+        }
+
+        private void removeFromTime(int time, String id) {
+            Set<String> ids = times.get(time);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    times.remove(time);
+                }
+            }
+        }
+    }
+
+}
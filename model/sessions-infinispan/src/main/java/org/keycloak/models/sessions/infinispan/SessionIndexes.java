@@ -0,0 +1,220 @@
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.Cache;
+import org.jboss.logging.Logger;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.util.Time;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Maintains the user, client and broker session secondary indexes in the sessions cache. Indexes are updated with
+ * conditional cache operations so concurrent updates from other sessions or nodes are not lost.
+ *
+ * The client index is split into buckets by session id, so adding a client session to a client with many active
+ * sessions only copies and contends on one bucket. User and broker session indexes only hold the sessions of one user,
+ * so they have a single bucket.
+ *
+ * A session is added to the indexes before it's written and removed from them after it's removed, so lookups never
+ * miss a stored session. Ids left behind, for example by a node failing between the two writes or by a session changed
+ * in place, are removed by the lookups that find them.
+ */
+class SessionIndexes {
+
+    private static final Logger log = Logger.getLogger(SessionIndexes.class);
+
+    static final int DEFAULT_CLIENT_INDEX_BUCKETS = 64;
+
+    /**
+     * Seconds an id has to be in the index before a lookup removes it for not matching a stored session, younger ids
+     * may belong to a session that is just being written
+     */
+    static final int PRUNE_AFTER = 60;
+
+    private final Cache<String, SessionEntity> cache;
+    private final int clientIndexBuckets;
+
+    SessionIndexes(Cache<String, SessionEntity> cache, int clientIndexBuckets) {
+        this.cache = cache;
+        this.clientIndexBuckets = clientIndexBuckets;
+    }
+
+    /**
+     * Adds the session to the indexes of its values, called before the session is written
+     */
+    void beforeWrite(SessionEntity entity) {
+        int time = Time.currentTime();
+        for (String key : keys(entity)) {
+            add(key, entity, time);
+        }
+    }
+
+    /**
+     * Removes the session from the indexes of its previous values, called after the session is written. If the entity
+     * was changed in place, the previous values are not known anymore and lookups remove the session later.
+     */
+    void afterWrite(SessionEntity previous, SessionEntity current) {
+        if (previous != null && previous != current) {
+            Set<String> currentKeys = keys(current);
+            for (String key : keys(previous)) {
+                if (!currentKeys.contains(key)) {
+                    remove(key, previous.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the session from its indexes, called after the session is removed
+     */
+    void onRemoved(SessionEntity entity) {
+        for (String key : keys(entity)) {
+            remove(key, entity.getId());
+        }
+    }
+
+    private Set<String> keys(SessionEntity entity) {
+        Set<String> keys = new HashSet<String>();
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            keys.add(SessionIndexEntity.userKey(entity.getRealm(), userSession.getUser(), 0));
+            if (userSession.getBrokerSessionId() != null) {
+                keys.add(SessionIndexEntity.brokerSessionKey(entity.getRealm(), userSession.getBrokerSessionId(), 0));
+            }
+        } else if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            keys.add(SessionIndexEntity.clientKey(entity.getRealm(), clientSession.getClient(), bucket(entity.getId())));
+        }
+        return keys;
+    }
+
+    List<UserSessionEntity> getUserSessions(String realm, String user) {
+        return lookup(Collections.singletonList(SessionIndexEntity.userKey(realm, user, 0)), UserSessionEntity.class);
+    }
+
+    List<UserSessionEntity> getBrokerSessions(String realm, String brokerSessionId) {
+        return lookup(Collections.singletonList(SessionIndexEntity.brokerSessionKey(realm, brokerSessionId, 0)), UserSessionEntity.class);
+    }
+
+    List<ClientSessionEntity> getClientSessions(String realm, String client) {
+        List<String> keys = new ArrayList<String>(clientIndexBuckets);
+        for (int i = 0; i < clientIndexBuckets; i++) {
+            keys.add(SessionIndexEntity.clientKey(realm, client, i));
+        }
+        return lookup(keys, ClientSessionEntity.class);
+    }
+
+    /**
+     * Reads the buckets and the sessions they point to, removing the ids that don't match a stored session anymore
+     */
+    private <T extends SessionEntity> List<T> lookup(List<String> bucketKeys, Class<T> type) {
+        Map<String, String> bucketOfSession = new LinkedHashMap<String, String>();
+        Map<String, Integer> addedTime = new HashMap<String, Integer>();
+        for (SessionEntity bucket : getAll(bucketKeys).values()) {
+            for (Map.Entry<String, Integer> e : ((SessionIndexEntity) bucket).getSessions().entrySet()) {
+                bucketOfSession.put(e.getKey(), bucket.getId());
+                addedTime.put(e.getKey(), e.getValue());
+            }
+        }
+
+        Map<String, SessionEntity> sessions = getAll(bucketOfSession.keySet());
+
+        int pruneBefore = Time.currentTime() - PRUNE_AFTER;
+        List<T> result = new ArrayList<T>(sessions.size());
+        for (Map.Entry<String, String> e : bucketOfSession.entrySet()) {
+            String id = e.getKey();
+            String bucketKey = e.getValue();
+            SessionEntity entity = sessions.get(id);
+            if (type.isInstance(entity) && keys(entity).contains(bucketKey)) {
+                result.add(type.cast(entity));
+            } else if (addedTime.get(id) <= pruneBefore) {
+                remove(bucketKey, id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the entries of the keys with parallel asynchronous reads, missing entries are not in the returned map
+     */
+    Map<String, SessionEntity> getAll(Collection<String> keys) {
+        Map<String, Future<SessionEntity>> futures = new LinkedHashMap<String, Future<SessionEntity>>();
+        for (String key : keys) {
+            futures.put(key, cache.getAsync(key));
+        }
+
+        Map<String, SessionEntity> entities = new LinkedHashMap<String, SessionEntity>();
+        for (Map.Entry<String, Future<SessionEntity>> e : futures.entrySet()) {
+            SessionEntity entity = get(e.getValue());
+            if (entity != null) {
+                entities.put(e.getKey(), entity);
+            }
+        }
+        return entities;
+    }
+
+    private void add(String key, SessionEntity entity, int time) {
+        log.tracev("Adding {0} to index {1}", entity.getId(), key);
+
+        while (true) {
+            SessionIndexEntity current = (SessionIndexEntity) cache.get(key);
+            if (current == null) {
+                SessionIndexEntity created = new SessionIndexEntity();
+                created.setId(key);
+                created.setRealm(entity.getRealm());
+                created.setSessions(Collections.singletonMap(entity.getId(), time));
+                if (cache.putIfAbsent(key, created) == null) {
+                    return;
+                }
+            } else if (current.getSessions().containsKey(entity.getId()) || cache.replace(key, current, current.add(entity.getId(), time))) {
+                return;
+            }
+        }
+    }
+
+    private void remove(String key, String sessionId) {
+        log.tracev("Removing {0} from index {1}", sessionId, key);
+
+        while (true) {
+            SessionIndexEntity current = (SessionIndexEntity) cache.get(key);
+            if (current == null || !current.getSessions().containsKey(sessionId)) {
+                return;
+            }
+
+            SessionIndexEntity updated = current.remove(sessionId);
+            boolean done = updated.getSessions().isEmpty() ? cache.remove(key, current) : cache.replace(key, current, updated);
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    private int bucket(String sessionId) {
+        return (sessionId.hashCode() & Integer.MAX_VALUE) % clientIndexBuckets;
+    }
+
+    private static SessionEntity get(Future<SessionEntity> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading sessions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read session", e.getCause());
+        }
+    }
+
+}
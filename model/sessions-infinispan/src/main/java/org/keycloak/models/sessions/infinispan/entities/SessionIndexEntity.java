@@ -0,0 +1,81 @@
+package org.keycloak.models.sessions.infinispan.entities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bucket of a secondary index stored in the sessions cache next to the sessions it points to. The id is the key of the
+ * bucket (see {@link #userKey(String, String, int)} etc.) and the value maps the ids of the sessions in the bucket to
+ * the time they were added. Instances are treated as immutable so they can be used with the conditional
+ * {@code replace} operations of the cache.
+ */
+public class SessionIndexEntity extends SessionEntity {
+
+    private static final String PREFIX = "index:";
+
+    private Map<String, Integer> sessions;
+
+    public static String userKey(String realm, String user, int bucket) {
+        return PREFIX + realm + ":user:" + user + ":" + bucket;
+    }
+
+    public static String clientKey(String realm, String client, int bucket) {
+        return PREFIX + realm + ":client:" + client + ":" + bucket;
+    }
+
+    public static String brokerSessionKey(String realm, String brokerSessionId, int bucket) {
+        return PREFIX + realm + ":broker-session:" + brokerSessionId + ":" + bucket;
+    }
+
+    public static boolean isIndexKey(Object key) {
+        return key instanceof String && ((String) key).startsWith(PREFIX);
+    }
+
+    /**
+     * @return ids of the sessions mapped to the time they were added to the index
+     */
+    public Map<String, Integer> getSessions() {
+        return sessions != null ? sessions : Collections.<String, Integer>emptyMap();
+    }
+
+    public void setSessions(Map<String, Integer> sessions) {
+        this.sessions = sessions;
+    }
+
+    public SessionIndexEntity add(String sessionId, int time) {
+        Map<String, Integer> copy = new HashMap<String, Integer>(getSessions());
+        copy.put(sessionId, time);
+        return copy(copy);
+    }
+
+    public SessionIndexEntity remove(String sessionId) {
+        Map<String, Integer> copy = new HashMap<String, Integer>(getSessions());
+        copy.remove(sessionId);
+        return copy(copy);
+    }
+
+    private SessionIndexEntity copy(Map<String, Integer> sessions) {
+        SessionIndexEntity entity = new SessionIndexEntity();
+        entity.setId(getId());
+        entity.setRealm(getRealm());
+        entity.setSessions(sessions);
+        return entity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SessionIndexEntity)) return false;
+        if (!super.equals(o)) return false;
+
+        SessionIndexEntity that = (SessionIndexEntity) o;
+        return getSessions().equals(that.getSessions());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + getSessions().hashCode();
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.util.Time;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class SessionExpirationSweeperTest {
+
+    private DefaultCacheManager cacheManager;
+    private Cache<String, SessionEntity> cache;
+    private SessionIndexes indexes;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cache = cacheManager.getCache("sessions");
+        indexes = new SessionIndexes(cache, 4);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void removeExpired() {
+        int now = Time.currentTime();
+
+        add(userSession("expired", "user1", now - 7200, now - 7200, "expired-client"));
+        add(clientSession("expired-client", "client1", "expired", now - 7200));
+        add(userSession("idle", "user1", now - 600, now - 400));
+        add(userSession("active", "user1", now - 600, now - 10, "active-client"));
+        add(clientSession("active-client", "client1", "active", now - 10));
+        add(clientSession("detached", "client1", null, now - 120));
+        add(clientSession("detached-active", "client1", null, now - 10));
+
+        SessionExpirationSweeper sweeper = new SessionExpirationSweeper(2);
+        sweeper.sweep(cache, indexes, realm());
+
+        Assert.assertNull(cache.get("expired"));
+        Assert.assertNull(cache.get("expired-client"));
+        Assert.assertNull(cache.get("idle"));
+        Assert.assertNull(cache.get("detached"));
+        Assert.assertNotNull(cache.get("active"));
+        Assert.assertNotNull(cache.get("active-client"));
+        Assert.assertNotNull(cache.get("detached-active"));
+
+        Assert.assertEquals(Collections.singleton("active"), SessionIndexesTest.ids(indexes.getUserSessions("realm", "user1")));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("active-client", "detached-active")), SessionIndexesTest.ids(indexes.getClientSessions("realm", "client1")));
+
+        Assert.assertEquals(1, sweeper.getSweeps());
+        Assert.assertEquals(1, sweeper.getScans());
+        Assert.assertEquals(2, sweeper.getRemovedUserSessions());
+        Assert.assertEquals(2, sweeper.getRemovedClientSessions());
+    }
+
+    @Test
+    public void onlyQueuedSessionsVisited() {
+        int now = Time.currentTime();
+        SessionExpirationSweeper sweeper = new SessionExpirationSweeper(10);
+        sweeper.sweep(cache, indexes, realm());
+
+        // Written after the scan without being queued, so not visited
+        UserSessionEntity expired = userSession("expired", "user1", now - 7200, now - 7200);
+        add(expired);
+        sweeper.sweep(cache, indexes, realm());
+        sweeper.sweep(cache, indexes, realm("other", 300));
+        Assert.assertNotNull(cache.get("expired"));
+
+        sweeper.schedule(expired);
+        Assert.assertEquals(1, sweeper.getScheduledSessions());
+        sweeper.sweep(cache, indexes, realm());
+        Assert.assertNull(cache.get("expired"));
+        Assert.assertEquals(0, sweeper.getScheduledSessions());
+
+        // Container only scanned once for all realms
+        Assert.assertEquals(1, sweeper.getScans());
+        Assert.assertEquals(4, sweeper.getSweeps());
+    }
+
+    @Test
+    public void refreshedOnOtherNode() {
+        int now = Time.currentTime();
+        SessionExpirationSweeper sweeper = new SessionExpirationSweeper(10);
+        sweeper.sweep(cache, indexes, realm());
+
+        UserSessionEntity session = userSession("session", "user1", now - 600, now - 400);
+        add(session);
+        sweeper.schedule(session);
+
+        // Refreshed without this node knowing
+        add(userSession("session", "user1", now - 600, now - 10));
+        sweeper.sweep(cache, indexes, realm());
+        Assert.assertNotNull(cache.get("session"));
+        Assert.assertEquals(1, sweeper.getScheduledSessions());
+
+        Time.setOffset(400);
+        try {
+            sweeper.sweep(cache, indexes, realm());
+            Assert.assertNull(cache.get("session"));
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void realmTimeoutChanged() {
+        int now = Time.currentTime();
+        SessionExpirationSweeper sweeper = new SessionExpirationSweeper(10);
+
+        UserSessionEntity session = userSession("session", "user1", now - 600, now - 100);
+        add(session);
+        sweeper.schedule(session);
+
+        sweeper.sweep(cache, indexes, realm("realm", 300));
+        Assert.assertNotNull(cache.get("session"));
+
+        sweeper.sweep(cache, indexes, realm("realm", 60));
+        Assert.assertNull(cache.get("session"));
+    }
+
+    private void add(SessionEntity entity) {
+        indexes.beforeWrite(entity);
+        cache.put(entity.getId(), entity);
+    }
+
+    private static UserSessionEntity userSession(String id, String user, int started, int lastRefresh, String... clientSessions) {
+        UserSessionEntity entity = SessionIndexesTest.userSession(id, user, null);
+        entity.setStarted(started);
+        entity.setLastSessionRefresh(lastRefresh);
+        if (clientSessions.length > 0) {
+            entity.setClientSessions(new HashSet<String>(Arrays.asList(clientSessions)));
+        }
+        return entity;
+    }
+
+    private static ClientSessionEntity clientSession(String id, String client, String userSession, int timestamp) {
+        ClientSessionEntity entity = SessionIndexesTest.clientSession(id, client);
+        entity.setUserSession(userSession);
+        entity.setTimestamp(timestamp);
+        return entity;
+    }
+
+    private static RealmModel realm() {
+        return realm("realm", 300);
+    }
+
+    private static RealmModel realm(final String id, final int idleTimeout) {
+        return SessionIndexesTest.stub(RealmModel.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getId")) return id;
+                if (name.equals("getSsoSessionMaxLifespan")) return 3600;
+                if (name.equals("getSsoSessionIdleTimeout")) return idleTimeout;
+                if (name.equals("getAccessCodeLifespanLogin")) return 60;
+                return null;
+            }
+        });
+    }
+
+}
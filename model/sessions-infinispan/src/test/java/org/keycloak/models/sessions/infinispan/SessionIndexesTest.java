@@ -0,0 +1,240 @@
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.util.Time;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SessionIndexesTest {
+
+    private DefaultCacheManager cacheManager;
+    private Cache<String, SessionEntity> cache;
+    private SessionIndexes indexes;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cache = cacheManager.getCache("sessions");
+        indexes = new SessionIndexes(cache, 4);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void addAndRemove() {
+        add(userSession("s1", "user1", "broker1"));
+        add(clientSession("c1", "client1"));
+
+        Assert.assertEquals(Collections.singleton("s1"), ids(indexes.getUserSessions("realm", "user1")));
+        Assert.assertEquals(Collections.singleton("s1"), ids(indexes.getBrokerSessions("realm", "broker1")));
+        Assert.assertEquals(Collections.singleton("c1"), ids(indexes.getClientSessions("realm", "client1")));
+
+        indexes.onRemoved(cache.remove("s1"));
+        indexes.onRemoved(cache.remove("c1"));
+
+        Assert.assertTrue(indexes.getUserSessions("realm", "user1").isEmpty());
+        Assert.assertTrue(indexes.getBrokerSessions("realm", "broker1").isEmpty());
+        Assert.assertTrue(indexes.getClientSessions("realm", "client1").isEmpty());
+        Assert.assertNull(cache.get(SessionIndexEntity.userKey("realm", "user1", 0)));
+    }
+
+    @Test
+    public void replace() {
+        add(userSession("s1", "user1", "broker1"));
+
+        UserSessionEntity changed = userSession("s1", "user2", null);
+        indexes.beforeWrite(changed);
+        indexes.afterWrite(cache.replace("s1", changed), changed);
+
+        Assert.assertTrue(indexes.getUserSessions("realm", "user1").isEmpty());
+        Assert.assertTrue(indexes.getBrokerSessions("realm", "broker1").isEmpty());
+        Assert.assertNull(cache.get(SessionIndexEntity.userKey("realm", "user1", 0)));
+        Assert.assertEquals(Collections.singleton("s1"), ids(indexes.getUserSessions("realm", "user2")));
+    }
+
+    @Test
+    public void clientBuckets() {
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 50; i++) {
+            add(clientSession("c" + i, "client1"));
+            ids.add("c" + i);
+        }
+        add(clientSession("other", "client2"));
+
+        Assert.assertEquals(ids, ids(indexes.getClientSessions("realm", "client1")));
+
+        // Each bucket only holds part of the client's sessions
+        int buckets = 0;
+        for (int i = 0; i < 4; i++) {
+            SessionIndexEntity bucket = (SessionIndexEntity) cache.get(SessionIndexEntity.clientKey("realm", "client1", i));
+            if (bucket != null) {
+                Assert.assertTrue(bucket.getSessions().size() < ids.size());
+                buckets++;
+            }
+        }
+        Assert.assertTrue(buckets > 1);
+    }
+
+    @Test
+    public void pruneStale() {
+        // Added to the index, but the session was never written
+        indexes.beforeWrite(userSession("missing", "user1", null));
+        add(userSession("s1", "user1", null));
+
+        Assert.assertEquals(Collections.singleton("s1"), ids(indexes.getUserSessions("realm", "user1")));
+        // Might be in the middle of being written, so still in the index
+        Assert.assertEquals(2, userIndex("user1").getSessions().size());
+
+        Time.setOffset(SessionIndexes.PRUNE_AFTER + 1);
+        try {
+            Assert.assertEquals(Collections.singleton("s1"), ids(indexes.getUserSessions("realm", "user1")));
+            Assert.assertEquals(Collections.singleton("s1"), userIndex("user1").getSessions().keySet());
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void transaction() {
+        InfinispanUserSessionProvider provider = provider();
+        RealmModel realm = model(RealmModel.class, "realm");
+
+        UserSessionModel userSession = provider.createUserSession(realm, model(UserModel.class, "user1"), "user1", "127.0.0.1", "form", false, null, null);
+        provider.getTx().commit();
+
+        Assert.assertEquals(1, provider.getUserSessions(realm, model(UserModel.class, "user1")).size());
+
+        provider = provider();
+        UserSessionEntity changed = userSession(userSession.getId(), "user2", null);
+        provider.getTx().replace(cache, changed.getId(), changed);
+        provider.getTx().commit();
+
+        Assert.assertTrue(provider.getUserSessions(realm, model(UserModel.class, "user1")).isEmpty());
+        Assert.assertNull(cache.get(SessionIndexEntity.userKey("realm", "user1", 0)));
+        Assert.assertEquals(1, provider.getUserSessions(realm, model(UserModel.class, "user2")).size());
+
+        provider = provider();
+        provider.removeUserSessions(realm, model(UserModel.class, "user2"));
+        provider.getTx().commit();
+
+        Assert.assertNull(cache.get(userSession.getId()));
+        Assert.assertNull(cache.get(SessionIndexEntity.userKey("realm", "user2", 0)));
+    }
+
+    @Test
+    public void changedInPlace() {
+        InfinispanUserSessionProvider provider = provider();
+        RealmModel realm = model(RealmModel.class, "realm");
+
+        UserSessionModel userSession = provider.createUserSession(realm, model(UserModel.class, "user1"), "user1", "127.0.0.1", "form", false, null, null);
+        provider.getTx().commit();
+
+        // Local cache returns the same instance, so the previous user isn't known when the change is committed
+        UserSessionEntity entity = (UserSessionEntity) cache.get(userSession.getId());
+        entity.setUser("user2");
+        provider = provider();
+        provider.getTx().replace(cache, entity.getId(), entity);
+        provider.getTx().commit();
+
+        Assert.assertTrue(provider.getUserSessions(realm, model(UserModel.class, "user1")).isEmpty());
+        Assert.assertEquals(1, provider.getUserSessions(realm, model(UserModel.class, "user2")).size());
+    }
+
+    private InfinispanUserSessionProvider provider() {
+        return new InfinispanUserSessionProvider(session(), cache, null, indexes, new SessionExpirationSweeper(10));
+    }
+
+    private void add(SessionEntity entity) {
+        indexes.beforeWrite(entity);
+        cache.put(entity.getId(), entity);
+    }
+
+    private SessionIndexEntity userIndex(String user) {
+        return (SessionIndexEntity) cache.get(SessionIndexEntity.userKey("realm", user, 0));
+    }
+
+    static Set<String> ids(Collection<? extends SessionEntity> entities) {
+        Set<String> ids = new HashSet<String>();
+        for (SessionEntity entity : entities) {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    static UserSessionEntity userSession(String id, String user, String brokerSessionId) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setUser(user);
+        entity.setBrokerSessionId(brokerSessionId);
+        return entity;
+    }
+
+    static ClientSessionEntity clientSession(String id, String client) {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setClient(client);
+        return entity;
+    }
+
+    static KeycloakSession session() {
+        final KeycloakTransactionManager transactionManager = stub(KeycloakTransactionManager.class, null);
+        return stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getTransaction") ? transactionManager : null;
+            }
+        });
+    }
+
+    static <T> T model(Class<T> type, final String id) {
+        return stub(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getId") ? id : null;
+            }
+        });
+    }
+
+    static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (handler != null) {
+                    Object result = handler.invoke(proxy, method, args);
+                    if (result != null) return result;
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                return null;
+            }
+        }));
+    }
+
+}
@@ -34,6 +34,10 @@ public class ProxyConfig {
     protected Boolean directBuffers;
     @JsonProperty("target-url")
     protected String targetUrl;
+    @JsonProperty("target-connections-per-thread")
+    protected Integer targetConnectionsPerThread;
+    @JsonProperty("target-max-queue-size")
+    protected Integer targetMaxQueueSize;
     @JsonProperty("send-access-token")
     protected boolean sendAccessToken;
     @JsonProperty("applications")
@@ -137,6 +141,22 @@ public class ProxyConfig {
         this.targetUrl = targetUrl;
     }
 
+    public Integer getTargetConnectionsPerThread() {
+        return targetConnectionsPerThread;
+    }
+
+    public void setTargetConnectionsPerThread(Integer targetConnectionsPerThread) {
+        this.targetConnectionsPerThread = targetConnectionsPerThread;
+    }
+
+    public Integer getTargetMaxQueueSize() {
+        return targetMaxQueueSize;
+    }
+
+    public void setTargetMaxQueueSize(Integer targetMaxQueueSize) {
+        this.targetMaxQueueSize = targetMaxQueueSize;
+    }
+
     public List<Application> getApplications() {
         return applications;
     }
@@ -168,6 +188,8 @@ public class ProxyConfig {
         protected AdapterConfig adapterConfig;
         @JsonProperty("error-page")
         protected String errorPage;
+        @JsonProperty("cookie-encryption-key")
+        protected String cookieEncryptionKey;
         @JsonProperty("constraints")
         protected List<Constraint> constraints = new LinkedList<Constraint>();
 
@@ -195,6 +217,14 @@ public class ProxyConfig {
             this.errorPage = errorPage;
         }
 
+        public String getCookieEncryptionKey() {
+            return cookieEncryptionKey;
+        }
+
+        public void setCookieEncryptionKey(String cookieEncryptionKey) {
+            this.cookieEncryptionKey = cookieEncryptionKey;
+        }
+
         public List<Constraint> getConstraints() {
             return constraints;
         }
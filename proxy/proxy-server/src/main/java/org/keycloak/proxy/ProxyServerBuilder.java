@@ -13,6 +13,8 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.PathHandler;
 import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyClient;
 import io.undertow.server.handlers.proxy.ProxyHandler;
 import io.undertow.server.handlers.proxy.SimpleProxyClientProvider;
 import io.undertow.server.session.InMemorySessionManager;
@@ -23,6 +25,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.jboss.logging.Logger;
 import org.keycloak.adapters.AdapterDeploymentContext;
+import org.keycloak.adapters.CookieTokenCipher;
 import org.keycloak.util.FindFile;
 import org.keycloak.adapters.KeycloakDeployment;
 import org.keycloak.adapters.KeycloakDeploymentBuilder;
@@ -32,10 +35,14 @@ import org.keycloak.adapters.undertow.UndertowAuthenticationMechanism;
 import org.keycloak.adapters.undertow.UndertowPreAuthActionsHandler;
 import org.keycloak.adapters.undertow.UndertowUserSessionManagement;
 import org.keycloak.enums.SslRequired;
+import org.keycloak.enums.TokenStore;
 import org.keycloak.representations.adapters.config.AdapterConfig;
 import org.keycloak.util.CertificateUtils;
 import org.keycloak.util.SystemPropertiesJsonParserFactory;
 import org.xnio.Option;
+import org.xnio.OptionMap;
+import org.xnio.Xnio;
+import org.xnio.ssl.JsseXnioSsl;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -82,7 +89,34 @@ public class ProxyServerBuilder {
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
-        final HttpHandler handler = new ProxyHandler(provider, 30000, ResponseCodeHandler.HANDLE_404);
+        return proxyClient(provider);
+    }
+
+    /**
+     * Proxies to the target through a pool of connections kept by each IO thread, instead of opening a backend
+     * connection for every client connection.
+     *
+     * @param connectionsPerThread max number of pooled backend connections per IO thread
+     * @param maxQueueSize max number of requests waiting for a pooled connection, 0 or less for default
+     */
+    public ProxyServerBuilder target(String uri, int connectionsPerThread, int maxQueueSize) {
+        LoadBalancingProxyClient client = new LoadBalancingProxyClient().setConnectionsPerThread(connectionsPerThread);
+        if (maxQueueSize > 0) client.setMaxQueueSize(maxQueueSize);
+        try {
+            URI targetUri = new URI(uri);
+            if ("https".equalsIgnoreCase(targetUri.getScheme())) {
+                client.addHost(targetUri, new JsseXnioSsl(Xnio.getInstance(), OptionMap.EMPTY));
+            } else {
+                client.addHost(targetUri);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return proxyClient(client);
+    }
+
+    protected ProxyServerBuilder proxyClient(ProxyClient client) {
+        final HttpHandler handler = new ProxyHandler(client, 30000, ResponseCodeHandler.HANDLE_404);
         proxyHandler = new HttpHandler() {
             @Override
             public void handleRequest(HttpServerExchange exchange) throws Exception {
@@ -132,6 +166,18 @@ public class ProxyServerBuilder {
             return this;
         }
 
+        /**
+         * Encrypt the tokens kept in the cookie by the cookie token store with AES-GCM
+         *
+         * @param key base64 encoded AES key, must be the same on all proxy instances
+         */
+        public ApplicationBuilder cookieEncryptionKey(String key) {
+            if (key != null) {
+                deployment.setCookieTokenCipher(CookieTokenCipher.fromBase64(key));
+            }
+            return this;
+        }
+
         public ApplicationBuilder(AdapterConfig config) {
             this.deployment = KeycloakDeploymentBuilder.build(config);
             this.deploymentContext = new AdapterDeploymentContext(deployment);
@@ -139,11 +185,20 @@ public class ProxyServerBuilder {
 
         public ProxyServerBuilder add() {
             matches = constraintBuilder.build();
-            HttpHandler handler = sessionHandling(addSecurity(proxyHandler));
+            HttpHandler handler = addSecurity(proxyHandler);
+            // With cookie token store the tokens are kept by the browser, so the proxy doesn't need http sessions
+            // and any instance can serve any request
+            if (!isStateless()) {
+                handler = sessionHandling(handler);
+            }
             root.addPrefixPath(base, handler);
             return ProxyServerBuilder.this;
         }
 
+        protected boolean isStateless() {
+            return deployment.getTokenStore() == TokenStore.COOKIE;
+        }
+
         public ConstraintBuilder constraint(String pattern) {
             log.debugv("add constraint: {0}", pattern);
             return new ConstraintBuilder(pattern);
@@ -236,7 +291,9 @@ public class ProxyServerBuilder {
             handler = new ProxyAuthenticationCallHandler(handler);
             handler = new ConstraintMatcherHandler(matches, handler, toWrap, errorPage);
             final List<AuthenticationMechanism> mechanisms = new LinkedList<AuthenticationMechanism>();
-            mechanisms.add(new CachedAuthenticatedSessionMechanism());
+            if (!isStateless()) {
+                mechanisms.add(new CachedAuthenticatedSessionMechanism());
+            }
             mechanisms.add(new UndertowAuthenticationMechanism(deploymentContext, userSessionManagement, nodesRegistrationManagement, -1, null));
             handler = new AuthenticationMechanismsHandler(handler, mechanisms);
             IdentityManager identityManager = new IdentityManager() {
@@ -355,7 +412,12 @@ public class ProxyServerBuilder {
             log.error("Must set Target URL");
             return null;
         }
-        builder.target(config.getTargetUrl());
+        if (config.getTargetConnectionsPerThread() != null) {
+            int maxQueueSize = config.getTargetMaxQueueSize() != null ? config.getTargetMaxQueueSize() : 0;
+            builder.target(config.getTargetUrl(), config.getTargetConnectionsPerThread(), maxQueueSize);
+        } else {
+            builder.target(config.getTargetUrl());
+        }
         if (config.getApplications() == null || config.getApplications().size() == 0) {
             log.error("No applications defined");
             return null;
@@ -366,7 +428,8 @@ public class ProxyServerBuilder {
         for (ProxyConfig.Application application : config.getApplications()) {
             ApplicationBuilder applicationBuilder = builder.application(application.getAdapterConfig())
                     .base(application.getBasePath())
-                    .errorPage(application.getErrorPage());
+                    .errorPage(application.getErrorPage())
+                    .cookieEncryptionKey(application.getCookieEncryptionKey());
 
             if (application.getConstraints() != null) {
                 for (ProxyConfig.Constraint constraint : application.getConstraints()) {
@@ -19,6 +19,7 @@
 package org.keycloak.proxy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,14 +35,14 @@ public class SecurityPathMatches {
     private final boolean denyUncoveredHttpMethods;
     private final PathSecurityInformation defaultPathSecurityInformation;
     private final Map<String, PathSecurityInformation> exactPathRoleInformation;
-    private final Map<String, PathSecurityInformation> prefixPathRoleInformation;
+    private final PrefixTrie prefixPathRoleInformation;
     private final Map<String, PathSecurityInformation> extensionRoleInformation;
 
     private SecurityPathMatches(final boolean denyUncoveredHttpMethods, final PathSecurityInformation defaultPathSecurityInformation, final Map<String, PathSecurityInformation> exactPathRoleInformation, final Map<String, PathSecurityInformation> prefixPathRoleInformation, final Map<String, PathSecurityInformation> extensionRoleInformation) {
         this.denyUncoveredHttpMethods = denyUncoveredHttpMethods;
         this.defaultPathSecurityInformation = defaultPathSecurityInformation;
         this.exactPathRoleInformation = exactPathRoleInformation;
-        this.prefixPathRoleInformation = prefixPathRoleInformation;
+        this.prefixPathRoleInformation = new PrefixTrie(prefixPathRoleInformation);
         this.extensionRoleInformation = extensionRoleInformation;
     }
 
@@ -67,7 +68,37 @@ public class SecurityPathMatches {
             return mergeConstraints(currentMatch);
         }
 
-        match = prefixPathRoleInformation.get(path);
+        if (path.indexOf('?') != -1) {
+            return getSecurityInfoWithQuery(path, method, currentMatch);
+        }
+
+        // longest prefix of the path ending at segment boundary, the whole path is checked before extension
+        PrefixNode prefix = prefixPathRoleInformation.longestMatch(path);
+        if (prefix != null && prefix.depth == path.length()) {
+            handleMatch(method, prefix.info, currentMatch);
+            return mergeConstraints(currentMatch);
+        }
+
+        int dot = path.lastIndexOf('.');
+        if (dot > path.lastIndexOf('/')) {
+            match = extensionRoleInformation.get(path.substring(dot + 1));
+            if (match != null) {
+                handleMatch(method, match, currentMatch);
+                return mergeConstraints(currentMatch);
+            }
+        }
+
+        if (prefix != null) {
+            handleMatch(method, prefix.info, currentMatch);
+        }
+        return mergeConstraints(currentMatch);
+    }
+
+    /**
+     * Path containing (decoded) question mark, the part before it is checked for exact match too
+     */
+    private SingleConstraintMatch getSecurityInfoWithQuery(final String path, final String method, RuntimeMatch currentMatch) {
+        PathSecurityInformation match = prefixPathRoleInformation.get(path);
         if (match != null) {
             handleMatch(method, match, currentMatch);
             return mergeConstraints(currentMatch);
@@ -243,6 +274,91 @@ public class SecurityPathMatches {
         }
     }
 
+    /**
+     * Prefix patterns compiled to a character trie, so that the longest matching prefix is found in one pass over the
+     * path, without creating substrings for each segment.
+     */
+    private static final class PrefixTrie {
+        private final PrefixNode root = new PrefixNode(0);
+        private final boolean empty;
+
+        private PrefixTrie(Map<String, PathSecurityInformation> prefixes) {
+            for (Map.Entry<String, PathSecurityInformation> entry : prefixes.entrySet()) {
+                PrefixNode node = root;
+                String prefix = entry.getKey();
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.getOrAddChild(prefix.charAt(i));
+                }
+                node.info = entry.getValue();
+            }
+            this.empty = prefixes.isEmpty();
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        PathSecurityInformation get(String prefix) {
+            PrefixNode node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.getChild(prefix.charAt(i));
+            }
+            return node != null ? node.info : null;
+        }
+
+        /**
+         * @return node of the longest prefix which is followed by '/' or the end of the path, null if there is none
+         */
+        PrefixNode longestMatch(String path) {
+            PrefixNode node = root;
+            PrefixNode match = null;
+            for (int i = 0; ; i++) {
+                boolean boundary = i == path.length() || path.charAt(i) == '/';
+                if (boundary && node.info != null) {
+                    match = node;
+                }
+                if (i == path.length()) break;
+                node = node.getChild(path.charAt(i));
+                if (node == null) break;
+            }
+            return match;
+        }
+    }
+
+    private static final class PrefixNode {
+        private static final char[] NO_KEYS = new char[0];
+        private static final PrefixNode[] NO_CHILDREN = new PrefixNode[0];
+
+        final int depth;
+        PathSecurityInformation info;
+        private char[] keys = NO_KEYS;
+        private PrefixNode[] children = NO_CHILDREN;
+
+        private PrefixNode(int depth) {
+            this.depth = depth;
+        }
+
+        PrefixNode getChild(char c) {
+            char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        PrefixNode getOrAddChild(char c) {
+            PrefixNode child = getChild(c);
+            if (child == null) {
+                child = new PrefixNode(depth + 1);
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = c;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
     private static final class RuntimeMatch {
         final List<SingleConstraintMatch> constraints = new ArrayList<SingleConstraintMatch>();
         boolean uncovered = true;
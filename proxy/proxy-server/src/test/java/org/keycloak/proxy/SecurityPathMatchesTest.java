@@ -0,0 +1,166 @@
+package org.keycloak.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the prefix trie with a linear scan of the path over random constraints and requests
+ */
+public class SecurityPathMatchesTest {
+
+    private static final String[] SEGMENTS = { "a", "b", "ab", "a.b", "c.jsp", "" };
+    private static final String[] EXTENSIONS = { "jsp", "html", "b" };
+    private static final String[] METHODS = { "GET", "POST", "DELETE" };
+
+    @Test
+    public void testSimple() {
+        SecurityPathMatches.Builder builder = new SecurityPathMatches.Builder();
+        builder.addSecurityConstraint(Collections.singleton("admin"), SecurityInfo.EmptyRoleSemantic.PERMIT, "/admin/*", Collections.<String>emptySet(), Collections.<String>emptySet());
+        builder.addSecurityConstraint(Collections.singleton("jsp"), SecurityInfo.EmptyRoleSemantic.PERMIT, "*.jsp", Collections.<String>emptySet(), Collections.<String>emptySet());
+        builder.addSecurityConstraint(Collections.singleton("exact"), SecurityInfo.EmptyRoleSemantic.PERMIT, "/admin/index.jsp", Collections.<String>emptySet(), Collections.<String>emptySet());
+        SecurityPathMatches matches = builder.build();
+
+        Assert.assertEquals(Collections.singleton("admin"), matches.getSecurityInfo("/admin", "GET").getRequiredRoles());
+        Assert.assertEquals(Collections.singleton("admin"), matches.getSecurityInfo("/admin/page", "GET").getRequiredRoles());
+        Assert.assertEquals(Collections.singleton("jsp"), matches.getSecurityInfo("/admin/page.jsp", "GET").getRequiredRoles());
+        Assert.assertEquals(Collections.singleton("exact"), matches.getSecurityInfo("/admin/index.jsp", "GET").getRequiredRoles());
+        Assert.assertEquals(Collections.<String>emptySet(), matches.getSecurityInfo("/administrator", "GET").getRequiredRoles());
+    }
+
+    @Test
+    public void testSameAsLinearScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            SecurityPathMatches.Builder builder = new SecurityPathMatches.Builder();
+            LinearMatches linear = new LinearMatches();
+
+            int constraints = 1 + random.nextInt(10);
+            for (int i = 0; i < constraints; i++) {
+                String pattern = randomPattern(random);
+                Set<String> roles = Collections.singleton("role-" + i);
+                Set<String> methods = random.nextInt(3) == 0 ? Collections.singleton(random(random, METHODS)) : Collections.<String>emptySet();
+
+                builder.addSecurityConstraint(roles, SecurityInfo.EmptyRoleSemantic.PERMIT, pattern, methods, Collections.<String>emptySet());
+                linear.addSecurityConstraint(roles, pattern, methods);
+            }
+            SecurityPathMatches matches = builder.build();
+
+            for (int i = 0; i < 100; i++) {
+                String path = randomPath(random);
+                String method = random(random, METHODS);
+
+                SingleConstraintMatch match = matches.getSecurityInfo(path, method);
+                Assert.assertEquals(path, SecurityInfo.EmptyRoleSemantic.PERMIT, match.getEmptyRoleSemantic());
+                Assert.assertEquals(method + " " + path, linear.getRequiredRoles(path, method), match.getRequiredRoles());
+            }
+        }
+    }
+
+    private static String randomPattern(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return "*." + random(random, EXTENSIONS);
+            case 1:
+                return randomPath(random) + (random.nextBoolean() ? "/*" : "/");
+            default:
+                return randomPath(random);
+        }
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            sb.append('/').append(random(random, SEGMENTS));
+        }
+        if (random.nextInt(10) == 0) {
+            sb.append('?').append(random(random, SEGMENTS));
+        }
+        return sb.length() > 0 ? sb.toString() : "/";
+    }
+
+    private static String random(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Reference matching scanning the path backwards for each '/' and '.', as done before the prefix trie
+     */
+    private static class LinearMatches {
+        private final Map<String, List<Constraint>> exact = new HashMap<String, List<Constraint>>();
+        private final Map<String, List<Constraint>> prefix = new HashMap<String, List<Constraint>>();
+        private final Map<String, List<Constraint>> extension = new HashMap<String, List<Constraint>>();
+
+        void addSecurityConstraint(Set<String> roles, String pattern, Set<String> methods) {
+            if (pattern.endsWith("/*") || pattern.endsWith("/")) {
+                add(prefix, pattern.substring(0, pattern.lastIndexOf('/')), roles, methods);
+            } else if (pattern.startsWith("*.")) {
+                add(extension, pattern.substring(2), roles, methods);
+            } else {
+                add(exact, pattern, roles, methods);
+            }
+        }
+
+        Set<String> getRequiredRoles(String path, String method) {
+            List<Constraint> match = exact.get(path);
+            if (match == null) {
+                match = prefix.get(path);
+            }
+
+            int qsPos = -1;
+            boolean ext = false;
+            for (int i = path.length() - 1; i >= 0 && match == null; --i) {
+                char c = path.charAt(i);
+                if (c == '?') {
+                    match = exact.get(path.substring(0, i));
+                    qsPos = i;
+                    ext = false;
+                } else if (c == '/') {
+                    ext = true;
+                    match = prefix.get(path.substring(0, i));
+                } else if (c == '.' && !ext) {
+                    ext = true;
+                    match = extension.get(path.substring(i + 1, qsPos == -1 ? path.length() : qsPos));
+                }
+            }
+
+            Set<String> roles = new HashSet<String>();
+            if (match != null) {
+                for (Constraint constraint : match) {
+                    if (constraint.methods.isEmpty() || constraint.methods.contains(method)) {
+                        roles.addAll(constraint.roles);
+                    }
+                }
+            }
+            return roles;
+        }
+
+        private static void add(Map<String, List<Constraint>> map, String key, Set<String> roles, Set<String> methods) {
+            List<Constraint> constraints = map.get(key);
+            if (constraints == null) {
+                map.put(key, constraints = new ArrayList<Constraint>());
+            }
+            constraints.add(new Constraint(roles, methods));
+        }
+    }
+
+    private static class Constraint {
+        final Set<String> roles;
+        final Set<String> methods;
+
+        Constraint(Set<String> roles, Set<String> methods) {
+            this.roles = roles;
+            this.methods = methods;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import org.keycloak.adapters.AuthOutcome;
 import org.keycloak.adapters.HttpFacade;
 import org.keycloak.adapters.InMemorySessionIdMapper;
 import org.keycloak.adapters.SessionIdMapper;
+import org.keycloak.adapters.SessionIdMapperFactory;
 import org.keycloak.adapters.jetty.core.JettyHttpFacade;
 import org.keycloak.adapters.jetty.core.JettyUserSessionManagement;
 import org.keycloak.adapters.saml.AdapterConstants;
@@ -195,8 +196,13 @@ public abstract class AbstractSamlAuthenticator extends LoginAuthenticator {
                 deploymentContext = new SamlDeploymentContext(deployment);
             }
         }
-        if (theServletContext != null)
+        if (theServletContext != null) {
             theServletContext.setAttribute(SamlDeploymentContext.class.getName(), deploymentContext);
+            String sessionIdMapperCache = theServletContext.getInitParameter(SessionIdMapperFactory.CACHE_JNDI_NAME_PARAM);
+            if (sessionIdMapperCache != null) {
+                idMapper = SessionIdMapperFactory.create(sessionIdMapperCache, 0);
+            }
+        }
     }
 
     private InputStream getConfigInputStream(ServletContext servletContext) {
@@ -105,6 +105,10 @@ public class JettySamlSessionStore implements SamlSessionStore {
             log.debug("SamlSession was not in session, returning null");
             return false;
         }
+        // keeps the mapping from expiring while the session is used, and maps the session again if it expired anyway
+        if (!idMapper.hasSession(session.getId())) {
+            idMapper.map(samlSession.getSessionIndex(), samlSession.getPrincipal().getSamlSubject(), session.getId());
+        }
 
         restoreRequest();
         return true;
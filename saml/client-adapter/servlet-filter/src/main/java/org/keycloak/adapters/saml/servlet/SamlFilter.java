@@ -4,6 +4,7 @@ import org.keycloak.adapters.AuthChallenge;
 import org.keycloak.adapters.AuthOutcome;
 import org.keycloak.adapters.InMemorySessionIdMapper;
 import org.keycloak.adapters.SessionIdMapper;
+import org.keycloak.adapters.SessionIdMapperFactory;
 import org.keycloak.adapters.saml.DefaultSamlDeployment;
 import org.keycloak.adapters.saml.SamlAuthenticator;
 import org.keycloak.adapters.saml.SamlDeployment;
@@ -77,6 +78,10 @@ public class SamlFilter implements Filter {
             log.fine("Keycloak is using a per-deployment configuration.");
         }
         filterConfig.getServletContext().setAttribute(SamlDeploymentContext.class.getName(), deploymentContext);
+        String sessionIdMapperCache = filterConfig.getInitParameter(SessionIdMapperFactory.CACHE_JNDI_NAME_PARAM);
+        if (sessionIdMapperCache != null) {
+            idMapper = SessionIdMapperFactory.create(sessionIdMapperCache, 0);
+        }
 
     }
 
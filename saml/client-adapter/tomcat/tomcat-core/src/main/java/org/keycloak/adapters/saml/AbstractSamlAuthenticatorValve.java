@@ -12,6 +12,7 @@ import org.keycloak.adapters.AuthOutcome;
 import org.keycloak.adapters.HttpFacade;
 import org.keycloak.adapters.InMemorySessionIdMapper;
 import org.keycloak.adapters.SessionIdMapper;
+import org.keycloak.adapters.SessionIdMapperFactory;
 import org.keycloak.adapters.saml.config.parsers.DeploymentBuilder;
 import org.keycloak.adapters.saml.config.parsers.ResourceLoader;
 import org.keycloak.adapters.tomcat.CatalinaHttpFacade;
@@ -113,6 +114,7 @@ public abstract class AbstractSamlAuthenticatorValve extends FormAuthenticator i
         }
 
         context.getServletContext().setAttribute(SamlDeploymentContext.class.getName(), deploymentContext);
+        mapper = SessionIdMapperFactory.create(context.getServletContext().getInitParameter(SessionIdMapperFactory.CACHE_JNDI_NAME_PARAM), context.getSessionTimeout() * 60);
     }
 
     protected void beforeStop() {
@@ -111,6 +111,10 @@ public class CatalinaSamlSessionStore implements SamlSessionStore {
             log.debug("SamlSession was not in session, returning null");
             return false;
         }
+        // keeps the mapping from expiring while the session is used, and maps the session again if it expired anyway
+        if (!idMapper.hasSession(session.getId())) {
+            idMapper.map(samlSession.getSessionIndex(), samlSession.getPrincipal().getSamlSubject(), session.getId());
+        }
 
         GenericPrincipal principal = (GenericPrincipal) session.getPrincipal();
         if (samlSession.getPrincipal().getName().equals(principal.getName()))
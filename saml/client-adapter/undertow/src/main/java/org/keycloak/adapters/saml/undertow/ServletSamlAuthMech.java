@@ -30,6 +30,10 @@ public class ServletSamlAuthMech extends AbstractSamlAuthMech {
         super(deploymentContext, sessionManagement, errorPage);
     }
 
+    public void setIdMapper(SessionIdMapper idMapper) {
+        this.idMapper = idMapper;
+    }
+
     @Override
     protected SamlSessionStore getTokenStore(HttpServerExchange exchange, HttpFacade facade, SamlDeployment deployment, SecurityContext securityContext) {
         return new ServletSamlSessionStore(exchange, sessionManagement, securityContext, idMapper);
@@ -109,6 +109,10 @@ public class ServletSamlSessionStore implements SamlSessionStore {
             log.debug("SamlSession was not in session, returning null");
             return false;
         }
+        // keeps the mapping from expiring while the session is used, and maps the session again if it expired anyway
+        if (!idMapper.hasSession(session.getId())) {
+            idMapper.map(samlSession.getSessionIndex(), samlSession.getPrincipal().getSamlSubject(), session.getId());
+        }
 
         Account undertowAccount = new Account() {
             @Override
@@ -4,8 +4,11 @@ import org.jboss.logging.Logger;
 import org.keycloak.saml.common.constants.GeneralConstants;
 import org.keycloak.saml.common.constants.JBossSAMLConstants;
 import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
+import org.keycloak.dom.saml.v2.protocol.ResponseType;
 import org.keycloak.saml.common.exceptions.ConfigurationException;
+import org.keycloak.saml.common.exceptions.ParsingException;
 import org.keycloak.saml.common.exceptions.ProcessingException;
+import org.keycloak.saml.processing.api.saml.v2.response.SAML2Response;
 import org.keycloak.saml.processing.api.saml.v2.sig.SAML2Signature;
 import org.keycloak.saml.processing.core.saml.v2.util.DocumentUtil;
 import org.keycloak.saml.processing.core.util.XMLEncryptionUtil;
@@ -20,6 +23,8 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
 import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.security.KeyPair;
@@ -115,6 +120,7 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
 
     public static class BasePostBindingBuilder {
         protected Document document;
+        protected byte[] documentBytes;
         protected BaseSAML2BindingBuilder builder;
 
         public BasePostBindingBuilder(BaseSAML2BindingBuilder builder, Document document) throws ProcessingException {
@@ -129,19 +135,59 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
             }
         }
 
+        /**
+         * Without assertion signature and encryption the response is written directly by the StAX writer and DOM is not
+         * built at all. If only the whole response is signed, the StAX writer builds the DOM directly, without
+         * serializing the response and parsing it back.
+         */
+        public BasePostBindingBuilder(BaseSAML2BindingBuilder builder, ResponseType response) throws ProcessingException {
+            this.builder = builder;
+            try {
+                if (builder.signAssertions || builder.encrypt) {
+                    this.document = new SAML2Response().convert(response);
+                    if (builder.signAssertions) {
+                        builder.signAssertion(document);
+                    }
+                    if (builder.encrypt) builder.encryptDocument(document);
+                } else if (builder.sign) {
+                    this.document = new SAML2Response().convertToDocument(response);
+                } else {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    new SAML2Response().marshall(response, bos);
+                    this.documentBytes = bos.toByteArray();
+                }
+            } catch (ConfigurationException e) {
+                throw new ProcessingException(e);
+            } catch (ParsingException e) {
+                throw new ProcessingException(e);
+            }
+            if (builder.sign) {
+                builder.signDocument(document);
+            }
+        }
+
         public String encoded() throws ProcessingException, ConfigurationException, IOException {
-            byte[] responseBytes = DocumentUtil.getDocumentAsString(document).getBytes("UTF-8");
-            return PostBindingUtil.base64Encode(new String(responseBytes));
+            byte[] responseBytes = documentBytes != null ? documentBytes : DocumentUtil.getDocumentAsBytes(document);
+            return PostBindingUtil.base64Encode(responseBytes);
         }
-        public Document getDocument() {
+        public Document getDocument() throws ProcessingException {
+            if (document == null) {
+                try {
+                    document = DocumentUtil.getDocument(new ByteArrayInputStream(documentBytes));
+                } catch (ConfigurationException e) {
+                    throw new ProcessingException(e);
+                } catch (ParsingException e) {
+                    throw new ProcessingException(e);
+                }
+            }
             return document;
         }
         public String getHtmlResponse(String actionUrl) throws ProcessingException, ConfigurationException, IOException {
-            String str = builder.buildHtmlPostResponse(document, actionUrl, false);
+            String str = builder.buildHtml(encoded(), actionUrl, false);
             return str;
         }
         public String getHtmlRequest(String actionUrl) throws ProcessingException, ConfigurationException, IOException {
-            String str = builder.buildHtmlPostResponse(document, actionUrl, true);
+            String str = builder.buildHtml(encoded(), actionUrl, true);
             return str;
         }
 
@@ -192,6 +238,10 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
 
     }
 
+    public BasePostBindingBuilder postBinding(ResponseType response) throws ProcessingException {
+        return new BasePostBindingBuilder(this, response);
+    }
+
 
 
     public String getSAMLNSPrefix(Document samlResponseDocument) {
@@ -275,8 +325,8 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
 
 
     public String buildHtmlPostResponse(Document responseDoc, String actionUrl, boolean asRequest) throws ProcessingException, ConfigurationException, IOException {
-        byte[] responseBytes = org.keycloak.saml.common.util.DocumentUtil.getDocumentAsString(responseDoc).getBytes("UTF-8");
-        String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
+        byte[] responseBytes = org.keycloak.saml.common.util.DocumentUtil.getDocumentAsBytes(responseDoc);
+        String samlResponse = PostBindingUtil.base64Encode(responseBytes);
 
         return buildHtml(samlResponse, actionUrl, asRequest);
     }
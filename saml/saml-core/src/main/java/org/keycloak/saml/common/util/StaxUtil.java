@@ -49,6 +49,9 @@ public class StaxUtil {
 
     private static ThreadLocal<Stack<String>> registeredNSStack = new ThreadLocal<Stack<String>>();
 
+    // Looking up the factory implementation is costly, so each thread keeps its factory
+    private static final ThreadLocal<XMLOutputFactory> xmlOutputFactory = new ThreadLocal<XMLOutputFactory>();
+
     /**
      * Flush the stream writer
      *
@@ -430,6 +433,15 @@ public class StaxUtil {
     }
 
     private static XMLOutputFactory getXMLOutputFactory() {
+        XMLOutputFactory factory = xmlOutputFactory.get();
+        if (factory == null) {
+            factory = createXMLOutputFactory();
+            xmlOutputFactory.set(factory);
+        }
+        return factory;
+    }
+
+    private static XMLOutputFactory createXMLOutputFactory() {
         boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
                 .equalsIgnoreCase("true");
         ClassLoader prevTCCL = SecurityActions.getTCCL();
@@ -68,27 +68,36 @@ public class TransformerUtil {
 
     private static TransformerFactory transformerFactory;
 
+    // Transformer is not thread-safe, but can be reused after reset
+    private static final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>();
+
     /**
-     * Get the Default Transformer
+     * Get the Default Transformer. The instance is reused by the current thread, so it must not be used after another
+     * call of this method in the same thread.
      *
      * @return
      *
      * @throws org.keycloak.saml.common.exceptions.ConfigurationException
      */
     public static Transformer getTransformer() throws ConfigurationException {
-        Transformer transformer;
-        try {
-            transformer = getTransformerFactory().newTransformer();
-        } catch (TransformerConfigurationException e) {
-            throw logger.configurationError(e);
-        } catch (TransformerFactoryConfigurationError e) {
-            throw logger.configurationError(e);
+        Transformer t = transformer.get();
+        if (t == null) {
+            try {
+                t = getTransformerFactory().newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw logger.configurationError(e);
+            } catch (TransformerFactoryConfigurationError e) {
+                throw logger.configurationError(e);
+            }
+            transformer.set(t);
+        } else {
+            t.reset();
         }
 
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        t.setOutputProperty(OutputKeys.INDENT, "no");
 
-        return transformer;
+        return t;
     }
 
     /**
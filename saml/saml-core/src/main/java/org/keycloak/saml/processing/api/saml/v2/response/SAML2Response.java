@@ -65,6 +65,7 @@ import org.w3c.dom.Node;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
+import javax.xml.transform.dom.DOMResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
@@ -515,6 +516,26 @@ public class SAML2Response {
         return DocumentUtil.getDocument(new ByteArrayInputStream(bos.toByteArray()));
     }
 
+    /**
+     * Convert a SAML2 Response into a Document by writing it directly into DOM, without serializing it and parsing it
+     * back.
+     *
+     * @param responseType
+     *
+     * @return
+     *
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public Document convertToDocument(ResponseType responseType) throws ProcessingException, ConfigurationException {
+        Document document = DocumentUtil.createDocument();
+
+        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(new DOMResult(document)));
+        writer.write(responseType);
+
+        return document;
+    }
+
     /**
      * Marshall the response type to the output stream
      *
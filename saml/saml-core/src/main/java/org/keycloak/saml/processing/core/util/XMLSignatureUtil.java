@@ -108,7 +108,13 @@ public class XMLSignatureUtil {
 
     private static String canonicalizationMethodType = CanonicalizationMethod.EXCLUSIVE;
 
-    private static XMLSignatureFactory fac = getXMLSignatureFactory();
+    // XMLSignatureFactory is not thread-safe, so each thread has its own instance
+    private static final ThreadLocal<XMLSignatureFactory> xmlSignatureFactory = new ThreadLocal<XMLSignatureFactory>() {
+        @Override
+        protected XMLSignatureFactory initialValue() {
+            return getXMLSignatureFactory();
+        }
+    };
 
     /**
      * By default, we include the keyinfo in the signature
@@ -308,7 +314,9 @@ public class XMLSignatureUtil {
     public static Document sign(Document doc, KeyPair keyPair, String digestMethod, String signatureMethod, String referenceURI,
                                 X509Certificate x509Certificate, String canonicalizationMethodType)
             throws GeneralSecurityException, MarshalException, XMLSignatureException {
-        logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        if (logger.isTraceEnabled()) {
+            logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        }
         PrivateKey signingKey = keyPair.getPrivate();
         PublicKey publicKey = keyPair.getPublic();
 
@@ -338,7 +346,9 @@ public class XMLSignatureUtil {
         String referenceURI = dto.getReferenceURI();
         String signatureMethod = dto.getSignatureMethod();
 
-        logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        if (logger.isTraceEnabled()) {
+            logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        }
 
         PrivateKey signingKey = keyPair.getPrivate();
         PublicKey publicKey = keyPair.getPublic();
@@ -379,7 +389,7 @@ public class XMLSignatureUtil {
 
         for (int i = 0; i < nl.getLength(); i++) {
             DOMValidateContext valContext = new DOMValidateContext(publicKey, nl.item(i));
-            XMLSignature signature = fac.unmarshalXMLSignature(valContext);
+            XMLSignature signature = xmlSignatureFactory.get().unmarshalXMLSignature(valContext);
 
             boolean coreValidity = signature.validate(valContext);
 
@@ -577,6 +587,7 @@ public class XMLSignatureUtil {
             throws GeneralSecurityException, MarshalException, XMLSignatureException {
         dsc.setDefaultNamespacePrefix("dsig");
 
+        XMLSignatureFactory fac = xmlSignatureFactory.get();
         DigestMethod digestMethodObj = fac.newDigestMethod(digestMethod, null);
         Transform transform1 = fac.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null);
         Transform transform2 = fac.newTransform("http://www.w3.org/2001/10/xml-exc-c14n#", (TransformParameterSpec) null);
@@ -604,7 +615,7 @@ public class XMLSignatureUtil {
     }
 
     private static KeyInfo createKeyInfo(PublicKey publicKey, X509Certificate x509Certificate) throws KeyException {
-        KeyInfoFactory keyInfoFactory = fac.getKeyInfoFactory();
+        KeyInfoFactory keyInfoFactory = xmlSignatureFactory.get().getKeyInfoFactory();
         KeyInfo keyInfo = null;
         KeyValue keyValue = null;
         //Just with public key
@@ -0,0 +1,134 @@
+package org.keycloak.saml.processing.api.saml.v2.response;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.keycloak.dom.saml.v2.protocol.ResponseType;
+import org.keycloak.saml.BaseSAML2BindingBuilder;
+import org.keycloak.saml.SAML2LoginResponseBuilder;
+import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
+import org.keycloak.saml.common.util.DocumentUtil;
+import org.keycloak.saml.processing.api.saml.v2.sig.SAML2Signature;
+import org.keycloak.saml.processing.web.util.PostBindingUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class SAML2ResponseTest {
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void testSignedDocumentValidates() throws Exception {
+        BaseSAML2BindingBuilder builder = new BaseSAML2BindingBuilder().signWith(keyPair).signDocument();
+        Document document = parse(builder.postBinding(response()).encoded());
+
+        Assert.assertTrue(new SAML2Signature().validate(document, keyPair.getPublic()));
+        Assert.assertFalse(new SAML2Signature().validate(parse(builder.postBinding(response()).encoded()), otherKeyPair.getPublic()));
+
+        // Changed after signing
+        Element nameId = (Element) document.getElementsByTagNameNS(JBossSAMLURIConstants.ASSERTION_NSURI.get(), "NameID").item(0);
+        nameId.setTextContent("admin");
+        Assert.assertFalse(new SAML2Signature().validate(document, keyPair.getPublic()));
+    }
+
+    @Test
+    public void testSignedAssertionAndDocumentValidate() throws Exception {
+        BaseSAML2BindingBuilder builder = new BaseSAML2BindingBuilder().signWith(keyPair).signDocument().signAssertions();
+        Document document = parse(builder.postBinding(response()).encoded());
+
+        Assert.assertTrue(new SAML2Signature().validate(document, keyPair.getPublic()));
+        Assert.assertEquals(2, document.getElementsByTagNameNS(JBossSAMLURIConstants.XMLDSIG_NSURI.get(), "Signature").getLength());
+    }
+
+    @Test
+    public void testUnsignedSameAsDocument() throws Exception {
+        ResponseType response = response();
+        String encoded = new BaseSAML2BindingBuilder().postBinding(response).encoded();
+
+        assertSameXml(new SAML2Response().convert(response).getDocumentElement(), parse(encoded).getDocumentElement());
+    }
+
+    @Test
+    public void testSameNamespacesAsParsedDocument() throws Exception {
+        ResponseType response = response();
+
+        // The previous path, serialized and parsed back
+        Document parsed = new SAML2Response().convert(response);
+        Document direct = new SAML2Response().convertToDocument(response);
+
+        assertSameXml(parsed.getDocumentElement(), direct.getDocumentElement());
+        Assert.assertEquals(DocumentUtil.asString(parsed), DocumentUtil.asString(direct));
+    }
+
+    private static ResponseType response() throws Exception {
+        return new SAML2LoginResponseBuilder()
+                .requestID("request-id")
+                .destination("http://localhost/sp")
+                .issuer("http://localhost/idp")
+                .assertionExpiration(300)
+                .subjectExpiration(300)
+                .requestIssuer("sp")
+                .nameIdentifier(JBossSAMLURIConstants.NAMEID_FORMAT_UNSPECIFIED.get(), "user")
+                .authMethod(JBossSAMLURIConstants.AC_UNSPECIFIED.get())
+                .sessionIndex("session-index")
+                .buildModel();
+    }
+
+    private static Document parse(String encoded) throws Exception {
+        return DocumentUtil.getDocument(new ByteArrayInputStream(PostBindingUtil.base64Decode(encoded)));
+    }
+
+    /**
+     * Same elements with the same namespace prefixes, attributes and namespace declarations
+     */
+    private static void assertSameXml(Element expected, Element actual) {
+        Assert.assertEquals(expected.getNamespaceURI(), actual.getNamespaceURI());
+        Assert.assertEquals(expected.getLocalName(), actual.getLocalName());
+        Assert.assertEquals(expected.getLocalName(), expected.getPrefix(), actual.getPrefix());
+        Assert.assertEquals(expected.getLocalName(), attributes(expected), attributes(actual));
+
+        Node expectedChild = expected.getFirstChild();
+        Node actualChild = actual.getFirstChild();
+        while (expectedChild != null && actualChild != null) {
+            Assert.assertEquals(expectedChild.getNodeType(), actualChild.getNodeType());
+            if (expectedChild.getNodeType() == Node.ELEMENT_NODE) {
+                assertSameXml((Element) expectedChild, (Element) actualChild);
+            } else {
+                Assert.assertEquals(expectedChild.getNodeValue(), actualChild.getNodeValue());
+            }
+            expectedChild = expectedChild.getNextSibling();
+            actualChild = actualChild.getNextSibling();
+        }
+        Assert.assertNull(expectedChild);
+        Assert.assertNull(actualChild);
+    }
+
+    private static Map<String, String> attributes(Element element) {
+        Map<String, String> attributes = new TreeMap<String, String>();
+        NamedNodeMap map = element.getAttributes();
+        for (int i = 0; i < map.getLength(); i++) {
+            Attr attr = (Attr) map.item(i);
+            attributes.put(attr.getName(), attr.getValue());
+        }
+        return attributes;
+    }
+
+}
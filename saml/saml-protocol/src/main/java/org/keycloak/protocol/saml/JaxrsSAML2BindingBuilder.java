@@ -1,5 +1,6 @@
 package org.keycloak.protocol.saml;
 
+import org.keycloak.dom.saml.v2.protocol.ResponseType;
 import org.keycloak.saml.BaseSAML2BindingBuilder;
 import org.keycloak.saml.common.exceptions.ConfigurationException;
 import org.keycloak.saml.common.exceptions.ProcessingException;
@@ -20,14 +21,17 @@ public class JaxrsSAML2BindingBuilder extends BaseSAML2BindingBuilder<JaxrsSAML2
         public PostBindingBuilder(JaxrsSAML2BindingBuilder builder, Document document) throws ProcessingException {
             super(builder, document);
         }
+        public PostBindingBuilder(JaxrsSAML2BindingBuilder builder, ResponseType response) throws ProcessingException {
+            super(builder, response);
+        }
         public Response request(String actionUrl) throws ConfigurationException, ProcessingException, IOException {
-            return buildResponse(document, actionUrl, true);
+            return buildResponse(actionUrl, true);
         }
         public Response response(String actionUrl) throws ConfigurationException, ProcessingException, IOException {
-            return buildResponse(document, actionUrl, false);
+            return buildResponse(actionUrl, false);
         }
-        protected Response buildResponse(Document responseDoc, String actionUrl, boolean asRequest) throws ProcessingException, ConfigurationException, IOException {
-            String str = builder.buildHtmlPostResponse(responseDoc, actionUrl, asRequest);
+        protected Response buildResponse(String actionUrl, boolean asRequest) throws ProcessingException, ConfigurationException, IOException {
+            String str = builder.buildHtml(encoded(), actionUrl, asRequest);
 
             return Response.ok(str, MediaType.TEXT_HTML_TYPE)
                     .header("Pragma", "no-cache")
@@ -70,6 +74,10 @@ public class JaxrsSAML2BindingBuilder extends BaseSAML2BindingBuilder<JaxrsSAML2
         return new PostBindingBuilder(this, document);
     }
 
+    public PostBindingBuilder postBinding(ResponseType response) throws ProcessingException  {
+        return new PostBindingBuilder(this, response);
+    }
+
 
 
 
@@ -331,13 +331,12 @@ public class SamlProtocol implements LoginProtocol {
         }
 
 
-        Document samlDocument = null;
+        ResponseType samlModel = null;
         try {
-            ResponseType samlModel = builder.buildModel();
+            samlModel = builder.buildModel();
             transformAttributeStatement(attributeStatementMappers, samlModel, session, userSession, clientSession);
             populateRoles(roleListMapper, samlModel, session, userSession, clientSession);
             samlModel = transformLoginResponse(loginResponseMappers, samlModel, session, userSession, clientSession);
-            samlDocument = builder.buildDocument(samlModel);
         } catch (Exception e) {
             logger.error("failed", e);
             return ErrorPage.error(session, Messages.FAILED_TO_PROCESS_RESPONSE);
@@ -376,9 +375,9 @@ public class SamlProtocol implements LoginProtocol {
         }
         try {
             if (isPostBinding(clientSession)) {
-                return bindingBuilder.postBinding(samlDocument).response(redirectUri);
+                return bindingBuilder.postBinding(samlModel).response(redirectUri);
             } else {
-                return bindingBuilder.redirectBinding(samlDocument).response(redirectUri);
+                return bindingBuilder.redirectBinding(builder.buildDocument(samlModel)).response(redirectUri);
             }
         } catch (Exception e) {
             logger.error("failed", e);
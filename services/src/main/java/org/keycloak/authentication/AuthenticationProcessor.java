@@ -494,7 +494,7 @@ public class AuthenticationProcessor {
             if (username == null) {
 
             } else {
-                protector.failedLogin(realm, username, connection);
+                protector.failedLogin(session, realm, username, connection);
 
             }
         }
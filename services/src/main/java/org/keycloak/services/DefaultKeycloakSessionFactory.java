@@ -141,6 +141,13 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
     }
 
     public void close() {
+        publish(new PreCloseEvent() {
+            @Override
+            public KeycloakSessionFactory getFactory() {
+                return DefaultKeycloakSessionFactory.this;
+            }
+        });
+
         for (Map<String, ProviderFactory> factories : factoriesMap.values()) {
             for (ProviderFactory factory : factories.values()) {
                 factory.close();
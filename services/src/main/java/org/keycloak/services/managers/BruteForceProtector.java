@@ -3,6 +3,7 @@ package org.keycloak.services.managers;
 
 import org.jboss.logging.Logger;
 import org.keycloak.ClientConnection;
+import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
@@ -10,202 +11,518 @@ import org.keycloak.models.UsernameLoginFailureModel;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * A single thread will log failures.  This is so that we can avoid concurrent writes as we want an accurate failure count
+ * Login failures are counted in memory, so the wait time of a user is known as soon as the failed login is reported.
+ * The counters are written to the {@link UsernameLoginFailureModel} in background. Usernames are split into partitions,
+ * each has its own thread, which writes the changed counters of its usernames in batches. A username is queued at most
+ * once until its counters are written, so failures of the same username are written together. Usernames that don't fit
+ * in the queue are written once the thread is done with it.
+ *
+ * The counters of a username are read from the {@link UsernameLoginFailureModel} when the username is first seen. The
+ * count of usernames kept in memory is limited, the least recently failed ones are written and evicted first.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class BruteForceProtector implements Runnable {
+public class BruteForceProtector {
     protected static Logger logger = Logger.getLogger(BruteForceProtector.class);
 
-    protected volatile boolean run = true;
     protected int maxDeltaTimeSeconds = 60 * 60 * 12; // 12 hours
     protected KeycloakSessionFactory factory;
-    protected CountDownLatch shutdownLatch = new CountDownLatch(1);
 
     protected volatile long failures;
     protected volatile long lastFailure;
     protected volatile long totalTime;
 
-    protected LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
     public static final int TRANSACTION_SIZE = 20;
 
+    // How often pending failures are queued again and expired ones removed, even if the queues are never empty
+    protected static final long MAINTENANCE_INTERVAL = 2000;
+
+    protected final Partition[] partitions;
+    protected final int queueSize;
+    protected final int maxEntries;
+    protected final AtomicLong rejected = new AtomicLong();
+    protected final AtomicLong persisted = new AtomicLong();
+    protected CountDownLatch shutdownLatch;
 
-    protected abstract class LoginEvent implements Comparable<LoginEvent> {
+    /**
+     * Failures of single username, updated without locking. State is only replaced, never modified.
+     */
+    protected static class LoginFailures {
         protected final String realmId;
         protected final String username;
-        protected final String ip;
+        protected final AtomicReference<FailureState> state;
+        protected final AtomicBoolean queued = new AtomicBoolean();
 
-        protected LoginEvent(String realmId, String username, String ip) {
+        protected LoginFailures(String realmId, String username, FailureState initial) {
             this.realmId = realmId;
             this.username = username;
-            this.ip = ip;
+            this.state = new AtomicReference<FailureState>(initial);
         }
 
-        @Override
-        public int compareTo(LoginEvent o) {
-            return username.compareTo(o.username);
+        protected FailureState failure(RealmModel realm, String ip, long currentTime) {
+            while (true) {
+                FailureState current = state.get();
+                FailureState updated = current.failure(realm, ip, currentTime);
+                if (state.compareAndSet(current, updated)) {
+                    return updated;
+                }
+            }
         }
-    }
 
-    protected class SuccessfulLogin extends LoginEvent {
-        public SuccessfulLogin(String realmId, String userId, String ip) {
-            super(realmId, userId, ip);
+        /**
+         * @return state with failures, which weren't written yet. These are marked as written
+         */
+        protected FailureState takeUnwritten() {
+            while (true) {
+                FailureState current = state.get();
+                if (current.unwritten == 0 && !current.cleared) {
+                    return current;
+                }
+                if (state.compareAndSet(current, current.written())) {
+                    return current;
+                }
+            }
         }
-    }
 
-    protected class ShutdownEvent extends LoginEvent {
-        public ShutdownEvent() {
-            super(null, null, null);
+        /**
+         * Marks failures again as not written, after writing them failed
+         */
+        protected void writeFailed(FailureState taken) {
+            while (true) {
+                FailureState current = state.get();
+                if (state.compareAndSet(current, current.unwritten(taken))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Adds failures of the username written by other cluster nodes
+         */
+        protected void written(UsernameLoginFailureModel model) {
+            while (true) {
+                FailureState current = state.get();
+                if (current.cleared || current.numFailures - current.unwritten >= model.getNumFailures()
+                        && current.notBefore >= model.getFailedLoginNotBefore()) {
+                    return;
+                }
+                if (state.compareAndSet(current, current.merge(model))) {
+                    return;
+                }
+            }
         }
-    }
 
-    protected class FailedLogin extends LoginEvent {
-        protected final CountDownLatch latch = new CountDownLatch(1);
+        protected boolean hasUnwritten() {
+            FailureState current = state.get();
+            return current.unwritten > 0 || current.cleared;
+        }
 
-        public FailedLogin(String realmId, String username, String ip) {
-            super(realmId, username, ip);
+        protected boolean isExpired(long currentTime) {
+            FailureState current = state.get();
+            return current.lastFailure > 0 && current.unwritten == 0 && !current.cleared && !queued.get()
+                    && currentTime - current.lastFailure > current.maxDeltaTime
+                    && currentTime / 1000 >= current.notBefore;
         }
     }
 
-    public BruteForceProtector(KeycloakSessionFactory factory) {
-        this.factory = factory;
+    protected static class FailureState {
+        protected static final FailureState EMPTY = new FailureState(0, 0, null, 0, 0, false, 0);
+
+        protected final int numFailures;
+        protected final long lastFailure;
+        protected final String lastIPFailure;
+        protected final int notBefore;
+
+        // Failures since the state was written and whether the failures were cleared before them
+        protected final int unwritten;
+        protected final boolean cleared;
+
+        protected final long maxDeltaTime;
+
+        protected FailureState(int numFailures, long lastFailure, String lastIPFailure, int notBefore, int unwritten, boolean cleared, long maxDeltaTime) {
+            this.numFailures = numFailures;
+            this.lastFailure = lastFailure;
+            this.lastIPFailure = lastIPFailure;
+            this.notBefore = notBefore;
+            this.unwritten = unwritten;
+            this.cleared = cleared;
+            this.maxDeltaTime = maxDeltaTime;
+        }
+
+        /**
+         * @return state with the failures written to the model, by this or other cluster nodes
+         */
+        protected static FailureState stored(RealmModel realm, UsernameLoginFailureModel model) {
+            if (model == null) {
+                return EMPTY;
+            }
+            return new FailureState(model.getNumFailures(), model.getLastFailure(), model.getLastIPFailure(), model.getFailedLoginNotBefore(),
+                    0, false, (long) realm.getMaxDeltaTimeSeconds() * 1000L);
+        }
+
+        protected FailureState failure(RealmModel realm, String ip, long currentTime) {
+            int numFailures = this.numFailures;
+            int notBefore = this.notBefore;
+            int unwritten = this.unwritten;
+            boolean cleared = this.cleared;
+
+            long last = lastFailure;
+            long deltaTime = 0;
+            if (last > 0) {
+                deltaTime = currentTime - last;
+            }
+            if (deltaTime > 0) {
+                // if last failure was more than MAX_DELTA clear failures
+                if (deltaTime > (long)realm.getMaxDeltaTimeSeconds() *1000L) {
+                    numFailures = 0;
+                    notBefore = 0;
+                    unwritten = 0;
+                    cleared = true;
+                }
+            }
+            numFailures++;
+            unwritten++;
+
+            int waitSeconds = realm.getWaitIncrementSeconds() * (numFailures / realm.getFailureFactor());
+            if (waitSeconds == 0) {
+                if (last > 0 && deltaTime < realm.getQuickLoginCheckMilliSeconds()) {
+                    waitSeconds = realm.getMinimumQuickLoginWaitSeconds();
+                }
+            }
+            if (waitSeconds > 0) {
+                waitSeconds = Math.min(realm.getMaxFailureWaitSeconds(), waitSeconds);
+                notBefore = (int) (currentTime / 1000) + waitSeconds;
+            }
+
+            return new FailureState(numFailures, currentTime, ip, notBefore, unwritten, cleared, (long) realm.getMaxDeltaTimeSeconds() * 1000L);
+        }
+
+        protected FailureState written() {
+            return new FailureState(numFailures, lastFailure, lastIPFailure, notBefore, 0, false, maxDeltaTime);
+        }
+
+        protected FailureState unwritten(FailureState taken) {
+            if (cleared) {
+                // Failures were cleared since, so the taken ones aren't needed anymore
+                return this;
+            }
+            return new FailureState(numFailures, lastFailure, lastIPFailure, notBefore, unwritten + taken.unwritten, taken.cleared, maxDeltaTime);
+        }
+
+        protected FailureState merge(UsernameLoginFailureModel model) {
+            return new FailureState(Math.max(numFailures, model.getNumFailures() + unwritten), lastFailure, lastIPFailure,
+                    Math.max(notBefore, model.getFailedLoginNotBefore()), unwritten, cleared, maxDeltaTime);
+        }
     }
 
-    public void failure(KeycloakSession session, LoginEvent event) {
-        logger.debug("failure");
-        RealmModel realm = getRealmModel(session, event);
-        logFailure(event);
-        UsernameLoginFailureModel user = getUserModel(session, event);
-        if (user == null) {
-            user = session.sessions().addUserLoginFailure(realm, event.username);
+    protected class Partition implements Runnable {
+        protected final ConcurrentHashMap<String, LoginFailures> entries = new ConcurrentHashMap<String, LoginFailures>();
+        protected final BlockingQueue<LoginFailures> queue;
+
+        // Usernames that didn't fit in the queue. Holds each username at most once, like the queue
+        protected final Queue<LoginFailures> overflow = new ConcurrentLinkedQueue<LoginFailures>();
+
+        protected final int index;
+        protected final int maxEntries;
+        protected volatile boolean run = true;
+
+        protected Partition(int index, int queueSize, int maxEntries) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<LoginFailures>(queueSize);
+            this.maxEntries = maxEntries;
         }
-        user.setLastIPFailure(event.ip);
-        long currentTime = System.currentTimeMillis();
-        long last = user.getLastFailure();
-        long deltaTime = 0;
-        if (last > 0) {
-            deltaTime = currentTime - last;
-        }
-        user.setLastFailure(currentTime);
-        if (deltaTime > 0) {
-            // if last failure was more than MAX_DELTA clear failures
-            if (deltaTime > (long)realm.getMaxDeltaTimeSeconds() *1000L) {
+
+        protected LoginFailures getFailures(String realmId, String username) {
+            return entries.get(realmId + "/" + username);
+        }
+
+        /**
+         * @param stored failures of the username written to the model, used if the username isn't known yet
+         */
+        protected LoginFailures getFailures(RealmModel realm, String username, UsernameLoginFailureModel stored) {
+            String key = realm.getId() + "/" + username;
+            LoginFailures loginFailures = entries.get(key);
+            if (loginFailures == null) {
+                loginFailures = new LoginFailures(realm.getId(), username, FailureState.stored(realm, stored));
+                LoginFailures existing = entries.putIfAbsent(key, loginFailures);
+                if (existing != null) {
+                    loginFailures = existing;
+                }
+            }
+            return loginFailures;
+        }
+
+        protected void queue(LoginFailures loginFailures) {
+            if (loginFailures.queued.compareAndSet(false, true)) {
+                if (!queue.offer(loginFailures)) {
+                    overflow.add(loginFailures);
+                    rejected.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<LoginFailures> batch = new ArrayList<LoginFailures>(TRANSACTION_SIZE);
+            long lastMaintenance = System.currentTimeMillis();
+            try {
+                while (run) {
+                    try {
+                        LoginFailures take = overflow.poll();
+                        if (take == null) {
+                            take = queue.poll(2, TimeUnit.SECONDS);
+                        }
+
+                        if (take != null) {
+                            batch.add(take);
+                            drainTo(batch, TRANSACTION_SIZE);
+                            write(batch);
+                            batch.clear();
+                        }
+
+                        if (entries.size() > maxEntries) {
+                            evict();
+                        }
+
+                        long currentTime = System.currentTimeMillis();
+                        if (take == null || currentTime - lastMaintenance > MAINTENANCE_INTERVAL) {
+                            maintain(currentTime);
+                            lastMaintenance = currentTime;
+                        }
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            } finally {
+                // Write what's left, so failures aren't lost on shutdown
+                batch.clear();
+                while (drainTo(batch, TRANSACTION_SIZE) > 0) {
+                    write(batch);
+                    batch.clear();
+                }
+                shutdownLatch.countDown();
+            }
+        }
+
+        /**
+         * Adds queued usernames to the batch, first from the queue, then the ones that didn't fit in it
+         *
+         * @return count of usernames added
+         */
+        protected int drainTo(List<LoginFailures> batch, int maxSize) {
+            int added = queue.drainTo(batch, maxSize - batch.size());
+            LoginFailures next;
+            while (batch.size() < maxSize && (next = overflow.poll()) != null) {
+                batch.add(next);
+                added++;
+            }
+            return added;
+        }
+
+        protected void write(List<LoginFailures> batch) {
+            List<FailureState> taken = new ArrayList<FailureState>(batch.size());
+            for (LoginFailures loginFailures : batch) {
+                // New failures reported from now on queue the username again
+                loginFailures.queued.set(false);
+                taken.add(loginFailures.takeUnwritten());
+            }
+
+            List<UsernameLoginFailureModel> models = new ArrayList<UsernameLoginFailureModel>(batch.size());
+            KeycloakSession session = factory.create();
+            session.getTransaction().begin();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    models.add(write(session, batch.get(i), taken.get(i)));
+                }
+                session.getTransaction().commit();
+                persisted.addAndGet(batch.size());
+
+                for (int i = 0; i < batch.size(); i++) {
+                    if (models.get(i) != null) {
+                        batch.get(i).written(models.get(i));
+                    }
+                }
+            } catch (Exception e) {
+                session.getTransaction().rollback();
+                logger.error("Failed writing login failures", e);
+
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).writeFailed(taken.get(i));
+                }
+            } finally {
+                session.close();
+            }
+        }
+
+        protected UsernameLoginFailureModel write(KeycloakSession session, LoginFailures loginFailures, FailureState state) {
+            RealmModel realm = session.realms().getRealm(loginFailures.realmId);
+            if (realm == null) return null;
+
+            UsernameLoginFailureModel user = session.sessions().getUserLoginFailure(realm, loginFailures.username);
+            if (user == null) {
+                if (state.unwritten == 0) return null;
+                user = session.sessions().addUserLoginFailure(realm, loginFailures.username);
+            }
+
+            // Failures from before this node counted any are too old to be counted in
+            boolean expired = state.numFailures <= state.unwritten && user.getLastFailure() > 0
+                    && state.lastFailure - user.getLastFailure() > (long) realm.getMaxDeltaTimeSeconds() * 1000L;
+            if (state.cleared || expired) {
                 user.clearFailures();
             }
+            for (int i = 0; i < state.unwritten; i++) {
+                user.incrementFailures();
+            }
+            if (state.lastFailure > user.getLastFailure()) {
+                user.setLastFailure(state.lastFailure);
+                user.setLastIPFailure(state.lastIPFailure);
+            }
+            if (state.notBefore > user.getFailedLoginNotBefore()) {
+                logger.debugv("set notBefore: {0}", state.notBefore);
+                user.setFailedLoginNotBefore(state.notBefore);
+            }
+            return user;
+        }
+
+        /**
+         * Removes expired usernames and queues again the ones, whose failures couldn't be written
+         */
+        protected void maintain(long currentTime) {
+            Iterator<LoginFailures> itr = entries.values().iterator();
+            while (itr.hasNext()) {
+                LoginFailures loginFailures = itr.next();
+                if (loginFailures.isExpired(currentTime)) {
+                    itr.remove();
+                } else if (loginFailures.hasUnwritten()) {
+                    queue(loginFailures);
+                }
+            }
         }
-        user.incrementFailures();
-        logger.debugv("new num failures: {0}" , user.getNumFailures());
 
-        int waitSeconds = realm.getWaitIncrementSeconds() * (user.getNumFailures() / realm.getFailureFactor());
-        logger.debugv("waitSeconds: {0}", waitSeconds);
-        logger.debugv("deltaTime: {0}", deltaTime);
-        if (waitSeconds == 0) {
-            if (last > 0 && deltaTime < realm.getQuickLoginCheckMilliSeconds()) {
-                logger.debugv("quick login, set min wait seconds");
-                waitSeconds = realm.getMinimumQuickLoginWaitSeconds();
+        /**
+         * Writes the failures of the least recently failed usernames above the limit and removes them
+         */
+        protected void evict() {
+            int excess = entries.size() - maxEntries;
+            if (excess <= 0) return;
+
+            // Failure times are copied, as they may change while sorting
+            List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>(entries.size());
+            for (Map.Entry<String, LoginFailures> entry : entries.entrySet()) {
+                if (!entry.getValue().queued.get()) {
+                    candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+                }
+            }
+            Collections.sort(candidates);
+            if (candidates.size() > excess) {
+                candidates = candidates.subList(0, excess);
+            }
+
+            List<LoginFailures> flush = new ArrayList<LoginFailures>();
+            for (EvictionCandidate candidate : candidates) {
+                if (candidate.loginFailures.hasUnwritten()) {
+                    flush.add(candidate.loginFailures);
+                }
+            }
+            for (int i = 0; i < flush.size(); i += TRANSACTION_SIZE) {
+                write(flush.subList(i, Math.min(i + TRANSACTION_SIZE, flush.size())));
+            }
+
+            for (EvictionCandidate candidate : candidates) {
+                // Kept if writing failed or the username failed again in the meantime
+                if (!candidate.loginFailures.hasUnwritten() && !candidate.loginFailures.queued.get()) {
+                    entries.remove(candidate.key, candidate.loginFailures);
+                }
             }
         }
-        if (waitSeconds > 0) {
-            waitSeconds = Math.min(realm.getMaxFailureWaitSeconds(), waitSeconds);
-            int notBefore = (int) (currentTime / 1000) + waitSeconds;
-            logger.debugv("set notBefore: {0}", notBefore);
-            user.setFailedLoginNotBefore(notBefore);
+    }
+
+    protected static class EvictionCandidate implements Comparable<EvictionCandidate> {
+        protected final String key;
+        protected final LoginFailures loginFailures;
+        protected final long lastFailure;
+
+        protected EvictionCandidate(String key, LoginFailures loginFailures) {
+            this.key = key;
+            this.loginFailures = loginFailures;
+            this.lastFailure = loginFailures.state.get().lastFailure;
+        }
+
+        @Override
+        public int compareTo(EvictionCandidate o) {
+            return lastFailure < o.lastFailure ? -1 : (lastFailure == o.lastFailure ? 0 : 1);
         }
     }
 
-    protected UsernameLoginFailureModel getUserModel(KeycloakSession session, LoginEvent event) {
-        RealmModel realm = getRealmModel(session, event);
-        if (realm == null) return null;
-        UsernameLoginFailureModel user = session.sessions().getUserLoginFailure(realm, event.username);
-        if (user == null) return null;
-        return user;
+    public BruteForceProtector(KeycloakSessionFactory factory) {
+        this(factory, Config.scope("bruteForceProtector").getInt("partitions", 4), Config.scope("bruteForceProtector").getInt("queueSize", 10000),
+                Config.scope("bruteForceProtector").getInt("maxEntries", 100000));
     }
 
-    protected RealmModel getRealmModel(KeycloakSession session, LoginEvent event) {
-        RealmModel realm = session.realms().getRealm(event.realmId);
-        if (realm == null) return null;
-        return realm;
+    /**
+     * @param maxEntries count of usernames kept in memory, split between the partitions
+     */
+    public BruteForceProtector(KeycloakSessionFactory factory, int partitions, int queueSize, int maxEntries) {
+        this.factory = factory;
+        this.queueSize = queueSize;
+        this.maxEntries = maxEntries;
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(i, queueSize, Math.max(1, maxEntries / partitions));
+        }
+    }
+
+    protected Partition getPartition(String realmId, String username) {
+        int hash = (realmId + "/" + username).hashCode();
+        return partitions[(hash & Integer.MAX_VALUE) % partitions.length];
     }
 
     public void start() {
-        new Thread(this, "Brute Force Protector").start();
+        shutdownLatch = new CountDownLatch(partitions.length);
+        for (Partition partition : partitions) {
+            new Thread(partition, "Brute Force Protector " + partition.index).start();
+        }
     }
 
     public void shutdown() {
-        run = false;
+        if (shutdownLatch == null) return;
+        for (Partition partition : partitions) {
+            partition.run = false;
+        }
         try {
-            queue.offer(new ShutdownEvent());
             shutdownLatch.await(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-
-    public void run() {
-        final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
-        try {
-            while (run) {
-                try {
-                    LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
-                    if (take == null) {
-                        continue;
-                    }
-                    try {
-                        events.add(take);
-                        queue.drainTo(events, TRANSACTION_SIZE);
-                        Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
-                        KeycloakSession session = factory.create();
-                        session.getTransaction().begin();
-                        try {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    failure(session, event);
-                                } else if (event instanceof ShutdownEvent) {
-                                    run = false;
-                                }
-                            }
-                            session.getTransaction().commit();
-                        } catch (Exception e) {
-                            session.getTransaction().rollback();
-                            throw e;
-                        } finally {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    ((FailedLogin) event).latch.countDown();
-                                }
-                            }
-                            events.clear();
-                            session.close();
-                        }
-                    } catch (Exception e) {
-                        logger.error("Failed processing type", e);
-                    }
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        } finally {
-            shutdownLatch.countDown();
-        }
-    }
-
-    protected void logSuccess(LoginEvent event) {
-        logger.warn("login success for user " + event.username + " from ip " + event.ip);
+    protected void logSuccess(String username, String ip) {
+        logger.warn("login success for user " + username + " from ip " + ip);
     }
 
-    protected void logFailure(LoginEvent event) {
-        logger.warn("login failure for user " + event.username + " from ip " + event.ip);
+    protected void logFailure(String username, String ip) {
+        logger.warn("login failure for user " + username + " from ip " + ip);
         failures++;
         long delta = 0;
+        long currentTime = System.currentTimeMillis();
         if (lastFailure > 0) {
-            delta = System.currentTimeMillis() - lastFailure;
+            delta = currentTime - lastFailure;
             if (delta > (long)maxDeltaTimeSeconds * 1000L) {
                 totalTime = 0;
 
@@ -213,6 +530,7 @@ public class BruteForceProtector implements Runnable {
                 totalTime += delta;
             }
         }
+        lastFailure = currentTime;
     }
 
     public void successfulLogin(RealmModel realm, String username, ClientConnection clientConnection) {
@@ -224,26 +542,37 @@ public class BruteForceProtector implements Runnable {
         // todo more?
     }
 
-    public void failedLogin(RealmModel realm, String username, ClientConnection clientConnection) {
-        try {
-            FailedLogin event = new FailedLogin(realm.getId(), username, clientConnection.getRemoteAddr());
-            queue.offer(event);
-            // wait a minimum of seconds for type to process so that a hacker
-            // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
-            // todo failure HTTP responses should be queued via async HTTP
-            event.latch.await(5, TimeUnit.SECONDS);
+    public void failedLogin(KeycloakSession session, RealmModel realm, String username, ClientConnection clientConnection) {
+        String ip = clientConnection.getRemoteAddr();
+        logFailure(username, ip);
 
-        } catch (InterruptedException e) {
+        Partition partition = getPartition(realm.getId(), username);
+        LoginFailures loginFailures = partition.getFailures(realm.getId(), username);
+        if (loginFailures == null) {
+            // Failures counted before this node saw the username, by other nodes or before a restart
+            loginFailures = partition.getFailures(realm, username, session.sessions().getUserLoginFailure(realm, username));
         }
+        FailureState state = loginFailures.failure(realm, ip, System.currentTimeMillis());
+        logger.debugv("new num failures: {0}, notBefore: {1}", state.numFailures, state.notBefore);
+
+        partition.queue(loginFailures);
     }
 
     public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, String username) {
+        int currTime = (int)(System.currentTimeMillis()/1000);
+
+        // Failures reported on this node, which may not be written yet
+        LoginFailures loginFailures = getPartition(realm.getId(), username).getFailures(realm.getId(), username);
+        if (loginFailures != null && currTime < loginFailures.state.get().notBefore) {
+            logger.debugv("Current: {0} notBefore: {1}", currTime , loginFailures.state.get().notBefore);
+            return true;
+        }
+
         UsernameLoginFailureModel failure = session.sessions().getUserLoginFailure(realm, username);
         if (failure == null) {
             return false;
         }
 
-        int currTime = (int)(System.currentTimeMillis()/1000);
         if (currTime < failure.getFailedLoginNotBefore()) {
             logger.debugv("Current: {0} notBefore: {1}", currTime , failure.getFailedLoginNotBefore());
             return true;
@@ -251,6 +580,34 @@ public class BruteForceProtector implements Runnable {
         return false;
     }
 
+    /**
+     * Forgets failures of the user counted in memory. Needs to be called when failures are cleared in the model.
+     */
+    public void clearFailures(RealmModel realm, String username) {
+        LoginFailures loginFailures = getPartition(realm.getId(), username).entries.remove(realm.getId() + "/" + username);
+        if (loginFailures != null) {
+            // Failures not written yet would be written otherwise
+            loginFailures.state.set(FailureState.EMPTY);
+        }
+    }
+
+    /**
+     * Forgets failures of all users of the realm counted in memory
+     */
+    public void clearAllFailures(RealmModel realm) {
+        String prefix = realm.getId() + "/";
+        for (Partition partition : partitions) {
+            Iterator<Map.Entry<String, LoginFailures>> itr = partition.entries.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<String, LoginFailures> entry = itr.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    entry.getValue().state.set(FailureState.EMPTY);
+                    itr.remove();
+                }
+            }
+        }
+    }
+
     public long getFailures() {
         return failures;
     }
@@ -259,5 +616,29 @@ public class BruteForceProtector implements Runnable {
         return lastFailure;
     }
 
+    /**
+     * @return count of usernames waiting until their failures are written
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Partition partition : partitions) {
+            queued += partition.queue.size() + partition.overflow.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return how many times failures didn't fit in the queue and were written after the queued ones
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return count of usernames, whose failures were written
+     */
+    public long getPersisted() {
+        return persisted.get();
+    }
 
 }
@@ -0,0 +1,61 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.Config;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+
+import java.util.List;
+
+/**
+ * Owns the {@link GlobalRequestExecutor} shared by all sessions, it's shut down when the server stops.
+ *
+ * Configured with <code>threads</code>, <code>queueSize</code>, <code>timeoutMillis</code> and <code>retries</code>.
+ */
+public class DefaultGlobalRequestProviderFactory implements GlobalRequestProviderFactory {
+
+    private GlobalRequestExecutor executor;
+
+    @Override
+    public GlobalRequestProvider create(final KeycloakSession session) {
+        return new GlobalRequestProvider() {
+            @Override
+            public GlobalRequestExecutor.Task execute(RealmModel realm, List<GlobalRequestExecutor.Request> requests) {
+                return executor.execute(realm.getId(), session.getProvider(HttpClientProvider.class).getHttpClient(), requests);
+            }
+
+            @Override
+            public GlobalRequestExecutor.Task getTask(String id) {
+                return executor.getTask(id);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        executor = new GlobalRequestExecutor(config.getInt("threads", 10), config.getInt("queueSize", 1000),
+                config.getInt("timeoutMillis", 10000), config.getInt("retries", 1));
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String getId() {
+        return "default";
+    }
+
+}
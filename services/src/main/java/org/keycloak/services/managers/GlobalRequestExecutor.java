@@ -0,0 +1,351 @@
+package org.keycloak.services.managers;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.EntityBuilder;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.jboss.logging.Logger;
+import org.keycloak.TokenIdGenerator;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.representations.adapters.action.AdminAction;
+import org.keycloak.representations.adapters.action.GlobalRequestResult;
+import org.keycloak.util.Time;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.PrivateKey;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends admin requests (like push notBefore or logout) to the management URLs of clients and their cluster nodes in
+ * parallel. Each request is sent with a timeout and retried if it fails with I/O error. The admin action is signed right
+ * before each attempt, so it doesn't expire while the request waits. The results are collected into
+ * {@link GlobalRequestResult} as the responses arrive. Started requests are kept for a while, so that their progress can
+ * be checked by id.
+ *
+ * At most <code>queueSize</code> requests wait for a thread. Once the queue is full, the other requests are kept as
+ * pending, in the order they were started, and are queued as the sent requests complete. Requests not sent before the
+ * executor is shut down are reported as failed.
+ *
+ * Managed by {@link DefaultGlobalRequestProviderFactory}.
+ */
+public class GlobalRequestExecutor {
+
+    protected static final Logger logger = Logger.getLogger(GlobalRequestExecutor.class);
+
+    // Finished tasks are kept for this long, so their result can be checked
+    private static final long FINISHED_TASK_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    // How long shutdown waits for the requests being sent
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    // Seconds a signed admin action is valid
+    private static final int ADMIN_ACTION_LIFESPAN = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final int timeout;
+    private final int retries;
+    private final ConcurrentHashMap<String, Task> tasks = new ConcurrentHashMap<String, Task>();
+
+    // Requests waiting for space in the executor queue
+    private final LinkedBlockingDeque<SendRequest> pending = new LinkedBlockingDeque<SendRequest>();
+
+    public GlobalRequestExecutor(int threads, int queueSize, int timeout, int retries) {
+        this.timeout = timeout;
+        this.retries = retries;
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-global-request-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Admin request to single management URL
+     */
+    public static class Request {
+        private final String managementUrl;
+        private final String target;
+        private final AdminAction action;
+        private final PrivateKey signingKey;
+        private final String description;
+
+        /**
+         * @param managementUrl reported in the result
+         * @param target URL to post the signed action to
+         * @param action admin action, its id and expiration are set when it's signed
+         * @param signingKey private key of the realm
+         * @param description used in log messages
+         */
+        public Request(String managementUrl, String target, AdminAction action, PrivateKey signingKey, String description) {
+            this.managementUrl = managementUrl;
+            this.target = target;
+            this.action = action;
+            this.signingKey = signingKey;
+            this.description = description;
+        }
+
+        private String sign() {
+            action.setId(TokenIdGenerator.generateId());
+            action.setExpiration(Time.currentTime() + ADMIN_ACTION_LIFESPAN);
+            return new JWSBuilder().jsonContent(action).rsa256(signingKey);
+        }
+    }
+
+    /**
+     * Progress and result of the requests started together
+     */
+    public static class Task {
+        private final String id;
+        private final String realmId;
+        private final int total;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final GlobalRequestResult result = new GlobalRequestResult();
+        private final CountDownLatch latch;
+        private volatile long finishedTime;
+
+        private Task(String realmId, int total) {
+            this.id = KeycloakModelUtils.generateId();
+            this.realmId = realmId;
+            this.total = total;
+            this.latch = new CountDownLatch(total);
+            if (total == 0) {
+                finishedTime = System.currentTimeMillis();
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRealmId() {
+            return realmId;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public boolean isFinished() {
+            return latch.getCount() == 0;
+        }
+
+        /**
+         * @return copy of results of the requests completed so far
+         */
+        public GlobalRequestResult getResult() {
+            GlobalRequestResult copy = new GlobalRequestResult();
+            synchronized (result) {
+                copy.addAll(result);
+            }
+            return copy;
+        }
+
+        /**
+         * Waits until all requests are completed
+         */
+        public GlobalRequestResult awaitResult() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getResult();
+        }
+
+        public Map<String, Object> getProgress() {
+            Map<String, Object> progress = new LinkedHashMap<String, Object>();
+            progress.put("id", id);
+            progress.put("total", total);
+            progress.put("completed", getCompleted());
+            progress.put("finished", isFinished());
+            progress.put("result", getResult());
+            return progress;
+        }
+
+        private void completed(String managementUrl, boolean success) {
+            synchronized (result) {
+                if (success) {
+                    result.addSuccessRequest(managementUrl);
+                } else {
+                    result.addFailedRequest(managementUrl);
+                }
+            }
+            if (completed.incrementAndGet() == total) {
+                finishedTime = System.currentTimeMillis();
+            }
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Starts sending the requests. Returns immediately, the requests are sent in background.
+     */
+    public Task execute(String realmId, final HttpClient httpClient, List<Request> requests) {
+        removeFinishedTasks();
+
+        final Task task = new Task(realmId, requests.size());
+        tasks.put(task.getId(), task);
+
+        for (Request request : requests) {
+            pending.offerLast(new SendRequest(httpClient, request, task));
+        }
+        submitPending();
+
+        return task;
+    }
+
+    /**
+     * Moves pending requests to the executor queue while there is space
+     */
+    private void submitPending() {
+        SendRequest send;
+        while ((send = pending.pollFirst()) != null) {
+            try {
+                executor.execute(send);
+            } catch (RejectedExecutionException e) {
+                if (executor.isShutdown()) {
+                    send.failed();
+                } else {
+                    pending.offerFirst(send);
+                    // Queued requests submit the pending ones once done, unless the queue emptied meanwhile
+                    if (executor.getQueue().remainingCapacity() == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits a while for the requests being sent, the ones still queued after that are reported as failed
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                for (Runnable r : executor.shutdownNow()) {
+                    ((SendRequest) r).failed();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Runnable r : executor.shutdownNow()) {
+                ((SendRequest) r).failed();
+            }
+            Thread.currentThread().interrupt();
+        }
+
+        SendRequest send;
+        while ((send = pending.pollFirst()) != null) {
+            send.failed();
+        }
+    }
+
+    private class SendRequest implements Runnable {
+        private final HttpClient httpClient;
+        private final Request request;
+        private final Task task;
+
+        private SendRequest(HttpClient httpClient, Request request, Task task) {
+            this.httpClient = httpClient;
+            this.request = request;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            boolean success = false;
+            try {
+                success = send(httpClient, request);
+            } finally {
+                task.completed(request.managementUrl, success);
+                submitPending();
+            }
+        }
+
+        private void failed() {
+            logger.warn(request.description + " not sent to uri '" + request.managementUrl + "', server is shutting down");
+            task.completed(request.managementUrl, false);
+        }
+    }
+
+    public Task getTask(String id) {
+        return tasks.get(id);
+    }
+
+    protected boolean send(HttpClient httpClient, Request request) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                int status = postText(httpClient, request);
+                boolean success = status == 204 || status == 200;
+                logger.debugf("%s success for %s: %s", request.description, request.managementUrl, success);
+                return success;
+            } catch (IOException e) {
+                if (attempt < retries) {
+                    logger.debugf(e, "%s failed for %s, retrying", request.description, request.managementUrl);
+                } else {
+                    logger.warn(request.description + " failed for uri '" + request.managementUrl + "'", e);
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                logger.warn(request.description + " failed for uri '" + request.managementUrl + "'", e);
+                return false;
+            }
+        }
+    }
+
+    protected int postText(HttpClient httpClient, Request request) throws IOException {
+        HttpPost post = new HttpPost(request.target);
+        post.setConfig(RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).setConnectionRequestTimeout(timeout).build());
+        post.setEntity(EntityBuilder.create().setText(request.sign()).setContentType(ContentType.TEXT_PLAIN).build());
+        HttpResponse response = httpClient.execute(post);
+        try {
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                InputStream is = entity.getContent();
+                if (is != null) is.close();
+            }
+        }
+    }
+
+    private void removeFinishedTasks() {
+        long expired = System.currentTimeMillis() - FINISHED_TASK_TIMEOUT;
+        Iterator<Task> itr = tasks.values().iterator();
+        while (itr.hasNext()) {
+            Task task = itr.next();
+            if (task.isFinished() && task.finishedTime < expired) {
+                itr.remove();
+            }
+        }
+    }
+
+}
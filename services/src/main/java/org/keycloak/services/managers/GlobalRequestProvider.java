@@ -0,0 +1,23 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.Provider;
+
+import java.util.List;
+
+/**
+ * Sends admin requests with the HTTP client of the session in background
+ */
+public interface GlobalRequestProvider extends Provider {
+
+    /**
+     * Starts sending the requests. Returns immediately, the requests are sent in background.
+     */
+    GlobalRequestExecutor.Task execute(RealmModel realm, List<GlobalRequestExecutor.Request> requests);
+
+    /**
+     * @return task started on this node, or <code>null</code> if it's not known or finished long ago
+     */
+    GlobalRequestExecutor.Task getTask(String id);
+
+}
@@ -0,0 +1,7 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.provider.ProviderFactory;
+
+public interface GlobalRequestProviderFactory extends ProviderFactory<GlobalRequestProvider> {
+
+}
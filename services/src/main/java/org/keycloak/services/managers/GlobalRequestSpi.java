@@ -0,0 +1,32 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.provider.Spi;
+
+/**
+ * Sends admin requests to the management URLs of clients, see {@link GlobalRequestExecutor}
+ */
+public class GlobalRequestSpi implements Spi {
+
+    @Override
+    public boolean isInternal() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "globalRequests";
+    }
+
+    @Override
+    public Class<? extends Provider> getProviderClass() {
+        return GlobalRequestProvider.class;
+    }
+
+    @Override
+    public Class<? extends ProviderFactory> getProviderFactoryClass() {
+        return GlobalRequestProviderFactory.class;
+    }
+
+}
@@ -187,16 +187,22 @@ public class ResourceAdminManager {
     // Methods for logout all
 
     public GlobalRequestResult logoutAll(URI requestUri, RealmModel realm) {
+        return startLogoutAll(requestUri, realm).awaitResult();
+    }
+
+    /**
+     * Same as {@link #logoutAll(URI, RealmModel)}, but returns without waiting for the responses of the clients
+     */
+    public GlobalRequestExecutor.Task startLogoutAll(URI requestUri, RealmModel realm) {
         realm.setNotBefore(Time.currentTime());
         List<ClientModel> resources = realm.getClients();
         logger.debugv("logging out {0} resources ", resources.size());
 
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        List<GlobalRequestExecutor.Request> requests = new LinkedList<GlobalRequestExecutor.Request>();
         for (ClientModel resource : resources) {
-            GlobalRequestResult currentResult = logoutClient(requestUri, realm, resource, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            addLogoutClientRequests(requests, requestUri, realm, resource, realm.getNotBefore());
         }
-        return finalResult;
+        return execute(realm, requests);
     }
 
     public GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource) {
@@ -206,24 +212,26 @@ public class ResourceAdminManager {
 
 
     protected GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+        List<GlobalRequestExecutor.Request> requests = new LinkedList<GlobalRequestExecutor.Request>();
+        addLogoutClientRequests(requests, requestUri, realm, resource, notBefore);
+        return execute(realm, requests).awaitResult();
+    }
+
+    protected void addLogoutClientRequests(List<GlobalRequestExecutor.Request> requests, URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debug("No management URL or no registered cluster nodes for the client " + resource.getClientId());
-            return new GlobalRequestResult();
+            return;
         }
 
         if (logger.isDebugEnabled()) logger.debug("Send logoutClient for URLs: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendLogoutRequest(realm, resource, null, null, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            LogoutAction adminAction = new LogoutAction(null, 0, resource.getClientId(), null, notBefore, null);
+            URI target = UriBuilder.fromUri(mgmtUrl).path(AdapterConstants.K_LOGOUT).build();
+            requests.add(new GlobalRequestExecutor.Request(mgmtUrl, target.toString(), adminAction, realm.getPrivateKey(), "logout"));
         }
-        return result;
     }
 
     protected boolean sendLogoutRequest(RealmModel realm, ClientModel resource, List<String> adapterSessionIds, List<String> userSessions, int notBefore, String managementUrl) {
@@ -243,53 +251,41 @@ public class ResourceAdminManager {
     }
 
     public GlobalRequestResult pushRealmRevocationPolicy(URI requestUri, RealmModel realm) {
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        return startPushRealmRevocationPolicy(requestUri, realm).awaitResult();
+    }
+
+    /**
+     * Same as {@link #pushRealmRevocationPolicy(URI, RealmModel)}, but returns without waiting for the responses of the clients
+     */
+    public GlobalRequestExecutor.Task startPushRealmRevocationPolicy(URI requestUri, RealmModel realm) {
+        List<GlobalRequestExecutor.Request> requests = new LinkedList<GlobalRequestExecutor.Request>();
         for (ClientModel client : realm.getClients()) {
-            GlobalRequestResult currentResult = pushRevocationPolicy(requestUri, realm, client, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            addPushRevocationPolicyRequests(requests, requestUri, realm, client, realm.getNotBefore());
         }
-        return finalResult;
+        return execute(realm, requests);
     }
 
     public GlobalRequestResult pushClientRevocationPolicy(URI requestUri, RealmModel realm, ClientModel client) {
-        return pushRevocationPolicy(requestUri, realm, client, client.getNotBefore());
+        List<GlobalRequestExecutor.Request> requests = new LinkedList<GlobalRequestExecutor.Request>();
+        addPushRevocationPolicyRequests(requests, requestUri, realm, client, client.getNotBefore());
+        return execute(realm, requests).awaitResult();
     }
 
 
-    protected GlobalRequestResult pushRevocationPolicy(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+    protected void addPushRevocationPolicyRequests(List<GlobalRequestExecutor.Request> requests, URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debugf("No management URL or no registered cluster nodes for the client %s", resource.getClientId());
-            return new GlobalRequestResult();
+            return;
         }
 
         if (logger.isDebugEnabled()) logger.debug("Sending push revocation to URLS: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendPushRevocationPolicyRequest(realm, resource, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
-        }
-        return result;
-    }
-
-    protected boolean sendPushRevocationPolicyRequest(RealmModel realm, ClientModel resource, int notBefore, String managementUrl) {
-        PushNotBeforeAction adminAction = new PushNotBeforeAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, resource.getClientId(), notBefore);
-        String token = new TokenManager().encodeToken(realm, adminAction);
-        logger.debugv("pushRevocation resource: {0} url: {1}", resource.getClientId(), managementUrl);
-        URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_PUSH_NOT_BEFORE).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("pushRevocation success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.warn("Failed to send revocation request", e);
-            return false;
+            PushNotBeforeAction adminAction = new PushNotBeforeAction(null, 0, resource.getClientId(), notBefore);
+            URI target = UriBuilder.fromUri(mgmtUrl).path(AdapterConstants.K_PUSH_NOT_BEFORE).build();
+            requests.add(new GlobalRequestExecutor.Request(mgmtUrl, target.toString(), adminAction, realm.getPrivateKey(), "pushRevocation"));
         }
     }
 
@@ -304,31 +300,18 @@ public class ResourceAdminManager {
         if (logger.isDebugEnabled()) logger.debug("Sending test nodes availability: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
+        List<GlobalRequestExecutor.Request> requests = new LinkedList<GlobalRequestExecutor.Request>();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendTestNodeAvailabilityRequest(realm, client, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            TestAvailabilityAction adminAction = new TestAvailabilityAction(null, 0, client.getClientId());
+            URI target = UriBuilder.fromUri(mgmtUrl).path(AdapterConstants.K_TEST_AVAILABLE).build();
+            requests.add(new GlobalRequestExecutor.Request(mgmtUrl, target.toString(), adminAction, realm.getPrivateKey(), "testAvailability"));
         }
-        return result;
+        return execute(realm, requests).awaitResult();
     }
 
-    protected boolean sendTestNodeAvailabilityRequest(RealmModel realm, ClientModel client, String managementUrl) {
-        TestAvailabilityAction adminAction = new TestAvailabilityAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, client.getClientId());
-        String token = new TokenManager().encodeToken(realm, adminAction);
-        logger.debugv("testNodes availability resource: {0} url: {1}", client.getClientId(), managementUrl);
-        URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_TEST_AVAILABLE).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("testAvailability success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.warn("Availability test failed for uri '" + managementUrl + "'", e);
-            return false;
-        }
-   }
+    // Actions are signed with the realm key by the thread sending them, right before each attempt
+    protected GlobalRequestExecutor.Task execute(RealmModel realm, List<GlobalRequestExecutor.Request> requests) {
+        return session.getProvider(GlobalRequestProvider.class).execute(realm, requests);
+    }
 
 }
@@ -13,8 +13,16 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
 
 /**
  * Theme resource
@@ -26,9 +34,18 @@ public class ThemeResource {
 
     private static final Logger logger = Logger.getLogger(ThemeResource.class);
 
+    // Resources bigger than this are streamed instead of cached
+    private static final int MAX_CACHED_RESOURCE_SIZE = 1024 * 1024;
+
     @Context
     private KeycloakSession session;
 
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
     /**
      * Get theme content
      *
@@ -45,22 +62,103 @@ public class ThemeResource {
         }
 
         try {
-            ThemeProvider themeProvider = session.getProvider(ThemeProvider.class, "extending");
-            Theme theme = themeProvider.getTheme(themeName, Theme.Type.valueOf(themType.toUpperCase()));
-            InputStream resource = theme.getResourceAsStream(path);
-            if (resource != null) {
-                CacheControl cacheControl = new CacheControl();
-                cacheControl.setNoTransform(false);
-                cacheControl.setMaxAge(Config.scope("theme").getInt("staticMaxAge", -1));
-
-                return Response.ok(resource).type(MimeTypeUtil.getContentType(path)).cacheControl(cacheControl).build();
-            } else {
-                return Response.status(Response.Status.NOT_FOUND).build();
+            CacheControl cacheControl = new CacheControl();
+            cacheControl.setNoTransform(false);
+            cacheControl.setMaxAge(Config.scope("theme").getInt("staticMaxAge", -1));
+
+            ThemeResourceCache cache = CacheHolder.cache;
+            String key = themType.toLowerCase() + "/" + themeName + "/" + path;
+            ThemeResourceCache.CachedResource cached = cache != null ? cache.get(key) : null;
+
+            if (cached == null) {
+                ThemeProvider themeProvider = session.getProvider(ThemeProvider.class, "extending");
+                Theme theme = themeProvider.getTheme(themeName, Theme.Type.valueOf(themType.toUpperCase()));
+                InputStream resource = theme.getResourceAsStream(path);
+                if (resource == null) {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+
+                String contentType = MimeTypeUtil.getContentType(path);
+                if (cache == null) {
+                    return Response.ok(resource).type(contentType).cacheControl(cacheControl).build();
+                }
+
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                if (!read(resource, os, cache.getMaxResourceSize())) {
+                    // Too big to cache, stream what was read so far followed by the rest
+                    InputStream remaining = new SequenceInputStream(new ByteArrayInputStream(os.toByteArray()), resource);
+                    return Response.ok(remaining).type(contentType).cacheControl(cacheControl).build();
+                }
+                resource.close();
+
+                cached = cache.put(key, os.toByteArray(), contentType);
+            }
+
+            boolean gzip = cached.isCompressible() && acceptsGzip();
+            EntityTag etag = gzip ? cached.getGzipETag() : cached.getETag();
+
+            Response.ResponseBuilder builder = request.evaluatePreconditions(etag);
+            if (builder == null) {
+                builder = Response.ok(cached.getContent()).type(cached.getContentType());
+                if (gzip) {
+                    builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+            }
+            if (cached.isCompressible()) {
+                builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
             }
+            return builder.tag(etag).cacheControl(cacheControl).build();
         } catch (Exception e) {
             logger.warn("Failed to get theme resource", e);
             return Response.serverError().build();
         }
     }
 
+    private boolean acceptsGzip() {
+        List<String> acceptEncoding = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null) {
+            for (String value : acceptEncoding) {
+                for (String encoding : value.split(",")) {
+                    String[] params = encoding.trim().split(";");
+                    if (params[0].trim().equalsIgnoreCase("gzip")) {
+                        return params.length == 1 || !params[1].replace(" ", "").matches("q=0(\\.0*)?");
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the whole stream was read, false if it's bigger than maxSize
+     */
+    private static boolean read(InputStream is, ByteArrayOutputStream os, int maxSize) throws IOException {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+            if (os.size() > maxSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CacheHolder {
+
+        // Resources of folder themes can change while the server is running, so they're cached only if themes are
+        private static final ThemeResourceCache cache;
+
+        static {
+            Config.Scope config = Config.scope("theme");
+            if (config.getBoolean("cacheThemes", true)) {
+                long maxSize = config.getLong("staticCacheSize", 10L * 1024 * 1024);
+                cache = new ThemeResourceCache(maxSize, (int) Math.min(maxSize, MAX_CACHED_RESOURCE_SIZE));
+            } else {
+                cache = null;
+            }
+        }
+
+    }
+
 }
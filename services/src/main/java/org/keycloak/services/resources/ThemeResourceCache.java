@@ -0,0 +1,110 @@
+package org.keycloak.services.resources;
+
+import org.keycloak.util.Base64Url;
+
+import javax.ws.rs.core.EntityTag;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of theme resources. When the total size of cached resources exceeds the limit, the least
+ * recently used ones are evicted. Each resource has a strong ETag computed from its content.
+ */
+class ThemeResourceCache {
+
+    private final long maxSize;
+    private final int maxResourceSize;
+    private final LinkedHashMap<String, CachedResource> resources = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    ThemeResourceCache(long maxSize, int maxResourceSize) {
+        this.maxSize = maxSize;
+        this.maxResourceSize = maxResourceSize;
+    }
+
+    /**
+     * @return resources bigger than this are not cached
+     */
+    int getMaxResourceSize() {
+        return maxResourceSize;
+    }
+
+    synchronized CachedResource get(String key) {
+        return resources.get(key);
+    }
+
+    synchronized CachedResource put(String key, byte[] content, String contentType) {
+        CachedResource resource = new CachedResource(content, contentType);
+
+        CachedResource previous = resources.put(key, resource);
+        if (previous != null) {
+            size -= previous.content.length;
+        }
+        size += content.length;
+
+        Iterator<Map.Entry<String, CachedResource>> itr = resources.entrySet().iterator();
+        while (size > maxSize && itr.hasNext()) {
+            CachedResource eldest = itr.next().getValue();
+            if (eldest != resource) {
+                itr.remove();
+                size -= eldest.content.length;
+            }
+        }
+
+        return resource;
+    }
+
+    static class CachedResource {
+
+        private final byte[] content;
+        private final String contentType;
+        private final EntityTag etag;
+        private final EntityTag gzipEtag;
+
+        private CachedResource(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+
+            String hash = hash(content);
+            this.etag = new EntityTag(hash);
+            this.gzipEtag = new EntityTag(hash + "-gzip");
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        EntityTag getETag() {
+            return etag;
+        }
+
+        /**
+         * @return tag of the compressed variant, which needs a different strong tag than the uncompressed one
+         */
+        EntityTag getGzipETag() {
+            return gzipEtag;
+        }
+
+        boolean isCompressible() {
+            return contentType != null && (contentType.startsWith("text/") || contentType.contains("javascript")
+                    || contentType.contains("json") || contentType.contains("xml"));
+        }
+
+        private static String hash(byte[] content) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return Base64Url.encode(digest.digest(content));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
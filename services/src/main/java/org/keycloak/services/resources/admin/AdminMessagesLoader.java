@@ -18,10 +18,9 @@
 package org.keycloak.services.resources.admin;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import org.keycloak.freemarker.Theme;
 
 /**
@@ -31,21 +30,29 @@ import org.keycloak.freemarker.Theme;
  * Also, the content should be formatted such that it can be interpolated by
  * angular-translate.  This is somewhat different from an ordinary Java bundle.
  *
+ * The cached bundles are shared between requests, so each caller gets its own copy.
+ *
  * @author Stan Silvert ssilvert@redhat.com (C) 2015 Red Hat Inc.
  */
 public class AdminMessagesLoader {
-    private static final Map<String, Properties> allMessages = new HashMap<String, Properties>();
+    private static final ConcurrentHashMap<String, Properties> allMessages = new ConcurrentHashMap<String, Properties>();
 
     static Properties getMessages(Theme theme, String strLocale) throws IOException {
         String allMessagesKey = theme.getName() + "_" + strLocale;
         Properties messages = allMessages.get(allMessagesKey);
-        if (messages != null) return messages;
+        if (messages != null) return copy(messages);
 
         Locale locale = Locale.forLanguageTag(strLocale);
         messages = theme.getMessages("admin-messages", locale);
         if (messages == null) return new Properties();
 
-        allMessages.put(allMessagesKey, messages);
+        allMessages.putIfAbsent(allMessagesKey, copy(messages));
         return messages;
     }
+
+    private static Properties copy(Properties messages) {
+        Properties copy = new Properties();
+        copy.putAll(messages);
+        return copy;
+    }
 }
@@ -102,6 +102,7 @@ public class AttackDetectionResource {
             session.sessions().removeUserLoginFailure(realm, username);
             adminEvent.operation(OperationType.DELETE).success();
         }
+        protector.clearFailures(realm, username);
     }
 
     /**
@@ -115,6 +116,7 @@ public class AttackDetectionResource {
     public void clearAllBruteForce() {
         auth.requireManage();
         session.sessions().removeAllUserLoginFailures(realm);
+        protector.clearAllFailures(realm);
         adminEvent.operation(OperationType.DELETE).success();
     }
 
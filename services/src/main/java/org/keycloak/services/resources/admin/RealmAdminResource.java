@@ -34,6 +34,8 @@ import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.services.managers.AuthenticationManager;
 import org.keycloak.services.managers.LDAPConnectionTestManager;
 import org.keycloak.services.managers.RealmManager;
+import org.keycloak.services.managers.GlobalRequestExecutor;
+import org.keycloak.services.managers.GlobalRequestProvider;
 import org.keycloak.services.managers.ResourceAdminManager;
 import org.keycloak.services.managers.UsersSyncManager;
 import org.keycloak.services.ErrorResponse;
@@ -310,6 +312,54 @@ public class RealmAdminResource {
         return new ResourceAdminManager(session).logoutAll(uriInfo.getRequestUri(), realm);
     }
 
+    /**
+     * Push the realm's revocation policy to any client that has an admin url associated with it. Returns without
+     * waiting for the clients, progress can be checked with the returned id.
+     *
+     */
+    @Path("push-revocation/async")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> pushRevocationAsync() {
+        auth.requireManage();
+        adminEvent.operation(OperationType.ACTION).resourcePath(uriInfo).success();
+        return new ResourceAdminManager(session).startPushRealmRevocationPolicy(uriInfo.getRequestUri(), realm).getProgress();
+    }
+
+    /**
+     * Removes all user sessions and tells any client that has an admin url to invalidate sessions they have. Returns
+     * without waiting for the clients, progress can be checked with the returned id.
+     *
+     */
+    @Path("logout-all/async")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> logoutAllAsync() {
+        auth.init(RealmAuth.Resource.USER).requireManage();
+        session.sessions().removeUserSessions(realm);
+        adminEvent.operation(OperationType.ACTION).resourcePath(uriInfo).success();
+        return new ResourceAdminManager(session).startLogoutAll(uriInfo.getRequestUri(), realm).getProgress();
+    }
+
+    /**
+     * Get progress of the push revocation or logout all started asynchronously. Only available on the server, which
+     * started the request.
+     *
+     * @param id
+     */
+    @Path("global-requests/{id}")
+    @GET
+    @NoCache
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getGlobalRequestProgress(@PathParam("id") String id) {
+        auth.requireView();
+        GlobalRequestExecutor.Task task = session.getProvider(GlobalRequestProvider.class).getTask(id);
+        if (task == null || !task.getRealmId().equals(realm.getId())) {
+            throw new NotFoundException("Request not found");
+        }
+        return task.getProgress();
+    }
+
     /**
      * Remove a specific user session. Any client that has an admin url will also be told to invalidate this
      * particular session.
@@ -150,6 +150,9 @@ public class UsersResource {
                 if (failureModel != null) {
                     failureModel.clearFailures();
                 }
+                if (protector != null) {
+                    protector.clearFailures(realm, rep.getUsername());
+                }
             }
 
             updateUserFromRep(user, rep, attrsToRemove);
@@ -562,7 +565,8 @@ public class UsersResource {
      *
      * Returns a list of users, filtered according to query parameters
      *
-     * @param search A String contained in username, first or last name, or email
+     * @param search A String that username, first or last name, or email starts with. Use * as a wildcard
+     * @param after Username of the last user of the previous page. Users found by search are returned ordered by username after this one
      * @param last
      * @param first
      * @param email
@@ -575,6 +579,7 @@ public class UsersResource {
     @NoCache
     @Produces(MediaType.APPLICATION_JSON)
     public List<UserRepresentation> getUsers(@QueryParam("search") String search,
+                                             @QueryParam("after") String after,
                                              @QueryParam("lastName") String last,
                                              @QueryParam("firstName") String first,
                                              @QueryParam("email") String email,
@@ -588,7 +593,9 @@ public class UsersResource {
 
         List<UserRepresentation> results = new ArrayList<UserRepresentation>();
         List<UserModel> userModels;
-        if (search != null) {
+        if (search != null && after != null) {
+            userModels = session.users().searchForUser(search.trim(), realm, after, maxResults);
+        } else if (search != null) {
             userModels = session.users().searchForUser(search.trim(), realm, firstResult, maxResults);
         } else if (last != null || first != null || email != null || username != null) {
             Map<String, String> attributes = new HashMap<String, String>();
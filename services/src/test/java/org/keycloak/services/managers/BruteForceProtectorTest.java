@@ -0,0 +1,258 @@
+package org.keycloak.services.managers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.ClientConnection;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.UsernameLoginFailureModel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BruteForceProtectorTest {
+
+    // Written login failures, by username
+    private final Map<String, StoredFailure> store = new ConcurrentHashMap<String, StoredFailure>();
+
+    private final RealmModel realm = realm();
+    private final KeycloakSessionFactory factory = sessionFactory();
+    private final ClientConnection connection = connection();
+
+    private BruteForceProtector protector;
+
+    @After
+    public void after() {
+        if (protector != null) {
+            protector.shutdown();
+        }
+    }
+
+    @Test
+    public void testLockoutThreshold() {
+        protector = new BruteForceProtector(factory, 1, 100, 100);
+
+        protector.failedLogin(factory.create(), realm, "user", connection);
+        protector.failedLogin(factory.create(), realm, "user", connection);
+        Assert.assertFalse(protector.isTemporarilyDisabled(factory.create(), realm, "user"));
+
+        // failure factor reached
+        protector.failedLogin(factory.create(), realm, "user", connection);
+        Assert.assertTrue(protector.isTemporarilyDisabled(factory.create(), realm, "user"));
+        Assert.assertFalse(protector.isTemporarilyDisabled(factory.create(), realm, "other"));
+
+        protector.clearFailures(realm, "user");
+        Assert.assertFalse(protector.isTemporarilyDisabled(factory.create(), realm, "user"));
+    }
+
+    @Test
+    public void testSeededFromStoredFailures() {
+        StoredFailure stored = new StoredFailure("user");
+        stored.numFailures = 2;
+        stored.lastFailure = System.currentTimeMillis() - 1000;
+        store.put("user", stored);
+
+        protector = new BruteForceProtector(factory, 1, 100, 100);
+        protector.failedLogin(factory.create(), realm, "user", connection);
+
+        Assert.assertTrue(protector.isTemporarilyDisabled(factory.create(), realm, "user"));
+    }
+
+    @Test
+    public void testRejectedWritesPersisted() throws Exception {
+        protector = new BruteForceProtector(factory, 1, 1, 100);
+        for (int i = 0; i < 5; i++) {
+            protector.failedLogin(factory.create(), realm, "user" + i, connection);
+        }
+        Assert.assertEquals(4, protector.getRejected());
+        Assert.assertEquals(5, protector.getQueued());
+
+        protector.start();
+        waitFor(5);
+
+        Assert.assertEquals(0, protector.getQueued());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(1, store.get("user" + i).numFailures);
+        }
+    }
+
+    @Test
+    public void testRejectedWritesPersistedOnShutdown() {
+        protector = new BruteForceProtector(factory, 1, 1, 100);
+        protector.start();
+        protector.shutdown();
+
+        for (int i = 0; i < 5; i++) {
+            protector.failedLogin(factory.create(), realm, "user" + i, connection);
+        }
+
+        // Writer threads are gone, start again only to drain
+        protector.start();
+        protector.shutdown();
+        protector = null;
+
+        Assert.assertEquals(5, store.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        protector = new BruteForceProtector(factory, 1, 100, 2);
+        for (int i = 0; i < 5; i++) {
+            protector.failedLogin(factory.create(), realm, "user" + i, connection);
+        }
+        Assert.assertEquals(5, protector.partitions[0].entries.size());
+
+        protector.start();
+        waitFor(5);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (protector.partitions[0].entries.size() > 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, protector.partitions[0].entries.size());
+        Assert.assertEquals(5, store.size());
+
+        // Evicted username is seeded from the store again
+        protector.failedLogin(factory.create(), realm, "user0", connection);
+        protector.failedLogin(factory.create(), realm, "user0", connection);
+        Assert.assertTrue(protector.isTemporarilyDisabled(factory.create(), realm, "user0"));
+    }
+
+    private void waitFor(int persisted) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (protector.getPersisted() < persisted && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(persisted, protector.getPersisted());
+    }
+
+    private static class StoredFailure {
+        private final String username;
+        private int numFailures;
+        private long lastFailure;
+        private int notBefore;
+        private String lastIp;
+
+        private StoredFailure(String username) {
+            this.username = username;
+        }
+    }
+
+    private UsernameLoginFailureModel model(final StoredFailure failure) {
+        return stub(UsernameLoginFailureModel.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getUsername")) return failure.username;
+                if (name.equals("getNumFailures")) return failure.numFailures;
+                if (name.equals("incrementFailures")) failure.numFailures++;
+                if (name.equals("clearFailures")) {
+                    failure.numFailures = 0;
+                    failure.lastFailure = 0;
+                    failure.notBefore = 0;
+                }
+                if (name.equals("getLastFailure")) return failure.lastFailure;
+                if (name.equals("setLastFailure")) failure.lastFailure = (Long) args[0];
+                if (name.equals("getFailedLoginNotBefore")) return failure.notBefore;
+                if (name.equals("setFailedLoginNotBefore")) failure.notBefore = (Integer) args[0];
+                if (name.equals("getLastIPFailure")) return failure.lastIp;
+                if (name.equals("setLastIPFailure")) failure.lastIp = (String) args[0];
+                return null;
+            }
+        });
+    }
+
+    private KeycloakSessionFactory sessionFactory() {
+        final UserSessionProvider sessions = stub(UserSessionProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getUserLoginFailure")) {
+                    StoredFailure failure = store.get(args[1]);
+                    return failure != null ? model(failure) : null;
+                }
+                if (method.getName().equals("addUserLoginFailure")) {
+                    StoredFailure failure = new StoredFailure((String) args[1]);
+                    store.put(failure.username, failure);
+                    return model(failure);
+                }
+                return null;
+            }
+        });
+        final RealmProvider realms = stub(RealmProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getRealm") ? realm : null;
+            }
+        });
+        final KeycloakTransactionManager transaction = stub(KeycloakTransactionManager.class, null);
+        final KeycloakSession session = stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getTransaction")) return transaction;
+                if (method.getName().equals("realms")) return realms;
+                if (method.getName().equals("sessions")) return sessions;
+                return null;
+            }
+        });
+        return stub(KeycloakSessionFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("create") ? session : null;
+            }
+        });
+    }
+
+    private static RealmModel realm() {
+        final Map<String, Object> answers = new HashMap<String, Object>();
+        answers.put("getId", "realm");
+        answers.put("getFailureFactor", 3);
+        answers.put("getWaitIncrementSeconds", 60);
+        answers.put("getMaxFailureWaitSeconds", 900);
+        answers.put("getMaxDeltaTimeSeconds", 12 * 60 * 60);
+        answers.put("getQuickLoginCheckMilliSeconds", 0L);
+        answers.put("getMinimumQuickLoginWaitSeconds", 60);
+        return stub(RealmModel.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return answers.get(method.getName());
+            }
+        });
+    }
+
+    private static ClientConnection connection() {
+        return stub(ClientConnection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getRemoteAddr") ? "127.0.0.1" : null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) return proxy == args[0];
+                if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                Object result = handler != null ? handler.invoke(proxy, method, args) : null;
+                if (result != null) return result;
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                return null;
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.keycloak.services.managers;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.representations.adapters.action.GlobalRequestResult;
+import org.keycloak.representations.adapters.action.PushNotBeforeAction;
+import org.keycloak.util.Time;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GlobalRequestExecutorTest {
+
+    private static KeyPair keyPair;
+
+    private GlobalRequestExecutor executor;
+
+    // Admin actions as posted to the clients
+    private final List<PushNotBeforeAction> actions = Collections.synchronizedList(new ArrayList<PushNotBeforeAction>());
+
+    // Attempts by target URL
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<String, AtomicInteger>();
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    }
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureFromEachNode() {
+        executor = new GlobalRequestExecutor(4, 10, 1000, 1);
+
+        HttpClient httpClient = httpClient(new Responder() {
+            @Override
+            public int respond(String host, int attempt) throws IOException {
+                if (host.equals("node1")) return 204;
+                if (host.equals("node2")) return 500;
+                if (host.equals("node3")) throw new ConnectException("Connection refused");
+                if (host.equals("node4")) return 404;
+                return 200;
+            }
+        });
+
+        GlobalRequestResult result = executor.execute("realm", httpClient, requests("node1", "node2", "node3", "node4", "node5")).awaitResult();
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(url("node1"), url("node5"))), new HashSet<String>(result.getSuccessRequests()));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(url("node2"), url("node3"), url("node4"))), new HashSet<String>(result.getFailedRequests()));
+
+        // Only I/O errors are retried
+        Assert.assertEquals(1, attempts.get("node2").get());
+        Assert.assertEquals(2, attempts.get("node3").get());
+    }
+
+    @Test
+    public void testRetry() {
+        executor = new GlobalRequestExecutor(2, 10, 1000, 1);
+
+        HttpClient httpClient = httpClient(new Responder() {
+            @Override
+            public int respond(String host, int attempt) throws IOException {
+                if (attempt == 1) throw new ConnectException("Connection refused");
+                return 204;
+            }
+        });
+
+        GlobalRequestResult result = executor.execute("realm", httpClient, requests("node1", "node2")).awaitResult();
+        Assert.assertEquals(2, result.getSuccessRequests().size());
+        Assert.assertNull(result.getFailedRequests());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        executor = new GlobalRequestExecutor(1, 1, 1000, 0);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final String caller = Thread.currentThread().getName();
+        final List<String> callerSent = new ArrayList<String>();
+        HttpClient httpClient = httpClient(new Responder() {
+            @Override
+            public int respond(String host, int attempt) {
+                if (Thread.currentThread().getName().equals(caller)) {
+                    callerSent.add(host);
+                }
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return 204;
+            }
+        });
+
+        // First is sent by the only thread, second waits in the queue, the rest are pending
+        GlobalRequestExecutor.Task task = executor.execute("realm", httpClient, requests("node1", "node2", "node3", "node4"));
+        Assert.assertTrue(callerSent.isEmpty());
+        Assert.assertEquals(0, task.getCompleted());
+
+        release.countDown();
+        Assert.assertEquals(4, task.awaitResult().getSuccessRequests().size());
+        Assert.assertTrue(callerSent.isEmpty());
+    }
+
+    @Test
+    public void testSignedWhenSent() throws Exception {
+        executor = new GlobalRequestExecutor(1, 10, 1000, 1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpClient httpClient = httpClient(new Responder() {
+            @Override
+            public int respond(String host, int attempt) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                if (host.equals("node2") && attempt == 1) throw new ConnectException("Connection refused");
+                return 204;
+            }
+        });
+
+        GlobalRequestExecutor.Task task = executor.execute("realm", httpClient, requests("node1", "node2"));
+        try {
+            // Requests wait longer than the lifespan of signed actions
+            Time.setOffset(60);
+            release.countDown();
+            Assert.assertEquals(2, task.awaitResult().getSuccessRequests().size());
+
+            Assert.assertEquals(3, actions.size());
+            Set<String> ids = new HashSet<String>();
+            for (PushNotBeforeAction action : actions) {
+                Assert.assertFalse(action.isExpired());
+                Assert.assertEquals(100, action.getNotBefore());
+                ids.add(action.getId());
+            }
+            // Retries are signed again
+            Assert.assertEquals(3, ids.size());
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void testShutdown() {
+        executor = new GlobalRequestExecutor(1, 10, 1000, 0);
+        executor.shutdown();
+
+        GlobalRequestExecutor.Task task = executor.execute("realm", httpClient(null), requests("node1", "node2"));
+        Assert.assertTrue(task.isFinished());
+        Assert.assertEquals(2, task.getResult().getFailedRequests().size());
+        Assert.assertTrue(attempts.isEmpty());
+    }
+
+    private interface Responder {
+        int respond(String host, int attempt) throws IOException;
+    }
+
+    private HttpClient httpClient(final Responder responder) {
+        return (HttpClient) Proxy.newProxyInstance(HttpClient.class.getClassLoader(), new Class[] { HttpClient.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("execute")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+
+                HttpPost post = (HttpPost) args[0];
+                JWSInput input = new JWSInput(EntityUtils.toString(post.getEntity()));
+                Assert.assertTrue(RSAProvider.verify(input, keyPair.getPublic()));
+                actions.add(input.readJsonContent(PushNotBeforeAction.class));
+
+                String host = post.getURI().getHost();
+                AtomicInteger counter = attempts.get(host);
+                if (counter == null) {
+                    attempts.put(host, counter = new AtomicInteger());
+                }
+                int status = responder.respond(host, counter.incrementAndGet());
+                return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+            }
+        });
+    }
+
+    private static List<GlobalRequestExecutor.Request> requests(String... hosts) {
+        List<GlobalRequestExecutor.Request> requests = new ArrayList<GlobalRequestExecutor.Request>();
+        for (String host : hosts) {
+            PushNotBeforeAction action = new PushNotBeforeAction(null, 0, "app", 100);
+            requests.add(new GlobalRequestExecutor.Request(url(host), url(host) + "/k_push_not_before", action, keyPair.getPrivate(), "pushRevocation"));
+        }
+        return requests;
+    }
+
+    private static String url(String host) {
+        return "http://" + host + ":8080/app";
+    }
+
+}
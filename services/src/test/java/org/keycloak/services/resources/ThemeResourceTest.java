@@ -0,0 +1,202 @@
+package org.keycloak.services.resources;
+
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.Version;
+import org.keycloak.freemarker.Theme;
+import org.keycloak.freemarker.ThemeProvider;
+import org.keycloak.models.KeycloakSession;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class ThemeResourceTest {
+
+    private static final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+
+    private Dispatcher dispatcher;
+
+    @Before
+    public void before() {
+        dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getRegistry().addPerRequestResource(ThemeResource.class);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        byte[] content = text(10000);
+        resources.put("css/gzip.css", content);
+
+        MockHttpResponse response = get("css/gzip.css", "gzip, deflate", null);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("gzip", header(response, HttpHeaders.CONTENT_ENCODING));
+        Assert.assertEquals(HttpHeaders.ACCEPT_ENCODING, header(response, HttpHeaders.VARY));
+        Assert.assertTrue(response.getOutput().length < content.length);
+        Assert.assertArrayEquals(content, gunzip(response.getOutput()));
+
+        String etag = header(response, HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+
+        // Same resource from cache, not compressed
+        response = get("css/gzip.css", "gzip;q=0", null);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNull(header(response, HttpHeaders.CONTENT_ENCODING));
+        Assert.assertEquals(HttpHeaders.ACCEPT_ENCODING, header(response, HttpHeaders.VARY));
+        Assert.assertArrayEquals(content, response.getOutput());
+        Assert.assertNotEquals(etag, header(response, HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        resources.put("js/etag.js", text(100));
+
+        MockHttpResponse response = get("js/etag.js", null, null);
+        String etag = header(response, HttpHeaders.ETAG);
+
+        response = get("js/etag.js", null, etag);
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals(0, response.getOutput().length);
+        Assert.assertEquals(etag, header(response, HttpHeaders.ETAG));
+
+        // Tag of the uncompressed variant doesn't match the compressed one
+        response = get("js/etag.js", "gzip", etag);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("gzip", header(response, HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testBinaryNotCompressed() throws Exception {
+        byte[] content = binary(1000);
+        resources.put("img/small.png", content);
+
+        MockHttpResponse response = get("img/small.png", "gzip", null);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNull(header(response, HttpHeaders.CONTENT_ENCODING));
+        Assert.assertNull(header(response, HttpHeaders.VARY));
+        Assert.assertNotNull(header(response, HttpHeaders.ETAG));
+        Assert.assertArrayEquals(content, response.getOutput());
+    }
+
+    @Test
+    public void testBigResourceStreamed() throws Exception {
+        byte[] content = binary(3 * 1024 * 1024 / 2);
+        resources.put("img/big.png", content);
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpResponse response = get("img/big.png", "gzip", null);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertNull(header(response, HttpHeaders.ETAG));
+            Assert.assertArrayEquals(content, response.getOutput());
+        }
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        Assert.assertEquals(404, get("css/missing.css", null, null).getStatus());
+    }
+
+    private MockHttpResponse get(String path, String acceptEncoding, String ifNoneMatch) throws Exception {
+        MockHttpRequest request = MockHttpRequest.get("/resources/" + Version.RESOURCES_VERSION + "/login/test/" + path);
+        if (acceptEncoding != null) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+
+        MockHttpResponse response = new MockHttpResponse();
+        ResteasyProviderFactory.pushContext(KeycloakSession.class, session());
+        try {
+            dispatcher.invoke(request, response);
+        } finally {
+            ResteasyProviderFactory.clearContextData();
+        }
+        return response;
+    }
+
+    private static String header(MockHttpResponse response, String name) {
+        Object value = response.getOutputHeaders().getFirst(name);
+        return value != null ? value.toString() : null;
+    }
+
+    private static byte[] text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(".line-").append(i).append(" { color: red; }\n");
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] binary(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
+
+    private static KeycloakSession session() {
+        final Theme theme = stub(Theme.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getResourceAsStream")) {
+                    byte[] content = resources.get(args[0]);
+                    return content != null ? new ByteArrayInputStream(content) : null;
+                }
+                return null;
+            }
+        });
+        final ThemeProvider themeProvider = stub(ThemeProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getTheme") ? theme : null;
+            }
+        });
+        return stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getProvider") ? themeProvider : null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = handler.invoke(proxy, method, args);
+                if (result != null) return result;
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                return null;
+            }
+        }));
+    }
+
+}
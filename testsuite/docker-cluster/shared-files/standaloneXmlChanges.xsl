@@ -53,6 +53,7 @@
             <ispn:invalidation-cache name="users" mode="SYNC"/>
             <ispn:distributed-cache name="sessions" mode="SYNC" owners="2"/>
             <ispn:distributed-cache name="loginFailures" mode="SYNC" owners="2"/>
+            <ispn:replicated-cache name="work" mode="SYNC"/>
         </ispn:cache-container>
     </xsl:template>
 
@@ -0,0 +1,155 @@
+package org.keycloak.testsuite.performance;
+
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.VerificationException;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.Base64Url;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.Time;
+import org.keycloak.util.TokenUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares bearer token verification with {@link RSATokenVerifier} against the previous verification path, which
+ * split the token with a regex, re-encoded the signature input and bound the whole token before checking any claims.
+ *
+ * See the README of the performance testsuite for how to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenVerificationBenchmark {
+
+    private static final String REALM_URL = "http://localhost:8081/auth/realms/test";
+
+    private KeyPair keyPair;
+    private String validToken;
+    private String expiredToken;
+    private String foreignToken;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        validToken = createToken(REALM_URL, Time.currentTime() + 3600);
+        expiredToken = createToken(REALM_URL, Time.currentTime() - 3600);
+        foreignToken = createToken("http://localhost:8081/auth/realms/other", Time.currentTime() + 3600);
+    }
+
+    private String createToken(String issuer, int expiration) {
+        AccessToken token = new AccessToken();
+        token.type(TokenUtil.TOKEN_TYPE_BEARER)
+                .subject("f:5e8f1c9a:user")
+                .issuer(issuer)
+                .expiration(expiration)
+                .addAccess("customer-portal").addRole("user");
+        token.setRealmAccess(new AccessToken.Access().addRole("user").addRole("offline_access"));
+        return new JWSBuilder().jsonContent(token).rsa256(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public AccessToken verifyValid() throws Exception {
+        return RSATokenVerifier.verifyToken(validToken, keyPair.getPublic(), REALM_URL);
+    }
+
+    @Benchmark
+    public AccessToken verifyValidPrevious() throws Exception {
+        return previousVerifyToken(validToken);
+    }
+
+    @Benchmark
+    public boolean rejectExpired() {
+        return reject(expiredToken);
+    }
+
+    @Benchmark
+    public boolean rejectExpiredPrevious() {
+        return rejectPrevious(expiredToken);
+    }
+
+    @Benchmark
+    public boolean rejectForeign() {
+        return reject(foreignToken);
+    }
+
+    @Benchmark
+    public boolean rejectForeignPrevious() {
+        return rejectPrevious(foreignToken);
+    }
+
+    private boolean reject(String token) {
+        try {
+            RSATokenVerifier.verifyToken(token, keyPair.getPublic(), REALM_URL);
+            return false;
+        } catch (VerificationException e) {
+            return true;
+        }
+    }
+
+    private boolean rejectPrevious(String token) {
+        try {
+            previousVerifyToken(token);
+            return false;
+        } catch (VerificationException e) {
+            return true;
+        }
+    }
+
+    private AccessToken previousVerifyToken(String tokenString) throws VerificationException {
+        try {
+            String[] parts = tokenString.split("\\.");
+            String encodedSignatureInput = parts[0] + '.' + parts[1];
+            byte[] content = Base64Url.decode(parts[1]);
+            byte[] signature = Base64Url.decode(parts[2]);
+            Base64Url.decode(parts[0]);
+
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(encodedSignatureInput.getBytes("UTF-8"));
+            if (!verifier.verify(signature)) {
+                throw new VerificationException("Invalid token signature.");
+            }
+
+            AccessToken token = JsonSerialization.readValue(content, AccessToken.class);
+            if (!REALM_URL.equals(token.getIssuer())) {
+                throw new VerificationException("Invalid issuer");
+            }
+            if (!token.isActive()) {
+                throw new VerificationException("Token is not active.");
+            }
+            return token;
+        } catch (VerificationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new VerificationException("Couldn't parse token", e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(TokenVerificationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -3,42 +3,90 @@ package org.keycloak.timer.basic;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 import org.keycloak.timer.TimerProvider;
 import org.keycloak.timer.TimerProviderFactory;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Runs timer tasks in a pool of <code>threads</code> (default 4), with up to <code>jitter</code> percent (default 10)
+ * of the interval added to each delay. With <code>clusterSingleton</code> enabled each task runs on single node of the
+ * cluster, see {@link InfinispanTimerTaskLease}, except the <code>localTasks</code>, which only process data owned by
+ * the node running them and so run on every node (by default removing expired user sessions).
+ *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class BasicTimerProviderFactory implements TimerProviderFactory {
+public class BasicTimerProviderFactory implements TimerProviderFactory, ServerInfoAwareProviderFactory<TimerProvider> {
 
-    private Timer timer;
+    private volatile ScheduledThreadPoolExecutor executor;
 
-    private ConcurrentMap<String, TimerTask> scheduledTasks = new ConcurrentHashMap<String, TimerTask>();
+    private int threads;
+
+    private int jitter;
+
+    private boolean clusterSingleton;
+
+    private Set<String> localTasks;
+
+    private volatile TimerTaskLease lease = TimerTaskLease.LOCAL;
+
+    private ConcurrentMap<String, ScheduledTimerTask> scheduledTasks = new ConcurrentHashMap<String, ScheduledTimerTask>();
 
     @Override
     public TimerProvider create(KeycloakSession session) {
-        return new BasicTimerProvider(timer, this);
+        return new BasicTimerProvider(this);
     }
 
     @Override
     public void init(Config.Scope config) {
-        timer = new Timer();
+        threads = config.getInt("threads", 4);
+        jitter = config.getInt("jitter", 10);
+        clusterSingleton = config.getBoolean("clusterSingleton", false);
+
+        String[] localTasksConfig = config.getArray("localTasks");
+        localTasks = new HashSet<String>(Arrays.asList(localTasksConfig != null ? localTasksConfig : new String[] { "ClearExpiredUserSessions" }));
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-timer-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
-
+        if (clusterSingleton) {
+            lease = InfinispanTimerTaskLease.create(factory);
+        }
     }
 
     @Override
     public void close() {
-        timer.cancel();
-        timer = null;
+        for (ScheduledTimerTask task : scheduledTasks.values()) {
+            task.cancel();
+        }
+        scheduledTasks.clear();
+        executor.shutdownNow();
+        executor = null;
+        lease.close();
     }
 
     @Override
@@ -46,12 +94,39 @@ public class BasicTimerProviderFactory implements TimerProviderFactory {
         return "basic";
     }
 
-    protected TimerTask putTask(String taskName, TimerTask task) {
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<String, String>();
+        info.put("threads", String.valueOf(threads));
+        info.put("jitter", jitter + "%");
+        info.put("clusterSingleton", String.valueOf(clusterSingleton));
+        if (clusterSingleton) {
+            info.put("localTasks", new TreeSet<String>(localTasks).toString());
+        }
+        for (ScheduledTimerTask task : new TreeMap<String, ScheduledTimerTask>(scheduledTasks).values()) {
+            info.put("task " + task.getName(), "interval=" + task.getInterval() + ", " + task.getStats());
+        }
+        return info;
+    }
+
+    ScheduledTimerTask putTask(String taskName, ScheduledTimerTask task) {
         return scheduledTasks.put(taskName, task);
     }
 
-    protected TimerTask removeTask(String taskName) {
+    ScheduledTimerTask removeTask(String taskName) {
         return scheduledTasks.remove(taskName);
     }
 
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    int getJitter() {
+        return jitter;
+    }
+
+    TimerTaskLease getLease(String taskName) {
+        return localTasks.contains(taskName) ? TimerTaskLease.LOCAL : lease;
+    }
+
 }
@@ -0,0 +1,151 @@
+package org.keycloak.timer.basic;
+
+import org.infinispan.Cache;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each task on single node of the cluster. The node which runs the task holds a lease on it in the Infinispan
+ * work cache. The lease is taken with <code>putIfAbsent</code> and renewed with a conditional <code>replace</code>, so
+ * a node never takes over a lease held by another node. It's renewed with every run and, by a separate thread, while
+ * the task is running. It expires after it wasn't renewed for two intervals, so if the node is stopped or crashes,
+ * another node takes the task over.
+ */
+class InfinispanTimerTaskLease implements TimerTaskLease {
+
+    private static final Logger logger = Logger.getLogger(InfinispanTimerTaskLease.class);
+
+    private static final String KEY_PREFIX = "timer::";
+
+    private final Cache<String, String> cache;
+    private final String nodeId;
+    private final Set<String> ownedTasks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Renewals of the leases of the tasks running at the moment
+    private final ConcurrentMap<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+    private final ScheduledExecutorService renewer;
+
+    static InfinispanTimerTaskLease create(KeycloakSessionFactory factory) {
+        KeycloakSession session = factory.create();
+        try {
+            InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
+            return new InfinispanTimerTaskLease(connections.<String, String>getCache(InfinispanConnectionProvider.WORK_CACHE_NAME));
+        } finally {
+            session.close();
+        }
+    }
+
+    InfinispanTimerTaskLease(Cache<String, String> cache) {
+        this.cache = cache;
+        this.nodeId = cache.getCacheManager().getAddress() != null ? cache.getCacheManager().getAddress().toString() + "-" + KeycloakModelUtils.generateId() : KeycloakModelUtils.generateId();
+        this.renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-timer-lease");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public boolean acquire(final String taskName, final long interval) {
+        if (!acquireOrRenew(taskName, interval)) {
+            return false;
+        }
+
+        // A run may take longer than the lease lasts
+        long period = Math.max(1, lifespan(interval) / 3);
+        ScheduledFuture<?> renewal = renewer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                renew(taskName, interval);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        ScheduledFuture<?> previous = renewals.put(taskName, renewal);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        return true;
+    }
+
+    @Override
+    public void runFinished(String taskName) {
+        ScheduledFuture<?> renewal = renewals.remove(taskName);
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+    }
+
+    private boolean acquireOrRenew(String taskName, long interval) {
+        String key = KEY_PREFIX + taskName;
+        long lifespan = lifespan(interval);
+
+        if (ownedTasks.contains(taskName)) {
+            if (cache.replace(key, nodeId, nodeId, lifespan, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            logger.debugf("Lease for task '%s' expired", taskName);
+            ownedTasks.remove(taskName);
+        }
+
+        String owner = cache.putIfAbsent(key, nodeId, lifespan, TimeUnit.MILLISECONDS);
+        if (owner == null || owner.equals(nodeId) && cache.replace(key, nodeId, nodeId, lifespan, TimeUnit.MILLISECONDS)) {
+            logger.debugf("Acquired lease for task '%s'", taskName);
+            ownedTasks.add(taskName);
+            return true;
+        }
+        return false;
+    }
+
+    private void renew(String taskName, long interval) {
+        try {
+            if (!cache.replace(KEY_PREFIX + taskName, nodeId, nodeId, lifespan(interval), TimeUnit.MILLISECONDS)) {
+                logger.warnf("Lost lease for task '%s' while it is running", taskName);
+                ownedTasks.remove(taskName);
+                runFinished(taskName);
+            }
+        } catch (RuntimeException e) {
+            logger.warnf(e, "Failed to renew lease for task '%s'", taskName);
+        }
+    }
+
+    private long lifespan(long interval) {
+        return interval * 2;
+    }
+
+    @Override
+    public void release(String taskName) {
+        runFinished(taskName);
+        if (ownedTasks.remove(taskName)) {
+            try {
+                cache.remove(KEY_PREFIX + taskName, nodeId);
+            } catch (RuntimeException e) {
+                logger.warnf(e, "Failed to release lease for task '%s'", taskName);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        for (String taskName : ownedTasks) {
+            release(taskName);
+        }
+    }
+
+}
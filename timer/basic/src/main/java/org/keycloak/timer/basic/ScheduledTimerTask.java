@@ -0,0 +1,113 @@
+package org.keycloak.timer.basic;
+
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task scheduled in the thread pool of {@link BasicTimerProviderFactory}. Each run is scheduled after the previous one
+ * finishes, so a slow task doesn't pile up runs and only blocks its own thread. Random jitter is added to the interval,
+ * so tasks scheduled at the same time (and the same tasks on other cluster nodes) don't keep running at the same time.
+ */
+class ScheduledTimerTask implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(ScheduledTimerTask.class);
+
+    private final BasicTimerProviderFactory factory;
+    private final String name;
+    private final Runnable runnable;
+    private final long interval;
+    private final TimerTaskStats stats = new TimerTaskStats();
+
+    private volatile boolean cancelled;
+    private volatile ScheduledFuture<?> future;
+
+    ScheduledTimerTask(BasicTimerProviderFactory factory, String name, Runnable runnable, long interval) {
+        this.factory = factory;
+        this.name = name;
+        this.runnable = runnable;
+        this.interval = interval;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getInterval() {
+        return interval;
+    }
+
+    TimerTaskStats getStats() {
+        return stats;
+    }
+
+    void start() {
+        scheduleNext();
+    }
+
+    void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> f = future;
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) {
+            return;
+        }
+
+        try {
+            TimerTaskLease lease = factory.getLease(name);
+            if (lease.acquire(name, interval)) {
+                long start = System.currentTimeMillis();
+                boolean success = false;
+                try {
+                    runnable.run();
+                    success = true;
+                } finally {
+                    lease.runFinished(name);
+                    stats.runFinished(System.currentTimeMillis() - start, success);
+                }
+            } else {
+                logger.tracef("Task '%s' is running on another node, skipping", name);
+                stats.runSkipped();
+            }
+        } catch (Throwable t) {
+            logger.errorf(t, "Failed to run timer task '%s'", name);
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        if (cancelled) {
+            return;
+        }
+
+        long delay = interval;
+        long maxJitter = interval * factory.getJitter() / 100;
+        if (maxJitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(maxJitter);
+        }
+
+        ScheduledExecutorService executor = factory.getExecutor();
+        if (executor == null) {
+            logger.debugf("Timer was shut down, not scheduling task '%s'", name);
+            return;
+        }
+
+        try {
+            future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debugf("Timer was shut down, not scheduling task '%s'", name);
+        }
+    }
+
+}
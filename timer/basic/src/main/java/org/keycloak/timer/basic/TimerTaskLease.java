@@ -0,0 +1,51 @@
+package org.keycloak.timer.basic;
+
+/**
+ * Decides if the timer task should run on this node
+ */
+interface TimerTaskLease {
+
+    /**
+     * Called before every run of the task. If the lease is acquired, it's kept until {@link #runFinished(String)}.
+     *
+     * @return true if the task should run on this node
+     */
+    boolean acquire(String taskName, long interval);
+
+    /**
+     * Called after a run of the task, for which the lease was acquired.
+     */
+    void runFinished(String taskName);
+
+    /**
+     * Called when the task is cancelled on this node, so that other nodes can take it over.
+     */
+    void release(String taskName);
+
+    void close();
+
+    /**
+     * Every node runs all its tasks
+     */
+    TimerTaskLease LOCAL = new TimerTaskLease() {
+
+        @Override
+        public boolean acquire(String taskName, long interval) {
+            return true;
+        }
+
+        @Override
+        public void runFinished(String taskName) {
+        }
+
+        @Override
+        public void release(String taskName) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    };
+
+}
@@ -0,0 +1,40 @@
+package org.keycloak.timer.basic;
+
+import java.util.Date;
+
+/**
+ * Run-time statistics of single timer task
+ */
+class TimerTaskStats {
+
+    private long runs;
+    private long failures;
+    private long skipped;
+    private long totalTime;
+    private long maxTime;
+    private long lastTime;
+    private long lastRun;
+
+    synchronized void runFinished(long time, boolean success) {
+        runs++;
+        if (!success) {
+            failures++;
+        }
+        totalTime += time;
+        maxTime = Math.max(maxTime, time);
+        lastTime = time;
+        lastRun = System.currentTimeMillis();
+    }
+
+    synchronized void runSkipped() {
+        skipped++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "runs=" + runs + ", failures=" + failures + ", skipped=" + skipped
+                + ", avgTimeMillis=" + (runs > 0 ? totalTime / runs : 0) + ", maxTimeMillis=" + maxTime
+                + ", lastTimeMillis=" + lastTime + ", lastRun=" + (lastRun > 0 ? new Date(lastRun) : "never");
+    }
+
+}
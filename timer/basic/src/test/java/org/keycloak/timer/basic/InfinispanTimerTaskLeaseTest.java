@@ -0,0 +1,90 @@
+package org.keycloak.timer.basic;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two nodes sharing the work cache
+ */
+public class InfinispanTimerTaskLeaseTest {
+
+    private DefaultCacheManager cacheManager;
+    private InfinispanTimerTaskLease node1;
+    private InfinispanTimerTaskLease node2;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        Cache<String, String> cache = cacheManager.getCache("work");
+        node1 = new InfinispanTimerTaskLease(cache);
+        node2 = new InfinispanTimerTaskLease(cache);
+    }
+
+    @After
+    public void after() {
+        node1.close();
+        node2.close();
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testOnlyOneNodeHoldsLease() {
+        Assert.assertTrue(node1.acquire("task", 10000));
+        node1.runFinished("task");
+        Assert.assertFalse(node2.acquire("task", 10000));
+
+        // Renewed by the owner, still not available to the other node
+        Assert.assertTrue(node1.acquire("task", 10000));
+        node1.runFinished("task");
+        Assert.assertFalse(node2.acquire("task", 10000));
+
+        // Other tasks are independent
+        Assert.assertTrue(node2.acquire("other", 10000));
+        node2.runFinished("other");
+        Assert.assertFalse(node1.acquire("other", 10000));
+    }
+
+    @Test
+    public void testRelease() {
+        Assert.assertTrue(node1.acquire("task", 10000));
+        node1.runFinished("task");
+        node1.release("task");
+
+        Assert.assertTrue(node2.acquire("task", 10000));
+        node2.runFinished("task");
+        Assert.assertFalse(node1.acquire("task", 10000));
+    }
+
+    @Test
+    public void testExpiredLeaseTakenOver() throws InterruptedException {
+        Assert.assertTrue(node1.acquire("task", 50));
+        node1.runFinished("task");
+
+        Thread.sleep(300);
+
+        Assert.assertTrue(node2.acquire("task", 10000));
+        node2.runFinished("task");
+
+        // The former owner doesn't take the lease back
+        Assert.assertFalse(node1.acquire("task", 10000));
+    }
+
+    @Test
+    public void testRenewedWhileRunning() throws InterruptedException {
+        Assert.assertTrue(node1.acquire("task", 50));
+
+        // Runs for longer than the lease lasts
+        Thread.sleep(300);
+        Assert.assertFalse(node2.acquire("task", 50));
+
+        node1.runFinished("task");
+        Thread.sleep(300);
+        Assert.assertTrue(node2.acquire("task", 10000));
+        node2.runFinished("task");
+    }
+
+}